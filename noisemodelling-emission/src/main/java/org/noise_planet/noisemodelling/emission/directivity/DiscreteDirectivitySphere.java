@@ -67,6 +67,14 @@ public class DiscreteDirectivitySphere implements DirectivitySphere {
         this.interpolationMethod = interpolationMethod;
     }
 
+    /**
+     * Get the interpolation method
+     * @return interpolation method between specified angles : 0 for closest neighbor, 1 for Bilinear interpolation
+     */
+    public int getInterpolationMethod() {
+        return interpolationMethod;
+    }
+
     /**
      * Get the directivity values for a given Theta angle
      * @return List of the records
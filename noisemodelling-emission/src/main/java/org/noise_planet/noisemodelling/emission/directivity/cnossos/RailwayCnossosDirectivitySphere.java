@@ -24,6 +24,13 @@ public final class RailwayCnossosDirectivitySphere implements DirectivitySphere
         this.lineSource = lineSource;
     }
 
+    /**
+     * @return Line source that define the directivity pattern
+     */
+    public LineSource getLineSource() {
+        return lineSource;
+    }
+
     /**
      * Returns the attenuation in dB due to a particular frequency of the directivity pattern at a given angle (phi, theta)
      * @param frequency Frequency in Hertz
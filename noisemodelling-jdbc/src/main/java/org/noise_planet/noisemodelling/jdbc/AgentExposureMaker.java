@@ -0,0 +1,537 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.api.EmptyProgressVisitor;
+import org.h2gis.api.ProgressVisitor;
+import org.h2gis.utilities.TableLocation;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.noise_planet.noisemodelling.jdbc.input.DefaultTableLoader;
+import org.noise_planet.noisemodelling.pathfinder.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.noise_planet.noisemodelling.pathfinder.utils.AcousticIndicatorsFunctions.dBToW;
+import static org.noise_planet.noisemodelling.pathfinder.utils.AcousticIndicatorsFunctions.wToDb;
+
+/**
+ * Compute the noise exposure of agents (MATSim persons for example) from a time sliced noise map evaluated on
+ * the receivers linked with the agents activities (facilities).
+ * The receiver levels are loaded once in memory into a primitive array indexed by facility and time bin, then the
+ * agents are evaluated in parallel and the results are written with batched inserts.
+ */
+public class AgentExposureMaker {
+    public static final int SECONDS_PER_DAY = 86400;
+    /** Agent days start at 4 am, activities before this hour belong to the previous day */
+    public static final double DAY_START_SECONDS = 4 * 3600;
+    public static final double NO_LEVEL = -99.0;
+    public static final String TRAVELLING_ACTIVITY = "travelling";
+    public static final String OUTSIDE_ACTIVITY = "outside";
+    private static final Activity OUTSIDE = new Activity(OUTSIDE_ACTIVITY, OUTSIDE_ACTIVITY, 0, 0, null);
+    private static final int BATCH_MAX_SIZE = 500;
+    private final Logger logger = LoggerFactory.getLogger(AgentExposureMaker.class);
+
+    private final int timeBinSize;
+    private final int timeBinCount;
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+    private int agentBatchSize = 10000;
+    private GeometryFactory geometryFactory = new GeometryFactory();
+
+    /** Facility identifier to facility index */
+    private final Map<String, Integer> facilityIndex = new HashMap<>();
+    /** LAeq of facilities, index is facilityIndex * timeBinCount + timeBinIndex. NaN if there is no level */
+    private double[] facilityLevels = new double[0];
+
+    /**
+     * @param timeBinSize The size of time bins in seconds (ex: 3600 for one hour)
+     */
+    public AgentExposureMaker(int timeBinSize) {
+        if(timeBinSize <= 0 || SECONDS_PER_DAY % timeBinSize != 0) {
+            throw new IllegalArgumentException("Time bin size must be a divisor of " + SECONDS_PER_DAY + " seconds");
+        }
+        this.timeBinSize = timeBinSize;
+        this.timeBinCount = SECONDS_PER_DAY / timeBinSize;
+    }
+
+    public int getTimeBinSize() {
+        return timeBinSize;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * @param threadCount Number of threads used to evaluate the agents exposure
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    public int getAgentBatchSize() {
+        return agentBatchSize;
+    }
+
+    /**
+     * @param agentBatchSize Number of agents evaluated in parallel before the results are pushed into the database
+     */
+    public void setAgentBatchSize(int agentBatchSize) {
+        this.agentBatchSize = agentBatchSize;
+    }
+
+    /**
+     * @param srid Projection identifier of the exported geometries
+     */
+    public void setSRID(int srid) {
+        geometryFactory = new GeometryFactory(new PrecisionModel(), srid);
+    }
+
+    /**
+     * @return Number of distinct facilities with at least one level
+     */
+    public int getFacilityCount() {
+        return facilityIndex.size();
+    }
+
+    /**
+     * Set the level of a facility for the specified time bin
+     * @param facility Facility identifier
+     * @param timeBin Start of the time bin in seconds
+     * @param laeq Level in dB(A)
+     */
+    public void setFacilityLevel(String facility, int timeBin, double laeq) {
+        if(timeBin < 0 || timeBin >= SECONDS_PER_DAY || timeBin % timeBinSize != 0) {
+            return;
+        }
+        Integer index = facilityIndex.get(facility);
+        if(index == null) {
+            index = facilityIndex.size();
+            facilityIndex.put(facility, index);
+            int requiredSize = (index + 1) * timeBinCount;
+            if(requiredSize > facilityLevels.length) {
+                int oldSize = facilityLevels.length;
+                facilityLevels = Arrays.copyOf(facilityLevels, Math.max(requiredSize, oldSize * 2));
+                Arrays.fill(facilityLevels, oldSize, facilityLevels.length, Double.NaN);
+            }
+        }
+        facilityLevels[index * timeBinCount + timeBin / timeBinSize] = laeq;
+    }
+
+    /**
+     * @param facility Facility identifier
+     * @param timeBin Start of the time bin in seconds
+     * @return Level in dB(A) or NaN if there is no level for this facility and time bin
+     */
+    public double getFacilityLevel(String facility, int timeBin) {
+        Integer index = facilityIndex.get(facility);
+        if(index == null) {
+            return Double.NaN;
+        }
+        return facilityLevels[index * timeBinCount + timeBin / timeBinSize];
+    }
+
+    /**
+     * Load all the receivers levels in memory using a single query
+     * @param connection Active connection
+     * @param receiversTable Table with PK and FACILITY fields
+     * @param dataTable Table with IDRECEIVER, PERIOD (time bin start in seconds) and LAEQ fields
+     * @throws SQLException Error while reading the tables
+     */
+    public void loadFacilityLevels(Connection connection, String receiversTable, String dataTable) throws SQLException {
+        String query = "SELECT R.FACILITY, D.PERIOD, D.LAEQ FROM " + TableLocation.parse(dataTable) + " D INNER JOIN "
+                + TableLocation.parse(receiversTable) + " R ON D.IDRECEIVER = R.PK WHERE D.PERIOD <> ''";
+        int rowCount = 0;
+        try (Statement st = connection.createStatement()) {
+            st.setFetchSize(DefaultTableLoader.DEFAULT_FETCH_SIZE);
+            try (ResultSet rs = st.executeQuery(query)) {
+                while (rs.next()) {
+                    String facility = rs.getString(1);
+                    int timeBin;
+                    try {
+                        timeBin = Integer.parseInt(rs.getString(2).trim());
+                    } catch (NumberFormatException ex) {
+                        // not a time bin period
+                        continue;
+                    }
+                    if (facility != null) {
+                        setFacilityLevel(facility, timeBin, rs.getDouble(3));
+                        rowCount++;
+                    }
+                }
+            }
+        }
+        logger.info("{} levels loaded for {} facilities", rowCount, facilityIndex.size());
+    }
+
+    /**
+     * Evaluate the exposure of one agent. This method is thread safe once the levels are loaded.
+     * @param agent Agent with its activities
+     * @return Exposure of the agent
+     */
+    public AgentExposure computeExposure(Agent agent) {
+        AgentExposure exposure = new AgentExposure(agent, timeBinCount);
+        Coordinate homeCoordinate = null;
+        for (Activity activity : agent.activities) {
+            if (activity.type.contains("home")) {
+                exposure.home = activity;
+                if (homeCoordinate == null) {
+                    homeCoordinate = activity.coordinate;
+                }
+            }
+            if (activity.type.contains("work")) {
+                exposure.work = activity;
+            }
+        }
+        double laeqW = dBToW(NO_LEVEL);
+        for (int timeBinIndex = 0; timeBinIndex < timeBinCount; timeBinIndex++) {
+            SequenceElement element = new SequenceElement();
+            exposure.sequence[timeBinIndex] = element;
+            double timeSliceStart = timeBinIndex * timeBinSize;
+            double timeSliceEnd = timeSliceStart + timeBinSize;
+            if (timeSliceStart < DAY_START_SECONDS) {
+                timeSliceStart += SECONDS_PER_DAY;
+            }
+            if (timeSliceEnd <= DAY_START_SECONDS) {
+                timeSliceEnd += SECONDS_PER_DAY;
+            }
+            boolean hasActivity = false;
+            boolean isOutside = false;
+            for (Activity activity : agent.activities) {
+                if (OUTSIDE_ACTIVITY.equals(activity.type)) {
+                    isOutside = true;
+                    continue;
+                }
+                double activityStart = activity.startTime;
+                double activityEnd = activity.endTime;
+                if (activityStart >= activityEnd || activityStart >= timeSliceEnd || activityEnd < timeSliceStart) {
+                    continue;
+                }
+                hasActivity = true;
+                Coordinate activityCoordinate = activity.coordinate;
+                if (activityCoordinate == null && "home".equals(activity.type)) {
+                    activityCoordinate = homeCoordinate;
+                }
+                double timeWeight = 0.0;
+                if (activityStart <= timeSliceStart) {
+                    element.setStart(activity, activityCoordinate);
+                    if (activityEnd >= timeSliceEnd) {
+                        timeWeight = 1.0 / timeBinCount;
+                        element.setEnd(activity, activityCoordinate);
+                    }
+                    if (activityEnd < timeSliceEnd) {
+                        timeWeight = ((activityEnd - timeSliceStart) / timeBinSize) / timeBinCount;
+                    }
+                }
+                if (activityStart > timeSliceStart && activityStart < timeSliceEnd) {
+                    if (activityEnd >= timeSliceEnd) {
+                        timeWeight = ((timeSliceEnd - activityStart) / timeBinSize) / timeBinCount;
+                        element.setEnd(activity, activityCoordinate);
+                    }
+                    if (activityEnd < timeSliceEnd) {
+                        timeWeight = ((activityEnd - activityStart) / timeBinSize) / timeBinCount;
+                    }
+                }
+                if (timeWeight > element.weight) {
+                    element.weight = timeWeight;
+                    element.setMain(activity, activityCoordinate);
+                }
+                Integer index = facilityIndex.get(activity.facilityId);
+                if (index != null) {
+                    double level = facilityLevels[index * timeBinCount + timeBinIndex];
+                    if (!Double.isNaN(level)) {
+                        laeqW += timeWeight * dBToW(level);
+                        element.laeq = level;
+                    }
+                }
+            }
+            if (!hasActivity && isOutside) {
+                element.setStart(OUTSIDE, null);
+                element.setMain(OUTSIDE, null);
+                element.setEnd(OUTSIDE, null);
+            }
+        }
+        exposure.homeCoordinate = homeCoordinate;
+        exposure.laeq = wToDb(laeqW);
+        return exposure;
+    }
+
+    /**
+     * Create (or replace) the output tables outTableName and outTableName_SEQUENCE
+     * @param connection Active connection
+     * @param outTableName Output table name
+     * @throws SQLException Error while creating the tables
+     */
+    public void createTables(Connection connection, String outTableName) throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + outTableName);
+            st.execute("DROP TABLE IF EXISTS " + outTableName + "_SEQUENCE");
+            st.execute("CREATE TABLE " + outTableName + " (PK integer PRIMARY KEY AUTO_INCREMENT," +
+                    " PERSON_ID varchar(255), AGE int, SEX varchar, INCOME double, EMPLOYED double," +
+                    " HOME_FACILITY varchar(255), HOME_GEOM geometry, WORK_FACILITY varchar(255)," +
+                    " WORK_GEOM geometry, LAEQ real)");
+            st.execute("CREATE TABLE " + outTableName + "_SEQUENCE (PK integer PRIMARY KEY AUTO_INCREMENT," +
+                    " PERSON_ID varchar(255), TIME int, LEVEL double," +
+                    " START_ACTIVITY_ID varchar, START_ACTIVITY_TYPE varchar, START_ACTIVITY_GEOM geometry," +
+                    " MAIN_ACTIVITY_ID varchar, MAIN_ACTIVITY_TYPE varchar, MAIN_ACTIVITY_GEOM geometry," +
+                    " END_ACTIVITY_ID varchar, END_ACTIVITY_TYPE varchar, END_ACTIVITY_GEOM geometry)");
+        }
+    }
+
+    /**
+     * Evaluate the exposure of all agents and write the results into outTableName and outTableName_SEQUENCE tables.
+     * The levels must be loaded before calling this method.
+     * @param connection Active connection
+     * @param agents Agents to evaluate, the iterator is consumed by batches on the calling thread
+     * @param agentCount Number of agents (for progression only)
+     * @param outTableName Output table name
+     * @param progressVisitor Progression information
+     * @throws SQLException Error while writing the results
+     */
+    public void run(Connection connection, Iterator<Agent> agents, int agentCount, String outTableName,
+                    ProgressVisitor progressVisitor) throws SQLException {
+        createTables(connection, outTableName);
+        ProgressVisitor progress = progressVisitor == null ? new EmptyProgressVisitor() :
+                progressVisitor.subProcess(agentCount);
+        ThreadPool threadPool = new ThreadPool(threadCount, threadCount + 1, Long.MAX_VALUE, TimeUnit.SECONDS);
+        try (PreparedStatement agentStatement = connection.prepareStatement("INSERT INTO " + outTableName +
+                "(PERSON_ID, AGE, SEX, INCOME, EMPLOYED, HOME_FACILITY, HOME_GEOM, WORK_FACILITY, WORK_GEOM, LAEQ)" +
+                " VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+             PreparedStatement sequenceStatement = connection.prepareStatement("INSERT INTO " + outTableName +
+                "_SEQUENCE(PERSON_ID, TIME, LEVEL, START_ACTIVITY_ID, START_ACTIVITY_TYPE, START_ACTIVITY_GEOM," +
+                " MAIN_ACTIVITY_ID, MAIN_ACTIVITY_TYPE, MAIN_ACTIVITY_GEOM, END_ACTIVITY_ID, END_ACTIVITY_TYPE," +
+                " END_ACTIVITY_GEOM) VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            List<Agent> batch = new ArrayList<>(agentBatchSize);
+            int missingHomeCount = 0;
+            while (agents.hasNext() && !progress.isCanceled()) {
+                batch.clear();
+                while (agents.hasNext() && batch.size() < agentBatchSize) {
+                    batch.add(agents.next());
+                }
+                AgentExposure[] exposures = computeExposures(threadPool, batch);
+                writeExposures(agentStatement, sequenceStatement, exposures);
+                for (AgentExposure exposure : exposures) {
+                    if (exposure.home != null && exposure.homeCoordinate == null) {
+                        if (missingHomeCount == 0) {
+                            logger.warn("The home activities of the agent {} are not located", exposure.agent.personId);
+                        }
+                        missingHomeCount++;
+                    }
+                    progress.endStep();
+                }
+            }
+            if (missingHomeCount > 0) {
+                logger.warn("{} agents have an empty HOME_GEOM as their home activities are not located",
+                        missingHomeCount);
+            }
+        } finally {
+            threadPool.shutdown();
+        }
+    }
+
+    /**
+     * Split the agents between the available threads
+     * @param threadPool Thread pool
+     * @param batch Agents
+     * @return Exposures in the same order as the agents
+     * @throws SQLException If one thread fail
+     */
+    private AgentExposure[] computeExposures(ThreadPool threadPool, List<Agent> batch) throws SQLException {
+        AgentExposure[] exposures = new AgentExposure[batch.size()];
+        int rangeSize = (int) Math.ceil(batch.size() / (double) Math.max(1, threadCount));
+        List<Future<Boolean>> tasks = new ArrayList<>();
+        for (int rangeStart = 0; rangeStart < batch.size(); rangeStart += rangeSize) {
+            final int start = rangeStart;
+            final int end = Math.min(batch.size(), rangeStart + rangeSize);
+            tasks.add(threadPool.submitBlocking(() -> {
+                for (int i = start; i < end; i++) {
+                    exposures[i] = computeExposure(batch.get(i));
+                }
+                return true;
+            }));
+        }
+        for (Future<Boolean> task : tasks) {
+            try {
+                task.get();
+            } catch (InterruptedException | ExecutionException ex) {
+                throw new SQLException(ex);
+            }
+        }
+        return exposures;
+    }
+
+    private Point toPoint(Coordinate coordinate) {
+        return coordinate == null ? geometryFactory.createPoint() : geometryFactory.createPoint(coordinate);
+    }
+
+    private static void setNullable(PreparedStatement ps, int index, Object value, int sqlType) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, sqlType);
+        } else {
+            ps.setObject(index, value, sqlType);
+        }
+    }
+
+    private void writeExposures(PreparedStatement agentStatement, PreparedStatement sequenceStatement,
+                                AgentExposure[] exposures) throws SQLException {
+        int agentBatch = 0;
+        int sequenceBatch = 0;
+        for (AgentExposure exposure : exposures) {
+            Agent agent = exposure.agent;
+            agentStatement.setString(1, agent.personId);
+            setNullable(agentStatement, 2, agent.age, Types.INTEGER);
+            agentStatement.setString(3, agent.sex);
+            setNullable(agentStatement, 4, agent.income, Types.DOUBLE);
+            setNullable(agentStatement, 5, agent.employed == null ? null : (agent.employed ? 1.0 : 0.0), Types.DOUBLE);
+            agentStatement.setString(6, exposure.home == null ? "" : exposure.home.facilityId);
+            agentStatement.setObject(7, toPoint(exposure.homeCoordinate));
+            agentStatement.setString(8, exposure.work == null ? "" : exposure.work.facilityId);
+            agentStatement.setObject(9, toPoint(exposure.work == null ? null : exposure.work.coordinate));
+            agentStatement.setDouble(10, exposure.laeq);
+            agentStatement.addBatch();
+            if (++agentBatch >= BATCH_MAX_SIZE) {
+                agentStatement.executeBatch();
+                agentBatch = 0;
+            }
+            for (int timeBinIndex = 0; timeBinIndex < exposure.sequence.length; timeBinIndex++) {
+                SequenceElement element = exposure.sequence[timeBinIndex];
+                sequenceStatement.setString(1, agent.personId);
+                sequenceStatement.setInt(2, timeBinIndex * timeBinSize);
+                sequenceStatement.setDouble(3, element.laeq);
+                sequenceStatement.setString(4, element.startActivityId);
+                sequenceStatement.setString(5, element.startActivityType);
+                sequenceStatement.setObject(6, toPoint(element.startCoordinate));
+                sequenceStatement.setString(7, element.mainActivityId);
+                sequenceStatement.setString(8, element.mainActivityType);
+                sequenceStatement.setObject(9, toPoint(element.mainCoordinate));
+                sequenceStatement.setString(10, element.endActivityId);
+                sequenceStatement.setString(11, element.endActivityType);
+                sequenceStatement.setObject(12, toPoint(element.endCoordinate));
+                sequenceStatement.addBatch();
+                if (++sequenceBatch >= BATCH_MAX_SIZE) {
+                    sequenceStatement.executeBatch();
+                    sequenceBatch = 0;
+                }
+            }
+        }
+        if (agentBatch > 0) {
+            agentStatement.executeBatch();
+        }
+        if (sequenceBatch > 0) {
+            sequenceStatement.executeBatch();
+        }
+    }
+
+    /**
+     * Activity of an agent located on a facility
+     */
+    public static class Activity {
+        public final String facilityId;
+        public final String type;
+        /** Start time in seconds since midnight */
+        public final double startTime;
+        /** End time in seconds since midnight, can be greater than one day */
+        public final double endTime;
+        /** Position of the activity, may be null */
+        public final Coordinate coordinate;
+
+        public Activity(String facilityId, String type, double startTime, double endTime, Coordinate coordinate) {
+            this.facilityId = facilityId;
+            this.type = type;
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.coordinate = coordinate;
+        }
+    }
+
+    /**
+     * Agent with its attributes and its daily plan
+     */
+    public static class Agent {
+        public final String personId;
+        public Integer age;
+        public String sex;
+        public Double income;
+        public Boolean employed;
+        public final List<Activity> activities = new ArrayList<>();
+
+        public Agent(String personId) {
+            this.personId = personId;
+        }
+
+        public void addActivity(Activity activity) {
+            activities.add(activity);
+        }
+    }
+
+    /**
+     * Activities and level of an agent during one time bin
+     */
+    public static class SequenceElement {
+        /** used only to define 'main' activity */
+        double weight = -1;
+        public String startActivityId = TRAVELLING_ACTIVITY;
+        public String startActivityType = TRAVELLING_ACTIVITY;
+        public Coordinate startCoordinate;
+        public String mainActivityId = TRAVELLING_ACTIVITY;
+        public String mainActivityType = TRAVELLING_ACTIVITY;
+        public Coordinate mainCoordinate;
+        public String endActivityId = TRAVELLING_ACTIVITY;
+        public String endActivityType = TRAVELLING_ACTIVITY;
+        public Coordinate endCoordinate;
+        public double laeq = NO_LEVEL;
+
+        void setStart(Activity activity, Coordinate coordinate) {
+            startActivityId = activity.facilityId;
+            startActivityType = activity.type;
+            startCoordinate = coordinate;
+        }
+
+        void setMain(Activity activity, Coordinate coordinate) {
+            mainActivityId = activity.facilityId;
+            mainActivityType = activity.type;
+            mainCoordinate = coordinate;
+        }
+
+        void setEnd(Activity activity, Coordinate coordinate) {
+            endActivityId = activity.facilityId;
+            endActivityType = activity.type;
+            endCoordinate = coordinate;
+        }
+    }
+
+    /**
+     * Computed exposure of an agent
+     */
+    public static class AgentExposure {
+        public final Agent agent;
+        public Activity home;
+        /** Position of the first located home activity, null if no home activity is located */
+        public Coordinate homeCoordinate;
+        public Activity work;
+        /** Daily equivalent level in dB(A) */
+        public double laeq = NO_LEVEL;
+        /** Activities and levels for each time bin */
+        public final SequenceElement[] sequence;
+
+        public AgentExposure(Agent agent, int timeBinCount) {
+            this.agent = agent;
+            this.sequence = new SequenceElement[timeBinCount];
+        }
+    }
+}
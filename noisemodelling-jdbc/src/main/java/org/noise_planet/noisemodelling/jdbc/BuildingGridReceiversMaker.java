@@ -0,0 +1,534 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.api.EmptyProgressVisitor;
+import org.h2gis.api.ProgressVisitor;
+import org.h2gis.utilities.GeometryTableUtilities;
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.SpatialResultSet;
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.dbtypes.DBTypes;
+import org.h2gis.utilities.dbtypes.DBUtils;
+import org.locationtech.jts.geom.*;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.locationtech.jts.operation.buffer.BufferOp;
+import org.locationtech.jts.operation.buffer.BufferParameters;
+import org.locationtech.jts.simplify.TopologyPreservingSimplifier;
+import org.noise_planet.noisemodelling.jdbc.input.DefaultTableLoader;
+import org.noise_planet.noisemodelling.pathfinder.PathFinder;
+import org.noise_planet.noisemodelling.pathfinder.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Create receivers around building facades, at a given distance from the walls and at a given height.
+ * The area is split into tiles, each tile is read from the database then processed in parallel with JTS.
+ * A building belongs to the tile that contains the center of its envelope, so receivers of buildings crossing tile
+ * borders are generated only once. Receivers are pushed into the database using batched inserts, in tile order.
+ */
+public class BuildingGridReceiversMaker {
+    private static final int BATCH_MAX_SIZE = 500;
+    /** Simplification tolerance of the facade lines */
+    private static final double SIMPLIFICATION_DISTANCE = 0.05;
+    private final Logger logger = LoggerFactory.getLogger(BuildingGridReceiversMaker.class);
+
+    private final String buildingsTableName;
+    private String sourcesTableName = "";
+    private double receiverHeight = 4.0;
+    private double wallDistance = 2.0;
+    private double receiverDistance = 10.0;
+    private double minimalSourceDistance = 1.0;
+    private double tileSize = 500;
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+    private Geometry fence = null;
+    private boolean addPopulation = true;
+
+    private GeometryFactory geometryFactory = new GeometryFactory();
+    private Envelope mainEnvelope = new Envelope();
+    private int gridDim = 0;
+
+    /**
+     * @param buildingsTableName Buildings table with a primary key, a polygon geometry and a HEIGHT field.
+     *                           An optional POP field is distributed over the receivers of the building.
+     */
+    public BuildingGridReceiversMaker(String buildingsTableName) {
+        this.buildingsTableName = buildingsTableName;
+    }
+
+    public String getBuildingsTableName() {
+        return buildingsTableName;
+    }
+
+    public String getSourcesTableName() {
+        return sourcesTableName;
+    }
+
+    /**
+     * @param sourcesTableName Receivers closer than {@link #getMinimalSourceDistance()} to these geometries are removed.
+     *                         Empty string to disable this filter.
+     */
+    public void setSourcesTableName(String sourcesTableName) {
+        this.sourcesTableName = sourcesTableName;
+    }
+
+    public double getReceiverHeight() {
+        return receiverHeight;
+    }
+
+    /**
+     * @param receiverHeight Height of receivers in meters. Buildings higher than this cut the facade lines of
+     *                       their neighbours
+     */
+    public void setReceiverHeight(double receiverHeight) {
+        this.receiverHeight = receiverHeight;
+    }
+
+    public double getWallDistance() {
+        return wallDistance;
+    }
+
+    /**
+     * @param wallDistance Distance of receivers from the walls in meters
+     */
+    public void setWallDistance(double wallDistance) {
+        this.wallDistance = wallDistance;
+    }
+
+    public double getReceiverDistance() {
+        return receiverDistance;
+    }
+
+    /**
+     * @param receiverDistance Maximum distance between two receivers along the facade in meters
+     */
+    public void setReceiverDistance(double receiverDistance) {
+        this.receiverDistance = receiverDistance;
+    }
+
+    public double getMinimalSourceDistance() {
+        return minimalSourceDistance;
+    }
+
+    /**
+     * @param minimalSourceDistance Receivers closer than this distance (meters) from a source are removed
+     */
+    public void setMinimalSourceDistance(double minimalSourceDistance) {
+        this.minimalSourceDistance = minimalSourceDistance;
+    }
+
+    public double getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * @param tileSize Approximate side length of the tiles in meters
+     */
+    public void setTileSize(double tileSize) {
+        this.tileSize = tileSize;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * @param threadCount Number of threads used to process the tiles
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    public Geometry getFence() {
+        return fence;
+    }
+
+    /**
+     * @param fence Create receivers only in this polygon, must use the same SRID than the buildings
+     */
+    public void setFence(Geometry fence) {
+        this.fence = fence;
+    }
+
+    public boolean isAddPopulation() {
+        return addPopulation;
+    }
+
+    /**
+     * @param addPopulation If true and the buildings table contains a POP field, the building population is divided
+     *                      between its receivers into a POP column
+     */
+    public void setAddPopulation(boolean addPopulation) {
+        this.addPopulation = addPopulation;
+    }
+
+    /**
+     * @return Side tile count (same on X and Y), available after {@link #run}
+     */
+    public int getGridDim() {
+        return gridDim;
+    }
+
+    /**
+     * @return Envelope covered by the tiles, available after {@link #run}
+     */
+    public Envelope getMainEnvelope() {
+        return mainEnvelope;
+    }
+
+    /**
+     * Generate the receivers table
+     * @param connection Active connection
+     * @param receiversTableName Output table (PK, THE_GEOM, BUILD_PK and optionally POP), replaced if it exists
+     * @param progressVisitor Progression information
+     * @return Number of created receivers
+     * @throws SQLException Error while reading or writing the tables
+     */
+    public long run(Connection connection, String receiversTableName, ProgressVisitor progressVisitor)
+            throws SQLException {
+        DBTypes dbType = DBUtils.getDBType(connection.unwrap(Connection.class));
+        TableLocation buildingsTable = TableLocation.parse(buildingsTableName, dbType);
+        int pkIndex = JDBCUtilities.getIntegerPrimaryKey(connection.unwrap(Connection.class), buildingsTable);
+        if (pkIndex < 1) {
+            throw new SQLException(new IllegalArgumentException("Buildings table must have a primary key"));
+        }
+        String pkField = JDBCUtilities.getColumnName(connection, buildingsTableName, pkIndex);
+        if (!JDBCUtilities.hasField(connection, buildingsTableName, "HEIGHT")) {
+            throw new SQLException(new IllegalArgumentException("Buildings table must have HEIGHT field"));
+        }
+        boolean hasPop = addPopulation && JDBCUtilities.hasField(connection, buildingsTableName, "POP");
+        String buildingGeomName = GeometryTableUtilities.getGeometryColumnNames(connection, buildingsTable).get(0);
+        int srid = GeometryTableUtilities.getSRID(connection, buildingsTable);
+        if (srid == 0 && !sourcesTableName.isEmpty()) {
+            srid = GeometryTableUtilities.getSRID(connection, TableLocation.parse(sourcesTableName, dbType));
+        }
+        geometryFactory = new GeometryFactory(new PrecisionModel(), srid);
+
+        // Compute tiles
+        mainEnvelope = new Envelope();
+        if (fence != null) {
+            mainEnvelope.expandToInclude(fence.getEnvelopeInternal());
+        } else if (JDBCUtilities.getRowCount(connection, buildingsTableName) > 0) {
+            mainEnvelope.expandToInclude(GeometryTableUtilities.getEnvelope(connection, buildingsTable,
+                    buildingGeomName).getEnvelopeInternal());
+        }
+        gridDim = mainEnvelope.isNull() ? 0 :
+                Math.max(1, (int) Math.ceil(Math.max(mainEnvelope.getWidth(), mainEnvelope.getHeight()) / tileSize));
+        PreparedGeometry preparedFence = fence == null ? null : PreparedGeometryFactory.prepare(fence);
+
+        TableLocation receiversTable = TableLocation.parse(receiversTableName, dbType);
+        try (Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + receiversTable);
+            st.execute("CREATE TABLE " + receiversTable + "(PK integer not null, THE_GEOM geometry, BUILD_PK integer" +
+                    (hasPop ? ", POP real" : "") + ", PRIMARY KEY(PK))");
+        }
+        if (gridDim == 0) {
+            return 0;
+        }
+        String buildingQuery = "SELECT " + TableLocation.quoteIdentifier(buildingGeomName, dbType) + ", " +
+                TableLocation.quoteIdentifier(pkField, dbType) + ", HEIGHT" + (hasPop ? ", POP" : "") + " FROM " +
+                buildingsTable + " WHERE " + TableLocation.quoteIdentifier(buildingGeomName, dbType) + " && ?::geometry";
+        String sourceQuery = "";
+        if (!sourcesTableName.isEmpty()) {
+            TableLocation sourcesTable = TableLocation.parse(sourcesTableName, dbType);
+            String sourceGeomName = GeometryTableUtilities.getGeometryColumnNames(connection, sourcesTable).get(0);
+            sourceQuery = "SELECT " + TableLocation.quoteIdentifier(sourceGeomName, dbType) + " FROM " + sourcesTable +
+                    " WHERE " + TableLocation.quoteIdentifier(sourceGeomName, dbType) + " && ?::geometry";
+        }
+        ProgressVisitor progress = progressVisitor == null ? new EmptyProgressVisitor() :
+                progressVisitor.subProcess(gridDim * gridDim);
+        long receiverCount = 0;
+        ThreadPool threadPool = new ThreadPool(threadCount, threadCount + 1, Long.MAX_VALUE, TimeUnit.SECONDS);
+        try (PreparedStatement buildingStatement = connection.prepareStatement(buildingQuery);
+             PreparedStatement sourceStatement = sourceQuery.isEmpty() ? null : connection.prepareStatement(sourceQuery);
+             PreparedStatement insertStatement = connection.prepareStatement("INSERT INTO " + receiversTable +
+                     (hasPop ? "(PK, THE_GEOM, BUILD_PK, POP) VALUES (?, ?, ?, ?)" :
+                             "(PK, THE_GEOM, BUILD_PK) VALUES (?, ?, ?)"))) {
+            Deque<Future<List<Receiver>>> pendingTiles = new ArrayDeque<>();
+            for (int i = 0; i < gridDim && !progress.isCanceled(); i++) {
+                for (int j = 0; j < gridDim && !progress.isCanceled(); j++) {
+                    TileData tileData = fetchTile(buildingStatement, sourceStatement, i, j, hasPop, preparedFence);
+                    if (tileData == null) {
+                        progress.endStep();
+                        continue;
+                    }
+                    pendingTiles.add(threadPool.submitBlocking(() -> computeReceivers(tileData, preparedFence)));
+                    // Write the tiles already computed, keeping the tile order
+                    while (!pendingTiles.isEmpty() && pendingTiles.peekFirst().isDone()) {
+                        receiverCount = writeReceivers(insertStatement, pendingTiles.pollFirst(), receiverCount, hasPop);
+                        progress.endStep();
+                    }
+                }
+            }
+            while (!pendingTiles.isEmpty()) {
+                receiverCount = writeReceivers(insertStatement, pendingTiles.pollFirst(), receiverCount, hasPop);
+                progress.endStep();
+            }
+        } finally {
+            threadPool.shutdown();
+        }
+        logger.info("{} receivers created on {} tiles", receiverCount, gridDim * gridDim);
+        return receiverCount;
+    }
+
+    /**
+     * @param x X coordinate
+     * @param y Y coordinate
+     * @return Tile index (i * gridDim + j) that owns this location
+     */
+    int getTileIndex(double x, double y) {
+        double cellWidth = mainEnvelope.getWidth() / gridDim;
+        double cellHeight = mainEnvelope.getHeight() / gridDim;
+        int i = cellWidth > 0 ? (int) Math.floor((x - mainEnvelope.getMinX()) / cellWidth) : 0;
+        int j = cellHeight > 0 ? (int) Math.floor((y - mainEnvelope.getMinY()) / cellHeight) : 0;
+        i = Math.max(0, Math.min(gridDim - 1, i));
+        j = Math.max(0, Math.min(gridDim - 1, j));
+        return i * gridDim + j;
+    }
+
+    /**
+     * Read the buildings owned by the tile and the neighbouring buildings and sources
+     * @return Tile data or null if there is no building in this tile
+     */
+    private TileData fetchTile(PreparedStatement buildingStatement, PreparedStatement sourceStatement, int i, int j,
+                               boolean hasPop, PreparedGeometry preparedFence) throws SQLException {
+        Envelope tileEnvelope = GridMapMaker.getCellEnv(mainEnvelope, i, j, mainEnvelope.getWidth() / gridDim,
+                mainEnvelope.getHeight() / gridDim);
+        int tileIndex = i * gridDim + j;
+        TileData tileData = new TileData();
+        Envelope contextEnvelope = new Envelope();
+        for (BuildingFacade building : fetchBuildings(buildingStatement, tileEnvelope, hasPop)) {
+            Envelope envelope = building.geometry.getEnvelopeInternal();
+            if (getTileIndex(envelope.centre().x, envelope.centre().y) == tileIndex &&
+                    (preparedFence == null || preparedFence.intersects(building.geometry))) {
+                tileData.buildings.add(building);
+                contextEnvelope.expandToInclude(envelope);
+            }
+        }
+        if (tileData.buildings.isEmpty()) {
+            return null;
+        }
+        tileData.buildings.sort(Comparator.comparingLong(b -> b.pk));
+        // Receivers are generated up to wallDistance from the owned buildings
+        contextEnvelope.expandBy(wallDistance + minimalSourceDistance);
+        tileData.neighbours = fetchBuildings(buildingStatement, contextEnvelope, false);
+        if (sourceStatement != null) {
+            sourceStatement.setObject(1, geometryFactory.toGeometry(contextEnvelope));
+            try (SpatialResultSet rs = sourceStatement.executeQuery().unwrap(SpatialResultSet.class)) {
+                while (rs.next()) {
+                    Geometry source = rs.getGeometry();
+                    if (source != null && !source.isEmpty()) {
+                        tileData.sources.add(source);
+                    }
+                }
+            }
+        }
+        return tileData;
+    }
+
+    private List<BuildingFacade> fetchBuildings(PreparedStatement buildingStatement, Envelope envelope,
+                                                boolean hasPop) throws SQLException {
+        List<BuildingFacade> buildings = new ArrayList<>();
+        buildingStatement.setObject(1, geometryFactory.toGeometry(envelope));
+        buildingStatement.setFetchSize(DefaultTableLoader.DEFAULT_FETCH_SIZE);
+        try (SpatialResultSet rs = buildingStatement.executeQuery().unwrap(SpatialResultSet.class)) {
+            while (rs.next()) {
+                Geometry geometry = rs.getGeometry();
+                if (geometry != null && !geometry.isEmpty()) {
+                    Double pop = null;
+                    if (hasPop) {
+                        pop = rs.getDouble(4);
+                        if (rs.wasNull()) {
+                            pop = null;
+                        }
+                    }
+                    buildings.add(new BuildingFacade(rs.getLong(2), geometry, rs.getDouble(3), pop));
+                }
+            }
+        }
+        return buildings;
+    }
+
+    /**
+     * Compute the receivers of the buildings owned by one tile. This method does not use the database.
+     * @param tileData Buildings and sources of the tile
+     * @param preparedFence Optional fence
+     * @return Receivers sorted by building
+     */
+    List<Receiver> computeReceivers(TileData tileData, PreparedGeometry preparedFence) {
+        STRtree neighbourIndex = new STRtree();
+        for (BuildingFacade neighbour : tileData.neighbours) {
+            neighbourIndex.insert(neighbour.geometry.getEnvelopeInternal(), neighbour);
+        }
+        STRtree sourceIndex = new STRtree();
+        for (Geometry source : tileData.sources) {
+            sourceIndex.insert(source.getEnvelopeInternal(), source);
+        }
+        BufferParameters bevelParameters = new BufferParameters();
+        bevelParameters.setJoinStyle(BufferParameters.JOIN_BEVEL);
+        List<Receiver> receivers = new ArrayList<>();
+        List<Coordinate> points = new ArrayList<>();
+        for (BuildingFacade building : tileData.buildings) {
+            Geometry facade = TopologyPreservingSimplifier.simplify(
+                    toMultiLine(BufferOp.bufferOp(building.geometry, wallDistance, bevelParameters)), SIMPLIFICATION_DISTANCE);
+            // Remove the parts of the facade line located near buildings higher than the receivers
+            List<Geometry> obstacles = new ArrayList<>();
+            for (Object item : neighbourIndex.query(facade.getEnvelopeInternal())) {
+                BuildingFacade neighbour = (BuildingFacade) item;
+                if (neighbour.pk != building.pk && neighbour.height > receiverHeight &&
+                        neighbour.geometry.intersects(facade)) {
+                    obstacles.add(neighbour.geometry);
+                }
+            }
+            if (!obstacles.isEmpty()) {
+                facade = facade.difference(geometryFactory.buildGeometry(obstacles).buffer(wallDistance));
+            }
+            points.clear();
+            for (int idGeom = 0; idGeom < facade.getNumGeometries(); idGeom++) {
+                Geometry line = facade.getGeometryN(idGeom);
+                if (line instanceof LineString && !line.isEmpty()) {
+                    PathFinder.splitLineStringIntoPoints((LineString) line, receiverDistance, points);
+                }
+            }
+            int firstReceiver = receivers.size();
+            for (Coordinate pt : points) {
+                if (Double.isNaN(pt.x) || Double.isNaN(pt.y)) {
+                    continue;
+                }
+                Point receiver = geometryFactory.createPoint(new Coordinate(pt.x, pt.y, receiverHeight));
+                if (isInsideBuilding(neighbourIndex, receiver) || isNearSource(sourceIndex, receiver) ||
+                        (preparedFence != null && !preparedFence.intersects(receiver))) {
+                    continue;
+                }
+                receivers.add(new Receiver(receiver, building.pk));
+            }
+            if (building.pop != null) {
+                int buildingReceiverCount = receivers.size() - firstReceiver;
+                for (int idReceiver = firstReceiver; idReceiver < receivers.size(); idReceiver++) {
+                    receivers.get(idReceiver).pop = building.pop / buildingReceiverCount;
+                }
+            }
+        }
+        return receivers;
+    }
+
+    private static boolean isInsideBuilding(STRtree buildingIndex, Point receiver) {
+        for (Object item : buildingIndex.query(receiver.getEnvelopeInternal())) {
+            if (((BuildingFacade) item).geometry.contains(receiver)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isNearSource(STRtree sourceIndex, Point receiver) {
+        Envelope envelope = new Envelope(receiver.getCoordinate());
+        envelope.expandBy(minimalSourceDistance);
+        for (Object item : sourceIndex.query(envelope)) {
+            if (((Geometry) item).distance(receiver) < minimalSourceDistance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Convert polygon rings into a MultiLineString
+     */
+    private MultiLineString toMultiLine(Geometry geometry) {
+        List<LineString> lines = new ArrayList<>();
+        for (int idGeom = 0; idGeom < geometry.getNumGeometries(); idGeom++) {
+            Geometry part = geometry.getGeometryN(idGeom);
+            if (part instanceof Polygon) {
+                Polygon polygon = (Polygon) part;
+                lines.add(geometryFactory.createLineString(polygon.getExteriorRing().getCoordinateSequence()));
+                for (int idHole = 0; idHole < polygon.getNumInteriorRing(); idHole++) {
+                    lines.add(geometryFactory.createLineString(polygon.getInteriorRingN(idHole).getCoordinateSequence()));
+                }
+            }
+        }
+        return geometryFactory.createMultiLineString(lines.toArray(new LineString[0]));
+    }
+
+    private long writeReceivers(PreparedStatement insertStatement, Future<List<Receiver>> tile, long receiverCount,
+                                boolean hasPop) throws SQLException {
+        List<Receiver> receivers;
+        try {
+            receivers = tile.get();
+        } catch (InterruptedException | ExecutionException ex) {
+            throw new SQLException(ex);
+        }
+        int batchSize = 0;
+        for (Receiver receiver : receivers) {
+            insertStatement.setLong(1, ++receiverCount);
+            insertStatement.setObject(2, receiver.geometry);
+            insertStatement.setLong(3, receiver.buildingPk);
+            if (hasPop) {
+                if (receiver.pop == null) {
+                    insertStatement.setNull(4, Types.REAL);
+                } else {
+                    insertStatement.setDouble(4, receiver.pop);
+                }
+            }
+            insertStatement.addBatch();
+            batchSize++;
+            if (batchSize >= BATCH_MAX_SIZE) {
+                insertStatement.executeBatch();
+                insertStatement.clearBatch();
+                batchSize = 0;
+            }
+        }
+        if (batchSize > 0) {
+            insertStatement.executeBatch();
+        }
+        return receiverCount;
+    }
+
+    static class BuildingFacade {
+        final long pk;
+        final Geometry geometry;
+        final double height;
+        final Double pop;
+
+        BuildingFacade(long pk, Geometry geometry, double height, Double pop) {
+            this.pk = pk;
+            this.geometry = geometry;
+            this.height = height;
+            this.pop = pop;
+        }
+    }
+
+    static class TileData {
+        /** Buildings owned by this tile */
+        final List<BuildingFacade> buildings = new ArrayList<>();
+        /** All buildings near the owned buildings (including them) */
+        List<BuildingFacade> neighbours = new ArrayList<>();
+        final List<Geometry> sources = new ArrayList<>();
+    }
+
+    static class Receiver {
+        final Point geometry;
+        final long buildingPk;
+        Double pop;
+
+        Receiver(Point geometry, long buildingPk) {
+            this.geometry = geometry;
+            this.buildingPk = buildingPk;
+        }
+    }
+}
@@ -34,8 +34,12 @@ import java.io.IOException;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.h2gis.utilities.GeometryTableUtilities.getGeometryColumnNames;
@@ -59,6 +63,8 @@ public class DelaunayReceiversMaker extends GridMapMaker {
     private double epsilon = 1e-6;
     private double geometrySimplificationDistance = 1;
     private boolean isoSurfaceInBuildings = false;
+    private double refinementLevelRange = 3;
+    private double minimumRefinementArea = 10;
 
     /**
      * Create constructor DelaunayReceiversMaker
@@ -551,6 +557,281 @@ public class DelaunayReceiversMaker extends GridMapMaker {
                 triangles, cellI, cellJ, gridDim);
     }
 
+    /**
+     * Adaptive refinement of a computed noise map. The triangles where the level range between the three vertices is
+     * greater than {@link #getRefinementLevelRange()} are split at the middle of their edges, the neighbor triangles
+     * are split too in order to keep a conforming mesh for the iso surfaces. Only the new vertices have to be
+     * propagated then the refinement can be repeated with the merged levels.
+     * The levels table must contain one row per receiver (and period), so the sources must be merged.
+     * @param connection Active connection
+     * @param receiverTableName Receivers table, the new receivers are appended
+     * @param trianglesTableName Triangles table, the refined triangles are replaced by the new triangles
+     * @param levelTableName Computed levels table, with IDRECEIVER field and optional PERIOD field
+     * @param levelField Field of the level in the levels table (ex: LAEQ)
+     * @param newReceiversTableName Table created with only the new receivers, to be used as receivers table of the
+     *                              next propagation
+     * @return Number of new receivers
+     * @throws SQLException
+     */
+    public int refineReceivers(Connection connection, String receiverTableName, String trianglesTableName,
+                               String levelTableName, String levelField, String newReceiversTableName)
+            throws SQLException {
+        DBTypes dbType = DBUtils.getDBType(connection.unwrap(Connection.class));
+        TableLocation receiverTable = TableLocation.parse(receiverTableName, dbType);
+        TableLocation trianglesTable = TableLocation.parse(trianglesTableName, dbType);
+        TableLocation levelTable = TableLocation.parse(levelTableName, dbType);
+        TableLocation newReceiversTable = TableLocation.parse(newReceiversTableName, dbType);
+        // Fetch receivers position
+        Map<Integer, Coordinate> receivers = new HashMap<>();
+        int srid = 0;
+        int lastReceiverPk = 0;
+        try (Statement st = connection.createStatement();
+             SpatialResultSet rs = st.executeQuery("SELECT PK, THE_GEOM FROM " + receiverTable)
+                     .unwrap(SpatialResultSet.class)) {
+            while (rs.next()) {
+                Geometry geometry = rs.getGeometry(2);
+                if (geometry != null) {
+                    int pk = rs.getInt(1);
+                    srid = geometry.getSRID();
+                    receivers.put(pk, geometry.getCoordinate());
+                    lastReceiverPk = Math.max(lastReceiverPk, pk);
+                }
+            }
+        }
+        // Fetch levels of each receiver, for each period
+        Map<String, Map<Integer, Double>> levelsByPeriod = new HashMap<>();
+        boolean hasPeriod = JDBCUtilities.hasField(connection, levelTableName, "PERIOD");
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT IDRECEIVER, " + TableLocation.quoteIdentifier(levelField, dbType) +
+                     (hasPeriod ? ", PERIOD" : "") + " FROM " + levelTable)) {
+            while (rs.next()) {
+                String period = hasPeriod ? rs.getString(3) : "";
+                levelsByPeriod.computeIfAbsent(period, k -> new HashMap<>()).put(rs.getInt(1), rs.getDouble(2));
+            }
+        }
+        // Fetch triangles
+        List<int[]> triangles = new ArrayList<>();
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT PK, PK_1, PK_2, PK_3, CELL_ID FROM " + trianglesTable)) {
+            while (rs.next()) {
+                triangles.add(new int[]{rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getInt(4), rs.getInt(5)});
+            }
+        }
+        // Mark the edges of the triangles with a level range greater than the threshold
+        Set<Long> markedEdges = new HashSet<>();
+        for (int[] triangle : triangles) {
+            Coordinate a = receivers.get(triangle[1]);
+            Coordinate b = receivers.get(triangle[2]);
+            Coordinate c = receivers.get(triangle[3]);
+            if (a == null || b == null || c == null ||
+                    org.locationtech.jts.geom.Triangle.area(a, b, c) < minimumRefinementArea * 4 ||
+                    !exceedLevelRange(triangle, levelsByPeriod)) {
+                continue;
+            }
+            for (int edge = 0; edge < 3; edge++) {
+                markedEdges.add(edgeKey(triangle[1 + edge], triangle[1 + (edge + 1) % 3]));
+            }
+        }
+        if (markedEdges.isEmpty()) {
+            return 0;
+        }
+        // Red-green closure, a triangle with two split edges is split in four triangles
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int[] triangle : triangles) {
+                int markedCount = 0;
+                for (int edge = 0; edge < 3; edge++) {
+                    if (markedEdges.contains(edgeKey(triangle[1 + edge], triangle[1 + (edge + 1) % 3]))) {
+                        markedCount++;
+                    }
+                }
+                if (markedCount == 2) {
+                    for (int edge = 0; edge < 3; edge++) {
+                        markedEdges.add(edgeKey(triangle[1 + edge], triangle[1 + (edge + 1) % 3]));
+                    }
+                    changed = true;
+                }
+            }
+        }
+        // Create the receivers at the middle of the split edges
+        GeometryFactory factory = new GeometryFactory(new PrecisionModel(), srid);
+        Map<Long, Integer> edgeMiddles = new HashMap<>();
+        List<Coordinate> newReceivers = new ArrayList<>();
+        for (int[] triangle : triangles) {
+            for (int edge = 0; edge < 3; edge++) {
+                int p0 = triangle[1 + edge];
+                int p1 = triangle[1 + (edge + 1) % 3];
+                long key = edgeKey(p0, p1);
+                if (markedEdges.contains(key) && !edgeMiddles.containsKey(key)) {
+                    Coordinate c0 = receivers.get(p0);
+                    Coordinate c1 = receivers.get(p1);
+                    edgeMiddles.put(key, lastReceiverPk + newReceivers.size() + 1);
+                    newReceivers.add(new Coordinate((c0.x + c1.x) / 2, (c0.y + c1.y) / 2, (c0.z + c1.z) / 2));
+                }
+            }
+        }
+        try (Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + newReceiversTable);
+            st.execute("CREATE TABLE " + newReceiversTable + "(pk integer NOT NULL, the_geom geometry not null, " +
+                    "PRIMARY KEY (PK))");
+        }
+        for (TableLocation table : new TableLocation[]{receiverTable, newReceiversTable}) {
+            try (PreparedStatement ps = connection.prepareStatement("INSERT INTO " + table +
+                    "(PK, THE_GEOM) VALUES (?, ?)")) {
+                int batchSize = 0;
+                for (int i = 0; i < newReceivers.size(); i++) {
+                    ps.setInt(1, lastReceiverPk + i + 1);
+                    ps.setObject(2, factory.createPoint(newReceivers.get(i)));
+                    ps.addBatch();
+                    batchSize++;
+                    if (batchSize >= BATCH_MAX_SIZE) {
+                        ps.executeBatch();
+                        ps.clearBatch();
+                        batchSize = 0;
+                    }
+                }
+                if (batchSize > 0) {
+                    ps.executeBatch();
+                }
+            }
+        }
+        // Replace the split triangles
+        try (PreparedStatement deleteStatement = connection.prepareStatement("DELETE FROM " + trianglesTable +
+                " WHERE PK = ?");
+             PreparedStatement insertStatement = connection.prepareStatement("INSERT INTO " + trianglesTable +
+                     "(the_geom, PK_1, PK_2, PK_3, CELL_ID) VALUES (?, ?, ?, ?, ?)")) {
+            int batchSize = 0;
+            for (int[] triangle : triangles) {
+                List<int[]> children = splitTriangle(triangle, edgeMiddles);
+                if (children.isEmpty()) {
+                    continue;
+                }
+                deleteStatement.setInt(1, triangle[0]);
+                deleteStatement.addBatch();
+                for (int[] child : children) {
+                    Coordinate[] ring = new Coordinate[4];
+                    for (int vertex = 0; vertex < 3; vertex++) {
+                        ring[vertex] = child[vertex] > lastReceiverPk ? newReceivers.get(child[vertex] -
+                                lastReceiverPk - 1) : receivers.get(child[vertex]);
+                        insertStatement.setInt(2 + vertex, child[vertex]);
+                    }
+                    ring[3] = ring[0];
+                    insertStatement.setObject(1, factory.createPolygon(ring));
+                    insertStatement.setInt(5, triangle[4]);
+                    insertStatement.addBatch();
+                }
+                batchSize++;
+                if (batchSize >= BATCH_MAX_SIZE) {
+                    deleteStatement.executeBatch();
+                    insertStatement.executeBatch();
+                    batchSize = 0;
+                }
+            }
+            if (batchSize > 0) {
+                deleteStatement.executeBatch();
+                insertStatement.executeBatch();
+            }
+        }
+        nbreceivers += newReceivers.size();
+        return newReceivers.size();
+    }
+
+    /**
+     * @param triangle Triangle PK, PK_1, PK_2, PK_3
+     * @param levelsByPeriod Levels of receivers for each period
+     * @return True if the level range of the triangle vertices is greater than the threshold for one of the periods
+     */
+    private boolean exceedLevelRange(int[] triangle, Map<String, Map<Integer, Double>> levelsByPeriod) {
+        for (Map<Integer, Double> levels : levelsByPeriod.values()) {
+            double minimum = Double.MAX_VALUE;
+            double maximum = -Double.MAX_VALUE;
+            for (int vertex = 1; vertex <= 3; vertex++) {
+                Double level = levels.get(triangle[vertex]);
+                if (level == null) {
+                    // not computed receiver
+                    return false;
+                }
+                minimum = Math.min(minimum, level);
+                maximum = Math.max(maximum, level);
+            }
+            if (maximum - minimum > refinementLevelRange) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param triangle Triangle PK, PK_1, PK_2, PK_3
+     * @param edgeMiddles Receiver PK of the middle of the split edges
+     * @return Vertices of the new triangles, same orientation as the triangle. Empty if the triangle is not split
+     */
+    private static List<int[]> splitTriangle(int[] triangle, Map<Long, Integer> edgeMiddles) {
+        List<int[]> children = new ArrayList<>(4);
+        int[] middles = new int[3];
+        int splitEdge = -1;
+        int splitCount = 0;
+        for (int edge = 0; edge < 3; edge++) {
+            Integer middle = edgeMiddles.get(edgeKey(triangle[1 + edge], triangle[1 + (edge + 1) % 3]));
+            middles[edge] = middle == null ? -1 : middle;
+            if (middle != null) {
+                splitEdge = edge;
+                splitCount++;
+            }
+        }
+        int v1 = triangle[1];
+        int v2 = triangle[2];
+        int v3 = triangle[3];
+        if (splitCount == 3) {
+            children.add(new int[]{v1, middles[0], middles[2]});
+            children.add(new int[]{middles[0], v2, middles[1]});
+            children.add(new int[]{middles[2], middles[1], v3});
+            children.add(new int[]{middles[0], middles[1], middles[2]});
+        } else if (splitCount == 1) {
+            // bisect from the vertex opposite to the split edge
+            int a = triangle[1 + splitEdge];
+            int b = triangle[1 + (splitEdge + 1) % 3];
+            int c = triangle[1 + (splitEdge + 2) % 3];
+            children.add(new int[]{a, middles[splitEdge], c});
+            children.add(new int[]{middles[splitEdge], b, c});
+        }
+        return children;
+    }
+
+    private static long edgeKey(int pk1, int pk2) {
+        return ((long) Math.min(pk1, pk2) << 32) | (Math.max(pk1, pk2) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return Triangles with a level range greater than this value in dB are split by the refinement
+     */
+    public double getRefinementLevelRange() {
+        return refinementLevelRange;
+    }
+
+    /**
+     * @param refinementLevelRange Triangles with a level range greater than this value in dB are split by the
+     *                             refinement
+     */
+    public void setRefinementLevelRange(double refinementLevelRange) {
+        this.refinementLevelRange = refinementLevelRange;
+    }
+
+    /**
+     * @return Minimum area in m² of the triangles created by the refinement
+     */
+    public double getMinimumRefinementArea() {
+        return minimumRefinementArea;
+    }
+
+    /**
+     * @param minimumRefinementArea Minimum area in m² of the triangles created by the refinement
+     */
+    public void setMinimumRefinementArea(double minimumRefinementArea) {
+        this.minimumRefinementArea = minimumRefinementArea;
+    }
+
     public double getRoadWidth() {
         return roadWidth;
     }
@@ -43,6 +43,7 @@ public abstract class GridMapMaker {
     protected boolean sourceHasAbsoluteZCoordinates = false;
     protected double maximumPropagationDistance = 750;
     protected double maximumReflectionDistance = 100;
+    protected double sourceClusteringAngle = 0;
     protected double gs = 0;
     // Soil areas are split by the provided size in order to reduce the propagation time
     protected double groundSurfaceSplitSideLength = 200;
@@ -60,6 +61,14 @@ public abstract class GridMapMaker {
      *  Side computation cell count (same on X and Y)
      */
     protected int gridDim = 0;
+    /**
+     * Maximum estimated cost of a computation cell, 0 to compute each populated cell of the grid
+     */
+    protected double maximumCellCost = 0;
+    /**
+     * Number of times the cells of the automatic grid are split in four for the adaptive partition
+     */
+    protected int maximumCellSplitDepth = 3;
     protected Envelope mainEnvelope = new Envelope();
 
     public GridMapMaker(String buildingsTableName, String sourcesTableName) {
@@ -89,6 +98,15 @@ public abstract class GridMapMaker {
      * @return Envelope of the cell
      */
     public Envelope getCellEnv(CellIndex cellIndex) {
+        if(cellIndex.getSize() > 1) {
+            // Cell of the adaptive partition covering several grid cells
+            double cellWidth = getCellWidth();
+            double cellHeight = getCellHeight();
+            return new Envelope(mainEnvelope.getMinX() + cellIndex.getLatitudeIndex() * cellWidth,
+                    mainEnvelope.getMinX() + (cellIndex.getLatitudeIndex() + cellIndex.getSize()) * cellWidth,
+                    mainEnvelope.getMinY() + cellIndex.getLongitudeIndex() * cellHeight,
+                    mainEnvelope.getMinY() + (cellIndex.getLongitudeIndex() + cellIndex.getSize()) * cellHeight);
+        }
         return  getCellEnv(mainEnvelope, cellIndex.getLatitudeIndex(),
                 cellIndex.getLongitudeIndex(), getCellWidth(), getCellHeight());
     }
@@ -354,6 +372,22 @@ public abstract class GridMapMaker {
         this.maximumReflectionDistance = maximumReflectionDistance;
     }
 
+    /**
+     * @return Far field line sub-sources are merged while the cluster length seen from the receiver is lower than
+     * this angle (radians). 0 (default) disables the clustering.
+     */
+    public double getSourceClusteringAngle() {
+        return sourceClusteringAngle;
+    }
+
+    /**
+     * @param sourceClusteringAngle Far field line sub-sources are merged while the cluster length seen from the
+     *                              receiver is lower than this angle (radians). 0 (default) disables the clustering.
+     */
+    public void setSourceClusteringAngle(double sourceClusteringAngle) {
+        this.sourceClusteringAngle = sourceClusteringAngle;
+    }
+
     /**
      * @return Sound reflection order. 0 order mean 0 reflection depth.
      * 2 means propagation of rays up to 2 collision with walls.
@@ -434,10 +468,50 @@ public abstract class GridMapMaker {
             while(maximumPropagationDistance / (greatestSideLength / Math.pow(2, subdivisionLevel)) < MINIMAL_BUFFER_RATIO) {
                 subdivisionLevel++;
             }
+            if(maximumCellCost > 0) {
+                // The adaptive partition merge the cells of this finer grid
+                subdivisionLevel += maximumCellSplitDepth;
+            }
             gridDim = (int) Math.pow(2, subdivisionLevel);
         }
     }
 
+    /**
+     * @return Maximum estimated cost of a computation cell, 0 if each populated cell of the grid is computed
+     */
+    public double getMaximumCellCost() {
+        return maximumCellCost;
+    }
+
+    /**
+     * Enable the adaptive partition of the computation area. The grid cells are grouped into square cells that are
+     * split in four while the estimated cost of the cell is greater than this value. The estimated cost is the number
+     * of receivers of the cell multiplied by the buildings and the sources found at the maximum propagation distance
+     * of the cell (see {@link org.noise_planet.noisemodelling.jdbc.utils.AdaptiveCellPartition}).
+     * The grid is refined by {@link #setMaximumCellSplitDepth(int)} levels when the grid dimension is computed
+     * automatically.
+     * @param maximumCellCost Maximum estimated cost of a computation cell, 0 to compute each populated cell of the
+     *                        grid
+     */
+    public void setMaximumCellCost(double maximumCellCost) {
+        this.maximumCellCost = maximumCellCost;
+    }
+
+    /**
+     * @return Number of times the cells of the automatic grid are split in four for the adaptive partition
+     */
+    public int getMaximumCellSplitDepth() {
+        return maximumCellSplitDepth;
+    }
+
+    /**
+     * @param maximumCellSplitDepth Number of times the cells of the automatic grid are split in four for the adaptive
+     *                              partition
+     */
+    public void setMaximumCellSplitDepth(int maximumCellSplitDepth) {
+        this.maximumCellSplitDepth = maximumCellSplitDepth;
+    }
+
     /**
      * @return True if diffraction of horizontal edges is computed.
      */
@@ -21,21 +21,37 @@ import org.locationtech.jts.index.strtree.STRtree;
 import org.locationtech.jts.io.WKTWriter;
 import org.noise_planet.noisemodelling.jdbc.input.DefaultTableLoader;
 import org.noise_planet.noisemodelling.jdbc.input.SceneDatabaseInputSettings;
+import org.noise_planet.noisemodelling.jdbc.input.SceneSnapshot;
 import org.noise_planet.noisemodelling.jdbc.input.SceneWithEmission;
 import org.noise_planet.noisemodelling.jdbc.output.DefaultCutPlaneProcessing;
+import org.noise_planet.noisemodelling.jdbc.output.NoiseMapWriter;
+import org.noise_planet.noisemodelling.jdbc.utils.AdaptiveCellPartition;
 import org.noise_planet.noisemodelling.jdbc.utils.CellIndex;
+import org.noise_planet.noisemodelling.jdbc.utils.CellJobTable;
 import org.noise_planet.noisemodelling.pathfinder.CutPlaneVisitorFactory;
 import org.noise_planet.noisemodelling.pathfinder.PathFinder;
+import org.noise_planet.noisemodelling.pathfinder.ThreadPool;
+import org.noise_planet.noisemodelling.pathfinder.utils.collections.CompactLongSet;
+import org.noise_planet.noisemodelling.pathfinder.utils.collections.LongArrayList;
 import org.noise_planet.noisemodelling.pathfinder.utils.profiler.ProfilerThread;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.beans.PropertyChangeListener;
+import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 /**
  * Compute noise propagation at specified receiver points.
@@ -52,7 +68,17 @@ public class NoiseMapByReceiverMaker extends GridMapMaker {
     private IComputeRaysOutFactory computeRaysOutFactory = new DefaultCutPlaneProcessing(noiseMapDatabaseParameters, exitWhenDone, aborted);
     private Logger logger = LoggerFactory.getLogger(NoiseMapByReceiverMaker.class);
     private int threadCount = 0;
+    /** Number of receivers that justify a thread when several cells are computed at the same time */
+    private static final int RECEIVERS_PER_THREAD = 100;
+    /** Estimated memory of a coordinate (bytes) */
+    private static final long COORDINATE_MEMORY = 48;
+    /** Maximum number of cells computed at the same time */
+    private int maximumConcurrentCells = 1;
+    /** Memory budget of the cells computed at the same time (bytes), 0 for half of the maximum heap size */
+    private long concurrentCellsMemoryBudget = 0;
     private ProfilerThread profilerThread;
+    /** If set, the scene of each cell is written in this folder before the computation */
+    private File sceneSnapshotDirectory = null;
 
     SceneDatabaseInputSettings sceneDatabaseInputSettings = new SceneDatabaseInputSettings();
 
@@ -156,6 +182,23 @@ public class NoiseMapByReceiverMaker extends GridMapMaker {
         this.profilerThread = profilerThread;
     }
 
+    /**
+     * @return Folder where the scene of each cell is written, null if disabled
+     */
+    public File getSceneSnapshotDirectory() {
+        return sceneSnapshotDirectory;
+    }
+
+    /**
+     * Write the scene of each cell in a snapshot file named cell_LATITUDE_LONGITUDE.nmscene before its computation.
+     * The snapshot is taken after the conversion of the receivers and sources heights, it can be reloaded with
+     * {@link SceneSnapshot#read(java.nio.file.Path)} and computed by a {@link PathFinder} without database.
+     * @param sceneSnapshotDirectory Destination folder, null to disable
+     */
+    public void setSceneSnapshotDirectory(File sceneSnapshotDirectory) {
+        this.sceneSnapshotDirectory = sceneSnapshotDirectory;
+    }
+
     public void setComputeRaysOutFactory(IComputeRaysOutFactory computeRaysOutFactory) {
         this.computeRaysOutFactory = computeRaysOutFactory;
     }
@@ -183,6 +226,39 @@ public class NoiseMapByReceiverMaker extends GridMapMaker {
         this.threadCount = threadCount;
     }
 
+    /**
+     * @return Maximum number of cells computed at the same time
+     */
+    public int getMaximumConcurrentCells() {
+        return maximumConcurrentCells;
+    }
+
+    /**
+     * Compute several cells at the same time. The thread count is then shared by the cells, a cell with few receivers
+     * use few threads and a dense cell can use all the threads.
+     * @param maximumConcurrentCells Maximum number of cells computed at the same time, 1 to compute the cells one by
+     *                               one
+     */
+    public void setMaximumConcurrentCells(int maximumConcurrentCells) {
+        this.maximumConcurrentCells = maximumConcurrentCells;
+    }
+
+    /**
+     * @return Memory budget of the cells computed at the same time (bytes), 0 for half of the maximum heap size
+     */
+    public long getConcurrentCellsMemoryBudget() {
+        return concurrentCellsMemoryBudget;
+    }
+
+    /**
+     * A cell is not loaded while the estimated memory of the cells being computed exceeds this budget
+     * @param concurrentCellsMemoryBudget Memory budget of the cells computed at the same time (bytes), 0 for half of
+     *                                    the maximum heap size
+     */
+    public void setConcurrentCellsMemoryBudget(long concurrentCellsMemoryBudget) {
+        this.concurrentCellsMemoryBudget = concurrentCellsMemoryBudget;
+    }
+
     /**
      * Initialisation of data structures needed for sound propagation.
      * @param connection JDBC Connection
@@ -224,7 +300,7 @@ public class NoiseMapByReceiverMaker extends GridMapMaker {
     /**
      * Fetch all receivers and compute cells that contains receivers
      * @param connection
-     * @return Cell index with number of receivers
+     * @return Cell index with number of receivers, from the largest to the smallest cell, this is the computation order
      * @throws SQLException
      */
     public Map<CellIndex, Integer> searchPopulatedCells(Connection connection) throws SQLException {
@@ -238,6 +314,9 @@ public class NoiseMapByReceiverMaker extends GridMapMaker {
             throw new SQLException("The table "+receiverTableName+" does not contain a Geometry field, then the extent " +
                     "cannot be computed");
         }
+        if(maximumCellCost > 0) {
+            return searchAdaptiveCells(connection);
+        }
         logger.info("Collect all receivers in order to localize populated cells");
         geometryField = geometryFields.get(0);
         ResultSet rs = connection.createStatement().executeQuery("SELECT " + geometryField + " FROM " + receiverTableName);
@@ -265,7 +344,73 @@ public class NoiseMapByReceiverMaker extends GridMapMaker {
                 }
             }
         }
-        return cellIndices;
+        // The cells with the most receivers are computed first
+        List<CellIndex> cells = new ArrayList<>(cellIndices.keySet());
+        cells.sort(Comparator.comparing((CellIndex cellIndex) -> cellIndices.get(cellIndex)).reversed()
+                .thenComparing(Comparator.naturalOrder()));
+        Map<CellIndex, Integer> orderedCells = new LinkedHashMap<>();
+        for (CellIndex cellIndex : cells) {
+            orderedCells.put(cellIndex, cellIndices.get(cellIndex));
+        }
+        return orderedCells;
+    }
+
+    /**
+     * Count the receivers, buildings and sources on the grid then split the area into cells of balanced cost
+     * @param connection Active connection
+     * @return Cell index with number of receivers, from the greatest to the lowest estimated cost
+     * @throws SQLException
+     */
+    private Map<CellIndex, Integer> searchAdaptiveCells(Connection connection) throws SQLException {
+        logger.info("Collect all receivers, buildings and sources in order to split the computation area");
+        AdaptiveCellPartition partition = new AdaptiveCellPartition(mainEnvelope, gridDim,
+                maximumPropagationDistance);
+        forEachGeometry(connection, receiverTableName, geometry -> partition.addReceiver(geometry.getCoordinate()));
+        if(!buildingTableParameters.buildingsTableName.isEmpty()) {
+            forEachGeometry(connection, buildingTableParameters.buildingsTableName,
+                    geometry -> partition.addBuilding(geometry.getEnvelopeInternal()));
+        }
+        if(!sourcesTableName.isEmpty()) {
+            forEachGeometry(connection, sourcesTableName, geometry -> {
+                for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                    partition.addSource(geometry.getGeometryN(i).getCoordinates());
+                }
+            });
+        }
+        int maximumCellSize = 1 << maximumCellSplitDepth;
+        Map<CellIndex, Integer> cells = partition.split(maximumCellCost, maximumCellSize);
+        if(!cells.isEmpty()) {
+            CellIndex largestCell = cells.keySet().iterator().next();
+            logger.info("Computation area split into {} cells, the estimated cost of the largest cell is {}",
+                    cells.size(), String.format(Locale.ROOT, "%.0f", partition.getCost(largestCell)));
+        }
+        return cells;
+    }
+
+    /**
+     * @param connection Active connection
+     * @param tableName Table with a geometry column
+     * @param visitor Called with each non-empty geometry of the first geometry column
+     * @throws SQLException
+     */
+    private static void forEachGeometry(Connection connection, String tableName, Consumer<Geometry> visitor)
+            throws SQLException {
+        DBTypes dbType = DBUtils.getDBType(connection.unwrap(Connection.class));
+        TableLocation table = TableLocation.parse(tableName, dbType);
+        List<String> geometryFields = GeometryTableUtilities.getGeometryColumnNames(connection, table);
+        if(geometryFields.isEmpty()) {
+            return;
+        }
+        try (Statement st = connection.createStatement();
+             SpatialResultSet rs = st.executeQuery("SELECT " + TableLocation.quoteIdentifier(geometryFields.get(0),
+                     dbType) + " FROM " + table).unwrap(SpatialResultSet.class)) {
+            while (rs.next()) {
+                Geometry geometry = rs.getGeometry();
+                if(geometry != null && !geometry.isEmpty()) {
+                    visitor.accept(geometry);
+                }
+            }
+        }
     }
 
     /**
@@ -280,7 +425,19 @@ public class NoiseMapByReceiverMaker extends GridMapMaker {
     public CutPlaneVisitorFactory evaluateCell(Connection connection, CellIndex cellIndex,
                                         ProgressVisitor progression, Set<Long> skipReceivers) throws SQLException, IOException {
         SceneWithEmission scene = prepareCell(connection, cellIndex, skipReceivers);
+        return computeCell(scene, cellIndex, progression, threadCount);
+    }
 
+    /**
+     * Launch sound propagation on a loaded cell
+     * @param scene Cell input data
+     * @param cellIndex Computation area index
+     * @param progression Progression info
+     * @param cellThreadCount Number of threads used for this cell, 0 to use all the processors
+     * @return Output data instance for this cell
+     */
+    private CutPlaneVisitorFactory computeCell(SceneWithEmission scene, CellIndex cellIndex,
+                                               ProgressVisitor progression, int cellThreadCount) throws IOException {
         if(verbose) {
             logger.info(String.format("This computation area contains %d receivers %d sound sources and %d buildings",
                     scene.receivers.size(), scene.sourceGeometries.size(),
@@ -295,8 +452,8 @@ public class NoiseMapByReceiverMaker extends GridMapMaker {
             computeRays.setProfilerThread(profilerThread);
         }
 
-        if(threadCount > 0) {
-            computeRays.setThreadCount(threadCount);
+        if(cellThreadCount > 0) {
+            computeRays.setThreadCount(cellThreadCount);
         }
 
         if(!receiverHasAbsoluteZCoordinates) {
@@ -307,6 +464,12 @@ public class NoiseMapByReceiverMaker extends GridMapMaker {
             computeRays.makeSourceRelativeZToAbsolute();
         }
 
+        if(sceneSnapshotDirectory != null) {
+            File snapshotFile = new File(sceneSnapshotDirectory, String.format(Locale.ROOT, "cell_%d_%d%s",
+                    cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(), SceneSnapshot.FILE_EXTENSION));
+            SceneSnapshot.write(scene, snapshotFile.toPath());
+        }
+
         computeRays.run(computeRaysOut);
 
         return computeRaysOut;
@@ -338,8 +501,22 @@ public class NoiseMapByReceiverMaker extends GridMapMaker {
     public void run(Connection connection, ProgressVisitor progressLogger) throws SQLException {
         initialize(connection, progressLogger);
 
-        // Set of already processed receivers
-        Set<Long> receivers = new HashSet<>();
+        // Set of already processed receivers, compact as it contains all the receivers at the end of the computation
+        Set<Long> receivers = new CompactLongSet();
+
+        // Resume a previous computation
+        Set<Integer> completedCells = new HashSet<>();
+        String checkpointTable = noiseMapDatabaseParameters.getCheckpointTable();
+        if(checkpointTable != null && !checkpointTable.isEmpty() &&
+                JDBCUtilities.tableExists(connection, checkpointTable)) {
+            NoiseMapWriter.readCheckpoint(connection, checkpointTable, completedCells, receivers);
+            if(completedCells.contains(NoiseMapWriter.COMPLETED_COMPUTATION_ID)) {
+                logger.info("The computation recorded in {} is already complete", checkpointTable);
+                return;
+            }
+            logger.info("Resume computation, {} cells and {} receivers are already computed",
+                    completedCells.size(), receivers.size());
+        }
 
         // Fetch cell identifiers with receivers
         Map<CellIndex, Integer> cells = searchPopulatedCells(connection);
@@ -347,10 +524,22 @@ public class NoiseMapByReceiverMaker extends GridMapMaker {
 
         try {
             computeRaysOutFactory.start(progressVisitor);
-            for (CellIndex cellIndex : new TreeSet<>(cells.keySet())) {
+            if(maximumConcurrentCells > 1) {
+                runConcurrentCells(connection, cells, completedCells, receivers, progressVisitor);
+                return;
+            }
+            for (CellIndex cellIndex : cells.keySet()) {
+                int cellId = cellIndex.getLatitudeIndex() * gridDim + cellIndex.getLongitudeIndex();
+                if(completedCells.contains(cellId)) {
+                    progressVisitor.endStep();
+                    continue;
+                }
                 // Run ray propagation
                 try {
-                    evaluateCell(connection, cellIndex, progressVisitor, receivers);
+                    List<Long> cellReceivers = new LongArrayList();
+                    computeRaysOutFactory.cellStarted(cellId);
+                    evaluateCell(connection, cellIndex, progressVisitor, new RecordingSet(receivers, cellReceivers));
+                    computeRaysOutFactory.cellProcessed(cellId, cellReceivers);
                 } catch (IOException ex) {
                     throw new SQLException(ex);
                 }
@@ -360,6 +549,468 @@ public class NoiseMapByReceiverMaker extends GridMapMaker {
         }
     }
 
+    /**
+     * Compute several cells at the same time. The cells are loaded one by one with the connection, then each cell is
+     * computed with a number of threads related to its number of receivers. A cell waits for the end of the
+     * computation of the previous cells when the thread budget or the memory budget is exhausted. The memory of a cell
+     * is reserved before loading it, from the memory per receiver of the cells already loaded. The other cells are
+     * canceled when a cell fails.
+     * @param connection Active connection
+     * @param cells Cells in the computation order, with their number of receivers
+     * @param completedCells Cells to skip
+     * @param receivers Already processed receivers
+     * @param progressVisitor Progression of the cells
+     * @throws SQLException
+     */
+    private void runConcurrentCells(Connection connection, Map<CellIndex, Integer> cells, Set<Integer> completedCells,
+                                    Set<Long> receivers, ProgressVisitor progressVisitor) throws SQLException {
+        int threadBudget = threadCount > 0 ? threadCount : Runtime.getRuntime().availableProcessors();
+        long memoryBudget = concurrentCellsMemoryBudget > 0 ? concurrentCellsMemoryBudget :
+                Runtime.getRuntime().maxMemory() / 2;
+        CellBudget budget = new CellBudget(threadBudget, memoryBudget);
+        ThreadPool cellThreadPool = new ThreadPool(maximumConcurrentCells, maximumConcurrentCells + 1,
+                Long.MAX_VALUE, TimeUnit.SECONDS);
+        List<Future<Boolean>> tasks = new ArrayList<>();
+        AtomicBoolean canceled = new AtomicBoolean(false);
+        // Highest estimated memory per receiver of the loaded cells
+        double receiverMemory = 0;
+        try {
+            for (Map.Entry<CellIndex, Integer> cell : cells.entrySet()) {
+                CellIndex cellIndex = cell.getKey();
+                int cellId = cellIndex.getLatitudeIndex() * gridDim + cellIndex.getLongitudeIndex();
+                if(completedCells.contains(cellId)) {
+                    progressVisitor.endStep();
+                    continue;
+                }
+                if(progressVisitor.isCanceled() || aborted.get()) {
+                    break;
+                }
+                // Small cells use few threads so that several cells can be computed at the same time
+                int receiverCount = Math.max(1, cell.getValue());
+                int cellThreadCount = (int) Math.max(1, Math.min(threadBudget,
+                        Math.ceil(receiverCount / (double) RECEIVERS_PER_THREAD)));
+                long reservedMemory = (long) (receiverMemory * receiverCount);
+                try {
+                    budget.acquire(cellThreadCount, reservedMemory);
+                } catch (InterruptedException ex) {
+                    throw new SQLException(ex);
+                }
+                List<Long> cellReceivers = new LongArrayList();
+                SceneWithEmission scene;
+                long cellMemory;
+                try {
+                    scene = prepareCell(connection, cellIndex, new RecordingSet(receivers, cellReceivers));
+                    cellMemory = estimateMemoryUsage(scene);
+                } catch (IOException ex) {
+                    budget.release(cellThreadCount, reservedMemory);
+                    throw new SQLException(ex);
+                } catch (SQLException | RuntimeException ex) {
+                    budget.release(cellThreadCount, reservedMemory);
+                    throw ex;
+                }
+                receiverMemory = Math.max(receiverMemory, cellMemory / (double) receiverCount);
+                budget.update(reservedMemory, cellMemory);
+                // Each cell has its own progression, canceled on the failure of another cell
+                ProgressVisitor cellProgress = new CellProgressVisitor(progressVisitor.subProcess(1), canceled);
+                tasks.add(cellThreadPool.submitBlocking(() -> {
+                    try {
+                        computeRaysOutFactory.cellStarted(cellId);
+                        computeCell(scene, cellIndex, cellProgress, cellThreadCount);
+                        computeRaysOutFactory.cellProcessed(cellId, cellReceivers);
+                    } finally {
+                        budget.release(cellThreadCount, cellMemory);
+                    }
+                    return true;
+                }));
+                // Stop on the first failed cell
+                for (Future<Boolean> task : tasks) {
+                    if(task.isDone()) {
+                        getTaskResult(task);
+                    }
+                }
+            }
+            for (Future<Boolean> task : tasks) {
+                getTaskResult(task);
+            }
+        } catch (SQLException | RuntimeException ex) {
+            // Do not wait for the other cells
+            canceled.set(true);
+            for (Future<Boolean> task : tasks) {
+                task.cancel(true);
+            }
+            throw ex;
+        } finally {
+            cellThreadPool.shutdown();
+        }
+    }
+
+    private static void getTaskResult(Future<Boolean> task) throws SQLException {
+        try {
+            task.get();
+        } catch (InterruptedException | ExecutionException ex) {
+            throw new SQLException(ex);
+        }
+    }
+
+    /**
+     * @param scene Cell input data
+     * @return Rough estimation of the memory used by the cell input data (bytes)
+     */
+    private static long estimateMemoryUsage(SceneWithEmission scene) {
+        long coordinates = scene.receivers.size();
+        for (Geometry sourceGeometry : scene.sourceGeometries) {
+            coordinates += sourceGeometry.getNumPoints();
+        }
+        return scene.profileBuilder.estimateMemoryUsage() + coordinates * COORDINATE_MEMORY;
+    }
+
+    /**
+     * Threads and memory shared by the cells computed at the same time
+     */
+    private static final class CellBudget {
+        private final int maximumThreads;
+        private final long maximumMemory;
+        private int usedThreads = 0;
+        private long usedMemory = 0;
+
+        CellBudget(int maximumThreads, long maximumMemory) {
+            this.maximumThreads = maximumThreads;
+            this.maximumMemory = maximumMemory;
+        }
+
+        /**
+         * Wait until the resources are available. A cell greater than the budget is computed alone.
+         */
+        synchronized void acquire(int threads, long memory) throws InterruptedException {
+            while (usedThreads > 0 && (usedThreads + threads > maximumThreads ||
+                    usedMemory + memory > maximumMemory)) {
+                wait();
+            }
+            usedThreads += threads;
+            usedMemory += memory;
+        }
+
+        /**
+         * Replace the memory reserved before loading a cell by the estimated memory of the loaded cell. The budget
+         * may be exceeded as the cell is already loaded, the next cells wait for the release.
+         */
+        synchronized void update(long reservedMemory, long memory) {
+            usedMemory += memory - reservedMemory;
+            notifyAll();
+        }
+
+        synchronized void release(int threads, long memory) {
+            usedThreads -= threads;
+            usedMemory -= memory;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Progression of a cell computed with other cells at the same time. The cell is canceled with the other cells.
+     */
+    private static final class CellProgressVisitor implements ProgressVisitor {
+        private final ProgressVisitor progressVisitor;
+        private final AtomicBoolean canceled;
+
+        CellProgressVisitor(ProgressVisitor progressVisitor, AtomicBoolean canceled) {
+            this.progressVisitor = progressVisitor;
+            this.canceled = canceled;
+        }
+
+        @Override
+        public ProgressVisitor subProcess(int stepCount) {
+            return new CellProgressVisitor(progressVisitor.subProcess(stepCount), canceled);
+        }
+
+        @Override
+        public void endStep() {
+            progressVisitor.endStep();
+        }
+
+        @Override
+        public void setStep(int step) {
+            progressVisitor.setStep(step);
+        }
+
+        @Override
+        public int getStepCount() {
+            return progressVisitor.getStepCount();
+        }
+
+        @Override
+        public void endOfProgress() {
+            progressVisitor.endOfProgress();
+        }
+
+        @Override
+        public double getProgression() {
+            return progressVisitor.getProgression();
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return canceled.get() || progressVisitor.isCanceled();
+        }
+
+        @Override
+        public void cancel() {
+            canceled.set(true);
+        }
+
+        @Override
+        public void addPropertyChangeListener(String property, PropertyChangeListener listener) {
+            progressVisitor.addPropertyChangeListener(property, listener);
+        }
+
+        @Override
+        public void removePropertyChangeListener(PropertyChangeListener listener) {
+            progressVisitor.removePropertyChangeListener(listener);
+        }
+    }
+
+    /**
+     * Coordinator of a computation shared by worker processes. Create the results tables and one pending job per
+     * populated cell in the job table {@link NoiseMapDatabaseParameters#setJobTable(String)}. The cells are then
+     * computed by {@link #runWorker(Connection, ProgressVisitor)}, and the primary key of the results table is applied
+     * by {@link #completeJobs(Connection)} once all the cells are done.
+     * @param connection Active connection
+     * @param progressLogger Progression information
+     * @return Number of created jobs
+     * @throws SQLException
+     */
+    public int createJobs(Connection connection, ProgressVisitor progressLogger) throws SQLException {
+        CellJobTable jobTable = getJobTable();
+        // Workers use the existing results tables only if the job table exists
+        jobTable.drop(connection);
+        initialize(connection, progressLogger);
+        Map<CellIndex, Integer> cells = searchPopulatedCells(connection);
+        // Create the results tables with their index
+        computeRaysOutFactory.start(progressLogger);
+        computeRaysOutFactory.stop();
+        jobTable.create(connection, cells, gridDim);
+        logger.info("{} cells to compute have been written into {}", cells.size(), jobTable.getTableName());
+        return cells.size();
+    }
+
+    /**
+     * Worker of a computation shared by several processes. Claim and compute the pending cells of the job table
+     * created by {@link #createJobs(Connection, ProgressVisitor)} until there is no more pending cell.
+     * A cell that fails is released and can be claimed again by any worker, the results of its previous attempt are
+     * removed before the new attempt.
+     * The settings must be the same as the coordinator settings.
+     * @param connection Active connection, each worker must use its own connection
+     * @param progressLogger Progression information
+     * @return Number of cells computed by this worker
+     * @throws SQLException
+     */
+    public int runWorker(Connection connection, ProgressVisitor progressLogger) throws SQLException {
+        CellJobTable jobTable = getJobTable();
+        if(!jobTable.exists(connection)) {
+            throw new SQLException(String.format("The job table %s does not exist, the jobs must be created by the" +
+                    " coordinator", jobTable.getTableName()));
+        }
+        initialize(connection, progressLogger);
+        String worker = ManagementFactory.getRuntimeMXBean().getName() + "-" + Thread.currentThread().getId();
+        Map<String, Integer> jobCount = jobTable.countByState(connection);
+        ProgressVisitor progressVisitor = progressLogger.subProcess(Math.max(1,
+                jobCount.getOrDefault(CellJobTable.STATE_PENDING, 0)));
+        List<CellIndex> cells = jobTable.readCells(connection);
+        int computedCells = 0;
+        try {
+            computeRaysOutFactory.start(progressVisitor);
+            CellJobTable.Job job;
+            while (!aborted.get() && (job = jobTable.claim(connection, worker,
+                    noiseMapDatabaseParameters.getJobLeaseDuration())) != null) {
+                // The receivers shared with a previous cell (on the cell border) are computed by the previous cell
+                Set<Long> receivers = new CompactLongSet();
+                Set<Long> ownedReceivers = new CompactLongSet();
+                fetchCellReceivers(connection, cells, job.cellIndex, ownedReceivers, receivers);
+                List<Long> cellReceivers = new LongArrayList();
+                try {
+                    if(job.attempt > 1) {
+                        deleteResults(connection, noiseMapDatabaseParameters, ownedReceivers);
+                    }
+                    // The lease of the job is renewed until the results of the cell are written
+                    computeRaysOutFactory.jobClaimed(job);
+                    computeRaysOutFactory.cellStarted(job.cellId);
+                    evaluateCell(connection, job.cellIndex, progressVisitor, new RecordingSet(receivers,
+                            cellReceivers));
+                    computeRaysOutFactory.cellProcessed(job.cellId, cellReceivers);
+                    computedCells++;
+                } catch (Exception ex) {
+                    logger.error(String.format("Attempt %d of the cell %d has failed", job.attempt, job.cellId), ex);
+                    computeRaysOutFactory.cellFailed(job.cellId, cellReceivers, ex.toString());
+                }
+            }
+        } finally {
+            computeRaysOutFactory.stop();
+        }
+        return computedCells;
+    }
+
+    /**
+     * Coordinator of a computation shared by worker processes, last step once the workers have stopped. A cell claimed
+     * again may be written by two attempts at the same time, so the primary key of the results table is applied only
+     * when all the jobs are done.
+     * @param connection Active connection
+     * @return False if some jobs are not done (pending, running or failed), the primary key is then not applied
+     * @throws SQLException
+     */
+    public boolean completeJobs(Connection connection) throws SQLException {
+        CellJobTable jobTable = getJobTable();
+        if(!jobTable.exists(connection)) {
+            throw new SQLException(String.format("The job table %s does not exist, the jobs must be created by the" +
+                    " coordinator", jobTable.getTableName()));
+        }
+        Map<String, Integer> jobCount = jobTable.countByState(connection);
+        int notDone = 0;
+        for (Map.Entry<String, Integer> entry : jobCount.entrySet()) {
+            if(!CellJobTable.STATE_DONE.equals(entry.getKey())) {
+                notDone += entry.getValue();
+            }
+        }
+        if(notDone > 0) {
+            logger.warn("{} cells are not done in {} {}", notDone, jobTable.getTableName(), jobCount);
+            return false;
+        }
+        NoiseMapWriter.createJobsKeys(connection, this);
+        return true;
+    }
+
+    private CellJobTable getJobTable() {
+        String jobTableName = noiseMapDatabaseParameters.getJobTable();
+        if(jobTableName == null || jobTableName.isEmpty()) {
+            throw new IllegalStateException("The job table is not set in the database parameters");
+        }
+        return new CellJobTable(jobTableName);
+    }
+
+    /**
+     * Split the receivers of a cell using the ownership of the computation in a single process: a receiver covered by
+     * several cells is computed by the first cell in the computation order
+     * @param connection Active connection
+     * @param cells All the cells in the computation order
+     * @param cellIndex Cell index
+     * @param ownedReceivers Receivers computed by this cell
+     * @param otherCellsReceivers Receivers computed by a previous cell
+     * @throws SQLException
+     */
+    private void fetchCellReceivers(Connection connection, List<CellIndex> cells, CellIndex cellIndex,
+                                    Set<Long> ownedReceivers, Set<Long> otherCellsReceivers) throws SQLException {
+        DBTypes dbType = DBUtils.getDBType(connection.unwrap(Connection.class));
+        TableLocation receiverTable = TableLocation.parse(receiverTableName, dbType);
+        String receiverGeomName = GeometryTableUtilities.getGeometryColumnNames(connection, receiverTable).get(0);
+        int intPk = JDBCUtilities.getIntegerPrimaryKey(connection.unwrap(Connection.class), receiverTable);
+        if(intPk < 1) {
+            throw new SQLException(String.format("Table %s missing primary key for receiver identification",
+                    receiverTableName));
+        }
+        Envelope cellEnvelope = getCellEnv(cellIndex);
+        List<Envelope> previousCells = new ArrayList<>();
+        for (CellIndex previousCell : cells) {
+            if(previousCell.equals(cellIndex)) {
+                break;
+            }
+            Envelope previousCellEnvelope = getCellEnv(previousCell);
+            if(previousCellEnvelope.intersects(cellEnvelope)) {
+                previousCells.add(previousCellEnvelope);
+            }
+        }
+        try (PreparedStatement st = connection.prepareStatement("SELECT " +
+                TableLocation.quoteIdentifier(receiverGeomName, dbType) + ", " +
+                TableLocation.quoteIdentifier(JDBCUtilities.getColumnName(connection, receiverTableName, intPk),
+                        dbType) + " FROM " + receiverTable + " WHERE " +
+                TableLocation.quoteIdentifier(receiverGeomName, dbType) + " && ?::geometry")) {
+            st.setObject(1, geometryFactory.toGeometry(cellEnvelope));
+            try (SpatialResultSet rs = st.executeQuery().unwrap(SpatialResultSet.class)) {
+                while (rs.next()) {
+                    Geometry pt = rs.getGeometry();
+                    long receiverPk = rs.getLong(2);
+                    boolean previousCell = false;
+                    if(pt != null && !pt.isEmpty()) {
+                        Coordinate coordinate = pt.getCoordinate();
+                        for (Envelope previousCellEnvelope : previousCells) {
+                            if (previousCellEnvelope.intersects(coordinate)) {
+                                previousCell = true;
+                                break;
+                            }
+                        }
+                    }
+                    if(previousCell) {
+                        otherCellsReceivers.add(receiverPk);
+                    } else {
+                        ownedReceivers.add(receiverPk);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove the results of the provided receivers
+     * @param connection Active connection
+     * @param noiseMapDatabaseParameters Results tables
+     * @param receivers Receivers primary key
+     * @throws SQLException
+     */
+    public static void deleteResults(Connection connection, NoiseMapDatabaseParameters noiseMapDatabaseParameters,
+                                     Collection<Long> receivers) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        tables.add(noiseMapDatabaseParameters.receiversLevelTable);
+        if(noiseMapDatabaseParameters.getExportRaysMethod() ==
+                NoiseMapDatabaseParameters.ExportRaysMethods.TO_RAYS_TABLE) {
+            tables.add(noiseMapDatabaseParameters.raysTable);
+        }
+        for (String table : tables) {
+            try (PreparedStatement ps = connection.prepareStatement("DELETE FROM " + table +
+                    " WHERE IDRECEIVER = ?")) {
+                for (long receiverPk : receivers) {
+                    ps.setLong(1, receiverPk);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * Set of receivers that record the added receivers
+     */
+    private static final class RecordingSet extends AbstractSet<Long> {
+        private final Set<Long> set;
+        private final List<Long> added;
+
+        RecordingSet(Set<Long> set, List<Long> added) {
+            this.set = set;
+            this.added = added;
+        }
+
+        @Override
+        public boolean add(Long value) {
+            if(set.add(value)) {
+                added.add(value);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return set.contains(o);
+        }
+
+        @Override
+        public Iterator<Long> iterator() {
+            return Collections.unmodifiableSet(set).iterator();
+        }
+
+        @Override
+        public int size() {
+            return set.size();
+        }
+    }
+
     /**
      * A factory interface for initializing input propagation process data for noise map computation.
      */
@@ -410,6 +1061,37 @@ public class NoiseMapByReceiverMaker extends GridMapMaker {
          */
         void stop() throws SQLException;
 
+        /**
+         * Called when a job of the job table has been claimed, before the computation of its cell
+         * @param job Claimed job
+         */
+        default void jobClaimed(CellJobTable.Job job) {
+        }
+
+        /**
+         * Called before the computation of a cell
+         * @param cellId Cell identifier
+         */
+        default void cellStarted(int cellId) {
+        }
+
+        /**
+         * Called when all the results of a cell have been pushed
+         * @param cellId Cell identifier
+         * @param receivers Primary keys of the receivers computed in this cell
+         */
+        default void cellProcessed(int cellId, List<Long> receivers) {
+        }
+
+        /**
+         * Called when the computation of a cell has failed, the results already pushed for this cell are kept
+         * @param cellId Cell identifier
+         * @param receivers Primary keys of the receivers computed in this cell before the failure
+         * @param message Error message
+         */
+        default void cellFailed(int cellId, List<Long> receivers, String message) {
+        }
+
         /**
          * Creates an object that computes paths out for noise map computation.
          * @param cellData the scene data for the current computation cell
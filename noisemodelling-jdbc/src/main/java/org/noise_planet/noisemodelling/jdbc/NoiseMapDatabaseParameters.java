@@ -11,6 +11,7 @@ package org.noise_planet.noisemodelling.jdbc;
 
 
 import java.io.File;
+import java.net.InetSocketAddress;
 
 /**
  * Global configuration of NoiseModelling computation based on database data
@@ -35,6 +36,16 @@ public class NoiseMapDatabaseParameters {
      * Create a new csv line after this time in seconds
      */
     public int CSVProfilerWriteInterval = 60;
+    /**
+     * Add the duration histograms of the computation stages in the csv file. The recording can be switched at any
+     * time with StageMetric.setEnabled
+     */
+    public boolean CSVProfilerStages = false;
+    /**
+     * If set, serve the live metrics of the computation in the Prometheus text format at
+     * http://[address]/metrics. Use a loopback address to restrict the access to the local host.
+     */
+    public InetSocketAddress metricsHttpAddress = null;
 
     /**
      * With attenuation export also the json of the related cnossos path, for debugging purpose
@@ -55,6 +66,10 @@ public class NoiseMapDatabaseParameters {
     /** maximum dB Error, stop calculation if the sum of further sources contributions are smaller than this value */
     public double maximumError = 0;
 
+    /** With maximumError, radius of the obstacle horizon evaluated around each receiver in order to lower the expected
+     * contribution of the sources shadowed by an enclosure (courtyard). 0 disables the horizon evaluation */
+    public double horizonRadius = 0;
+
     public int geojsonColumnSizeLimit = 1000000; // sql column size limitation for geojson
 
     public int getMaximumRaysOutputCount() {
@@ -69,8 +84,33 @@ public class NoiseMapDatabaseParameters {
 
     public File sqlOutputFile;
     public Boolean sqlOutputFileCompression = true;
+    /**
+     * Statements written into sqlOutputFile. INSERT writes one INSERT query per row, COPY writes the rows as
+     * PostgreSQL COPY blocks with hexadecimal EWKB geometries, faster to write and to load with psql
+     * (PostgreSQL/PostGIS only).
+     */
+    public enum SqlOutputFormat {INSERT, COPY}
+    public SqlOutputFormat sqlOutputFormat = SqlOutputFormat.INSERT;
+    /** Number of threads compressing sqlOutputFile, 0 for the number of processors */
+    public int sqlOutputCompressionThreads = 0;
     public Boolean dropResultsTable = true;
     public boolean computeLAEQOnly = false;
+    /**
+     * Table of the completed cells and receivers, empty to disable checkpoints
+     */
+    public String checkpointTable = "";
+    /**
+     * Shared table of the cells to compute by worker processes, empty to compute all cells in this process
+     */
+    public String jobTable = "";
+    /**
+     * Maximum number of attempts of a cell job before it is set as failed
+     */
+    public int jobMaximumAttempts = 3;
+    /**
+     * Running jobs started more than this duration ago (milliseconds) are claimed again by the workers, 0 to disable
+     */
+    public long jobLeaseDuration = 0;
 
     /**
      * If true the position of the receiver (with the altitude if available) will be exported into the results tables
@@ -121,6 +161,17 @@ public class NoiseMapDatabaseParameters {
         this.exportRaysMethod = exportRaysMethod;
     }
 
+    public SqlOutputFormat getSqlOutputFormat() {
+        return sqlOutputFormat;
+    }
+
+    /**
+     * @param sqlOutputFormat Statements written into sqlOutputFile
+     */
+    public void setSqlOutputFormat(SqlOutputFormat sqlOutputFormat) {
+        this.sqlOutputFormat = sqlOutputFormat;
+    }
+
 
     public void setExportCnossosPathWithAttenuation(boolean exportCnossosPathWithAttenuation) {
         this.exportCnossosPathWithAttenuation = exportCnossosPathWithAttenuation;
@@ -174,6 +225,94 @@ public class NoiseMapDatabaseParameters {
         this.maximumError = maximumError;
     }
 
+    /**
+     * @return With maximumError, radius of the obstacle horizon evaluated around each receiver in order to lower the
+     * expected contribution of the sources shadowed by an enclosure (courtyard). 0 if disabled
+     */
+    public double getHorizonRadius() {
+        return horizonRadius;
+    }
+
+    /**
+     * @param horizonRadius With maximumError, radius of the obstacle horizon evaluated around each receiver in order to
+     *                      lower the expected contribution of the sources shadowed by an enclosure (courtyard).
+     *                      0 disables the horizon evaluation. The contribution is lowered only if the nearest
+     *                      walls in every direction are joined end to end within this radius, so that the receiver
+     *                      is fully closed in. It is derived from a lower bound of the path difference above the
+     *                      lowest of these walls.
+     */
+    public void setHorizonRadius(double horizonRadius) {
+        this.horizonRadius = horizonRadius;
+    }
+
+    /**
+     * @return Table of the completed cells and receivers, empty if checkpoints are disabled
+     */
+    public String getCheckpointTable() {
+        return checkpointTable;
+    }
+
+    /**
+     * Record the cells and receivers once the results have been written into the database. If the checkpoint table
+     * already exists the computation is resumed: the results tables are kept, the completed cells are skipped and the
+     * results of the receivers of the interrupted cell are removed. The other settings must not be changed between
+     * the two runs. Checkpoints are not written when the results are exported to a sql file.
+     * @param checkpointTable Table of the completed cells and receivers, empty to disable checkpoints
+     */
+    public void setCheckpointTable(String checkpointTable) {
+        this.checkpointTable = checkpointTable;
+    }
+
+    /**
+     * @return Shared table of the cells to compute by worker processes, empty if the cells are computed in this process
+     */
+    public String getJobTable() {
+        return jobTable;
+    }
+
+    /**
+     * The coordinator creates the results tables and one job per populated cell in this table
+     * (see NoiseMapByReceiverMaker#createJobs), then any number of processes claim and compute the cells with their own
+     * connection (see NoiseMapByReceiverMaker#runWorker). Once the workers have stopped, the coordinator applies the
+     * primary key of the results table (see NoiseMapByReceiverMaker#completeJobs).
+     * @param jobTable Shared table of the cells to compute by worker processes, empty to compute all cells in this
+     *                 process
+     */
+    public void setJobTable(String jobTable) {
+        this.jobTable = jobTable;
+    }
+
+    /**
+     * @return Maximum number of attempts of a cell job before it is set as failed
+     */
+    public int getJobMaximumAttempts() {
+        return jobMaximumAttempts;
+    }
+
+    /**
+     * @param jobMaximumAttempts Maximum number of attempts of a cell job before it is set as failed
+     */
+    public void setJobMaximumAttempts(int jobMaximumAttempts) {
+        this.jobMaximumAttempts = jobMaximumAttempts;
+    }
+
+    /**
+     * @return Running jobs started more than this duration ago (milliseconds) are claimed again, 0 if disabled
+     */
+    public long getJobLeaseDuration() {
+        return jobLeaseDuration;
+    }
+
+    /**
+     * A worker process that stops without releasing its job leaves the job running. Such jobs are claimed again by
+     * the other workers once this duration is elapsed. It must be greater than the computation time of a cell.
+     * @param jobLeaseDuration Running jobs started more than this duration ago (milliseconds) are claimed again by the
+     *                         workers, 0 to disable
+     */
+    public void setJobLeaseDuration(long jobLeaseDuration) {
+        this.jobLeaseDuration = jobLeaseDuration;
+    }
+
     public void setMergeSources(boolean mergeSources) {
         this.mergeSources = mergeSources;
     }
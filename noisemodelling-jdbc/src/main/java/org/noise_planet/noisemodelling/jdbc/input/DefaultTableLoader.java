@@ -11,6 +11,7 @@ package org.noise_planet.noisemodelling.jdbc.input;
 import org.h2gis.utilities.*;
 import org.h2gis.utilities.dbtypes.DBTypes;
 import org.h2gis.utilities.dbtypes.DBUtils;
+import org.locationtech.jts.algorithm.locate.IndexedPointInAreaLocator;
 import org.locationtech.jts.geom.*;
 import org.locationtech.jts.geom.prep.PreparedPolygon;
 import org.locationtech.jts.io.WKTWriter;
@@ -24,7 +25,10 @@ import org.noise_planet.noisemodelling.emission.railway.cnossos.RailWayCnossosPa
 import org.noise_planet.noisemodelling.jdbc.EmissionTableGenerator;
 import org.noise_planet.noisemodelling.jdbc.NoiseMapByReceiverMaker;
 import org.noise_planet.noisemodelling.jdbc.utils.CellIndex;
+import org.noise_planet.noisemodelling.jdbc.utils.WKBGeometryReader;
+import org.noise_planet.noisemodelling.pathfinder.ThreadPool;
 import org.noise_planet.noisemodelling.pathfinder.profilebuilder.Building;
+import org.noise_planet.noisemodelling.pathfinder.profilebuilder.GroundCoefficientRaster;
 import org.noise_planet.noisemodelling.pathfinder.profilebuilder.ProfileBuilder;
 import org.noise_planet.noisemodelling.pathfinder.profilebuilder.Wall;
 import org.noise_planet.noisemodelling.pathfinder.utils.AcousticIndicatorsFunctions;
@@ -34,6 +38,11 @@ import org.slf4j.LoggerFactory;
 
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import static org.h2gis.utilities.GeometryTableUtilities.getGeometryColumnNames;
 
@@ -56,6 +65,20 @@ public class DefaultTableLoader implements NoiseMapByReceiverMaker.TableLoader {
 
     public static final int DEFAULT_FETCH_SIZE = 300;
     protected int fetchSize = DEFAULT_FETCH_SIZE;
+    // Buildings, topography and soil areas are shared by the cells through a tile cache if the budget is > 0
+    protected long geometryCacheMemoryBudget = 0;
+    protected double geometryCacheTileSize = 1000;
+    protected GeometryTileCache geometryTileCache = null;
+    // Soil areas are converted into a grid of ground coefficients with this cell size if > 0
+    protected double groundRasterCellSize = 0;
+    // Number of soil polygons split or rasterized by a single task
+    private static final int SOIL_AREAS_PER_TASK = 16;
+    // Idle soil threads are stopped after this delay (seconds)
+    private static final long SOIL_THREAD_KEEP_ALIVE = 60;
+    // Threads of the soil areas tasks, shared by all the cells loaded by this instance
+    private ThreadPool soilThreadPool = null;
+    // Geometries are transferred as WKB bytes and decoded without the JTS objects of the JDBC driver if true
+    protected boolean binaryGeometryTransfer = false;
 
     /**
      * Attenuation and other attributes relative to direction on sphere
@@ -84,6 +107,14 @@ public class DefaultTableLoader implements NoiseMapByReceiverMaker.TableLoader {
     @Override
     public void initialize(Connection connection, NoiseMapByReceiverMaker noiseMapByReceiverMaker) throws SQLException {
         this.noiseMapByReceiverMaker = noiseMapByReceiverMaker;
+        if(geometryCacheMemoryBudget > 0) {
+            // Tiles are aligned on the soil split grid so that each soil square is in a single tile
+            double tileSize = Math.max(1, Math.ceil(geometryCacheTileSize / groundSurfaceSplitSideLength)) *
+                    groundSurfaceSplitSideLength;
+            geometryTileCache = new GeometryTileCache(tileSize, geometryCacheMemoryBudget);
+        } else {
+            geometryTileCache = null;
+        }
         SceneDatabaseInputSettings inputSettings = noiseMapByReceiverMaker.getSceneInputSettings();
         if(inputSettings.inputMode == SceneDatabaseInputSettings.INPUT_MODE.INPUT_MODE_GUESS) {
             // Check fields to find appropriate expected data
@@ -217,6 +248,79 @@ public class DefaultTableLoader implements NoiseMapByReceiverMaker.TableLoader {
         return directionAttributes;
     }
 
+    /**
+     * @return Estimated memory in bytes of the buildings, topography and soil areas cached for the next cells, 0 if
+     * the cache is disabled
+     */
+    public long getGeometryCacheMemoryBudget() {
+        return geometryCacheMemoryBudget;
+    }
+
+    /**
+     * The fetch envelopes of the neighbouring cells overlap by the propagation distance. With a cache the buildings,
+     * topography and soil areas are read once from the database and shared by the cells. The overridden fetchCellDem
+     * and fetchCellSoilAreas methods are not used when the cache is enabled. Must be set before the initialisation.
+     * @param geometryCacheMemoryBudget Estimated memory in bytes of the cached geometries, 0 to disable the cache
+     */
+    public void setGeometryCacheMemoryBudget(long geometryCacheMemoryBudget) {
+        this.geometryCacheMemoryBudget = geometryCacheMemoryBudget;
+    }
+
+    /**
+     * @return Side length of the tiles of the geometry cache
+     */
+    public double getGeometryCacheTileSize() {
+        return geometryCacheTileSize;
+    }
+
+    /**
+     * @param geometryCacheTileSize Side length of the tiles of the geometry cache, rounded up to a multiple of the
+     *                              soil areas split size
+     */
+    public void setGeometryCacheTileSize(double geometryCacheTileSize) {
+        this.geometryCacheTileSize = geometryCacheTileSize;
+    }
+
+    /**
+     * @return Cell size of the ground coefficients grid, 0 if the soil areas are split into polygons
+     */
+    public double getGroundRasterCellSize() {
+        return groundRasterCellSize;
+    }
+
+    /**
+     * @param groundRasterCellSize If greater than 0, the soil areas are converted into a grid of ground coefficients
+     *                             with this cell size instead of being split into polygons. The ground coefficient of
+     *                             a cell is the coefficient of the soil area that contains the center of the cell.
+     */
+    public void setGroundRasterCellSize(double groundRasterCellSize) {
+        this.groundRasterCellSize = groundRasterCellSize;
+    }
+
+    /**
+     * @return True if the geometries are transferred as WKB bytes
+     */
+    public boolean isBinaryGeometryTransfer() {
+        return binaryGeometryTransfer;
+    }
+
+    /**
+     * @param binaryGeometryTransfer If true the buildings, topography, sources and receivers geometries are read as WKB
+     *                               bytes. The points are decoded without creating geometries and the other geometries
+     *                               use packed coordinates sequences. If false the geometries are built by the JDBC
+     *                               driver (default).
+     */
+    public void setBinaryGeometryTransfer(boolean binaryGeometryTransfer) {
+        this.binaryGeometryTransfer = binaryGeometryTransfer;
+    }
+
+    /**
+     * @return Geometry cache of the current computation, null if disabled
+     */
+    public GeometryTileCache getGeometryTileCache() {
+        return geometryTileCache;
+    }
+
     private static List<Integer> readFrequenciesFromLwTable(String frequencyPrepend, List<String> sourceField) throws SQLException {
         List<Integer> frequencyValues = new ArrayList<>();
         for (String fieldName : sourceField) {
@@ -263,14 +367,23 @@ public class DefaultTableLoader implements NoiseMapByReceiverMaker.TableLoader {
         // feed freeFieldFinder for fast intersection query
         // optimization
         // Fetch buildings in extendedEnvelope
-        fetchCellBuildings(connection, noiseMapByReceiverMaker.getBuildingTableParameters(), expandedCellEnvelop,
-                scene.profileBuilder, geometryFactory);
+        if(geometryTileCache != null) {
+            fetchCachedGeometries(connection, expandedCellEnvelop, scene.profileBuilder);
+        } else {
+            fetchCellBuildings(connection, noiseMapByReceiverMaker.getBuildingTableParameters(), expandedCellEnvelop,
+                    scene.profileBuilder, geometryFactory, binaryGeometryTransfer);
 
-        //if we have topographic points data
-        fetchCellDem(connection, expandedCellEnvelop, scene.profileBuilder);
+            //if we have topographic points data
+            fetchCellDem(connection, expandedCellEnvelop, scene.profileBuilder);
 
-        // Fetch soil areas
-        fetchCellSoilAreas(connection, expandedCellEnvelop, scene.profileBuilder);
+            // Fetch soil areas
+            if(groundRasterCellSize <= 0) {
+                fetchCellSoilAreas(connection, expandedCellEnvelop, scene.profileBuilder);
+            }
+        }
+        if(groundRasterCellSize > 0) {
+            fetchCellSoilRaster(connection, expandedCellEnvelop, scene.profileBuilder);
+        }
 
         scene.profileBuilder.finishFeeding();
 
@@ -278,6 +391,7 @@ public class DefaultTableLoader implements NoiseMapByReceiverMaker.TableLoader {
         scene.setBodyBarrier(noiseMapByReceiverMaker.isBodyBarrier());
         scene.maxRefDist = maximumReflectionDistance;
         scene.maxSrcDist = maximumPropagationDistance;
+        scene.setSourceClusteringAngle(noiseMapByReceiverMaker.getSourceClusteringAngle());
         scene.setComputeVerticalDiffraction(noiseMapByReceiverMaker.isComputeVerticalDiffraction());
         scene.setComputeHorizontalDiffraction(noiseMapByReceiverMaker.isComputeHorizontalDiffraction());
 
@@ -295,8 +409,13 @@ public class DefaultTableLoader implements NoiseMapByReceiverMaker.TableLoader {
         } else {
             throw new SQLException(String.format("Table %s missing primary key for receiver identification", receiverTableName));
         }
+        String receiverGeomSelect = binaryGeometryTransfer ? WKBGeometryReader.getBinaryExpression(
+                TableLocation.quoteIdentifier(receiverGeomName, dbType), dbType) :
+                TableLocation.quoteIdentifier(receiverGeomName, dbType);
+        WKBGeometryReader wkbReader = new WKBGeometryReader(geometryFactory);
+        double[] xyz = new double[3];
         try (PreparedStatement st = connection.prepareStatement(
-                "SELECT " + TableLocation.quoteIdentifier(receiverGeomName, dbType ) + pkSelect + " FROM " +
+                "SELECT " + receiverGeomSelect + pkSelect + " FROM " +
                         receiverTableName + " WHERE " +
                         TableLocation.quoteIdentifier(receiverGeomName, dbType) + " && ?::geometry")) {
             st.setObject(1, geometryFactory.toGeometry(cellEnvelope));
@@ -308,15 +427,31 @@ public class DefaultTableLoader implements NoiseMapByReceiverMaker.TableLoader {
                     } else {
                         skipReceivers.add(receiverPk);
                     }
-                    Geometry pt = rs.getGeometry();
-                    if(pt != null && !pt.isEmpty()) {
+                    Coordinate receiverCoordinate = null;
+                    if(binaryGeometryTransfer) {
+                        byte[] wkb = rs.getBytes(1);
+                        if(WKBGeometryReader.readPoint(wkb, xyz)) {
+                            receiverCoordinate = new Coordinate(xyz[0], xyz[1], xyz[2]);
+                        } else {
+                            Geometry pt = wkbReader.read(wkb);
+                            if(pt != null && !pt.isEmpty()) {
+                                receiverCoordinate = pt.getCoordinate();
+                            }
+                        }
+                    } else {
+                        Geometry pt = rs.getGeometry();
+                        if(pt != null && !pt.isEmpty()) {
+                            receiverCoordinate = pt.getCoordinate();
+                        }
+                    }
+                    if(receiverCoordinate != null) {
                         // check z value
-                        if(pt.getCoordinate().getZ() == Coordinate.NULL_ORDINATE) {
+                        if(receiverCoordinate.getZ() == Coordinate.NULL_ORDINATE) {
                             throw new IllegalArgumentException("The table " + receiverTableName +
                                     " contain at least one receiver without Z ordinate." +
                                     " You must specify X,Y,Z for each receiver");
                         }
-                        scene.addReceiver(receiverPk, pt.getCoordinate(), rs);
+                        scene.addReceiver(receiverPk, receiverCoordinate, rs);
                     }
                 }
             }
@@ -405,7 +540,8 @@ public class DefaultTableLoader implements NoiseMapByReceiverMaker.TableLoader {
 
 
     /**
-     * Fetches buildings data for the specified cell envelope and adds them to the profile builder.
+     * Fetches buildings data for the specified cell envelope and adds them to the profile builder. The geometries are
+     * built by the JDBC driver.
      * @param connection     the database connection to use for querying the buildings data.
      * @param buildingTableParameters Database settings for the building table
      * @param fetchEnvelope  the envelope representing the cell to fetch buildings data for.
@@ -416,9 +552,29 @@ public class DefaultTableLoader implements NoiseMapByReceiverMaker.TableLoader {
     public static void fetchCellBuildings(Connection connection, BuildingTableParameters buildingTableParameters,
                                           Envelope fetchEnvelope, ProfileBuilder builder,
                                           GeometryFactory geometryFactory) throws SQLException {
+        fetchCellBuildings(connection, buildingTableParameters, fetchEnvelope, builder, geometryFactory, false);
+    }
+
+    /**
+     * Fetches building data for the specified cell envelope and adds them to the profile builder.
+     * @param connection     the database connection to use for querying the buildings data.
+     * @param buildingTableParameters Database settings for the building table
+     * @param fetchEnvelope  the envelope representing the cell to fetch buildings data for.
+     * @param builder        the profile builder to which the buildings data will be added.
+     * @param geometryFactory geometry factory instance with SRID set.
+     * @param binaryGeometryTransfer Read the geometries as WKB bytes
+     * @throws SQLException  if an SQL exception occurs while fetching the buildings data.
+     */
+    public static void fetchCellBuildings(Connection connection, BuildingTableParameters buildingTableParameters,
+                                          Envelope fetchEnvelope, ProfileBuilder builder,
+                                          GeometryFactory geometryFactory, boolean binaryGeometryTransfer)
+            throws SQLException {
         List<Building> buildings = new LinkedList<>();
         List<Wall> walls = new LinkedList<>();
-        fetchCellBuildings(connection,buildingTableParameters, fetchEnvelope, buildings, walls, geometryFactory);
+        Geometry envGeo = geometryFactory.toGeometry(fetchEnvelope);
+        fetchBuildingRecords(connection, buildingTableParameters, fetchEnvelope, geometryFactory,
+                binaryGeometryTransfer,
+                record -> addClippedBuilding(record, envGeo, buildingTableParameters, buildings, walls));
         for(Building building : buildings) {
             builder.addBuilding(building);
         }
@@ -428,7 +584,8 @@ public class DefaultTableLoader implements NoiseMapByReceiverMaker.TableLoader {
     }
 
     /**
-     * Fetches building data for the specified cell envelope and adds them to the provided list of buildings.
+     * Fetches building data for the specified cell envelope and adds them to the provided list of buildings. The
+     * geometries are built by the JDBC driver.
      * @param connection      the database connection to use for querying the building data.
      * @param buildingTableParameters Database settings for the building table
      * @param fetchEnvelope   the envelope representing the cell to fetch building data for.
@@ -444,6 +601,39 @@ public class DefaultTableLoader implements NoiseMapByReceiverMaker.TableLoader {
                                           List<Wall> walls,
                                           GeometryFactory geometryFactory) throws SQLException {
         Geometry envGeo = geometryFactory.toGeometry(fetchEnvelope);
+        fetchBuildingRecords(connection, buildingTableParameters, fetchEnvelope, geometryFactory,
+                record -> addClippedBuilding(record, envGeo, buildingTableParameters, buildings, walls));
+    }
+
+    /**
+     * Read the rows of the building table that intersects the envelope, the geometries are built by the JDBC driver
+     * @param connection      the database connection to use for querying the building data.
+     * @param buildingTableParameters Database settings for the building table
+     * @param fetchEnvelope   the envelope of the rows to read
+     * @param geometryFactory geometry factory instance with SRID set.
+     * @param visitor Called with each row of the building table
+     * @throws SQLException   if an SQL exception occurs while fetching the building data.
+     */
+    public static void fetchBuildingRecords(Connection connection, BuildingTableParameters buildingTableParameters,
+                                            Envelope fetchEnvelope, GeometryFactory geometryFactory,
+                                            Consumer<GeometryTileCache.BuildingRecord> visitor) throws SQLException {
+        fetchBuildingRecords(connection, buildingTableParameters, fetchEnvelope, geometryFactory, false, visitor);
+    }
+
+    /**
+     * Read the rows of the building table that intersects the envelope
+     * @param connection      the database connection to use for querying the building data.
+     * @param buildingTableParameters Database settings for the building table
+     * @param fetchEnvelope   the envelope of the rows to read
+     * @param geometryFactory geometry factory instance with SRID set.
+     * @param binaryGeometryTransfer Read the geometries as WKB bytes
+     * @param visitor Called with each row of the building table
+     * @throws SQLException   if an SQL exception occurs while fetching the building data.
+     */
+    public static void fetchBuildingRecords(Connection connection, BuildingTableParameters buildingTableParameters,
+                                            Envelope fetchEnvelope, GeometryFactory geometryFactory,
+                                            boolean binaryGeometryTransfer,
+                                            Consumer<GeometryTileCache.BuildingRecord> visitor) throws SQLException {
         boolean fetchAlpha = JDBCUtilities.hasField(connection, buildingTableParameters.buildingsTableName,
                 buildingTableParameters.alphaFieldName);
         String additionalQuery = "";
@@ -463,8 +653,12 @@ public class DefaultTableLoader implements NoiseMapByReceiverMaker.TableLoader {
         }
         String buildingGeomName = getGeometryColumnNames(connection,
                 TableLocation.parse(buildingTableParameters.buildingsTableName, dbType)).get(0);
+        String buildingGeomSelect = binaryGeometryTransfer ? WKBGeometryReader.getBinaryExpression(
+                TableLocation.quoteIdentifier(buildingGeomName, dbType), dbType) :
+                TableLocation.quoteIdentifier(buildingGeomName);
+        WKBGeometryReader wkbReader = new WKBGeometryReader(geometryFactory);
         try (PreparedStatement st = connection.prepareStatement(
-                "SELECT " + TableLocation.quoteIdentifier(buildingGeomName) + additionalQuery + " FROM " +
+                "SELECT " + buildingGeomSelect + additionalQuery + " FROM " +
                         buildingTableParameters.buildingsTableName + " WHERE " +
                         TableLocation.quoteIdentifier(buildingGeomName, dbType) + " && ?::geometry")) {
             st.setObject(1, geometryFactory.toGeometry(fetchEnvelope));
@@ -473,52 +667,61 @@ public class DefaultTableLoader implements NoiseMapByReceiverMaker.TableLoader {
                 if(!pkBuilding.isEmpty()) {
                     columnIndex = JDBCUtilities.getFieldIndex(rs.getMetaData(), pkBuilding);
                 }
-                double oldAlpha = buildingTableParameters.defaultWallAbsorption;
                 while (rs.next()) {
                     //if we don't have height of building
-                    Geometry building = rs.getGeometry();
+                    Geometry building = binaryGeometryTransfer ? wkbReader.read(rs, 1) : rs.getGeometry();
                     if(building != null) {
-                        Geometry intersectedGeometry = null;
-                        try {
-                            intersectedGeometry = building.intersection(envGeo);
-                        } catch (TopologyException ex) {
-                            WKTWriter wktWriter = new WKTWriter(3);
-                            LOGGER.error(String.format("Error with input buildings geometry\n%s\n%s",wktWriter.write(building),wktWriter.write(envGeo)), ex);
+                        double alpha = fetchAlpha ? rs.getDouble(buildingTableParameters.alphaFieldName) :
+                                buildingTableParameters.defaultWallAbsorption;
+                        long pk = -1;
+                        if(columnIndex != 0) {
+                            pk = rs.getLong(columnIndex);
                         }
-                        if(intersectedGeometry instanceof Polygon || intersectedGeometry instanceof MultiPolygon || intersectedGeometry instanceof LineString) {
-                            if(fetchAlpha) {
-                                oldAlpha = rs.getDouble(buildingTableParameters.alphaFieldName);
-                            }
+                        double height = buildingTableParameters.heightField.isEmpty() ? Double.MAX_VALUE :
+                                rs.getDouble(buildingTableParameters.heightField);
+                        visitor.accept(new GeometryTileCache.BuildingRecord(building, height, alpha, pk));
+                    }
+                }
+            }
+        }
+    }
 
-                            long pk = -1;
-                            if(columnIndex != 0) {
-                                pk = rs.getLong(columnIndex);
-                            }
-                            for(int i=0; i<intersectedGeometry.getNumGeometries(); i++) {
-                                Geometry geometry = intersectedGeometry.getGeometryN(i);
-                                if(geometry instanceof Polygon && !geometry.isEmpty()) {
-                                    Building poly = new Building((Polygon) geometry,
-                                            buildingTableParameters.heightField.isEmpty() ?
-                                                    Double.MAX_VALUE :
-                                                    rs.getDouble(buildingTableParameters.heightField),
-                                            oldAlpha, pk, buildingTableParameters.zBuildings);
-                                    buildings.add(poly);
-                                } else if (geometry instanceof LineString) {
-                                    // decompose linestring into segments
-                                    LineString lineString = (LineString) geometry;
-                                    Coordinate[] coordinates = lineString.getCoordinates();
-                                    for(int vertex=0; vertex < coordinates.length - 1; vertex++) {
-                                        Wall wall = new Wall(new LineSegment(coordinates[vertex], coordinates[vertex+1]),
-                                                -1, ProfileBuilder.IntersectionType.WALL);
-                                        wall.setG(oldAlpha);
-                                        wall.setPrimaryKey(pk);
-                                        wall.setHeight(buildingTableParameters.heightField.isEmpty() ?
-                                                Double.MAX_VALUE : rs.getDouble(buildingTableParameters.heightField));
-                                        walls.add(wall);
-                                    }
-                                }
-                            }
-                        }
+    /**
+     * Clip a row of the building table with the fetch envelope, then convert it into buildings or walls
+     * @param record Row of the building table
+     * @param envGeo Fetch envelope
+     * @param buildingTableParameters Database settings for the building table
+     * @param buildings the list to which the buildings will be added.
+     * @param walls Wall list to feed
+     */
+    public static void addClippedBuilding(GeometryTileCache.BuildingRecord record, Geometry envGeo,
+                                          BuildingTableParameters buildingTableParameters, List<Building> buildings,
+                                          List<Wall> walls) {
+        Geometry intersectedGeometry = null;
+        try {
+            intersectedGeometry = record.geometry.intersection(envGeo);
+        } catch (TopologyException ex) {
+            WKTWriter wktWriter = new WKTWriter(3);
+            LOGGER.error(String.format("Error with input buildings geometry\n%s\n%s",wktWriter.write(record.geometry),wktWriter.write(envGeo)), ex);
+        }
+        if(intersectedGeometry instanceof Polygon || intersectedGeometry instanceof MultiPolygon || intersectedGeometry instanceof LineString) {
+            for(int i=0; i<intersectedGeometry.getNumGeometries(); i++) {
+                Geometry geometry = intersectedGeometry.getGeometryN(i);
+                if(geometry instanceof Polygon && !geometry.isEmpty()) {
+                    Building poly = new Building((Polygon) geometry, record.height, record.alpha, record.primaryKey,
+                            buildingTableParameters.zBuildings);
+                    buildings.add(poly);
+                } else if (geometry instanceof LineString) {
+                    // decompose linestring into segments
+                    LineString lineString = (LineString) geometry;
+                    Coordinate[] coordinates = lineString.getCoordinates();
+                    for(int vertex=0; vertex < coordinates.length - 1; vertex++) {
+                        Wall wall = new Wall(new LineSegment(coordinates[vertex], coordinates[vertex+1]),
+                                -1, ProfileBuilder.IntersectionType.WALL);
+                        wall.setG(record.alpha);
+                        wall.setPrimaryKey(record.primaryKey);
+                        wall.setHeight(record.height);
+                        walls.add(wall);
                     }
                 }
             }
@@ -581,50 +784,88 @@ public class DefaultTableLoader implements NoiseMapByReceiverMaker.TableLoader {
     protected void fetchCellDem(Connection connection, Envelope fetchEnvelope, ProfileBuilder profileBuilder) throws SQLException {
         String demTable = noiseMapByReceiverMaker.getDemTable();
         if(!demTable.isEmpty()) {
-            GeometryFactory geometryFactory = noiseMapByReceiverMaker.getGeometryFactory();
-            DBTypes dbType = DBUtils.getDBType(connection.unwrap(Connection.class));
-            List<String> geomFields = getGeometryColumnNames(connection,
-                    TableLocation.parse(demTable, dbType));
-            if(geomFields.isEmpty()) {
-                throw new SQLException("Digital elevation model table \""+ demTable +"\" must exist and contain a POINT field");
-            }
-            String topoGeomName = geomFields.get(0);
-            double sumZ = 0;
-            int topoCount = 0;
-            try (PreparedStatement st = connection.prepareStatement(
-                    "SELECT " + TableLocation.quoteIdentifier(topoGeomName, dbType) + " FROM " +
-                            demTable + " WHERE " +
-                            TableLocation.quoteIdentifier(topoGeomName, dbType) + " && ?::geometry")) {
-                st.setObject(1, geometryFactory.toGeometry(fetchEnvelope));
-                try (SpatialResultSet rs = st.executeQuery().unwrap(SpatialResultSet.class)) {
-                    while (rs.next()) {
+            double[] sumZ = new double[1];
+            int[] topoCount = new int[1];
+            fetchTopographicPoints(connection, fetchEnvelope, ptCoordinate -> {
+                profileBuilder.addTopographicPoint(ptCoordinate);
+                if(!Double.isNaN(ptCoordinate.z)) {
+                    sumZ[0]+=ptCoordinate.z;
+                    topoCount[0]+=1;
+                }
+            });
+            addTopographicEnvelope(fetchEnvelope, topoCount[0] > 0 ? sumZ[0] / topoCount[0] : 0, profileBuilder);
+        }
+    }
+
+    /**
+     * Read the topographic points located in the envelope
+     * @param connection the database connection to use for querying the DEM data.
+     * @param fetchEnvelope  the envelope of the points to read
+     * @param visitor Called with each point
+     * @throws SQLException if an SQL exception occurs while fetching the DEM data.
+     */
+    protected void fetchTopographicPoints(Connection connection, Envelope fetchEnvelope, Consumer<Coordinate> visitor)
+            throws SQLException {
+        String demTable = noiseMapByReceiverMaker.getDemTable();
+        GeometryFactory geometryFactory = noiseMapByReceiverMaker.getGeometryFactory();
+        DBTypes dbType = DBUtils.getDBType(connection.unwrap(Connection.class));
+        List<String> geomFields = getGeometryColumnNames(connection,
+                TableLocation.parse(demTable, dbType));
+        if(geomFields.isEmpty()) {
+            throw new SQLException("Digital elevation model table \""+ demTable +"\" must exist and contain a POINT field");
+        }
+        String topoGeomName = geomFields.get(0);
+        String topoGeomSelect = binaryGeometryTransfer ? WKBGeometryReader.getBinaryExpression(
+                TableLocation.quoteIdentifier(topoGeomName, dbType), dbType) :
+                TableLocation.quoteIdentifier(topoGeomName, dbType);
+        WKBGeometryReader wkbReader = new WKBGeometryReader(geometryFactory);
+        double[] xyz = new double[3];
+        try (PreparedStatement st = connection.prepareStatement(
+                "SELECT " + topoGeomSelect + " FROM " +
+                        demTable + " WHERE " +
+                        TableLocation.quoteIdentifier(topoGeomName, dbType) + " && ?::geometry")) {
+            st.setObject(1, geometryFactory.toGeometry(fetchEnvelope));
+            try (SpatialResultSet rs = st.executeQuery().unwrap(SpatialResultSet.class)) {
+                while (rs.next()) {
+                    if(binaryGeometryTransfer) {
+                        byte[] wkb = rs.getBytes(1);
+                        if(WKBGeometryReader.readPoint(wkb, xyz)) {
+                            visitor.accept(new Coordinate(xyz[0], xyz[1], xyz[2]));
+                            continue;
+                        }
+                        Geometry pt = wkbReader.read(wkb);
+                        if(pt != null) {
+                            visitor.accept(pt.getCoordinate());
+                        }
+                    } else {
                         Geometry pt = rs.getGeometry();
                         if(pt != null) {
-                            Coordinate ptCoordinate = pt.getCoordinate();
-                            profileBuilder.addTopographicPoint(ptCoordinate);
-                            if(!Double.isNaN(ptCoordinate.z)) {
-                                sumZ+=ptCoordinate.z;
-                                topoCount+=1;
-                            }
+                            visitor.accept(pt.getCoordinate());
                         }
                     }
                 }
-                double averageZ = 0;
-                if(topoCount > 0) {
-                    averageZ = sumZ / topoCount;
-                }
-                // add corners of envelope to guaranty topography continuity
-                Envelope extentedEnvelope = new Envelope(fetchEnvelope);
-                extentedEnvelope.expandBy(fetchEnvelope.getDiameter());
-                Coordinate[] coordinates = geometryFactory.toGeometry(extentedEnvelope).getCoordinates();
-                for (int i = 0; i < coordinates.length - 1; i++) {
-                    Coordinate coordinate = coordinates[i];
-                    profileBuilder.addTopographicPoint(new Coordinate(coordinate.x, coordinate.y, averageZ));
-                }
             }
         }
     }
 
+    /**
+     * Add points at the average altitude around the fetched area, in order to guaranty topography continuity
+     * @param fetchEnvelope the envelope of the fetched points
+     * @param averageZ Average altitude of the fetched points
+     * @param profileBuilder the profile builder mesh to which the points will be added.
+     */
+    private void addTopographicEnvelope(Envelope fetchEnvelope, double averageZ, ProfileBuilder profileBuilder) {
+        GeometryFactory geometryFactory = noiseMapByReceiverMaker.getGeometryFactory();
+        // add corners of envelope to guaranty topography continuity
+        Envelope extentedEnvelope = new Envelope(fetchEnvelope);
+        extentedEnvelope.expandBy(fetchEnvelope.getDiameter());
+        Coordinate[] coordinates = geometryFactory.toGeometry(extentedEnvelope).getCoordinates();
+        for (int i = 0; i < coordinates.length - 1; i++) {
+            Coordinate coordinate = coordinates[i];
+            profileBuilder.addTopographicPoint(new Coordinate(coordinate.x, coordinate.y, averageZ));
+        }
+    }
+
 
     /**
      * Fetches soil areas data for the specified cell envelope and adds them to the profile builder.
@@ -637,61 +878,358 @@ public class DefaultTableLoader implements NoiseMapByReceiverMaker.TableLoader {
             throws SQLException {
         String soilTableName = noiseMapByReceiverMaker.getSoilTableName();
         if(!soilTableName.isEmpty()){
-            GeometryFactory geometryFactory = noiseMapByReceiverMaker.getGeometryFactory();
-            DBTypes dbType = DBUtils.getDBType(connection.unwrap(Connection.class));
             double startX = Math.floor(fetchEnvelope.getMinX() / groundSurfaceSplitSideLength) * groundSurfaceSplitSideLength;
             double startY = Math.floor(fetchEnvelope.getMinY() / groundSurfaceSplitSideLength) * groundSurfaceSplitSideLength;
-            String soilGeomName = getGeometryColumnNames(connection,
-                    TableLocation.parse(soilTableName, dbType)).get(0);
-            try (PreparedStatement st = connection.prepareStatement(
-                    "SELECT " + TableLocation.quoteIdentifier(soilGeomName, dbType) + ", G FROM " +
-                            soilTableName + " WHERE " +
-                            TableLocation.quoteIdentifier(soilGeomName, dbType) + " && ?::geometry")) {
-                st.setObject(1, geometryFactory.toGeometry(fetchEnvelope));
-                try (SpatialResultSet rs = st.executeQuery().unwrap(SpatialResultSet.class)) {
-                    while (rs.next()) {
-                        Geometry mainPolygon = rs.getGeometry();
-                        if(mainPolygon != null) {
-                            for (int idPoly = 0; idPoly < mainPolygon.getNumGeometries(); idPoly++) {
-                                Geometry poly = mainPolygon.getGeometryN(idPoly);
-                                if (poly instanceof Polygon) {
-                                    PreparedPolygon preparedPolygon = new PreparedPolygon((Polygon) poly);
-                                    // Split soil by square
-                                    Envelope geoEnv = poly.getEnvelopeInternal();
-                                    double startXGeo = Math.max(startX, Math.floor(geoEnv.getMinX() / groundSurfaceSplitSideLength) * groundSurfaceSplitSideLength);
-                                    double startYGeo = Math.max(startY, Math.floor(geoEnv.getMinY() / groundSurfaceSplitSideLength) * groundSurfaceSplitSideLength);
-                                    double xCursor = startXGeo;
-                                    double g = rs.getDouble("G");
-                                    double maxX = Math.min(fetchEnvelope.getMaxX(), geoEnv.getMaxX());
-                                    double maxY = Math.min(fetchEnvelope.getMaxY(), geoEnv.getMaxY());
-                                    while (xCursor < maxX) {
-                                        double yCursor = startYGeo;
-                                        while (yCursor < maxY) {
-                                            Envelope cellEnv = new Envelope(xCursor, xCursor + groundSurfaceSplitSideLength, yCursor, yCursor + groundSurfaceSplitSideLength);
-                                            Geometry envGeom = geometryFactory.toGeometry(cellEnv);
-                                            if(preparedPolygon.intersects(envGeom)) {
-                                                try {
-                                                    Geometry inters = poly.intersection(envGeom);
-                                                    if (!inters.isEmpty() && (inters instanceof Polygon || inters instanceof MultiPolygon)) {
-                                                        builder.addGroundEffect(inters, g);
-                                                    }
-                                                } catch (TopologyException | IllegalArgumentException ex) {
-                                                    // Ignore
-                                                }
-                                            }
-                                            yCursor += groundSurfaceSplitSideLength;
-                                        }
-                                        xCursor += groundSurfaceSplitSideLength;
-                                    }
+            Envelope splitEnvelope = new Envelope(startX, fetchEnvelope.getMaxX(), startY, fetchEnvelope.getMaxY());
+            fetchSplitSoilAreas(connection, fetchEnvelope, splitEnvelope,
+                    part -> builder.addGroundEffect(part.geometry, part.g));
+        }
+    }
+
+    /**
+     * Read the soil areas that intersects the envelope then split them by squares of
+     * {@link #groundSurfaceSplitSideLength}
+     * @param connection         the database connection to use for querying the soil areas data.
+     * @param fetchEnvelope      the envelope of the soil areas to read
+     * @param splitEnvelope      only the squares where the lower corner is in this envelope, excluding the upper
+     *                           bounds, are kept
+     * @param visitor            Called with each square part of the soil areas
+     * @throws SQLException      if an SQL exception occurs while fetching the soil areas data.
+     */
+    protected void fetchSplitSoilAreas(Connection connection, Envelope fetchEnvelope, Envelope splitEnvelope,
+                                       Consumer<GeometryTileCache.GroundAreaPart> visitor) throws SQLException {
+        GeometryFactory geometryFactory = noiseMapByReceiverMaker.getGeometryFactory();
+        List<SoilArea> soilAreas = fetchSoilAreas(connection, fetchEnvelope);
+        // The polygons are split by concurrent tasks, the parts are then visited in the order of the table
+        List<Callable<List<GeometryTileCache.GroundAreaPart>>> tasks = new ArrayList<>();
+        for (int i = 0; i < soilAreas.size(); i += SOIL_AREAS_PER_TASK) {
+            List<SoilArea> taskAreas = soilAreas.subList(i, Math.min(soilAreas.size(), i + SOIL_AREAS_PER_TASK));
+            tasks.add(() -> {
+                List<GeometryTileCache.GroundAreaPart> parts = new ArrayList<>();
+                for (SoilArea soilArea : taskAreas) {
+                    splitSoilArea(soilArea.geometry, soilArea.g, splitEnvelope, groundSurfaceSplitSideLength,
+                            geometryFactory, parts::add);
+                }
+                return parts;
+            });
+        }
+        for (List<GeometryTileCache.GroundAreaPart> parts : invokeSoilTasks(tasks)) {
+            parts.forEach(visitor);
+        }
+    }
+
+    /**
+     * Split a soil area by squares
+     * @param mainPolygon Soil area geometry
+     * @param g Ground coefficient
+     * @param splitEnvelope Only the squares where the lower corner is in this envelope, excluding the upper bounds,
+     *                      are kept
+     * @param sideLength Side length of the squares, the squares are aligned on a multiple of this length
+     * @param geometryFactory Geometry factory
+     * @param visitor Called with each square part of the soil area
+     */
+    public static void splitSoilArea(Geometry mainPolygon, double g, Envelope splitEnvelope, double sideLength,
+                                     GeometryFactory geometryFactory,
+                                     Consumer<GeometryTileCache.GroundAreaPart> visitor) {
+        Envelope areaEnvelope = mainPolygon.getEnvelopeInternal();
+        for (int idPoly = 0; idPoly < mainPolygon.getNumGeometries(); idPoly++) {
+            Geometry poly = mainPolygon.getGeometryN(idPoly);
+            if (poly instanceof Polygon) {
+                PreparedPolygon preparedPolygon = new PreparedPolygon((Polygon) poly);
+                // Split soil by square
+                Envelope geoEnv = poly.getEnvelopeInternal();
+                double startXGeo = Math.max(splitEnvelope.getMinX(), Math.floor(geoEnv.getMinX() / sideLength) * sideLength);
+                double startYGeo = Math.max(splitEnvelope.getMinY(), Math.floor(geoEnv.getMinY() / sideLength) * sideLength);
+                double xCursor = startXGeo;
+                double maxX = Math.min(splitEnvelope.getMaxX(), geoEnv.getMaxX());
+                double maxY = Math.min(splitEnvelope.getMaxY(), geoEnv.getMaxY());
+                while (xCursor < maxX) {
+                    double yCursor = startYGeo;
+                    while (yCursor < maxY) {
+                        Envelope cellEnv = new Envelope(xCursor, xCursor + sideLength, yCursor, yCursor + sideLength);
+                        Geometry inters = null;
+                        if(cellEnv.contains(geoEnv)) {
+                            // The polygon is in the square
+                            inters = poly.copy();
+                        } else {
+                            Geometry envGeom = geometryFactory.toGeometry(cellEnv);
+                            if(preparedPolygon.containsProperly(envGeom)) {
+                                // The square is in the polygon, this is the case of most squares of large areas
+                                inters = envGeom;
+                            } else if(preparedPolygon.intersects(envGeom)) {
+                                try {
+                                    inters = poly.intersection(envGeom);
+                                } catch (TopologyException | IllegalArgumentException ex) {
+                                    // Ignore
                                 }
                             }
                         }
+                        if (inters != null && !inters.isEmpty() &&
+                                (inters instanceof Polygon || inters instanceof MultiPolygon)) {
+                            visitor.accept(new GeometryTileCache.GroundAreaPart(inters, g, areaEnvelope,
+                                    xCursor, yCursor));
+                        }
+                        yCursor += sideLength;
+                    }
+                    xCursor += sideLength;
+                }
+            }
+        }
+    }
+
+    /**
+     * Fetches soil areas data for the specified cell envelope and adds them to the profile builder as a grid of ground
+     * coefficients of {@link #groundRasterCellSize}.
+     * @param connection         the database connection to use for querying the soil areas data.
+     * @param fetchEnvelope      the envelope representing the cell to fetch soil areas data for.
+     * @param builder            the profile builder to which the soil areas data will be added.
+     * @throws SQLException      if an SQL exception occurs while fetching the soil areas data.
+     */
+    protected void fetchCellSoilRaster(Connection connection, Envelope fetchEnvelope, ProfileBuilder builder)
+            throws SQLException {
+        if(noiseMapByReceiverMaker.getSoilTableName().isEmpty()) {
+            return;
+        }
+        GroundCoefficientRaster raster = new GroundCoefficientRaster(fetchEnvelope, groundRasterCellSize);
+        List<SoilArea> soilAreas = fetchSoilAreas(connection, fetchEnvelope);
+        List<IndexedPointInAreaLocator> locators = new ArrayList<>(soilAreas.size());
+        for (SoilArea soilArea : soilAreas) {
+            IndexedPointInAreaLocator locator = new IndexedPointInAreaLocator(soilArea.geometry);
+            // The index of the locator is built on the first query, build it before sharing it with the tasks
+            locator.locate(soilArea.geometry.getCoordinate());
+            locators.add(locator);
+        }
+        // Each task fills a band of rows, the areas are filled in the order of the table so the last area wins
+        int bandCount = Math.min(raster.getRows(), getSoilThreadCount() * 4);
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        for (int band = 0; band < bandCount && !soilAreas.isEmpty(); band++) {
+            int startRow = (int) ((long) raster.getRows() * band / bandCount);
+            int endRow = (int) ((long) raster.getRows() * (band + 1) / bandCount);
+            tasks.add(() -> {
+                for (int i = 0; i < soilAreas.size(); i++) {
+                    raster.fill(soilAreas.get(i).geometry, locators.get(i), soilAreas.get(i).g, startRow, endRow);
+                }
+                return true;
+            });
+        }
+        invokeSoilTasks(tasks);
+        builder.setGroundRaster(raster);
+    }
+
+    /**
+     * Read the soil areas that intersects the envelope
+     * @param connection Active connection
+     * @param fetchEnvelope the envelope of the soil areas to read
+     * @return Soil areas in the order of the table
+     * @throws SQLException if an SQL exception occurs while fetching the soil areas data.
+     */
+    private List<SoilArea> fetchSoilAreas(Connection connection, Envelope fetchEnvelope) throws SQLException {
+        String soilTableName = noiseMapByReceiverMaker.getSoilTableName();
+        GeometryFactory geometryFactory = noiseMapByReceiverMaker.getGeometryFactory();
+        DBTypes dbType = DBUtils.getDBType(connection.unwrap(Connection.class));
+        String soilGeomName = getGeometryColumnNames(connection,
+                TableLocation.parse(soilTableName, dbType)).get(0);
+        List<SoilArea> soilAreas = new ArrayList<>();
+        try (PreparedStatement st = connection.prepareStatement(
+                "SELECT " + TableLocation.quoteIdentifier(soilGeomName, dbType) + ", G FROM " +
+                        soilTableName + " WHERE " +
+                        TableLocation.quoteIdentifier(soilGeomName, dbType) + " && ?::geometry")) {
+            st.setObject(1, geometryFactory.toGeometry(fetchEnvelope));
+            try (SpatialResultSet rs = st.executeQuery().unwrap(SpatialResultSet.class)) {
+                while (rs.next()) {
+                    Geometry mainPolygon = rs.getGeometry();
+                    if(mainPolygon != null) {
+                        soilAreas.add(new SoilArea(mainPolygon, rs.getDouble("G")));
+                    }
+                }
+            }
+        }
+        return soilAreas;
+    }
+
+    /**
+     * @return Number of threads used to process the soil areas
+     */
+    private int getSoilThreadCount() {
+        int threadCount = noiseMapByReceiverMaker.getThreadCount();
+        return threadCount > 0 ? threadCount : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * The pool is created on the first soil fetch and kept by this loader. Its idle threads are daemon threads
+     * stopped after a delay, so the pool does not need to be shut down.
+     * @return Thread pool of the soil areas tasks
+     */
+    private synchronized ThreadPool getSoilThreadPool() {
+        int threadCount = getSoilThreadCount();
+        if (soilThreadPool == null) {
+            soilThreadPool = new ThreadPool(threadCount, threadCount, SOIL_THREAD_KEEP_ALIVE, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "soil-areas");
+                thread.setDaemon(true);
+                return thread;
+            });
+            soilThreadPool.allowCoreThreadTimeOut(true);
+        } else if (soilThreadPool.getMaximumPoolSize() != threadCount) {
+            // The thread count of the computation has been changed
+            if (threadCount > soilThreadPool.getMaximumPoolSize()) {
+                soilThreadPool.setMaximumPoolSize(threadCount);
+                soilThreadPool.setCorePoolSize(threadCount);
+            } else {
+                soilThreadPool.setCorePoolSize(threadCount);
+                soilThreadPool.setMaximumPoolSize(threadCount);
+            }
+        }
+        return soilThreadPool;
+    }
+
+    /**
+     * Run the soil areas tasks, in the calling thread if there is a single task
+     * @param tasks Tasks
+     * @return Results of the tasks in the same order
+     * @throws SQLException if a task has failed
+     */
+    private <T> List<T> invokeSoilTasks(List<Callable<T>> tasks) throws SQLException {
+        List<T> results = new ArrayList<>(tasks.size());
+        int threadCount = Math.min(tasks.size(), getSoilThreadCount());
+        try {
+            if (threadCount <= 1) {
+                for (Callable<T> task : tasks) {
+                    results.add(task.call());
+                }
+                return results;
+            }
+            ThreadPool threadPool = getSoilThreadPool();
+            List<Future<T>> futures = new ArrayList<>(tasks.size());
+            try {
+                for (Callable<T> task : tasks) {
+                    futures.add(threadPool.submit(task));
+                }
+                for (Future<T> future : futures) {
+                    results.add(future.get());
+                }
+            } finally {
+                // Do not let the tasks of a failed fetch run with the next cell
+                for (Future<T> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        } catch (SQLException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new SQLException(ex);
+        }
+        return results;
+    }
+
+    /**
+     * Row of the soil table
+     */
+    private static final class SoilArea {
+        final Geometry geometry;
+        final double g;
+
+        SoilArea(Geometry geometry, double g) {
+            this.geometry = geometry;
+            this.g = g;
+        }
+    }
+
+    /**
+     * Read the tiles of the geometry cache that intersects the envelope then feed the profile builder with the
+     * buildings, topography and soil areas of the envelope, as {@link #fetchCellBuildings}, {@link #fetchCellDem}
+     * and {@link #fetchCellSoilAreas} would do.
+     * @param connection Active connection
+     * @param fetchEnvelope Fetch envelope
+     * @param profileBuilder the profile builder to feed
+     * @throws SQLException if an SQL exception occurs while reading a tile
+     */
+    protected void fetchCachedGeometries(Connection connection, Envelope fetchEnvelope, ProfileBuilder profileBuilder)
+            throws SQLException {
+        GeometryFactory geometryFactory = noiseMapByReceiverMaker.getGeometryFactory();
+        List<GeometryTileCache.GeometryTile> tiles = geometryTileCache.getTiles(fetchEnvelope,
+                tile -> loadTile(connection, tile));
+        // Buildings
+        BuildingTableParameters buildingTableParameters = noiseMapByReceiverMaker.getBuildingTableParameters();
+        Geometry envGeo = geometryFactory.toGeometry(fetchEnvelope);
+        List<Building> buildings = new ArrayList<>();
+        List<Wall> walls = new ArrayList<>();
+        for (GeometryTileCache.GeometryTile tile : tiles) {
+            for (GeometryTileCache.BuildingRecord record : tile.buildings) {
+                Envelope recordEnvelope = record.geometry.getEnvelopeInternal();
+                // A building is in all the tiles it intersects, it is added by the tile that contains the lower corner
+                // of its intersection with the fetch envelope
+                if(recordEnvelope.intersects(fetchEnvelope) && geometryTileCache.contains(tile,
+                        Math.max(recordEnvelope.getMinX(), fetchEnvelope.getMinX()),
+                        Math.max(recordEnvelope.getMinY(), fetchEnvelope.getMinY()))) {
+                    // The profile builder may update the coordinates, the cached geometry is kept unchanged
+                    addClippedBuilding(new GeometryTileCache.BuildingRecord(record.geometry.copy(), record.height,
+                            record.alpha, record.primaryKey), envGeo, buildingTableParameters, buildings, walls);
+                }
+            }
+        }
+        for(Building building : buildings) {
+            profileBuilder.addBuilding(building);
+        }
+        for (Wall wall : walls) {
+            profileBuilder.addWall(wall);
+        }
+        // Topography
+        if(!noiseMapByReceiverMaker.getDemTable().isEmpty()) {
+            double sumZ = 0;
+            int topoCount = 0;
+            for (GeometryTileCache.GeometryTile tile : tiles) {
+                for (Coordinate point : tile.topographicPoints) {
+                    if(fetchEnvelope.contains(point)) {
+                        profileBuilder.addTopographicPoint(new Coordinate(point));
+                        if(!Double.isNaN(point.z)) {
+                            sumZ += point.z;
+                            topoCount++;
+                        }
+                    }
+                }
+            }
+            addTopographicEnvelope(fetchEnvelope, topoCount > 0 ? sumZ / topoCount : 0, profileBuilder);
+        }
+        // Soil areas
+        if(!noiseMapByReceiverMaker.getSoilTableName().isEmpty() && groundRasterCellSize <= 0) {
+            double startX = Math.floor(fetchEnvelope.getMinX() / groundSurfaceSplitSideLength) * groundSurfaceSplitSideLength;
+            double startY = Math.floor(fetchEnvelope.getMinY() / groundSurfaceSplitSideLength) * groundSurfaceSplitSideLength;
+            for (GeometryTileCache.GeometryTile tile : tiles) {
+                for (GeometryTileCache.GroundAreaPart part : tile.groundAreaParts) {
+                    if(part.areaEnvelope.intersects(fetchEnvelope) && part.squareX >= startX &&
+                            part.squareX < fetchEnvelope.getMaxX() && part.squareY >= startY &&
+                            part.squareY < fetchEnvelope.getMaxY()) {
+                        profileBuilder.addGroundEffect(part.geometry.copy(), part.g);
                     }
                 }
             }
         }
     }
 
+    /**
+     * Read the buildings, topography and soil areas of a tile
+     * @param connection Active connection
+     * @param tile Tile to feed
+     * @throws SQLException if an SQL exception occurs while reading the tile
+     */
+    private void loadTile(Connection connection, GeometryTileCache.GeometryTile tile) throws SQLException {
+        fetchBuildingRecords(connection, noiseMapByReceiverMaker.getBuildingTableParameters(), tile.envelope,
+                noiseMapByReceiverMaker.getGeometryFactory(), binaryGeometryTransfer, tile.buildings::add);
+        if(!noiseMapByReceiverMaker.getDemTable().isEmpty()) {
+            // A point on the border of two tiles is kept by a single tile
+            fetchTopographicPoints(connection, tile.envelope, point -> {
+                if(geometryTileCache.contains(tile, point.x, point.y)) {
+                    tile.topographicPoints.add(point);
+                }
+            });
+        }
+        if(!noiseMapByReceiverMaker.getSoilTableName().isEmpty() && groundRasterCellSize <= 0) {
+            // Tiles are aligned on the split grid, each square is in a single tile
+            fetchSplitSoilAreas(connection, tile.envelope, tile.envelope, tile.groundAreaParts::add);
+        }
+    }
+
     /**
      * Fetch source geometries and power
      * @param connection Active connection
@@ -717,8 +1255,22 @@ public class DefaultTableLoader implements NoiseMapByReceiverMaker.TableLoader {
             throw new IllegalArgumentException(String.format("Source table %s does not contain a primary key", sourceTableIdentifier));
         }
         int pkIndex = primaryKey.second();
-        try (PreparedStatement st = connection.prepareStatement("SELECT * FROM " + sourcesTableName + " WHERE "
-                + TableLocation.quoteIdentifier(sourceGeomName) + " && ?::geometry")) {
+        // H2GIS returns the geometry column as WKB bytes, PostGIS requires an additional column
+        String binaryGeometryColumn = null;
+        String additionalColumns = "";
+        if(binaryGeometryTransfer) {
+            String quotedGeomName = TableLocation.quoteIdentifier(sourceGeomName, dbType);
+            String binaryExpression = WKBGeometryReader.getBinaryExpression(quotedGeomName, dbType);
+            if(binaryExpression.equals(quotedGeomName)) {
+                binaryGeometryColumn = sourceGeomName;
+            } else {
+                binaryGeometryColumn = "NM_WKB_GEOM";
+                additionalColumns = ", " + binaryExpression + " " + binaryGeometryColumn;
+            }
+        }
+        WKBGeometryReader wkbReader = new WKBGeometryReader(geometryFactory);
+        try (PreparedStatement st = connection.prepareStatement("SELECT *" + additionalColumns + " FROM " +
+                sourcesTableName + " WHERE " + TableLocation.quoteIdentifier(sourceGeomName) + " && ?::geometry")) {
             st.setObject(1, geometryFactory.toGeometry(fetchEnvelope));
             st.setFetchSize(fetchSize);
             boolean autoCommit = connection.getAutoCommit();
@@ -728,7 +1280,8 @@ public class DefaultTableLoader implements NoiseMapByReceiverMaker.TableLoader {
             st.setFetchDirection(ResultSet.FETCH_FORWARD);
             try (SpatialResultSet rs = st.executeQuery().unwrap(SpatialResultSet.class)) {
                 while (rs.next()) {
-                    Geometry geo = rs.getGeometry();
+                    Geometry geo = binaryGeometryColumn != null ?
+                            wkbReader.read(rs.getBytes(binaryGeometryColumn)) : rs.getGeometry();
                     if (geo != null) {
                         if (doIntersection) {
                             geo = domainConstraint.intersection(geo);
@@ -0,0 +1,247 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc.input;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Cache of the parsed buildings, topographic points and ground areas, shared by the cells of a computation.
+ * The fetch envelopes of neighbouring cells overlap by the propagation distance, so without this cache each geometry
+ * is read and parsed once per cell that covers it. The area is split into fixed square tiles, a tile is read from the
+ * database on its first use. The least recently used tiles are evicted when the memory budget is exceeded.
+ */
+public class GeometryTileCache {
+    /** Estimated memory of a coordinate of a cached geometry in bytes */
+    private static final long COORDINATE_MEMORY = 48;
+    /** Estimated memory of a cached object in bytes */
+    private static final long OBJECT_MEMORY = 96;
+
+    private final double tileSize;
+    private final long memoryBudget;
+    private final LinkedHashMap<TileIndex, GeometryTile> tiles = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedMemory = 0;
+    private long loadedTileCount = 0;
+    private long hitCount = 0;
+
+    /**
+     * @param tileSize Side length of the tiles
+     * @param memoryBudget Estimated memory of the cached tiles in bytes
+     */
+    public GeometryTileCache(double tileSize, long memoryBudget) {
+        this.tileSize = tileSize;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * @return Side length of the tiles
+     */
+    public double getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * @param ordinate X or Y ordinate
+     * @return Tile column or row that contains this ordinate
+     */
+    public long getTileOrdinate(double ordinate) {
+        return (long) Math.floor(ordinate / tileSize);
+    }
+
+    /**
+     * @param tile Tile
+     * @param x X ordinate
+     * @param y Y ordinate
+     * @return True if the coordinate is in this tile. The tile contains its lower bounds only, so each coordinate
+     * is in a single tile.
+     */
+    public boolean contains(GeometryTile tile, double x, double y) {
+        return getTileOrdinate(x) == tile.column && getTileOrdinate(y) == tile.row;
+    }
+
+    /**
+     * Return the tiles that intersects the envelope, the missing tiles are loaded.
+     * @param envelope Fetch envelope
+     * @param loader Read the content of a missing tile
+     * @return Tiles ordered by row then column
+     * @throws SQLException Error while loading a tile
+     */
+    public synchronized List<GeometryTile> getTiles(Envelope envelope, TileLoader loader) throws SQLException {
+        long minColumn = getTileOrdinate(envelope.getMinX());
+        long maxColumn = getTileOrdinate(envelope.getMaxX());
+        long minRow = getTileOrdinate(envelope.getMinY());
+        long maxRow = getTileOrdinate(envelope.getMaxY());
+        List<GeometryTile> result = new ArrayList<>();
+        for (long row = minRow; row <= maxRow; row++) {
+            for (long column = minColumn; column <= maxColumn; column++) {
+                TileIndex tileIndex = new TileIndex(column, row);
+                GeometryTile tile = tiles.get(tileIndex);
+                if (tile == null) {
+                    tile = new GeometryTile(column, row, new Envelope(column * tileSize, (column + 1) * tileSize,
+                            row * tileSize, (row + 1) * tileSize));
+                    loader.load(tile);
+                    tile.memory = tile.estimateMemoryUsage();
+                    tiles.put(tileIndex, tile);
+                    usedMemory += tile.memory;
+                    loadedTileCount++;
+                } else {
+                    hitCount++;
+                }
+                result.add(tile);
+            }
+        }
+        // Evict the least recently used tiles, the returned tiles stay valid even if evicted
+        Iterator<GeometryTile> it = tiles.values().iterator();
+        while (usedMemory > memoryBudget && it.hasNext()) {
+            usedMemory -= it.next().memory;
+            it.remove();
+        }
+        return result;
+    }
+
+    /**
+     * @return Number of tiles read from the database
+     */
+    public synchronized long getLoadedTileCount() {
+        return loadedTileCount;
+    }
+
+    /**
+     * @return Number of tiles served from the cache
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return Estimated memory of the cached tiles in bytes
+     */
+    public synchronized long getMemoryUsage() {
+        return usedMemory;
+    }
+
+    /**
+     * Read the content of a tile
+     */
+    public interface TileLoader {
+        /**
+         * @param tile Empty tile to feed
+         * @throws SQLException Error while reading the tile
+         */
+        void load(GeometryTile tile) throws SQLException;
+    }
+
+    private static final class TileIndex {
+        final long column;
+        final long row;
+
+        TileIndex(long column, long row) {
+            this.column = column;
+            this.row = row;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            TileIndex tileIndex = (TileIndex) o;
+            return column == tileIndex.column && row == tileIndex.row;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(column, row);
+        }
+    }
+
+    private static long estimateGeometryMemory(Geometry geometry) {
+        return OBJECT_MEMORY + geometry.getNumPoints() * COORDINATE_MEMORY;
+    }
+
+    /**
+     * Parsed geometries of a tile
+     */
+    public static final class GeometryTile {
+        public final long column;
+        public final long row;
+        public final Envelope envelope;
+        /** Buildings and walls that intersects the tile, a building may be in several tiles */
+        public final List<BuildingRecord> buildings = new ArrayList<>();
+        /** Topographic points located in the tile */
+        public final List<Coordinate> topographicPoints = new ArrayList<>();
+        /** Ground areas split by squares located in the tile */
+        public final List<GroundAreaPart> groundAreaParts = new ArrayList<>();
+        private long memory;
+
+        GeometryTile(long column, long row, Envelope envelope) {
+            this.column = column;
+            this.row = row;
+            this.envelope = envelope;
+        }
+
+        private long estimateMemoryUsage() {
+            long memory = OBJECT_MEMORY;
+            for (BuildingRecord building : buildings) {
+                memory += OBJECT_MEMORY + estimateGeometryMemory(building.geometry);
+            }
+            memory += topographicPoints.size() * COORDINATE_MEMORY;
+            for (GroundAreaPart part : groundAreaParts) {
+                memory += OBJECT_MEMORY + estimateGeometryMemory(part.geometry);
+            }
+            return memory;
+        }
+    }
+
+    /**
+     * Row of the building table
+     */
+    public static final class BuildingRecord {
+        public final Geometry geometry;
+        public final double height;
+        public final double alpha;
+        public final long primaryKey;
+
+        public BuildingRecord(Geometry geometry, double height, double alpha, long primaryKey) {
+            this.geometry = geometry;
+            this.height = height;
+            this.alpha = alpha;
+            this.primaryKey = primaryKey;
+        }
+    }
+
+    /**
+     * Part of a ground area in a square of the ground split grid
+     */
+    public static final class GroundAreaPart {
+        public final Geometry geometry;
+        public final double g;
+        /** Envelope of the complete ground area geometry */
+        public final Envelope areaEnvelope;
+        /** Lower corner of the square */
+        public final double squareX;
+        public final double squareY;
+
+        public GroundAreaPart(Geometry geometry, double g, Envelope areaEnvelope, double squareX, double squareY) {
+            this.geometry = geometry;
+            this.g = g;
+            this.areaEnvelope = areaEnvelope;
+            this.squareX = squareX;
+            this.squareY = squareY;
+        }
+    }
+}
@@ -0,0 +1,717 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc.input;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.io.ByteOrderValues;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKBReader;
+import org.locationtech.jts.io.WKBWriter;
+import org.noise_planet.noisemodelling.emission.LineSource;
+import org.noise_planet.noisemodelling.emission.directivity.DirectivityRecord;
+import org.noise_planet.noisemodelling.emission.directivity.DirectivitySphere;
+import org.noise_planet.noisemodelling.emission.directivity.DiscreteDirectivitySphere;
+import org.noise_planet.noisemodelling.emission.directivity.OmnidirectionalDirection;
+import org.noise_planet.noisemodelling.emission.directivity.cnossos.RailwayCnossosDirectivitySphere;
+import org.noise_planet.noisemodelling.pathfinder.profilebuilder.Building;
+import org.noise_planet.noisemodelling.pathfinder.profilebuilder.GroundAbsorption;
+import org.noise_planet.noisemodelling.pathfinder.profilebuilder.GroundCoefficientRaster;
+import org.noise_planet.noisemodelling.pathfinder.profilebuilder.ProfileBuilder;
+import org.noise_planet.noisemodelling.pathfinder.profilebuilder.Wall;
+import org.noise_planet.noisemodelling.pathfinder.utils.geometry.Orientation;
+import org.noise_planet.noisemodelling.propagation.AttenuationParameters;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary snapshot of a {@link SceneWithEmission}: buildings, walls, topography, ground, sources with their emissions,
+ * receivers and computation settings. A cell written by {@link #write(SceneWithEmission, Path)} is reloaded by
+ * {@link #read(Path)} without any database, in order to replay a cell locally (profiling, debugging) or to use it as a
+ * benchmark fixture.
+ * <p>
+ * The file is a little endian sequence of sections, preceded by a magic number and a format version. The input data
+ * of the profile builder is stored as it was fed, the triangulation and the indexes are rebuilt on reading.
+ * The file is read through a memory mapped buffer, so it is limited to 2 GB.
+ */
+public final class SceneSnapshot {
+    /** File name extension of the snapshots */
+    public static final String FILE_EXTENSION = ".nmscene";
+    private static final byte[] MAGIC = "NMSCENE".getBytes(StandardCharsets.US_ASCII);
+    /** Version of the format, readers reject the other versions */
+    public static final int VERSION = 1;
+    private static final int END_MARKER = 0x454E4421;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    private static final byte DIRECTIVITY_OMNIDIRECTIONAL = 0;
+    private static final byte DIRECTIVITY_DISCRETE = 1;
+    private static final byte DIRECTIVITY_RAILWAY = 2;
+
+    private SceneSnapshot() {
+    }
+
+    /**
+     * Write the scene in a file
+     * @param scene Scene, the feeding of the profile builder must be finished
+     * @param path Destination file, replaced if it exists
+     * @throws IOException If the file cannot be written
+     * @throws IllegalArgumentException If a directivity of the scene cannot be stored
+     */
+    public static void write(SceneWithEmission scene, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            SnapshotOutput out = new SnapshotOutput(channel);
+            out.putBytes(MAGIC);
+            out.putInt(VERSION);
+            writeSettings(scene, out);
+            writeDirectivities(scene, out);
+            writeProfileBuilder(scene.profileBuilder, out);
+            writeSources(scene, out);
+            writeReceivers(scene, out);
+            out.putInt(END_MARKER);
+            out.flush();
+        }
+    }
+
+    /**
+     * Read a scene from a file
+     * @param path Snapshot file
+     * @return The scene, the feeding of the profile builder is finished
+     * @throws IOException If the file cannot be read or is not a valid snapshot
+     */
+    public static SceneWithEmission read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if(channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Scene snapshot larger than 2 GB is not supported: " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer);
+        }
+    }
+
+    /**
+     * Read a scene from a buffer
+     * @param buffer Snapshot content, read from its current position
+     * @return The scene, the feeding of the profile builder is finished
+     * @throws IOException If the buffer does not contain a valid snapshot
+     */
+    public static SceneWithEmission read(ByteBuffer buffer) throws IOException {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if(!Arrays.equals(MAGIC, magic)) {
+                throw new IOException("Not a scene snapshot");
+            }
+            int version = buffer.getInt();
+            if(version != VERSION) {
+                throw new IOException(String.format("Unsupported scene snapshot version %d, expected %d",
+                        version, VERSION));
+            }
+            SnapshotInput in = new SnapshotInput(buffer);
+            ProfileBuilder profileBuilder = new ProfileBuilder();
+            SceneWithEmission scene = new SceneWithEmission(profileBuilder, new SceneDatabaseInputSettings());
+            readSettings(scene, in);
+            readDirectivities(scene, in);
+            readProfileBuilder(profileBuilder, in);
+            readSources(scene, in);
+            readReceivers(scene, in);
+            if(buffer.getInt() != END_MARKER) {
+                throw new IOException("Corrupted scene snapshot");
+            }
+            return scene;
+        } catch (java.nio.BufferUnderflowException ex) {
+            throw new IOException("Truncated scene snapshot", ex);
+        }
+    }
+
+    private static void writeSettings(SceneWithEmission scene, SnapshotOutput out) throws IOException {
+        ProfileBuilder profileBuilder = scene.profileBuilder;
+        out.putInt(profileBuilder.frequencyArray.size());
+        for (int frequency : profileBuilder.frequencyArray) {
+            out.putInt(frequency);
+        }
+        out.putBoolean(profileBuilder.iszBuildings());
+        out.putInt(scene.reflexionOrder);
+        out.putDouble(scene.defaultGroundAttenuation);
+        out.putBoolean(scene.isBodyBarrier());
+        out.putBoolean(scene.computeHorizontalDiffraction);
+        out.putBoolean(scene.computeVerticalDiffraction);
+        out.putDouble(scene.maxSrcDist);
+        out.putDouble(scene.maxRefDist);
+        out.putDouble(scene.getSourceClusteringAngle());
+        SceneDatabaseInputSettings inputSettings = scene.sceneDatabaseInputSettings;
+        out.putInt(inputSettings.inputMode.ordinal());
+        out.putInt(inputSettings.coefficientVersion);
+        out.putString(inputSettings.frequencyFieldPrepend);
+        writeAttenuationParameters(scene.defaultCnossosParameters, out);
+        out.putInt(scene.cnossosParametersPerPeriod.size());
+        for (Map.Entry<String, AttenuationParameters> entry : scene.cnossosParametersPerPeriod.entrySet()) {
+            out.putString(entry.getKey());
+            writeAttenuationParameters(entry.getValue(), out);
+        }
+        out.putInt(scene.periodSet.size());
+        for (String period : scene.periodSet) {
+            out.putString(period);
+        }
+    }
+
+    private static void readSettings(SceneWithEmission scene, SnapshotInput in) throws IOException {
+        ProfileBuilder profileBuilder = scene.profileBuilder;
+        int frequencyCount = in.getInt();
+        List<Integer> frequencies = new ArrayList<>(frequencyCount);
+        for (int i = 0; i < frequencyCount; i++) {
+            frequencies.add(in.getInt());
+        }
+        profileBuilder.setFrequencyArray(frequencies);
+        profileBuilder.setzBuildings(in.getBoolean());
+        scene.reflexionOrder = in.getInt();
+        scene.defaultGroundAttenuation = in.getDouble();
+        scene.setBodyBarrier(in.getBoolean());
+        scene.computeHorizontalDiffraction = in.getBoolean();
+        scene.computeVerticalDiffraction = in.getBoolean();
+        scene.maxSrcDist = in.getDouble();
+        scene.maxRefDist = in.getDouble();
+        scene.setSourceClusteringAngle(in.getDouble());
+        SceneDatabaseInputSettings inputSettings = scene.sceneDatabaseInputSettings;
+        int inputMode = in.getInt();
+        SceneDatabaseInputSettings.INPUT_MODE[] inputModes = SceneDatabaseInputSettings.INPUT_MODE.values();
+        if(inputMode < 0 || inputMode >= inputModes.length) {
+            throw new IOException("Unknown input mode " + inputMode);
+        }
+        inputSettings.inputMode = inputModes[inputMode];
+        inputSettings.coefficientVersion = in.getInt();
+        inputSettings.frequencyFieldPrepend = in.getString();
+        scene.defaultCnossosParameters = readAttenuationParameters(in);
+        int periodParametersCount = in.getInt();
+        for (int i = 0; i < periodParametersCount; i++) {
+            String period = in.getString();
+            scene.cnossosParametersPerPeriod.put(period, readAttenuationParameters(in));
+        }
+        int periodCount = in.getInt();
+        for (int i = 0; i < periodCount; i++) {
+            scene.periodSet.add(in.getString());
+        }
+    }
+
+    private static void writeAttenuationParameters(AttenuationParameters parameters, SnapshotOutput out)
+            throws IOException {
+        List<Integer> frequencies = parameters.getFrequencies();
+        out.putInt(frequencies.size());
+        for (int frequency : frequencies) {
+            out.putInt(frequency);
+        }
+        out.putDouble(parameters.getTemperature());
+        out.putDouble(parameters.getHumidity());
+        out.putDouble(parameters.getPressure());
+        out.putDouble(parameters.getCelerity());
+        out.putDouble(parameters.getDefaultOccurrence());
+        out.putBoolean(parameters.isgDisc());
+        out.putBoolean(parameters.isPrime2520());
+        out.putDoubles(parameters.getWindRose());
+    }
+
+    private static AttenuationParameters readAttenuationParameters(SnapshotInput in) {
+        int frequencyCount = in.getInt();
+        List<Integer> frequencies = new ArrayList<>(frequencyCount);
+        for (int i = 0; i < frequencyCount; i++) {
+            frequencies.add(in.getInt());
+        }
+        AttenuationParameters parameters = new AttenuationParameters();
+        parameters.setFrequencies(frequencies);
+        double temperature = in.getDouble();
+        parameters.setHumidity(in.getDouble());
+        parameters.setPressure(in.getDouble());
+        parameters.setTemperature(temperature);
+        parameters.celerity = in.getDouble();
+        parameters.setDefaultOccurrence(in.getDouble());
+        parameters.setGDisc(in.getBoolean());
+        parameters.setPrime2520(in.getBoolean());
+        parameters.setWindRose(in.getDoubles());
+        return parameters;
+    }
+
+    private static void writeDirectivities(SceneWithEmission scene, SnapshotOutput out) throws IOException {
+        out.putInt(scene.directionAttributes.size());
+        for (Map.Entry<Integer, DirectivitySphere> entry : scene.directionAttributes.entrySet()) {
+            out.putInt(entry.getKey());
+            DirectivitySphere sphere = entry.getValue();
+            if(sphere instanceof OmnidirectionalDirection) {
+                out.putByte(DIRECTIVITY_OMNIDIRECTIONAL);
+            } else if(sphere instanceof DiscreteDirectivitySphere) {
+                DiscreteDirectivitySphere discreteSphere = (DiscreteDirectivitySphere) sphere;
+                out.putByte(DIRECTIVITY_DISCRETE);
+                out.putInt(discreteSphere.getDirectionIdentifier());
+                out.putInt(discreteSphere.getInterpolationMethod());
+                out.putDoubles(discreteSphere.getFrequencies());
+                List<DirectivityRecord> records = discreteSphere.getRecordsTheta();
+                out.putInt(records.size());
+                for (DirectivityRecord record : records) {
+                    out.putDouble(record.getTheta());
+                    out.putDouble(record.getPhi());
+                    out.putDoubles(record.getAttenuation());
+                }
+            } else if(sphere instanceof RailwayCnossosDirectivitySphere) {
+                LineSource lineSource = ((RailwayCnossosDirectivitySphere) sphere).getLineSource();
+                out.putByte(DIRECTIVITY_RAILWAY);
+                out.putString(lineSource.getTypeSource());
+                out.putDouble(lineSource.getSourceHeight());
+                out.putString(lineSource.getDirectivity());
+            } else {
+                throw new IllegalArgumentException("Directivity " + sphere.getClass().getName() +
+                        " cannot be stored in a scene snapshot");
+            }
+        }
+    }
+
+    private static void readDirectivities(SceneWithEmission scene, SnapshotInput in) throws IOException {
+        int directivityCount = in.getInt();
+        for (int i = 0; i < directivityCount; i++) {
+            int directivityIdentifier = in.getInt();
+            byte type = in.getByte();
+            DirectivitySphere sphere;
+            switch (type) {
+                case DIRECTIVITY_OMNIDIRECTIONAL:
+                    sphere = new OmnidirectionalDirection();
+                    break;
+                case DIRECTIVITY_DISCRETE:
+                    int directionIdentifier = in.getInt();
+                    int interpolationMethod = in.getInt();
+                    DiscreteDirectivitySphere discreteSphere = new DiscreteDirectivitySphere(directionIdentifier,
+                            in.getDoubles());
+                    discreteSphere.setInterpolationMethod(interpolationMethod);
+                    int recordCount = in.getInt();
+                    List<DirectivityRecord> records = new ArrayList<>(recordCount);
+                    for (int idRecord = 0; idRecord < recordCount; idRecord++) {
+                        double theta = in.getDouble();
+                        double phi = in.getDouble();
+                        records.add(new DirectivityRecord(theta, phi, in.getDoubles()));
+                    }
+                    discreteSphere.addDirectivityRecords(records);
+                    sphere = discreteSphere;
+                    break;
+                case DIRECTIVITY_RAILWAY:
+                    String typeSource = in.getString();
+                    LineSource lineSource = new LineSource(in.getDouble(), typeSource);
+                    lineSource.setDirectivity(in.getString());
+                    sphere = new RailwayCnossosDirectivitySphere(lineSource);
+                    break;
+                default:
+                    throw new IOException("Unknown directivity type " + type);
+            }
+            scene.directionAttributes.put(directivityIdentifier, sphere);
+        }
+    }
+
+    private static void writeProfileBuilder(ProfileBuilder profileBuilder, SnapshotOutput out) throws IOException {
+        List<Building> buildings = profileBuilder.getBuildings();
+        out.putInt(buildings.size());
+        for (Building building : buildings) {
+            out.putLong(building.getPrimaryKey());
+            out.putDouble(building.getHeight());
+            out.putDouble(building.getG());
+            out.putDoubleList(building.getAlphas());
+            out.putGeometry(building.getGeometry());
+        }
+        List<Wall> walls = profileBuilder.getWalls();
+        out.putInt(walls.size());
+        for (Wall wall : walls) {
+            out.putCoordinate(wall.p0);
+            out.putCoordinate(wall.p1);
+            out.putDouble(wall.getHeight());
+            out.putInt(wall.getOriginId());
+            out.putLong(wall.primaryKey);
+            out.putInt(wall.getType().ordinal());
+            out.putDouble(wall.getG());
+            out.putDoubleList(wall.getAlphas());
+        }
+        List<Coordinate> topographicPoints = profileBuilder.getTopographicPoints();
+        out.putInt(topographicPoints.size());
+        for (Coordinate point : topographicPoints) {
+            out.putCoordinate(point);
+        }
+        List<LineString> topographicLines = profileBuilder.getTopographicLines();
+        out.putInt(topographicLines.size());
+        for (LineString line : topographicLines) {
+            out.putGeometry(line);
+        }
+        List<GroundAbsorption> groundEffects = profileBuilder.getGroundEffects();
+        out.putInt(groundEffects.size());
+        for (GroundAbsorption groundEffect : groundEffects) {
+            out.putDouble(groundEffect.getCoefficient());
+            out.putGeometry(groundEffect.getGeometry());
+        }
+        GroundCoefficientRaster groundRaster = profileBuilder.getGroundRaster();
+        out.putBoolean(groundRaster != null);
+        if(groundRaster != null) {
+            Envelope envelope = groundRaster.getEnvelope();
+            out.putDouble(envelope.getMinX());
+            out.putDouble(envelope.getMaxX());
+            out.putDouble(envelope.getMinY());
+            out.putDouble(envelope.getMaxY());
+            out.putDouble(groundRaster.getCellSize());
+            out.putInt(groundRaster.getColumns());
+            out.putInt(groundRaster.getRows());
+            for (int row = 0; row < groundRaster.getRows(); row++) {
+                for (int column = 0; column < groundRaster.getColumns(); column++) {
+                    out.putFloat((float) groundRaster.getCellValue(column, row));
+                }
+            }
+        }
+    }
+
+    private static void readProfileBuilder(ProfileBuilder profileBuilder, SnapshotInput in) throws IOException {
+        boolean zBuildings = profileBuilder.iszBuildings();
+        int buildingCount = in.getInt();
+        for (int i = 0; i < buildingCount; i++) {
+            long primaryKey = in.getLong();
+            double height = in.getDouble();
+            double g = in.getDouble();
+            List<Double> alphas = in.getDoubleList();
+            Building building = new Building((Polygon) in.getGeometry(), height, g, primaryKey, zBuildings);
+            building.setAlpha(alphas);
+            profileBuilder.addBuilding(building);
+        }
+        int wallCount = in.getInt();
+        ProfileBuilder.IntersectionType[] intersectionTypes = ProfileBuilder.IntersectionType.values();
+        for (int i = 0; i < wallCount; i++) {
+            Coordinate p0 = in.getCoordinate();
+            Coordinate p1 = in.getCoordinate();
+            double height = in.getDouble();
+            int originId = in.getInt();
+            long primaryKey = in.getLong();
+            int type = in.getInt();
+            if(type < 0 || type >= intersectionTypes.length) {
+                throw new IOException("Unknown wall type " + type);
+            }
+            Wall wall = new Wall(p0, p1, originId, intersectionTypes[type]);
+            wall.setHeight(height);
+            wall.setPrimaryKey(primaryKey);
+            wall.setG(in.getDouble());
+            wall.setAlpha(in.getDoubleList());
+            profileBuilder.addWall(wall);
+        }
+        int topographicPointCount = in.getInt();
+        for (int i = 0; i < topographicPointCount; i++) {
+            profileBuilder.addTopographicPoint(in.getCoordinate());
+        }
+        int topographicLineCount = in.getInt();
+        for (int i = 0; i < topographicLineCount; i++) {
+            profileBuilder.addTopographicLine((LineString) in.getGeometry());
+        }
+        int groundEffectCount = in.getInt();
+        for (int i = 0; i < groundEffectCount; i++) {
+            double coefficient = in.getDouble();
+            profileBuilder.addGroundEffect(in.getGeometry(), coefficient);
+        }
+        if(in.getBoolean()) {
+            double minX = in.getDouble();
+            double maxX = in.getDouble();
+            double minY = in.getDouble();
+            double maxY = in.getDouble();
+            double cellSize = in.getDouble();
+            int columns = in.getInt();
+            int rows = in.getInt();
+            GroundCoefficientRaster groundRaster = new GroundCoefficientRaster(new Envelope(minX, maxX, minY, maxY),
+                    cellSize);
+            if(groundRaster.getColumns() != columns || groundRaster.getRows() != rows) {
+                throw new IOException("Ground coefficient grid size mismatch");
+            }
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < columns; column++) {
+                    float value = in.getFloat();
+                    if(!Float.isNaN(value)) {
+                        groundRaster.setCellValue(column, row, value);
+                    }
+                }
+            }
+            profileBuilder.setGroundRaster(groundRaster);
+        }
+        profileBuilder.finishFeeding();
+    }
+
+    private static void writeSources(SceneWithEmission scene, SnapshotOutput out) throws IOException {
+        int sourceCount = scene.sourceGeometries.size();
+        out.putInt(sourceCount);
+        for (int i = 0; i < sourceCount; i++) {
+            long primaryKey = scene.sourcesPk.isEmpty() ? i : scene.sourcesPk.get(i);
+            out.putLong(primaryKey);
+            out.putGeometry(scene.sourceGeometries.get(i));
+            Orientation orientation = scene.sourceOrientation.get(primaryKey);
+            out.putBoolean(orientation != null);
+            if(orientation != null) {
+                out.putDouble(orientation.yaw);
+                out.putDouble(orientation.pitch);
+                out.putDouble(orientation.roll);
+            }
+            Double gs = scene.sourceGs.get(primaryKey);
+            out.putBoolean(gs != null);
+            if(gs != null) {
+                out.putDouble(gs);
+            }
+            Integer directivity = scene.sourceEmissionAttenuation.get(primaryKey);
+            out.putBoolean(directivity != null);
+            if(directivity != null) {
+                out.putInt(directivity);
+            }
+            List<SceneWithEmission.PeriodEmission> emissions = scene.wjSources.get(primaryKey);
+            if(emissions == null) {
+                out.putInt(0);
+            } else {
+                out.putInt(emissions.size());
+                for (SceneWithEmission.PeriodEmission emission : emissions) {
+                    out.putString(emission.period);
+                    out.putDoubles(emission.emission);
+                }
+            }
+        }
+    }
+
+    private static void readSources(SceneWithEmission scene, SnapshotInput in) throws IOException {
+        int sourceCount = in.getInt();
+        for (int i = 0; i < sourceCount; i++) {
+            long primaryKey = in.getLong();
+            scene.addSource(primaryKey, in.getGeometry());
+            if(in.getBoolean()) {
+                Orientation orientation = new Orientation();
+                orientation.yaw = in.getDouble();
+                orientation.pitch = in.getDouble();
+                orientation.roll = in.getDouble();
+                scene.sourceOrientation.put(primaryKey, orientation);
+            }
+            if(in.getBoolean()) {
+                scene.sourceGs.put(primaryKey, in.getDouble());
+            }
+            if(in.getBoolean()) {
+                scene.sourceEmissionAttenuation.put(primaryKey, in.getInt());
+            }
+            int emissionCount = in.getInt();
+            for (int idEmission = 0; idEmission < emissionCount; idEmission++) {
+                String period = in.getString();
+                scene.addSourceEmission(primaryKey, period, in.getDoubles());
+            }
+        }
+    }
+
+    private static void writeReceivers(SceneWithEmission scene, SnapshotOutput out) throws IOException {
+        int receiverCount = scene.receivers.size();
+        out.putInt(receiverCount);
+        boolean hasPrimaryKeys = scene.receiversPk.size() == receiverCount;
+        out.putBoolean(hasPrimaryKeys);
+        for (int i = 0; i < receiverCount; i++) {
+            if(hasPrimaryKeys) {
+                out.putLong(scene.receiversPk.get(i));
+            }
+            out.putCoordinate(scene.receivers.get(i));
+        }
+    }
+
+    private static void readReceivers(SceneWithEmission scene, SnapshotInput in) {
+        int receiverCount = in.getInt();
+        boolean hasPrimaryKeys = in.getBoolean();
+        for (int i = 0; i < receiverCount; i++) {
+            if(hasPrimaryKeys) {
+                long primaryKey = in.getLong();
+                scene.addReceiver(primaryKey, in.getCoordinate());
+            } else {
+                scene.addReceiver(in.getCoordinate());
+            }
+        }
+    }
+
+    /**
+     * Buffered little endian writer on a file channel
+     */
+    private static final class SnapshotOutput {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private final WKBWriter wkbWriter = new WKBWriter(3, ByteOrderValues.LITTLE_ENDIAN, true);
+
+        SnapshotOutput(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void ensureRemaining(int length) throws IOException {
+            if(buffer.remaining() < length) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        void putByte(byte value) throws IOException {
+            ensureRemaining(Byte.BYTES);
+            buffer.put(value);
+        }
+
+        void putBoolean(boolean value) throws IOException {
+            putByte(value ? (byte) 1 : (byte) 0);
+        }
+
+        void putInt(int value) throws IOException {
+            ensureRemaining(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensureRemaining(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        void putFloat(float value) throws IOException {
+            ensureRemaining(Float.BYTES);
+            buffer.putFloat(value);
+        }
+
+        void putDouble(double value) throws IOException {
+            ensureRemaining(Double.BYTES);
+            buffer.putDouble(value);
+        }
+
+        void putBytes(byte[] value) throws IOException {
+            int offset = 0;
+            while (offset < value.length) {
+                if(!buffer.hasRemaining()) {
+                    flush();
+                }
+                int length = Math.min(buffer.remaining(), value.length - offset);
+                buffer.put(value, offset, length);
+                offset += length;
+            }
+        }
+
+        void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            putBytes(bytes);
+        }
+
+        void putDoubles(double[] values) throws IOException {
+            putInt(values.length);
+            for (double value : values) {
+                putDouble(value);
+            }
+        }
+
+        void putDoubleList(List<Double> values) throws IOException {
+            putInt(values.size());
+            for (double value : values) {
+                putDouble(value);
+            }
+        }
+
+        void putCoordinate(Coordinate coordinate) throws IOException {
+            putDouble(coordinate.x);
+            putDouble(coordinate.y);
+            putDouble(coordinate.getZ());
+        }
+
+        void putGeometry(Geometry geometry) throws IOException {
+            byte[] wkb = wkbWriter.write(geometry);
+            putInt(wkb.length);
+            putBytes(wkb);
+        }
+    }
+
+    /**
+     * Little endian reader on a buffer
+     */
+    private static final class SnapshotInput {
+        private final ByteBuffer buffer;
+        private final WKBReader wkbReader = new WKBReader(new GeometryFactory());
+
+        SnapshotInput(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        byte getByte() {
+            return buffer.get();
+        }
+
+        boolean getBoolean() {
+            return buffer.get() != 0;
+        }
+
+        int getInt() {
+            return buffer.getInt();
+        }
+
+        long getLong() {
+            return buffer.getLong();
+        }
+
+        float getFloat() {
+            return buffer.getFloat();
+        }
+
+        double getDouble() {
+            return buffer.getDouble();
+        }
+
+        String getString() {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        double[] getDoubles() {
+            double[] values = new double[buffer.getInt()];
+            buffer.asDoubleBuffer().get(values);
+            buffer.position(buffer.position() + values.length * Double.BYTES);
+            return values;
+        }
+
+        List<Double> getDoubleList() {
+            int length = buffer.getInt();
+            List<Double> values = new ArrayList<>(length);
+            for (int i = 0; i < length; i++) {
+                values.add(buffer.getDouble());
+            }
+            return values;
+        }
+
+        Coordinate getCoordinate() {
+            double x = buffer.getDouble();
+            double y = buffer.getDouble();
+            return new Coordinate(x, y, buffer.getDouble());
+        }
+
+        Geometry getGeometry() throws IOException {
+            byte[] wkb = new byte[buffer.getInt()];
+            buffer.get(wkb);
+            try {
+                return wkbReader.read(wkb);
+            } catch (ParseException ex) {
+                throw new IOException(ex);
+            }
+        }
+    }
+}
@@ -32,6 +32,12 @@ public class SceneWithEmission extends SceneWithAttenuation {
     //  For each source primary key give the map between period and source power spectrum values
     public Map<Long, ArrayList<PeriodEmission>> wjSources = new HashMap<>();
 
+    /** Periods of the source emissions, the index of a period is {@link PeriodEmission#periodIndex} */
+    public List<String> emissionPeriods = new ArrayList<>();
+
+    /** Period name to index in emissionPeriods */
+    Map<String, Integer> emissionPeriodIndex = new HashMap<>();
+
     public SceneDatabaseInputSettings sceneDatabaseInputSettings = new SceneDatabaseInputSettings();
 
     public SceneWithEmission(ProfileBuilder profileBuilder, SceneDatabaseInputSettings sceneDatabaseInputSettings) {
@@ -154,7 +160,13 @@ public class SceneWithEmission extends SceneWithAttenuation {
             sourceEmissions = new ArrayList<>();
             wjSources.put(sourcePrimaryKey, sourceEmissions);
         }
-        sourceEmissions.add(new PeriodEmission(period, wj));
+        Integer periodIndex = emissionPeriodIndex.get(period);
+        if(periodIndex == null) {
+            periodIndex = emissionPeriods.size();
+            emissionPeriods.add(period);
+            emissionPeriodIndex.put(period, periodIndex);
+        }
+        sourceEmissions.add(new PeriodEmission(period, periodIndex, wj));
         if(!period.isEmpty()) {
             periodSet.add(period);
         }
@@ -165,14 +177,19 @@ public class SceneWithEmission extends SceneWithAttenuation {
         super.clearSources();
         sourceEmissionFieldsCache.clear();
         wjSources.clear();
+        emissionPeriods.clear();
+        emissionPeriodIndex.clear();
     }
 
     public static class PeriodEmission {
         public final String period;
+        /** Index of the period in {@link SceneWithEmission#emissionPeriods} */
+        public final int periodIndex;
         public final double[] emission;
 
-        public PeriodEmission(String period, double[] emission) {
+        public PeriodEmission(String period, int periodIndex, double[] emission) {
             this.period = period;
+            this.periodIndex = periodIndex;
             this.emission = emission;
         }
     }
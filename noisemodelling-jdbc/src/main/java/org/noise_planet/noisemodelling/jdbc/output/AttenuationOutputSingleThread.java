@@ -10,22 +10,22 @@
 package org.noise_planet.noisemodelling.jdbc.output;
 
 import org.h2gis.api.ProgressVisitor;
-import org.locationtech.jts.geom.Coordinate;
 import org.noise_planet.noisemodelling.jdbc.EmissionTableGenerator;
 import org.noise_planet.noisemodelling.jdbc.NoiseMapDatabaseParameters;
 import org.noise_planet.noisemodelling.jdbc.input.SceneDatabaseInputSettings;
 import org.noise_planet.noisemodelling.jdbc.input.SceneWithEmission;
 import org.noise_planet.noisemodelling.pathfinder.CutPlaneVisitor;
 import org.noise_planet.noisemodelling.pathfinder.PathFinder;
-import org.noise_planet.noisemodelling.pathfinder.profilebuilder.CutPointReceiver;
 import org.noise_planet.noisemodelling.pathfinder.profilebuilder.CutPointSource;
 import org.noise_planet.noisemodelling.pathfinder.profilebuilder.CutProfile;
+import org.noise_planet.noisemodelling.pathfinder.profilebuilder.ReceiverHorizon;
 import org.noise_planet.noisemodelling.propagation.AttenuationParameters;
 import org.noise_planet.noisemodelling.propagation.ReceiverNoiseLevel;
 import org.noise_planet.noisemodelling.propagation.cnossos.AttenuationCnossos;
 import org.noise_planet.noisemodelling.propagation.cnossos.CnossosPath;
 import org.noise_planet.noisemodelling.pathfinder.utils.AcousticIndicatorsFunctions;
 import org.noise_planet.noisemodelling.propagation.cnossos.CnossosPathBuilder;
+import org.noise_planet.noisemodelling.pathfinder.utils.profiler.StageMetric;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedDeque;
@@ -41,32 +41,150 @@ import static org.noise_planet.noisemodelling.pathfinder.utils.AcousticIndicator
  * for exporting result values in a thread safe way. It processes the receiver one at a time.
  */
 public class AttenuationOutputSingleThread implements CutPlaneVisitor {
-    private static final int UNKNOWN_SOURCE_ID = -1;
     AttenuationOutputMultiThread multiThread;
     NoiseMapDatabaseParameters dbSettings;
     public List<CnossosPath> cnossosPaths = new ArrayList<>();
 
     /**
-     * Collected attenuation/noise level on the current receiver
+     * Collected attenuation/noise level on the current receiver, a single entry if the sources are merged or one
+     * entry per source
      */
-    Map<Integer, TimePeriodParameters> receiverAttenuationList = new HashMap<>();
+    List<TimePeriodParameters> receiverAttenuationList = new ArrayList<>();
+
+    /**
+     * Entry of receiverAttenuationList of each source index, only used if the sources are not merged. The sources of
+     * the scene are indexed from 0, the entries of the current receiver are reset in finalizeReceiver
+     */
+    TimePeriodParameters[] sourceAttenuation = new TimePeriodParameters[0];
+
+    /**
+     * Output period names, the index of a period is the index of its levels in {@link TimePeriodParameters}
+     */
+    List<String> outputPeriods = new ArrayList<>();
+
+    /**
+     * Output period name to index in outputPeriods, only used to initialize the output periods
+     */
+    Map<String, Integer> outputPeriodIndex = new HashMap<>();
+
+    /**
+     * Number of periods of the scene, they are the first output periods
+     */
+    int scenePeriodCount = 0;
+
+    /**
+     * Output period index of each period of the source emissions {@link SceneWithEmission#emissionPeriods}
+     */
+    int[] emissionOutputPeriodIndex = new int[0];
+
+    /**
+     * Attenuation parameters of each period of the source emissions, null to use the default parameters
+     */
+    AttenuationParameters[] emissionPeriodParameters = new AttenuationParameters[0];
+
+    /**
+     * Periods with specific attenuation parameters, used when the scene has no source emission
+     */
+    String[] attenuationPeriods = new String[0];
+
+    /**
+     * Attenuation parameters of each period of attenuationPeriods
+     */
+    AttenuationParameters[] attenuationPeriodParameters = new AttenuationParameters[0];
+
+    /**
+     * Output period index of each period of attenuationPeriods
+     */
+    int[] attenuationOutputPeriodIndex = new int[0];
+
+    /**
+     * Output period index of the attenuation computed with the default parameters when the scene has no source
+     * emission and no period parameters, -1 otherwise
+     */
+    int defaultOutputPeriodIndex = -1;
+
+    /**
+     * The first expectedPeriodCount output periods (the scene periods and DEN) are pushed for every receiver when
+     * the sources are merged. -1 if the output periods are not initialized yet
+     */
+    int expectedPeriodCount = -1;
+
+    /**
+     * Output period index of DEN, -1 if Lden is not computed
+     */
+    int denPeriodIndex = -1;
+
+    /**
+     * Output period index of each {@link EmissionTableGenerator.STANDARD_PERIOD}
+     */
+    int[] standardPeriodIndex = new int[0];
+
+    /**
+     * Output periods pushed for the current receiver
+     */
+    boolean[] collectedPeriods = new boolean[0];
+
+    /**
+     * MaxError DB Processing variable
+     * Current power at receiver for each scene period (output period index), only used to stop looking for far
+     * sources
+     */
+    double[] wjAtReceiver = new double[0];
+
+    /**
+     * MaxError DB Processing variable
+     * Sources of the current receiver, in processing order
+     */
+    List<PathFinder.SourcePointInfo> expectedSources = Collections.emptyList();
+
+    /**
+     * MaxError DB Processing variable
+     * Rank in expectedSources of the first source point of each source index (a line source has several points), -1
+     * if the source is not in expectedSources
+     */
+    int[] firstSourceRank = new int[0];
+
+    /**
+     * MaxError DB Processing variable
+     * Next rank in expectedSources of a source point with the same source index, -1 for the last one
+     */
+    int[] nextSourceRank = new int[0];
+
+    /**
+     * MaxError DB Processing variable
+     * Favourable free field power at receiver of the sources not processed yet.
+     * Suffix sums, index is sourceRank * periodCount + periodIndex: the value is the power of the sources from
+     * sourceRank to the end of expectedSources.
+     */
+    double[] maximumWjExpectedSplAtReceiver = new double[0];
+
+    /**
+     * MaxError DB Processing variable
+     * Rank in expectedSources of the source being processed
+     */
+    int currentSourceRank = 0;
 
     /**
      * MaxError DB Processing variable
-     * Current, power at receiver, only used to stop looking for far sources
+     * Power at receiver of the source being processed, all periods and all paths (direct, diffraction, reflections)
      */
-    Map<String, Double> wjAtReceiver = new HashMap<>();
+    double currentSourcePower = 0;
 
     /**
      * MaxError DB Processing variable
-     * Favourable Free Field cumulated global power at receiver, only used to stop looking for far sources
-     * Key source index
-     * Value maximum expected noise level in w
+     * Highest ratio between the computed power of a source and its fast evaluation. The fast evaluation only covers
+     * the direct path, so reflections and lateral diffractions may exceed it. The remaining expected power is scaled
+     * by this ratio.
      */
-    Map<String, HashMap<Coordinate, Double>> maximumWjExpectedSplAtReceiver = new HashMap<>();
+    double expectedPowerRatio = 1;
 
     public AtomicInteger cutProfileCount = new AtomicInteger(0);
 
+    /**
+     * A-weighting of each frequency band, for the global levels of the pushed receiver levels
+     */
+    double[] aWeightingArray = new double[0];
+
     ProgressVisitor progressVisitor;
 
     /**
@@ -85,7 +203,7 @@ public class AttenuationOutputSingleThread implements CutPlaneVisitor {
      * @param sourceInfo
      * @param receiverInfo
      * @param cnossosParameters
-     * @return Attenuation in dB
+     * @return Attenuation in W
      */
     private static double[] computeFastAttenuation(PathFinder.SourcePointInfo sourceInfo,
                                                    PathFinder.ReceiverPointInfo receiverInfo, AttenuationParameters cnossosParameters) {
@@ -94,9 +212,44 @@ public class AttenuationOutputSingleThread implements CutPlaneVisitor {
         double distance = Math.max(1.0, sourceInfo.position.distance3D(receiverInfo.position));
         // 3 dB gain as we consider source G path is equal to 0
         double attenuationDivGeom = AttenuationCnossos.getADiv(distance) - 3;
-        return AcousticIndicatorsFunctions.multiplicationArray(AcousticIndicatorsFunctions.sumArray(
-                    AttenuationCnossos.aAtm(cnossosParameters.getAlpha_atmo(), distance),
-                    attenuationDivGeom), -1);
+        // aAtm returns a new array, so the following operations are done in place
+        double[] attenuation = AttenuationCnossos.aAtm(cnossosParameters.getAlpha_atmo(), distance);
+        AcousticIndicatorsFunctions.sumArray(attenuation, attenuationDivGeom, attenuation);
+        AcousticIndicatorsFunctions.multiplicationArray(attenuation, -1, attenuation);
+        return AcousticIndicatorsFunctions.fastDBToW(attenuation, attenuation);
+    }
+
+    /**
+     * Lower the fast attenuation of a source shadowed by the enclosure around the receiver.
+     * The diffraction attenuation is evaluated with the lower bound of the path difference at each frequency, minus
+     * 3 dB for the ground gain on both sides of the diffraction edge and 10*log10(3) for the sum of the vertical and
+     * lateral paths.
+     * @param attenuation Fast attenuation in W, updated in place
+     * @param horizon Obstacle horizon around the receiver
+     * @param sourceInfo Source
+     * @param receiverInfo Receiver
+     * @param cnossosParameters Frequencies and sound celerity
+     */
+    private static void applyHorizonAttenuation(double[] attenuation, ReceiverHorizon horizon,
+                                                PathFinder.SourcePointInfo sourceInfo,
+                                                PathFinder.ReceiverPointInfo receiverInfo,
+                                                AttenuationParameters cnossosParameters) {
+        double distance = sourceInfo.position.distance3D(receiverInfo.position);
+        // favourable rays are curved with a radius of max(1000, 8d), reduce the angle by the deviation of the chord
+        double curvatureAngle = 2 * Math.asin(Math.min(1, distance / (2 * Math.max(1000, 8 * distance))));
+        double delta = horizon.getMinimumPathDifference(sourceInfo.position, curvatureAngle);
+        if(delta <= 0) {
+            return;
+        }
+        List<Integer> frequencies = cnossosParameters.getFrequencies();
+        double margin = 3 + 10 * Math.log10(3);
+        for (int idFrequency = 0; idFrequency < attenuation.length && idFrequency < frequencies.size(); idFrequency++) {
+            double lambda = cnossosParameters.getCelerity() / frequencies.get(idFrequency);
+            double deltaDif = Math.min(25, 10 * Math.log10(3 + 40 / lambda * delta));
+            if(deltaDif > margin) {
+                attenuation[idFrequency] *= dBToW(-(deltaDif - margin));
+            }
+        }
     }
 
     private double[] processAndStoreAttenuation(AttenuationParameters data, CnossosPath proPathParameters, String period) {
@@ -112,25 +265,102 @@ public class AttenuationOutputSingleThread implements CutPlaneVisitor {
     }
 
     /**
-     * Update internal map with new attenuation
-     * @param noiseLevel
+     * Register the scene periods, then DEN if Lden is computed, as the first output periods. The output period index
+     * of the source emissions and period parameters are resolved here, so that the paths are processed without
+     * looking up the period names.
      */
-    private void processNoiseLevel(ReceiverNoiseLevel noiseLevel) {
-        int keyToUpdate = UNKNOWN_SOURCE_ID;
-        if(!dbSettings.isMergeSources()) {
-            keyToUpdate = noiseLevel.source.sourceIndex;
+    private void initializeOutputPeriods() {
+        if(expectedPeriodCount >= 0) {
+            return;
+        }
+        final SceneWithEmission scene = multiThread.sceneWithEmission;
+        for (String period : scene.periodSet) {
+            getOutputPeriodIndex(period);
+        }
+        scenePeriodCount = outputPeriods.size();
+        if(isComputeLden()) {
+            denPeriodIndex = getOutputPeriodIndex(EmissionTableGenerator.DEN_PERIOD);
+        }
+        expectedPeriodCount = outputPeriods.size();
+        if(denPeriodIndex >= 0) {
+            standardPeriodIndex = new int[EmissionTableGenerator.STANDARD_PERIOD.values().length];
+            for (EmissionTableGenerator.STANDARD_PERIOD period : EmissionTableGenerator.STANDARD_PERIOD.values()) {
+                standardPeriodIndex[period.ordinal()] = getOutputPeriodIndex(
+                        EmissionTableGenerator.STANDARD_PERIOD_VALUE[period.ordinal()]);
+            }
+        }
+        int emissionPeriodCount = scene.emissionPeriods.size();
+        emissionOutputPeriodIndex = new int[emissionPeriodCount];
+        emissionPeriodParameters = new AttenuationParameters[emissionPeriodCount];
+        for (int idPeriod = 0; idPeriod < emissionPeriodCount; idPeriod++) {
+            String period = scene.emissionPeriods.get(idPeriod);
+            emissionOutputPeriodIndex[idPeriod] = getOutputPeriodIndex(period);
+            emissionPeriodParameters[idPeriod] = scene.cnossosParametersPerPeriod.get(period);
+        }
+        if(scene.wjSources.isEmpty()) {
+            int periodCount = scene.cnossosParametersPerPeriod.size();
+            attenuationPeriods = new String[periodCount];
+            attenuationPeriodParameters = new AttenuationParameters[periodCount];
+            attenuationOutputPeriodIndex = new int[periodCount];
+            int idPeriod = 0;
+            for (Map.Entry<String, AttenuationParameters> entry : scene.cnossosParametersPerPeriod.entrySet()) {
+                attenuationPeriods[idPeriod] = entry.getKey();
+                attenuationPeriodParameters[idPeriod] = entry.getValue();
+                attenuationOutputPeriodIndex[idPeriod] = getOutputPeriodIndex(entry.getKey());
+                idPeriod++;
+            }
+            if(periodCount == 0) {
+                defaultOutputPeriodIndex = getOutputPeriodIndex("");
+            }
         }
-        TimePeriodParameters periodParameters = new TimePeriodParameters(
-                dbSettings.isMergeSources() ? new PathFinder.SourcePointInfo() : noiseLevel.source,
-                noiseLevel.period, noiseLevel.levels);
+    }
 
-        receiverAttenuationList.merge(keyToUpdate, periodParameters,
-                TimePeriodParameters::update);
+    /**
+     * @param period Period name
+     * @return Index of the period in the output periods, the period is registered if not known yet
+     */
+    private int getOutputPeriodIndex(String period) {
+        Integer index = outputPeriodIndex.get(period);
+        if(index == null) {
+            index = outputPeriods.size();
+            outputPeriods.add(period);
+            outputPeriodIndex.put(period, index);
+        }
+        return index;
+    }
+
+    /**
+     * Add the power of a path to the levels collected on the current receiver
+     * @param source Source of the path
+     * @param idPeriod Output period index
+     * @param levels Power (W) of each frequency band
+     */
+    private void processNoiseLevel(CutPointSource source, int idPeriod, double[] levels) {
+        TimePeriodParameters periodParameters;
+        if(dbSettings.isMergeSources()) {
+            if(receiverAttenuationList.isEmpty()) {
+                receiverAttenuationList.add(new TimePeriodParameters(new PathFinder.SourcePointInfo()));
+            }
+            periodParameters = receiverAttenuationList.get(0);
+        } else {
+            if(source.id >= sourceAttenuation.length) {
+                sourceAttenuation = Arrays.copyOf(sourceAttenuation, Math.max(source.id + 1,
+                        multiThread.sceneWithEmission.sourceGeometries.size()));
+            }
+            periodParameters = sourceAttenuation[source.id];
+            if(periodParameters == null) {
+                periodParameters = new TimePeriodParameters(new PathFinder.SourcePointInfo(source));
+                sourceAttenuation[source.id] = periodParameters;
+                receiverAttenuationList.add(periodParameters);
+            }
+        }
+        periodParameters.add(idPeriod, levels);
     }
 
     @Override
     public PathSearchStrategy onNewCutPlane(CutProfile cutProfile) {
         cutProfileCount.addAndGet(1);
+        initializeOutputPeriods();
         PathSearchStrategy strategy = PathSearchStrategy.CONTINUE;
         final SceneWithEmission scene = multiThread.sceneWithEmission;
         List<CnossosPath> cnossosPaths = CnossosPathBuilder.computeCnossosPathsFromCutProfile(cutProfile, scene.isBodyBarrier(),
@@ -138,9 +368,9 @@ public class AttenuationOutputSingleThread implements CutPlaneVisitor {
         for (CnossosPath cnossosPath : cnossosPaths) {
             multiThread.cnossosPathCount.addAndGet(1);
             CutPointSource source = cutProfile.getSource();
-            CutPointReceiver receiver = cutProfile.getReceiver();
 
             long sourcePk = source.sourcePk == -1 ? source.id : source.sourcePk;
+            double pathPower = 0;
 
             // export path if required
             if(multiThread.noiseMapDatabaseParameters.exportRaysMethod == NoiseMapDatabaseParameters.ExportRaysMethods
@@ -151,37 +381,28 @@ public class AttenuationOutputSingleThread implements CutPlaneVisitor {
             }
             if(scene.wjSources.isEmpty()) {
                 // No emission push only attenuation for each period
-                if(!scene.cnossosParametersPerPeriod.isEmpty()) {
-                    for (Map.Entry<String, AttenuationParameters> cnossosParametersEntry :
-                            scene.cnossosParametersPerPeriod.entrySet()) {
-                        double[] attenuation = dBToW(processAndStoreAttenuation(cnossosParametersEntry.getValue(),
-                                cnossosPath, cnossosParametersEntry.getKey()));
-                        ReceiverNoiseLevel receiverNoiseLevel =
-                                new ReceiverNoiseLevel(new PathFinder.SourcePointInfo(source),
-                                        new PathFinder.ReceiverPointInfo(receiver), cnossosParametersEntry.getKey(),
-                                        attenuation);
-                        processNoiseLevel(receiverNoiseLevel);
+                if(attenuationPeriods.length > 0) {
+                    for (int idPeriod = 0; idPeriod < attenuationPeriods.length; idPeriod++) {
+                        double[] attenuation = dBToW(processAndStoreAttenuation(attenuationPeriodParameters[idPeriod],
+                                cnossosPath, attenuationPeriods[idPeriod]));
+                        processNoiseLevel(source, attenuationOutputPeriodIndex[idPeriod], attenuation);
                     }
                 } else {
                     double[] attenuation = dBToW(processAndStoreAttenuation(scene.defaultCnossosParameters, cnossosPath, ""));
-                    ReceiverNoiseLevel receiverNoiseLevel =
-                            new ReceiverNoiseLevel(new PathFinder.SourcePointInfo(source),
-                                    new PathFinder.ReceiverPointInfo(receiver), "",
-                                    attenuation);
-                    processNoiseLevel(receiverNoiseLevel);
+                    processNoiseLevel(source, defaultOutputPeriodIndex, attenuation);
                 }
             } else {
                 // Apply period attenuation to emission for each time period covered by the source emission
                 double[] defaultAttenuation = new double[0];
-                if(scene.wjSources.containsKey(sourcePk)) {
-                    ArrayList<SceneWithEmission.PeriodEmission> emissions = scene.wjSources.get(sourcePk);
+                ArrayList<SceneWithEmission.PeriodEmission> emissions = scene.wjSources.get(sourcePk);
+                if(emissions != null) {
                     for (SceneWithEmission.PeriodEmission periodEmission : emissions) {
                         String period = periodEmission.period;
                         double [] attenuation = new double[0];
                         // look for specific atmospheric settings for this period
-                        if(scene.cnossosParametersPerPeriod.containsKey(period)) {
-                            attenuation = dBToW(processAndStoreAttenuation(scene.cnossosParametersPerPeriod.get(period),
-                                    cnossosPath, period));
+                        AttenuationParameters periodParameters = emissionPeriodParameters[periodEmission.periodIndex];
+                        if(periodParameters != null) {
+                            attenuation = dBToW(processAndStoreAttenuation(periodParameters, cnossosPath, period));
                         } else {
                             if(defaultAttenuation.length == 0) {
                                 // None ? ok fallback to default settings
@@ -191,94 +412,234 @@ public class AttenuationOutputSingleThread implements CutPlaneVisitor {
                             attenuation = defaultAttenuation;
                         }
                         double[] levels = multiplicationArray(attenuation, periodEmission.emission);
-                        ReceiverNoiseLevel receiverNoiseLevel =
-                                new ReceiverNoiseLevel(new PathFinder.SourcePointInfo(source),
-                                        new PathFinder.ReceiverPointInfo(receiver), period, levels);
-                        processNoiseLevel(receiverNoiseLevel);
+                        int idPeriod = emissionOutputPeriodIndex[periodEmission.periodIndex];
+                        processNoiseLevel(source, idPeriod, levels);
                         if(dbSettings.maximumError > 0) {
-                            double powerSum = sumArray(levels);
-                            wjAtReceiver.merge(period, powerSum, Double::sum);
+                            if(idPeriod < wjAtReceiver.length) {
+                                double levelsPower = sumArray(levels);
+                                wjAtReceiver[idPeriod] += levelsPower;
+                                pathPower += levelsPower;
+                            }
                         }
                     }
                 }
-            }
-            if(dbSettings.maximumError > 0 && scene.wjSources.containsKey(sourcePk)) {
-                boolean keepRunning = false;
-                // update remaining expected max power for each source periods
-                ArrayList<SceneWithEmission.PeriodEmission> emissions = scene.wjSources.get(sourcePk);
-                for (SceneWithEmission.PeriodEmission periodEmission : emissions) {
-                    final String period = periodEmission.period;
-                    // replace unknown value (evaluated on startReceiver) of expected power for this source point
-                    if (maximumWjExpectedSplAtReceiver.containsKey(period)) {
-                        maximumWjExpectedSplAtReceiver.get(period).remove(source.coordinate);
-                        if (maximumWjExpectedSplAtReceiver.get(period).isEmpty()) {
-                            // no remaining power at this period
-                            maximumWjExpectedSplAtReceiver.remove(period);
-                        }
+                if(dbSettings.maximumError > 0 && emissions != null) {
+                    if(isBelowMaximumError(source, pathPower)) {
+                        strategy = PathSearchStrategy.PROCESS_SOURCE_BUT_SKIP_RECEIVER;
                     }
                 }
-                for (Map.Entry<String, Double> entry : wjAtReceiver.entrySet()) {
-                    final String period = entry.getKey();
-                    final double levelAtReceiver = entry.getValue();
+            }
+        }
+        return strategy;
+    }
 
-                    if(!maximumWjExpectedSplAtReceiver.containsKey(period)) {
-                        // nothing to evaluate here, as there is no expected further power for this period
-                        continue;
-                    }
+    /**
+     * Evaluate if the power of the remaining sources could change the level at receiver by more than maximumError
+     * @param source Source being processed
+     * @param pathPower Power at receiver of the last processed path, all periods
+     * @return True if the remaining sources can be skipped
+     */
+    private boolean isBelowMaximumError(CutPointSource source, double pathPower) {
+        // All the sources before the current one are processed. Only the points of the same source are compared,
+        // as several sources may share a position
+        int firstRank = source.id >= 0 && source.id < firstSourceRank.length ? firstSourceRank[source.id] : -1;
+        for (int rank = firstRank; rank >= 0; rank = nextSourceRank[rank]) {
+            if (rank >= currentSourceRank && expectedSources.get(rank).position.equals2D(source.coordinate)) {
+                if(rank != currentSourceRank) {
+                    currentSourceRank = rank;
+                    currentSourcePower = 0;
+                }
+                break;
+            }
+        }
+        int periodCount = wjAtReceiver.length;
+        int sourceOffset = Math.min(currentSourceRank, expectedSources.size()) * periodCount;
+        int remainingOffset = Math.min(currentSourceRank + 1, expectedSources.size()) * periodCount;
+        // Compare the computed power of this source with the fast evaluation
+        currentSourcePower += pathPower;
+        double sourceExpectedPower = 0;
+        for (int idPeriod = 0; idPeriod < periodCount && remainingOffset + idPeriod <
+                maximumWjExpectedSplAtReceiver.length; idPeriod++) {
+            sourceExpectedPower += maximumWjExpectedSplAtReceiver[sourceOffset + idPeriod] -
+                    maximumWjExpectedSplAtReceiver[remainingOffset + idPeriod];
+        }
+        if(sourceExpectedPower > 0) {
+            expectedPowerRatio = Math.max(expectedPowerRatio, currentSourcePower / sourceExpectedPower);
+        }
+        for (int idPeriod = 0; idPeriod < periodCount; idPeriod++) {
+            // Evaluate the current noise level at receiver compared to the final
+            // expected noise level at the receiver
+            double nonProcessedPower = remainingOffset + idPeriod < maximumWjExpectedSplAtReceiver.length ?
+                    maximumWjExpectedSplAtReceiver[remainingOffset + idPeriod] : 0;
+            if(nonProcessedPower <= 0) {
+                // nothing to evaluate here, as there is no expected further power for this period
+                continue;
+            }
+            // The fast evaluation does not cover reflections and lateral diffractions
+            nonProcessedPower *= expectedPowerRatio;
+            final double levelAtReceiver = wjAtReceiver[idPeriod];
+            double maximumExpectedLevelInDb = wToDb(levelAtReceiver + nonProcessedPower);
+            double dBDiff = maximumExpectedLevelInDb - wToDb(levelAtReceiver);
+            if (dBDiff > dbSettings.maximumError) {
+                // For this period we expect to see some significant sources further away
+                return false;
+            }
+        }
+        return true;
+    }
 
-                    // Evaluate the current noise level at receiver compared to the final
-                    // expected noise level at the receiver
-                    double nonProcessedPower = maximumWjExpectedSplAtReceiver.get(period).values().stream()
-                            .reduce(Double::sum).orElse(0.0);
-                    double maximumExpectedLevelInDb = AcousticIndicatorsFunctions.wToDb(levelAtReceiver
-                            + nonProcessedPower);
-                    double dBDiff = maximumExpectedLevelInDb - wToDb(levelAtReceiver);
-                    if (dBDiff > dbSettings.maximumError) {
-                        // For this period we expect to see some significant sources further away
-                        keepRunning = true;
-                        break;
+    /**
+     * When maximumError is enabled, order the sources by their expected contribution at the receiver location
+     * (emission minus geometric divergence and atmospheric absorption) so the loudest sources are processed first.
+     * The upper bound power of the remaining sources is stored as suffix sums in order to stop as soon as possible.
+     * @param receiver   Receiver information
+     * @param sourceList All sources in the range of this receiver sorted by the distance from the receiver
+     */
+    @Override
+    public void sortSources(PathFinder.ReceiverPointInfo receiver, List<PathFinder.SourcePointInfo> sourceList) {
+        final SceneWithEmission scene = multiThread.sceneWithEmission;
+        if(dbSettings.getMaximumError() <= 0 || scene.wjSources.isEmpty()) {
+            return;
+        }
+        initializeOutputPeriods();
+        // The scene periods are the first output periods
+        final int periodCount = scenePeriodCount;
+        final int sourceCount = sourceList.size();
+        ReceiverHorizon horizon = null;
+        if(dbSettings.getHorizonRadius() > 0 && scene.profileBuilder != null) {
+            horizon = new ReceiverHorizon(scene.profileBuilder, receiver.position, dbSettings.getHorizonRadius());
+            if(!horizon.isEnclosed()) {
+                horizon = null;
+            }
+        }
+        // Quickly evaluate the maximum expected power level of each source at receiver location
+        double[] sourcePower = new double[sourceCount * periodCount];
+        double[] periodPower = new double[periodCount];
+        for (int idSource = 0; idSource < sourceCount; idSource++) {
+            PathFinder.SourcePointInfo sourcePointInfo = sourceList.get(idSource);
+            ArrayList<SceneWithEmission.PeriodEmission> emissions = scene.wjSources.get(sourcePointInfo.sourcePk);
+            if(emissions != null) {
+                double[] attenuation = computeFastAttenuation(sourcePointInfo, receiver,
+                        scene.defaultCnossosParameters);
+                if(horizon != null) {
+                    applyHorizonAttenuation(attenuation, horizon, sourcePointInfo, receiver,
+                            scene.defaultCnossosParameters);
+                }
+                for (SceneWithEmission.PeriodEmission periodEmission : emissions) {
+                    int idPeriod = emissionOutputPeriodIndex[periodEmission.periodIndex];
+                    if(idPeriod < periodCount) {
+                        double power = sumMultiplicationArray(attenuation, periodEmission.emission);
+                        if(sourcePointInfo.li > 1.0) {
+                            // line source sub-segment length, see AttenuationCnossos
+                            power *= sourcePointInfo.li;
+                        }
+                        sourcePower[idSource * periodCount + idPeriod] += power;
+                        periodPower[idPeriod] += power;
                     }
                 }
-                if(!keepRunning) {
-                    strategy = PathSearchStrategy.PROCESS_SOURCE_BUT_SKIP_RECEIVER;
+            }
+        }
+        // The processing stops only when all periods are converged, so the sort key is the highest share of a source
+        // in the expected power of a period
+        double[] sourceShare = new double[sourceCount];
+        for (int idSource = 0; idSource < sourceCount; idSource++) {
+            for (int idPeriod = 0; idPeriod < periodCount; idPeriod++) {
+                if(periodPower[idPeriod] > 0) {
+                    sourceShare[idSource] = Math.max(sourceShare[idSource],
+                            sourcePower[idSource * periodCount + idPeriod] / periodPower[idPeriod]);
                 }
             }
         }
-        return strategy;
+        // Sort by descending share, the sort is stable so equivalent sources keep the distance order
+        Integer[] order = new Integer[sourceCount];
+        for (int i = 0; i < sourceCount; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(sourceShare[b], sourceShare[a]));
+        PathFinder.SourcePointInfo[] sortedSources = new PathFinder.SourcePointInfo[sourceCount];
+        maximumWjExpectedSplAtReceiver = new double[(sourceCount + 1) * periodCount];
+        for (int rank = sourceCount - 1; rank >= 0; rank--) {
+            int idSource = order[rank];
+            sortedSources[rank] = sourceList.get(idSource);
+            for (int idPeriod = 0; idPeriod < periodCount; idPeriod++) {
+                maximumWjExpectedSplAtReceiver[rank * periodCount + idPeriod] =
+                        maximumWjExpectedSplAtReceiver[(rank + 1) * periodCount + idPeriod] +
+                                sourcePower[idSource * periodCount + idPeriod];
+            }
+        }
+        for (int rank = 0; rank < sourceCount; rank++) {
+            sourceList.set(rank, sortedSources[rank]);
+        }
+        clearFirstSourceRank();
+        expectedSources = sourceList;
+        nextSourceRank = new int[sourceCount];
+        for (int rank = sourceCount - 1; rank >= 0; rank--) {
+            int sourceIndex = sourceList.get(rank).sourceIndex;
+            if(sourceIndex >= firstSourceRank.length) {
+                int length = firstSourceRank.length;
+                firstSourceRank = Arrays.copyOf(firstSourceRank, Math.max(sourceIndex + 1,
+                        scene.sourceGeometries.size()));
+                Arrays.fill(firstSourceRank, length, firstSourceRank.length, -1);
+            }
+            nextSourceRank[rank] = sourceIndex >= 0 ? firstSourceRank[sourceIndex] : -1;
+            if(sourceIndex >= 0) {
+                firstSourceRank[sourceIndex] = rank;
+            }
+        }
+    }
+
+    /**
+     * Reset the entries of firstSourceRank set for the sources of expectedSources
+     */
+    private void clearFirstSourceRank() {
+        for (PathFinder.SourcePointInfo sourcePointInfo : expectedSources) {
+            if(sourcePointInfo.sourceIndex >= 0 && sourcePointInfo.sourceIndex < firstSourceRank.length) {
+                firstSourceRank[sourcePointInfo.sourceIndex] = -1;
+            }
+        }
     }
 
     @Override
     public void startReceiver(PathFinder.ReceiverPointInfo receiver, Collection<PathFinder.SourcePointInfo> sourceList, AtomicInteger cutProfileCount) {
         this.cutProfileCount = cutProfileCount;
-        // Quickly evaluate the maximum expected power level at receiver location
-        // using all nearby sources maximum emission in reflective direct field
         if(dbSettings.getMaximumError() > 0 && !multiThread.sceneWithEmission.wjSources.isEmpty()) {
-            wjAtReceiver = new HashMap<>(multiThread.sceneWithEmission.periodSet.size());
-            for (String period : multiThread.sceneWithEmission.periodSet) {
-                wjAtReceiver.put(period, 0.0);
+            if(expectedSources != sourceList) {
+                // sortSources has not been called for this receiver
+                sortSources(receiver, new ArrayList<>(sourceList));
             }
-            maximumWjExpectedSplAtReceiver.clear();
+            wjAtReceiver = new double[scenePeriodCount];
+            currentSourceRank = 0;
+            currentSourcePower = 0;
+            expectedPowerRatio = 1;
+        }
+    }
 
-            final SceneWithEmission scene = multiThread.sceneWithEmission;
-            for (PathFinder.SourcePointInfo sourcePointInfo : sourceList) {
-                double[] attenuation = dBToW(computeFastAttenuation(sourcePointInfo, receiver, scene.defaultCnossosParameters));
-                if(scene.wjSources.containsKey(sourcePointInfo.sourcePk)) {
-                    ArrayList<SceneWithEmission.PeriodEmission> emissions = scene.wjSources.get(sourcePointInfo.sourcePk);
-                    for (SceneWithEmission.PeriodEmission periodEmission : emissions) {
-                        double[] wjAtReceiver = multiplicationArray(attenuation, periodEmission.emission);
-                        double sumPower = sumArray(wjAtReceiver);
-                        HashMap<Coordinate, Double> sourceLevel;
-                        if(!maximumWjExpectedSplAtReceiver.containsKey(periodEmission.period)) {
-                            sourceLevel = new HashMap<>();
-                            maximumWjExpectedSplAtReceiver.put(periodEmission.period, sourceLevel);
-                        } else {
-                            sourceLevel = maximumWjExpectedSplAtReceiver.get(periodEmission.period);
-                        }
-                        sourceLevel.merge(sourcePointInfo.getCoord(), sumPower, Double::sum);
-                    }
+    /**
+     * Wait until the results writer has reduced the queue under the maximum queue size
+     * @return False if the computation has been aborted
+     */
+    private boolean waitForWriter() {
+        if(multiThread.resultsCache.queueSize.get() <= dbSettings.outputMaximumQueue) {
+            return true;
+        }
+        long start = StageMetric.start();
+        try {
+            while (multiThread.resultsCache.queueSize.get() > dbSettings.outputMaximumQueue) {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException ex) {
+                    multiThread.aborted.set(true);
+                    break;
+                }
+                if (multiThread.aborted.get()) {
+                    progressVisitor.cancel();
+                    return false;
                 }
             }
+        } finally {
+            StageMetric.record(StageMetric.Stage.QUEUE_WAIT, start);
         }
+        return true;
     }
 
     /**
@@ -287,18 +648,12 @@ public class AttenuationOutputSingleThread implements CutPlaneVisitor {
      * @param data receiver noise level in dB
      */
     public void pushInStack(ConcurrentLinkedDeque<ReceiverNoiseLevel> stack, ReceiverNoiseLevel data) {
-        while(multiThread.resultsCache.queueSize.get() > dbSettings.outputMaximumQueue) {
-            try {
-                Thread.sleep(10);
-            } catch (InterruptedException ex) {
-                multiThread.aborted.set(true);
-                break;
-            }
-            if(multiThread.aborted.get()) {
-                progressVisitor.cancel();
-                return;
-            }
+        if(!waitForWriter()) {
+            return;
         }
+        // Count before pushing, the counter read at the end of a cell then covers all its results even when other
+        // cells are pushing results at the same time
+        multiThread.resultsCache.pushedLevels.incrementAndGet();
         stack.add(data);
         multiThread.resultsCache.queueSize.incrementAndGet();
     }
@@ -309,17 +664,8 @@ public class AttenuationOutputSingleThread implements CutPlaneVisitor {
      * @param data rays
      */
     public void pushInStack(ConcurrentLinkedDeque<CnossosPath> stack, Collection<CnossosPath> data) {
-        while(multiThread.resultsCache.queueSize.get() > dbSettings.outputMaximumQueue) {
-            try {
-                Thread.sleep(10);
-            } catch (InterruptedException ex) {
-                multiThread.aborted.set(true);
-                break;
-            }
-            if(multiThread.aborted.get()) {
-                progressVisitor.cancel();
-                return;
-            }
+        if(!waitForWriter()) {
+            return;
         }
         if(dbSettings.getMaximumRaysOutputCount() == 0 || multiThread.resultsCache.totalRaysInserted.get() < dbSettings.getMaximumRaysOutputCount()) {
             long newTotalRays = multiThread.resultsCache.totalRaysInserted.addAndGet(data.size());
@@ -339,11 +685,31 @@ public class AttenuationOutputSingleThread implements CutPlaneVisitor {
                     data = Collections.emptyList();
                 }
             }
+            multiThread.resultsCache.pushedPaths.addAndGet(data.size());
             stack.addAll(data);
             multiThread.resultsCache.queueSize.addAndGet(data.size());
         }
     }
 
+    /**
+     * Push a receiver level with its global levels, computed on this thread so the results writer only has to bind
+     * the values
+     * @param source Source, empty if the sources are merged
+     * @param receiver Receiver
+     * @param period Period name
+     * @param levels Levels in dB
+     */
+    private void pushReceiverLevel(PathFinder.SourcePointInfo source, PathFinder.ReceiverPointInfo receiver,
+                                   String period, double[] levels) {
+        if(aWeightingArray.length == 0) {
+            aWeightingArray = multiThread.sceneWithEmission.profileBuilder.aWeightingArray.stream()
+                    .mapToDouble(Double::doubleValue).toArray();
+        }
+        ReceiverNoiseLevel receiverNoiseLevel = new ReceiverNoiseLevel(source, receiver, period, levels);
+        NoiseMapWriter.computeGlobalLevels(receiverNoiseLevel, aWeightingArray, dbSettings.isComputeLAEQOnly());
+        pushInStack(multiThread.resultsCache.receiverLevels, receiverNoiseLevel);
+    }
+
     private static double[] getSpectrum(List<double[]> spectrum, int index) {
         if(index >= 0 && index < spectrum.size()) {
             return spectrum.get(index);
@@ -365,54 +731,70 @@ public class AttenuationOutputSingleThread implements CutPlaneVisitor {
             }
         }
         // Convert to dB then pushed cached entries for this receiver into multi-thread instance
-
-        boolean computeLden = isComputeLden();
-        Set<String> collectedPeriod = new HashSet<>();
-        for (Map.Entry<Integer, TimePeriodParameters> periodParametersEntry : receiverAttenuationList.entrySet()) {
-            TimePeriodParameters periodParameters = periodParametersEntry.getValue();
-            for (Map.Entry<String, double[]> levelsAtPeriod : periodParameters.levelsPerPeriod.entrySet()) {
-                pushInStack(multiThread.resultsCache.receiverLevels, new ReceiverNoiseLevel(periodParameters.source,
-                        receiver, levelsAtPeriod.getKey(),
-                        AcousticIndicatorsFunctions.wToDb(levelsAtPeriod.getValue())));
-                if(dbSettings.isMergeSources()) {
-                    collectedPeriod.add(levelsAtPeriod.getKey());
+        initializeOutputPeriods();
+        if(collectedPeriods.length < outputPeriods.size()) {
+            collectedPeriods = new boolean[outputPeriods.size()];
+        } else {
+            Arrays.fill(collectedPeriods, false);
+        }
+        for (TimePeriodParameters periodParameters : receiverAttenuationList) {
+            double[][] levelsPerPeriod = periodParameters.levelsPerPeriod;
+            for (int idPeriod = 0; idPeriod < levelsPerPeriod.length; idPeriod++) {
+                if(levelsPerPeriod[idPeriod] != null) {
+                    pushReceiverLevel(periodParameters.source, receiver, outputPeriods.get(idPeriod),
+                            AcousticIndicatorsFunctions.wToDb(levelsPerPeriod[idPeriod]));
+                    collectedPeriods[idPeriod] = true;
                 }
             }
-            if(computeLden) {
-                double[] lden = new double[0];
-                for (EmissionTableGenerator.STANDARD_PERIOD period : EmissionTableGenerator.STANDARD_PERIOD.values()) {
-                    double[] levels = periodParameters.levelsPerPeriod.getOrDefault(
-                            EmissionTableGenerator.STANDARD_PERIOD_VALUE[period.ordinal()], new double[0]);
-                    // Apply period gain
-                    lden = AcousticIndicatorsFunctions.sumArray(lden,
-                            AcousticIndicatorsFunctions.multiplicationArray(levels,
-                                    EmissionTableGenerator.RATIOS[period.ordinal()]));
+            if(denPeriodIndex >= 0) {
+                // Lden is the sum of the standard period levels with the period gains
+                double[] lden = null;
+                for (int idStandardPeriod = 0; idStandardPeriod < standardPeriodIndex.length; idStandardPeriod++) {
+                    double[] levels = periodParameters.get(standardPeriodIndex[idStandardPeriod]);
+                    if(levels == null) {
+                        continue;
+                    }
+                    if(lden == null) {
+                        lden = new double[levels.length];
+                    }
+                    double ratio = EmissionTableGenerator.RATIOS[idStandardPeriod];
+                    for (int idFrequency = 0; idFrequency < lden.length && idFrequency < levels.length;
+                         idFrequency++) {
+                        lden[idFrequency] += levels[idFrequency] * ratio;
+                    }
                 }
-                pushInStack(multiThread.resultsCache.receiverLevels, new ReceiverNoiseLevel(periodParameters.source,
-                        receiver, EmissionTableGenerator.DEN_PERIOD,
-                        AcousticIndicatorsFunctions.wToDb(lden)));
-                if(dbSettings.isMergeSources()) {
-                    collectedPeriod.add(EmissionTableGenerator.DEN_PERIOD);
+                if(lden != null) {
+                    pushReceiverLevel(periodParameters.source, receiver, EmissionTableGenerator.DEN_PERIOD,
+                            AcousticIndicatorsFunctions.wToDb(lden, lden));
+                    collectedPeriods[denPeriodIndex] = true;
                 }
             }
         }
         if (dbSettings.isMergeSources()) {
-            Set<String> difference = new HashSet<>(multiThread.sceneWithEmission.periodSet);
-            if(computeLden) {
-                difference.add(EmissionTableGenerator.DEN_PERIOD);
-            }
-            difference.removeAll(collectedPeriod);
             // add missing periods levels for this receiver
-            double[] levels = new double[multiThread.sceneWithEmission.profileBuilder.frequencyArray.size()];
-            Arrays.fill(levels, dbSettings.noSourceNoiseLevel);
-            for (String period : difference) {
-                pushInStack(multiThread.resultsCache.receiverLevels,
-                        new ReceiverNoiseLevel(new PathFinder.SourcePointInfo(), receiver, period, levels));
+            double[] levels = null;
+            for (int idPeriod = 0; idPeriod < expectedPeriodCount; idPeriod++) {
+                if(!collectedPeriods[idPeriod]) {
+                    if(levels == null) {
+                        levels = new double[multiThread.sceneWithEmission.profileBuilder.frequencyArray.size()];
+                        Arrays.fill(levels, dbSettings.noSourceNoiseLevel);
+                    }
+                    pushReceiverLevel(new PathFinder.SourcePointInfo(), receiver, outputPeriods.get(idPeriod),
+                            levels);
+                }
+            }
+        }
+        if(!dbSettings.isMergeSources()) {
+            for (TimePeriodParameters periodParameters : receiverAttenuationList) {
+                sourceAttenuation[periodParameters.source.sourceIndex] = null;
             }
         }
         receiverAttenuationList.clear();
-        maximumWjExpectedSplAtReceiver.clear();
-        wjAtReceiver.clear();
+        maximumWjExpectedSplAtReceiver = new double[0];
+        clearFirstSourceRank();
+        expectedSources = Collections.emptyList();
+        nextSourceRank = new int[0];
+        wjAtReceiver = new double[0];
         this.cnossosPaths.clear();
     }
 
@@ -433,33 +815,45 @@ public class AttenuationOutputSingleThread implements CutPlaneVisitor {
     public static class TimePeriodParameters {
         public PathFinder.SourcePointInfo source = null;
         /**
-         * Map of attenuation (attenuation not in dB but w)
+         * Attenuation (attenuation not in dB but w) of each output period index, null if no level has been collected
+         * for the period
          */
-        public Map<String, double[]> levelsPerPeriod = new HashMap<>();
+        public double[][] levelsPerPeriod = new double[0][];
 
         public TimePeriodParameters(PathFinder.SourcePointInfo source) {
             this.source = source;
         }
 
-        public TimePeriodParameters(PathFinder.SourcePointInfo source, String period, double[] attenuation) {
-            this.source = source;
-            levelsPerPeriod.put(period, attenuation);
+        public TimePeriodParameters() {
         }
 
-        public TimePeriodParameters() {
+        /**
+         * @param periodIndex Output period index
+         * @return Attenuation/noise level in w, null if no level has been collected for this period
+         */
+        public double[] get(int periodIndex) {
+            return periodIndex >= 0 && periodIndex < levelsPerPeriod.length ? levelsPerPeriod[periodIndex] : null;
         }
 
         /**
          * merge attenuation/noise level in w
-         * @param other
-         * @return
+         * @param periodIndex Output period index
+         * @param levels Attenuation/noise level in w, not modified
          */
-        public TimePeriodParameters update(TimePeriodParameters other) {
-            for (Map.Entry<String, double[]> entry : other.levelsPerPeriod.entrySet()) {
-                levelsPerPeriod.merge(entry.getKey(), entry.getValue(),
-                        AcousticIndicatorsFunctions::sumArray);
+        public void add(int periodIndex, double[] levels) {
+            if(periodIndex >= levelsPerPeriod.length) {
+                levelsPerPeriod = Arrays.copyOf(levelsPerPeriod, periodIndex + 1);
+            }
+            double[] periodLevels = levelsPerPeriod[periodIndex];
+            if(periodLevels == null) {
+                levelsPerPeriod[periodIndex] = levels.clone();
+            } else if(periodLevels.length == levels.length) {
+                for (int idFrequency = 0; idFrequency < levels.length; idFrequency++) {
+                    periodLevels[idFrequency] += levels[idFrequency];
+                }
+            } else {
+                levelsPerPeriod[periodIndex] = AcousticIndicatorsFunctions.sumArray(periodLevels, levels);
             }
-            return this;
         }
     }
 }
@@ -4,15 +4,21 @@ import org.h2gis.api.ProgressVisitor;
 import org.noise_planet.noisemodelling.jdbc.NoiseMapByReceiverMaker;
 import org.noise_planet.noisemodelling.jdbc.NoiseMapDatabaseParameters;
 import org.noise_planet.noisemodelling.jdbc.input.SceneWithEmission;
+import org.noise_planet.noisemodelling.jdbc.utils.CellJobTable;
 import org.noise_planet.noisemodelling.pathfinder.CutPlaneVisitorFactory;
 import org.noise_planet.noisemodelling.pathfinder.ThreadPool;
 import org.noise_planet.noisemodelling.pathfinder.utils.profiler.JVMMemoryMetric;
+import org.noise_planet.noisemodelling.pathfinder.utils.profiler.MetricsHttpServer;
 import org.noise_planet.noisemodelling.pathfinder.utils.profiler.ProfilerThread;
 import org.noise_planet.noisemodelling.pathfinder.utils.profiler.ProgressMetric;
 import org.noise_planet.noisemodelling.pathfinder.utils.profiler.ReceiverStatsMetric;
+import org.noise_planet.noisemodelling.pathfinder.utils.profiler.StageMetric;
+import org.noise_planet.noisemodelling.pathfinder.utils.profiler.ThreadUtilisationMetric;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.List;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -22,6 +28,8 @@ public class DefaultCutPlaneProcessing implements NoiseMapByReceiverMaker.ICompu
     final NoiseMapDatabaseParameters noiseMapDatabaseParameters;
     NoiseMapWriter noiseMapWriter;
     ProfilerThread profilerThread;
+    MetricsHttpServer metricsHttpServer;
+    ProgressMetric progressMetric;
     Connection connection;
     // Process status
     AtomicBoolean exitWhenDone;
@@ -58,11 +66,25 @@ public class DefaultCutPlaneProcessing implements NoiseMapByReceiverMaker.ICompu
         if(noiseMapDatabaseParameters.CSVProfilerOutputPath != null) {
             profilerThread = new ProfilerThread(noiseMapDatabaseParameters.CSVProfilerOutputPath);
             profilerThread.addMetric(resultsCache);
+            profilerThread.addMetric(new ResultsThroughputMetric(resultsCache));
             profilerThread.addMetric(new JVMMemoryMetric());
             profilerThread.addMetric(new ReceiverStatsMetric());
+            if(noiseMapDatabaseParameters.CSVProfilerStages) {
+                StageMetric.setEnabled(true);
+                profilerThread.addMetric(new StageMetric());
+            }
             profilerThread.setWriteInterval(noiseMapDatabaseParameters.CSVProfilerWriteInterval);
             profilerThread.setFlushInterval(noiseMapDatabaseParameters.CSVProfilerWriteInterval);
         }
+        if(noiseMapDatabaseParameters.metricsHttpAddress != null) {
+            // The metrics of the server are distinct from the csv profiler metrics as they are read on each request
+            metricsHttpServer = new MetricsHttpServer(noiseMapDatabaseParameters.metricsHttpAddress);
+            metricsHttpServer.addMetric(resultsCache);
+            metricsHttpServer.addMetric(new ResultsThroughputMetric(resultsCache));
+            metricsHttpServer.addMetric(new JVMMemoryMetric());
+            metricsHttpServer.addMetric(new ThreadUtilisationMetric());
+            metricsHttpServer.addMetric(new StageMetric());
+        }
     }
 
     /**
@@ -72,10 +94,28 @@ public class DefaultCutPlaneProcessing implements NoiseMapByReceiverMaker.ICompu
     public void start(ProgressVisitor progressLogger) throws SQLException {
         noiseMapWriter = new NoiseMapWriter(connection, noiseMapByReceiverMaker, resultsCache, exitWhenDone, aborted);
         exitWhenDone.set(false);
+        // The progression metric is registered once, the following calls only replace the progression
+        if(progressMetric == null) {
+            progressMetric = new ProgressMetric(progressLogger);
+            if(profilerThread != null) {
+                profilerThread.addMetric(progressMetric);
+            }
+            if(metricsHttpServer != null) {
+                metricsHttpServer.addMetric(progressMetric);
+            }
+        } else {
+            progressMetric.setProgressVisitor(progressLogger);
+        }
         if(profilerThread != null) {
-            profilerThread.addMetric(new ProgressMetric(progressLogger));
             postProcessingThreadPool.submit(profilerThread);
         }
+        if(metricsHttpServer != null) {
+            try {
+                metricsHttpServer.start();
+            } catch (IOException ex) {
+                throw new SQLException(ex);
+            }
+        }
         try {
             noiseMapWriter.init();
         } catch (Exception ex) {
@@ -84,6 +124,59 @@ public class DefaultCutPlaneProcessing implements NoiseMapByReceiverMaker.ICompu
         noiseMapWriterFuture = postProcessingThreadPool.submitBlocking(noiseMapWriter);
     }
 
+    /**
+     * The lease of the job is renewed by the writer until the results of the cell are written
+     * @param job Claimed job
+     */
+    @Override
+    public void jobClaimed(CellJobTable.Job job) {
+        resultsCache.claimedJobs.put(job.cellId, job);
+    }
+
+    @Override
+    public void cellStarted(int cellId) {
+        resultsCache.lastStartedCell.set(cellId);
+        resultsCache.runningCells.incrementAndGet();
+    }
+
+    /**
+     * The cell is recorded in the checkpoint table or in the job table once all the pushed results are written
+     * @param cellId Cell identifier
+     * @param receivers Primary keys of the receivers computed in this cell
+     */
+    @Override
+    public void cellProcessed(int cellId, List<Long> receivers) {
+        resultsCache.runningCells.decrementAndGet();
+        resultsCache.computedCells.incrementAndGet();
+        if(isCellRecorded()) {
+            resultsCache.processedCells.add(new ResultsCache.ProcessedCell(cellId, receivers,
+                    resultsCache.pushedLevels.get(), resultsCache.pushedPaths.get()));
+        }
+    }
+
+    /**
+     * The job of the cell is released once all the pushed results are written
+     * @param cellId Cell identifier
+     * @param receivers Primary keys of the receivers computed in this cell before the failure
+     * @param message Error message
+     */
+    @Override
+    public void cellFailed(int cellId, List<Long> receivers, String message) {
+        resultsCache.runningCells.decrementAndGet();
+        resultsCache.failedCells.incrementAndGet();
+        if(isCellRecorded()) {
+            resultsCache.processedCells.add(new ResultsCache.ProcessedCell(cellId, receivers,
+                    resultsCache.pushedLevels.get(), resultsCache.pushedPaths.get(),
+                    message == null ? "" : message));
+        }
+    }
+
+    private boolean isCellRecorded() {
+        String checkpointTable = noiseMapDatabaseParameters.getCheckpointTable();
+        String jobTable = noiseMapDatabaseParameters.getJobTable();
+        return (checkpointTable != null && !checkpointTable.isEmpty()) || (jobTable != null && !jobTable.isEmpty());
+    }
+
     /**
      * Write the last results and stop the sql writing thread
      * This method is blocked until the data is written or if there is an issue
@@ -95,9 +188,13 @@ public class DefaultCutPlaneProcessing implements NoiseMapByReceiverMaker.ICompu
             noiseMapWriterFuture.get();
         } catch (Exception e) {
             throw new SQLException(e);
+        } finally {
+            // Shutdown the thread pool
+            // previously submitted tasks are executed, but no new tasks will be accepted.
+            postProcessingThreadPool.shutdown();
+            if(metricsHttpServer != null) {
+                metricsHttpServer.stop();
+            }
         }
-        // Shutdown the thread pool
-        // previously submitted tasks are executed, but no new tasks will be accepted.
-        postProcessingThreadPool.shutdown();
     }
 }
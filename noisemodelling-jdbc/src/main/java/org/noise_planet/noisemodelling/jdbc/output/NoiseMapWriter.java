@@ -12,11 +12,18 @@ package org.noise_planet.noisemodelling.jdbc.output;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.dbtypes.DBTypes;
+import org.h2gis.utilities.dbtypes.DBUtils;
 import org.locationtech.jts.geom.*;
 import org.noise_planet.noisemodelling.jdbc.NoiseMapByReceiverMaker;
 import org.noise_planet.noisemodelling.jdbc.NoiseMapDatabaseParameters;
 import org.noise_planet.noisemodelling.jdbc.input.DefaultTableLoader;
 import org.noise_planet.noisemodelling.jdbc.input.SceneDatabaseInputSettings;
+import org.noise_planet.noisemodelling.jdbc.utils.CellJobTable;
+import org.noise_planet.noisemodelling.jdbc.utils.CopyPreparedStatements;
+import org.noise_planet.noisemodelling.jdbc.utils.ParallelGZIPOutputStream;
 import org.noise_planet.noisemodelling.jdbc.utils.StringPreparedStatements;
 import org.noise_planet.noisemodelling.pathfinder.profilebuilder.ProfileBuilder;
 import org.noise_planet.noisemodelling.pathfinder.utils.AcousticIndicatorsFunctions;
@@ -24,20 +31,27 @@ import org.noise_planet.noisemodelling.pathfinder.utils.geometry.CoordinateMixin
 import org.noise_planet.noisemodelling.pathfinder.utils.geometry.LineSegmentMixin;
 import org.noise_planet.noisemodelling.propagation.ReceiverNoiseLevel;
 import org.noise_planet.noisemodelling.propagation.cnossos.CnossosPath;
+import org.noise_planet.noisemodelling.pathfinder.utils.profiler.StageMetric;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.zip.GZIPOutputStream;
 
 import static org.noise_planet.noisemodelling.pathfinder.utils.AcousticIndicatorsFunctions.*;
 import static org.noise_planet.noisemodelling.pathfinder.utils.AcousticIndicatorsFunctions.dBToW;
@@ -48,7 +62,16 @@ import static org.noise_planet.noisemodelling.pathfinder.utils.AcousticIndicator
 public class NoiseMapWriter implements Callable<Boolean> {
     static final int LOG_END_WRITING_DELAY = 15000;
     static final int BATCH_MAX_SIZE = 500;
-    static final int WRITER_CACHE = 65536;
+    /** Maximum number of rows of a multi-row INSERT query */
+    static final int MULTI_ROW_INSERT_SIZE = 50;
+    /** Maximum number of parameters of a query, the PostgreSQL protocol is limited to 32767 */
+    static final int MAXIMUM_QUERY_PARAMETERS = 32767;
+    /** The lease of the claimed jobs is renewed this number of times per lease duration */
+    static final int LEASE_RENEWAL_PER_DURATION = 4;
+    /**
+     * Cell identifier recorded in the checkpoint table when the computation is complete
+     */
+    public static final int COMPLETED_COMPUTATION_ID = -1;
     AtomicBoolean exitWhenDone;
     AtomicBoolean aborted;
     Logger LOGGER = LoggerFactory.getLogger(NoiseMapWriter.class);
@@ -58,7 +81,13 @@ public class NoiseMapWriter implements Callable<Boolean> {
     NoiseMapDatabaseParameters databaseParameters;
     ResultsCache resultsCache;
     Writer writer;
+    /** Queries of {@link #init()} written at the beginning of the sql output file, the file is opened by call() */
+    List<String> initQueries = new ArrayList<>();
     ObjectWriter jsonWriter;
+    /** Job table of the worker processes, null if all the cells are computed by this process */
+    CellJobTable jobTable;
+    /** Time of the last renewal of the leases of the claimed jobs (epoch milliseconds) */
+    long lastLeaseRenewal = 0;
     int srid;
     public List<Integer> frequencyArray = Arrays.asList(AcousticIndicatorsFunctions.asOctaveBands(ProfileBuilder.DEFAULT_FREQUENCIES_THIRD_OCTAVE));
     public double[] aWeightingArray = Arrays.stream(
@@ -78,6 +107,7 @@ public class NoiseMapWriter implements Callable<Boolean> {
         databaseParameters = noiseMapByReceiverMaker.getNoiseMapDatabaseParameters();
         this.resultsCache = ResultsCache;
         this.srid = noiseMapByReceiverMaker.getGeometryFactory().getSRID();
+        this.sqlFilePath = databaseParameters.sqlOutputFile;
         if(noiseMapByReceiverMaker.getPropagationProcessDataFactory() instanceof DefaultTableLoader) {
             aWeightingArray = ((DefaultTableLoader)noiseMapByReceiverMaker.getPropagationProcessDataFactory()).
                     aWeightingArray.stream().mapToDouble(value -> value).toArray();
@@ -102,6 +132,12 @@ public class NoiseMapWriter implements Callable<Boolean> {
         return mapper.readValue(json, CnossosPath.class);
     }
 
+    private static void executeBatch(PreparedStatement ps) throws SQLException {
+        long start = StageMetric.start();
+        ps.executeBatch();
+        StageMetric.record(StageMetric.Stage.WRITER_BATCH, start);
+    }
+
     /**
      * Processes the stack of CnossosPath objects and inserts their data into the rays table.
      * @param stack the stack of CnossosPath objects containing the data to be inserted into the rays table
@@ -110,18 +146,19 @@ public class NoiseMapWriter implements Callable<Boolean> {
     void processRaysStack(ConcurrentLinkedDeque<CnossosPath> stack) throws SQLException {
         boolean exportPeriod = !noiseMapByReceiverMaker.getSceneInputSettings().getInputMode().
                 equals(SceneDatabaseInputSettings.INPUT_MODE.INPUT_MODE_ATTENUATION);
-        StringBuilder query = new StringBuilder("INSERT INTO " + databaseParameters.raysTable +
-                "(the_geom , IDRECEIVER , IDSOURCE");
+        StringBuilder columns = new StringBuilder("the_geom , IDRECEIVER , IDSOURCE");
         if(databaseParameters.exportCnossosPathWithAttenuation) {
-            query.append(", PATH");
+            columns.append(", PATH");
         }
         if(databaseParameters.exportAttenuationMatrix) {
-            query.append(", LEQ");
+            columns.append(", LEQ");
         }
         if(exportPeriod) {
-            query.append(", PERIOD");
+            columns.append(", PERIOD");
         }
-        query.append(", FAVOURABLE");
+        columns.append(", FAVOURABLE");
+        StringBuilder query = new StringBuilder("INSERT INTO " + databaseParameters.raysTable + "(");
+        query.append(columns);
         query.append(") VALUES (?, ?, ?");
         if(databaseParameters.exportCnossosPathWithAttenuation) {
             query.append(", ?");
@@ -135,12 +172,14 @@ public class NoiseMapWriter implements Callable<Boolean> {
         query.append(", ?");
         query.append(");");
         // PK, GEOM, ID_RECEIVER, ID_SOURCE
-        PreparedStatement ps;
-        if(sqlFilePath == null) {
-            ps = connection.prepareStatement(query.toString());
-        } else {
-            ps = new StringPreparedStatements(writer, query.toString());
+        try (PreparedStatement ps = prepareInsert(databaseParameters.raysTable, columns.toString(),
+                query.toString())) {
+            processRaysStack(stack, ps, exportPeriod);
         }
+    }
+
+    private void processRaysStack(ConcurrentLinkedDeque<CnossosPath> stack, PreparedStatement ps,
+                                  boolean exportPeriod) throws SQLException {
         int batchSize = 0;
         while(!stack.isEmpty()) {
             CnossosPath row = stack.pop();
@@ -171,100 +210,153 @@ public class NoiseMapWriter implements Callable<Boolean> {
             ps.addBatch();
             batchSize++;
             if (batchSize >= BATCH_MAX_SIZE) {
-                ps.executeBatch();
+                executeBatch(ps);
                 ps.clearBatch();
+                resultsCache.writtenPaths.addAndGet(batchSize);
                 batchSize = 0;
             }
         }
         if (batchSize > 0) {
-            ps.executeBatch();
+            executeBatch(ps);
+            resultsCache.writtenPaths.addAndGet(batchSize);
+        }
+    }
+
+    /**
+     * @param tableName Table to feed
+     * @param columns Comma separated columns of the query, null if the query feeds all the columns in order
+     * @param query INSERT query
+     * @return Statement that inserts the rows into the database, or writes them into the sql output file
+     * @throws SQLException If the statement cannot be prepared
+     */
+    private PreparedStatement prepareInsert(String tableName, String columns, String query) throws SQLException {
+        if(sqlFilePath == null) {
+            return connection.prepareStatement(query);
+        } else if(databaseParameters.sqlOutputFormat == NoiseMapDatabaseParameters.SqlOutputFormat.COPY) {
+            return new CopyPreparedStatements(writer, tableName, columns);
+        } else {
+            return new StringPreparedStatements(writer, query);
+        }
+    }
+
+    /**
+     * Compute the global levels of a receiver level record in a single pass, without allocation. Non finite band
+     * levels are replaced by -99 dB, as written in the receivers level table.
+     * Called by the computation threads, so the results writer only has to bind the values.
+     * @param row Record, levels in dB, updated in place
+     * @param aWeightingArray A-weighting of each frequency band
+     * @param computeLAEQOnly If true the band levels are not written, only LAEQ is computed
+     */
+    public static void computeGlobalLevels(ReceiverNoiseLevel row, double[] aWeightingArray, boolean computeLAEQOnly) {
+        double[] levels = row.levels;
+        double laeqPower = 0;
+        double leqPower = 0;
+        for (int idfreq = 0; idfreq < levels.length; idfreq++) {
+            double level = levels[idfreq];
+            if(!computeLAEQOnly && !Double.isFinite(level)) {
+                level = -99.0;
+                levels[idfreq] = level;
+            }
+            if(idfreq < aWeightingArray.length) {
+                laeqPower += dBToW(level + aWeightingArray[idfreq]);
+            }
+            leqPower += dBToW(level);
         }
+        double laeq = wToDb(laeqPower);
+        row.laeq = Double.isFinite(laeq) ? laeq : -99;
+        row.leq = wToDb(leqPower);
+    }
 
+    /**
+     * @param tableName Table to feed
+     * @param columnCount Number of values of a row
+     * @param rowCount Number of rows inserted by the query
+     * @return INSERT query of rowCount rows
+     */
+    private static String forgeInsert(String tableName, int columnCount, int rowCount) {
+        String rowValues = "(?" + ", ?".repeat(columnCount - 1) + ")";
+        StringBuilder query = new StringBuilder("INSERT INTO ");
+        query.append(tableName);
+        query.append(" VALUES ");
+        for (int i = 0; i < rowCount; i++) {
+            if(i > 0) {
+                query.append(", ");
+            }
+            query.append(rowValues);
+        }
+        query.append(";");
+        return query.toString();
     }
 
     /**
-     * Pop values from stack and insert rows
+     * Pop values from stack and insert rows. With a database connection the rows are grouped into multi-row INSERT
+     * queries, the remaining rows are inserted one by one.
      * @param tableName Table to feed
      * @param stack Stack to pop from
      * @throws SQLException Got an error
      */
     void processStack(String tableName, ConcurrentLinkedDeque<ReceiverNoiseLevel> stack) throws SQLException {
-        long lastInfoLog = 0;
         if(stack.isEmpty()) {
             return;
         }
         // If we compute attenuation only there is no period field
         boolean exportPeriod = !noiseMapByReceiverMaker.getSceneInputSettings().getInputMode().
                         equals(SceneDatabaseInputSettings.INPUT_MODE.INPUT_MODE_ATTENUATION);
-        StringBuilder query = new StringBuilder("INSERT INTO ");
-        query.append(tableName);
-        query.append(" VALUES (? "); // ID_RECEIVER
+        int columnCount = 1; // ID_RECEIVER
         if(!databaseParameters.mergeSources) {
-            query.append(", ?"); // ID_SOURCE
+            columnCount++; // ID_SOURCE
         }
         if(exportPeriod) {
-            query.append(", ?"); // PERIOD
+            columnCount++; // PERIOD
         }
         if(databaseParameters.exportReceiverPosition) {
-            query.append(", ?"); // THE_GEOM
+            columnCount++; // THE_GEOM
         }
         if (!databaseParameters.computeLAEQOnly) {
-            query.append(", ?".repeat(aWeightingArray.length)); // freq value LWXX
-            query.append(", ?, ?);"); // laeq, leq
-        }else{
-            query.append(", ?);"); // laeq, leq
-        }
-        PreparedStatement ps;
-        if(sqlFilePath == null) {
-            ps = connection.prepareStatement(query.toString());
+            columnCount += aWeightingArray.length + 2; // freq value LWXX, laeq, leq
         } else {
-            ps = new StringPreparedStatements(writer, query.toString());
+            columnCount++; // laeq
         }
+        int rowsPerInsert = sqlFilePath == null ? Math.max(1, Math.min(MULTI_ROW_INSERT_SIZE,
+                MAXIMUM_QUERY_PARAMETERS / columnCount)) : 1;
+        try (PreparedStatement ps = prepareInsert(tableName, null, forgeInsert(tableName, columnCount, 1));
+             PreparedStatement multiRowPs = rowsPerInsert > 1 ?
+                     connection.prepareStatement(forgeInsert(tableName, columnCount, rowsPerInsert)) : null) {
+            processStack(stack, ps, multiRowPs, rowsPerInsert, exportPeriod);
+        }
+    }
+
+    private void processStack(ConcurrentLinkedDeque<ReceiverNoiseLevel> stack, PreparedStatement ps,
+                              PreparedStatement multiRowPs, int rowsPerInsert, boolean exportPeriod)
+            throws SQLException {
+        long lastInfoLog = 0;
         int batchSize = 0;
         GeometryFactory factory = new GeometryFactory(new PrecisionModel(), srid);
+        ReceiverNoiseLevel[] rows = new ReceiverNoiseLevel[rowsPerInsert];
+        int rowCount = 0;
         while(!stack.isEmpty() && !aborted.get()) {
             ReceiverNoiseLevel row = stack.pop();
             resultsCache.queueSize.decrementAndGet();
-            int parameterIndex = 1;
-            ps.setLong(parameterIndex++, row.receiver.receiverPk);
-            if(!databaseParameters.mergeSources) {
-                ps.setLong(parameterIndex++, row.source.sourcePk);
-            }
-            if(exportPeriod) {
-                ps.setString(parameterIndex++, row.period);
-            }
-            if(databaseParameters.exportReceiverPosition) {
-                ps.setObject(parameterIndex++,  row.receiver.position != null ?
-                        factory.createPoint(row.receiver.position):
-                        factory.createPoint());
-            }
-            if (!databaseParameters.computeLAEQOnly){
-                for(int idfreq = 0; idfreq < aWeightingArray.length; idfreq++) {
-                    double value = row.levels[idfreq];
-                    if(!Double.isFinite(value)) {
-                        value = -99.0;
-                        row.levels[idfreq] = value;
-                    }
-                    ps.setDouble(parameterIndex++, value);
+            if(multiRowPs == null) {
+                bindRow(ps, 1, row, exportPeriod, factory);
+                ps.addBatch();
+                batchSize++;
+            } else {
+                rows[rowCount++] = row;
+                if(rowCount < rowsPerInsert) {
+                    continue;
                 }
+                int parameterIndex = 1;
+                for (ReceiverNoiseLevel bufferedRow : rows) {
+                    parameterIndex = bindRow(multiRowPs, parameterIndex, bufferedRow, exportPeriod, factory);
+                }
+                multiRowPs.addBatch();
+                batchSize += rowCount;
+                rowCount = 0;
             }
-            // laeq value
-            double value = wToDb(sumArray(AcousticIndicatorsFunctions.dBToW(sumArray(row.levels, aWeightingArray))));
-            if(!Double.isFinite(value)) {
-                value = -99;
-            }
-            ps.setDouble(parameterIndex++, value);
-
-            // leq value
-            if (!databaseParameters.computeLAEQOnly) {
-                ps.setDouble(parameterIndex++, wToDb(sumArray(AcousticIndicatorsFunctions.dBToW(row.levels))));
-            }
-
-            ps.addBatch();
-            batchSize++;
             if (batchSize >= BATCH_MAX_SIZE) {
-                ps.executeBatch();
-                ps.clearBatch();
+                executeBatch(multiRowPs == null ? ps : multiRowPs);
+                resultsCache.writtenLevels.addAndGet(batchSize);
                 batchSize = 0;
                 long now = System.currentTimeMillis();
                 if(exitWhenDone.get() && now - lastInfoLog > LOG_END_WRITING_DELAY) {
@@ -274,10 +366,60 @@ public class NoiseMapWriter implements Callable<Boolean> {
             }
         }
         if (batchSize > 0) {
-            ps.executeBatch();
+            executeBatch(multiRowPs == null ? ps : multiRowPs);
+            resultsCache.writtenLevels.addAndGet(batchSize);
+        }
+        if(rowCount > 0) {
+            // Not enough rows for a multi-row query
+            for (int i = 0; i < rowCount; i++) {
+                bindRow(ps, 1, rows[i], exportPeriod, factory);
+                ps.addBatch();
+            }
+            executeBatch(ps);
+            resultsCache.writtenLevels.addAndGet(rowCount);
         }
     }
 
+    /**
+     * Bind the values of a receiver level record
+     * @param ps Statement
+     * @param parameterIndex Index of the first parameter of the row
+     * @param row Record
+     * @param exportPeriod True if the table has a period column
+     * @param factory Factory of the receiver position
+     * @return Index of the parameter following the row
+     * @throws SQLException Got an error
+     */
+    private int bindRow(PreparedStatement ps, int parameterIndex, ReceiverNoiseLevel row, boolean exportPeriod,
+                        GeometryFactory factory) throws SQLException {
+        if(Double.isNaN(row.laeq)) {
+            // Not computed by the computation thread
+            computeGlobalLevels(row, aWeightingArray, databaseParameters.computeLAEQOnly);
+        }
+        ps.setLong(parameterIndex++, row.receiver.receiverPk);
+        if(!databaseParameters.mergeSources) {
+            ps.setLong(parameterIndex++, row.source.sourcePk);
+        }
+        if(exportPeriod) {
+            ps.setString(parameterIndex++, row.period);
+        }
+        if(databaseParameters.exportReceiverPosition) {
+            ps.setObject(parameterIndex++,  row.receiver.position != null ?
+                    factory.createPoint(row.receiver.position):
+                    factory.createPoint());
+        }
+        if (!databaseParameters.computeLAEQOnly){
+            for(int idfreq = 0; idfreq < aWeightingArray.length; idfreq++) {
+                ps.setDouble(parameterIndex++, row.levels[idfreq]);
+            }
+        }
+        ps.setDouble(parameterIndex++, row.laeq);
+        if (!databaseParameters.computeLAEQOnly) {
+            ps.setDouble(parameterIndex++, row.leq);
+        }
+        return parameterIndex;
+    }
+
     /**
      * Generates the SQL statement for creating a table based on the specified table name and configuration parameters.
      * @param tableName the name of the table to create
@@ -323,20 +465,56 @@ public class NoiseMapWriter implements Callable<Boolean> {
      * @param tableName
      * @return the SQL statement for creating the primary key or index     */
     private String forgePkTable(String tableName) {
-        boolean exportPeriod = !noiseMapByReceiverMaker.getSceneInputSettings().getInputMode().
-                equals(SceneDatabaseInputSettings.INPUT_MODE.INPUT_MODE_ATTENUATION);
         if (databaseParameters.mergeSources) {
-            if(!exportPeriod) {
-                return "ALTER TABLE " + tableName + " ADD PRIMARY KEY(IDRECEIVER);";
-            } else {
-                return "ALTER TABLE " + tableName + " ADD PRIMARY KEY(IDRECEIVER, PERIOD);";
-            }
+            return "ALTER TABLE " + tableName + " ADD PRIMARY KEY(" + getKeyColumns(noiseMapByReceiverMaker) + ");";
         } else {
-            if(!exportPeriod) {
-                return "CREATE INDEX ON " + tableName + " (IDRECEIVER, IDSOURCE);";
-            } else {
-                return "CREATE INDEX ON " + tableName + " (IDRECEIVER, IDSOURCE, PERIOD);";
-            }
+            return "CREATE INDEX ON " + tableName + " (" + getKeyColumns(noiseMapByReceiverMaker) + ");";
+        }
+    }
+
+    /**
+     * @param noiseMapByReceiverMaker Computation settings
+     * @return Columns of the receivers level table that identify a row
+     */
+    private static String getKeyColumns(NoiseMapByReceiverMaker noiseMapByReceiverMaker) {
+        boolean exportPeriod = !noiseMapByReceiverMaker.getSceneInputSettings().getInputMode().
+                equals(SceneDatabaseInputSettings.INPUT_MODE.INPUT_MODE_ATTENUATION);
+        String keyColumns = noiseMapByReceiverMaker.getNoiseMapDatabaseParameters().mergeSources ? "IDRECEIVER" :
+                "IDRECEIVER, IDSOURCE";
+        return exportPeriod ? keyColumns + ", PERIOD" : keyColumns;
+    }
+
+    /**
+     * @param table Receivers level table
+     * @param dbType Database type
+     * @return Index of the receivers level table used while the cells are computed by worker processes
+     */
+    private static TableLocation getJobIndex(TableLocation table, DBTypes dbType) {
+        return new TableLocation(table.getSchema(), table.getTable() + "_JOB_INDEX", dbType);
+    }
+
+    /**
+     * Apply the primary key of the receivers level table of a computation shared by worker processes. Until all the
+     * jobs are done, two attempts of the same cell may write the same receivers and the table has only an index.
+     * @param connection Active connection
+     * @param noiseMapByReceiverMaker Computation settings
+     * @throws SQLException
+     */
+    public static void createJobsKeys(Connection connection, NoiseMapByReceiverMaker noiseMapByReceiverMaker)
+            throws SQLException {
+        NoiseMapDatabaseParameters databaseParameters = noiseMapByReceiverMaker.getNoiseMapDatabaseParameters();
+        if(!databaseParameters.mergeSources) {
+            // The index of the results by source has been created with the table
+            return;
+        }
+        if(hasPrimaryKey(connection, databaseParameters.receiversLevelTable)) {
+            return;
+        }
+        DBTypes dbType = DBUtils.getDBType(connection.unwrap(Connection.class));
+        TableLocation table = TableLocation.parse(databaseParameters.receiversLevelTable, dbType);
+        try (Statement st = connection.createStatement()) {
+            st.execute("ALTER TABLE " + table + " ADD PRIMARY KEY(" + getKeyColumns(noiseMapByReceiverMaker) + ")");
+            st.execute("DROP INDEX IF EXISTS " + getJobIndex(table, dbType));
         }
     }
 
@@ -351,6 +529,8 @@ public class NoiseMapWriter implements Callable<Boolean> {
             try(Statement sql = connection.createStatement()) {
                 sql.execute(query);
             }
+        } else if(writer == null) {
+            initQueries.add(query);
         } else {
             writer.write(query+"\n");
         }
@@ -362,15 +542,22 @@ public class NoiseMapWriter implements Callable<Boolean> {
      * @throws IOException
      */
     public void init() throws SQLException, IOException {
+        initQueries.clear();
+        if(isJobTableEnabled() && JDBCUtilities.tableExists(connection, databaseParameters.jobTable)) {
+            // The results tables have been created by the coordinator
+            jobTable = new CellJobTable(databaseParameters.jobTable);
+            return;
+        }
+        boolean resumed = isResumed();
         if(databaseParameters.getExportRaysMethod() == NoiseMapDatabaseParameters.ExportRaysMethods.TO_RAYS_TABLE) {
             boolean exportPeriod = !noiseMapByReceiverMaker.getSceneInputSettings().getInputMode().
                     equals(SceneDatabaseInputSettings.INPUT_MODE.INPUT_MODE_ATTENUATION);
-            if(databaseParameters.dropResultsTable) {
+            if(databaseParameters.dropResultsTable && !resumed) {
                 String q = String.format("DROP TABLE IF EXISTS %s;", databaseParameters.raysTable);
                 processQuery(q);
             }
-            StringBuilder sb = new StringBuilder("CREATE TABLE IF NOT EXISTS " + databaseParameters.raysTable + "(pk bigint auto_increment, the_geom " +
-                    "geometry(LINESTRING Z,");
+            StringBuilder sb = new StringBuilder("CREATE TABLE IF NOT EXISTS " + databaseParameters.raysTable + "(pk bigint GENERATED BY DEFAULT AS IDENTITY, the_geom " +
+                    "geometry(LINESTRINGZ,");
             sb.append(srid);
             sb.append("), IDRECEIVER bigint NOT NULL, IDSOURCE bigint NOT NULL");
             if(databaseParameters.exportCnossosPathWithAttenuation) {
@@ -386,12 +573,169 @@ public class NoiseMapWriter implements Callable<Boolean> {
             sb.append(");");
             processQuery(sb.toString());
         }
+        if(resumed) {
+            // Remove the results of the cell that was not completed
+            try (Statement st = connection.createStatement()) {
+                String completedReceivers = "(SELECT IDRECEIVER FROM " + databaseParameters.checkpointTable +
+                        " WHERE IDRECEIVER IS NOT NULL)";
+                st.execute("DELETE FROM " + databaseParameters.receiversLevelTable + " WHERE IDRECEIVER NOT IN " +
+                        completedReceivers);
+                if(databaseParameters.getExportRaysMethod() ==
+                        NoiseMapDatabaseParameters.ExportRaysMethods.TO_RAYS_TABLE) {
+                    st.execute("DELETE FROM " + databaseParameters.raysTable + " WHERE IDRECEIVER NOT IN " +
+                            completedReceivers);
+                }
+            }
+            return;
+        }
         if(databaseParameters.dropResultsTable) {
             String q = String.format("DROP TABLE IF EXISTS %s;", databaseParameters.receiversLevelTable);
             processQuery(q);
         }
         String q = forgeCreateTable(databaseParameters.receiversLevelTable);
         processQuery(q);
+        if(isCheckpointEnabled()) {
+            processQuery("CREATE TABLE " + databaseParameters.checkpointTable +
+                    "(CELL_ID INTEGER NOT NULL, IDRECEIVER BIGINT);");
+        }
+    }
+
+    /**
+     * @return True if the cells and receivers are recorded in the checkpoint table once written
+     */
+    private boolean isCheckpointEnabled() {
+        return sqlFilePath == null && !isJobTableEnabled() && databaseParameters.checkpointTable != null &&
+                !databaseParameters.checkpointTable.isEmpty();
+    }
+
+    /**
+     * @return True if the cells are computed by worker processes, the job table replaces the checkpoint table
+     */
+    private boolean isJobTableEnabled() {
+        return sqlFilePath == null && databaseParameters.jobTable != null && !databaseParameters.jobTable.isEmpty();
+    }
+
+    /**
+     * @return True if the checkpoint table of a previous computation exists
+     * @throws SQLException
+     */
+    private boolean isResumed() throws SQLException {
+        return isCheckpointEnabled() && JDBCUtilities.tableExists(connection, databaseParameters.checkpointTable);
+    }
+
+    /**
+     * @param tableName Table name
+     * @return True if the table has a primary key
+     * @throws SQLException
+     */
+    private static boolean hasPrimaryKey(Connection connection, String tableName) throws SQLException {
+        TableLocation table = TableLocation.parse(tableName, DBUtils.getDBType(connection.unwrap(Connection.class)));
+        try (ResultSet rs = connection.getMetaData().getPrimaryKeys(table.getCatalog(null), table.getSchema(null),
+                table.getTable())) {
+            return rs.next();
+        }
+    }
+
+    /**
+     * Read the checkpoint table of a previous computation
+     * @param connection Active connection
+     * @param checkpointTable Checkpoint table
+     * @param completedCells Identifiers of the completed cells, {@link #COMPLETED_COMPUTATION_ID} if the
+     *                       computation has been completed
+     * @param completedReceivers Primary keys of the receivers of the completed cells
+     * @throws SQLException
+     */
+    public static void readCheckpoint(Connection connection, String checkpointTable, Set<Integer> completedCells,
+                                      Set<Long> completedReceivers) throws SQLException {
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT CELL_ID, IDRECEIVER FROM " + checkpointTable)) {
+            while (rs.next()) {
+                long receiverPk = rs.getLong(2);
+                if (rs.wasNull()) {
+                    completedCells.add(rs.getInt(1));
+                } else {
+                    completedReceivers.add(receiverPk);
+                }
+            }
+        }
+    }
+
+    /**
+     * Record the cells where all the results have been written into the checkpoint table or release their job
+     * @throws SQLException
+     */
+    void processCheckpoints() throws SQLException {
+        boolean checkpointEnabled = isCheckpointEnabled();
+        if(!checkpointEnabled && jobTable == null) {
+            resultsCache.processedCells.clear();
+            return;
+        }
+        ResultsCache.ProcessedCell cell = resultsCache.processedCells.peek();
+        if(cell == null || !cell.isWritten(resultsCache)) {
+            return;
+        }
+        // The connection is shared with the computation, so each cell is recorded with a single statement in the
+        // auto-commit mode of the connection
+        try (PreparedStatement ps = checkpointEnabled ? connection.prepareStatement("INSERT INTO " +
+                databaseParameters.checkpointTable + "(CELL_ID, IDRECEIVER) SELECT ?, R FROM UNNEST(?) AS U(R)") :
+                null) {
+            while(cell != null && cell.isWritten(resultsCache)) {
+                resultsCache.processedCells.pop();
+                if(jobTable != null) {
+                    processJob(cell);
+                } else if(cell.failure == null) {
+                    // The array ends with a null receiver, the row without receiver mark the completion of the cell
+                    Long[] receivers = cell.receivers.toArray(new Long[cell.receivers.size() + 1]);
+                    ps.setInt(1, cell.cellId);
+                    ps.setArray(2, connection.createArrayOf("BIGINT", receivers));
+                    ps.executeUpdate();
+                }
+                cell = resultsCache.processedCells.peek();
+            }
+        }
+    }
+
+    /**
+     * Release the job of a cell where all the results have been written. If the lease of the job has been lost, the
+     * job has been claimed again by another worker and the results written by this attempt are removed.
+     * @param cell Cell where all the results have been written
+     * @throws SQLException
+     */
+    private void processJob(ResultsCache.ProcessedCell cell) throws SQLException {
+        CellJobTable.Job job = resultsCache.claimedJobs.remove(cell.cellId);
+        if(job == null) {
+            return;
+        }
+        boolean leaseHeld = cell.failure == null ? jobTable.setDone(connection, job) :
+                jobTable.setFailed(connection, job, databaseParameters.jobMaximumAttempts, cell.failure);
+        if(!leaseHeld) {
+            LOGGER.warn("The lease of the cell {} has been lost, the results of the attempt {} are removed",
+                    cell.cellId, job.attempt);
+            NoiseMapByReceiverMaker.deleteResults(connection, databaseParameters, cell.receivers);
+            jobTable.releaseLostLease(connection, job);
+        }
+    }
+
+    /**
+     * Renew the lease of the claimed jobs, while they are computed and until their results are written
+     * @throws SQLException
+     */
+    void renewLeases() throws SQLException {
+        long leaseDuration = databaseParameters.getJobLeaseDuration();
+        if(jobTable == null || leaseDuration <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if(now - lastLeaseRenewal < leaseDuration / LEASE_RENEWAL_PER_DURATION) {
+            return;
+        }
+        lastLeaseRenewal = now;
+        for (CellJobTable.Job job : resultsCache.claimedJobs.values()) {
+            if(!jobTable.renewLease(connection, job)) {
+                LOGGER.warn("The lease of the cell {} has expired, the cell has been claimed by another worker",
+                        job.cellId);
+            }
+        }
     }
 
     /**
@@ -402,12 +746,16 @@ public class NoiseMapWriter implements Callable<Boolean> {
     void mainLoop() throws SQLException, IOException {
         while (!aborted.get()) {
             try {
+                renewLeases();
                 if(!resultsCache.receiverLevels.isEmpty()) {
                     processStack(databaseParameters.receiversLevelTable, resultsCache.receiverLevels);
+                    processCheckpoints();
                 } else if(!resultsCache.cnossosPaths.isEmpty()) {
                     processRaysStack(resultsCache.cnossosPaths);
+                    processCheckpoints();
                 } else {
-                    if(exitWhenDone.get()) {
+                    processCheckpoints();
+                    if(exitWhenDone.get() && resultsCache.processedCells.isEmpty()) {
                         break;
                     } else {
                         Thread.sleep(50);
@@ -427,9 +775,31 @@ public class NoiseMapWriter implements Callable<Boolean> {
      */
     void createKeys()  throws SQLException, IOException {
         // Set primary keys
+        if(jobTable != null) {
+            // The keys are managed by the coordinator
+            return;
+        }
+        if(isJobTableEnabled() && databaseParameters.mergeSources) {
+            // Created by the coordinator: the primary key is applied once all the jobs are done, see
+            // NoiseMapByReceiverMaker#completeJobs
+            DBTypes dbType = DBUtils.getDBType(connection.unwrap(Connection.class));
+            TableLocation table = TableLocation.parse(databaseParameters.receiversLevelTable, dbType);
+            processQuery("CREATE INDEX " + getJobIndex(table, dbType) + " ON " + table + " (" +
+                    getKeyColumns(noiseMapByReceiverMaker) + ");");
+            return;
+        }
         LOGGER.info("Write done, apply primary keys");
-        processQuery(forgePkTable(databaseParameters.receiversLevelTable));
-        LOGGER.info("Primary keys applied");
+        if(isResumed() && hasPrimaryKey(connection, databaseParameters.receiversLevelTable)) {
+            // Keys have been applied by the interrupted computation
+            LOGGER.info("Primary keys already applied");
+        } else {
+            processQuery(forgePkTable(databaseParameters.receiversLevelTable));
+            LOGGER.info("Primary keys applied");
+        }
+        if(isCheckpointEnabled() && !aborted.get()) {
+            processQuery("INSERT INTO " + databaseParameters.checkpointTable + "(CELL_ID, IDRECEIVER) VALUES (" +
+                    COMPLETED_COMPUTATION_ID + ", NULL);");
+        }
     }
 
     /**
@@ -438,10 +808,15 @@ public class NoiseMapWriter implements Callable<Boolean> {
      * @throws IOException if an I/O error occurs while creating the stream
      */
     OutputStreamWriter getStream() throws IOException {
+        FileChannel channel = FileChannel.open(sqlFilePath.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
         if(databaseParameters.sqlOutputFileCompression) {
-            return new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(sqlFilePath), WRITER_CACHE));
+            // Blocks are compressed by a pool of threads, this thread only formats the rows
+            return new OutputStreamWriter(new ParallelGZIPOutputStream(channel,
+                    databaseParameters.sqlOutputCompressionThreads), StandardCharsets.UTF_8);
         } else {
-            return new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(sqlFilePath), WRITER_CACHE));
+            return new OutputStreamWriter(new BufferedOutputStream(Channels.newOutputStream(channel),
+                    ParallelGZIPOutputStream.DEFAULT_BLOCK_SIZE), StandardCharsets.UTF_8);
         }
     }
 
@@ -460,13 +835,21 @@ public class NoiseMapWriter implements Callable<Boolean> {
                 throw e;
             }
         } else {
-            try(OutputStreamWriter bw = getStream()) {
+            // The file is opened here so that it is always closed
+            try(Writer bw = getStream()) {
                 writer = bw;
+                // The tables are created in the sql output file
+                for (String query : initQueries) {
+                    writer.write(query + "\n");
+                }
+                initQueries.clear();
                 mainLoop();
                 createKeys();
             } catch (Exception e) {
                 aborted.set(true);
                 throw e;
+            } finally {
+                writer = null;
             }
         }
         return true;
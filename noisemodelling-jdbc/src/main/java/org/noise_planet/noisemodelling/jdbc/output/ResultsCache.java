@@ -9,11 +9,16 @@
 
 package org.noise_planet.noisemodelling.jdbc.output;
 
+import org.noise_planet.noisemodelling.jdbc.utils.CellJobTable;
 import org.noise_planet.noisemodelling.pathfinder.utils.profiler.ProfilerThread;
 import org.noise_planet.noisemodelling.propagation.ReceiverNoiseLevel;
 import org.noise_planet.noisemodelling.propagation.cnossos.CnossosPath;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -27,6 +32,46 @@ public class ResultsCache implements ProfilerThread.Metric {
     public final AtomicLong totalRaysInserted = new AtomicLong(0);
     public final ConcurrentLinkedDeque<ReceiverNoiseLevel> receiverLevels = new ConcurrentLinkedDeque<>();
     public final ConcurrentLinkedDeque<CnossosPath> cnossosPaths = new ConcurrentLinkedDeque<>();
+    /**
+     * Number of receiver levels pushed in the stack since the beginning
+     */
+    public final AtomicLong pushedLevels = new AtomicLong(0);
+    /**
+     * Number of receiver levels sent to the database since the beginning
+     */
+    public final AtomicLong writtenLevels = new AtomicLong(0);
+    /**
+     * Number of paths pushed in the stack since the beginning
+     */
+    public final AtomicLong pushedPaths = new AtomicLong(0);
+    /**
+     * Number of paths sent to the database since the beginning
+     */
+    public final AtomicLong writtenPaths = new AtomicLong(0);
+    /**
+     * Cells awaiting the writing of their results before being recorded in the checkpoint table or the job table
+     */
+    public final ConcurrentLinkedDeque<ProcessedCell> processedCells = new ConcurrentLinkedDeque<>();
+    /**
+     * Jobs claimed by this worker where the results are not yet written, by cell identifier
+     */
+    public final Map<Integer, CellJobTable.Job> claimedJobs = new ConcurrentHashMap<>();
+    /**
+     * Identifier of the last cell where the computation has started, -1 before the first cell
+     */
+    public final AtomicInteger lastStartedCell = new AtomicInteger(-1);
+    /**
+     * Number of cells being computed
+     */
+    public final AtomicInteger runningCells = new AtomicInteger(0);
+    /**
+     * Number of cells where all results have been pushed since the beginning
+     */
+    public final AtomicInteger computedCells = new AtomicInteger(0);
+    /**
+     * Number of failed cells since the beginning
+     */
+    public final AtomicInteger failedCells = new AtomicInteger(0);
 
 
     @Override
@@ -45,4 +90,50 @@ public class ResultsCache implements ProfilerThread.Metric {
 
     }
 
+    /**
+     * Cell where all results have been pushed in the stacks
+     */
+    public static class ProcessedCell {
+        public final int cellId;
+        public final List<Long> receivers;
+        /** Value of {@link #pushedLevels} after the last receiver level of this cell */
+        public final long lastLevel;
+        /** Value of {@link #pushedPaths} after the last path of this cell */
+        public final long lastPath;
+        /** Error message if the computation of this cell has failed, null otherwise */
+        public final String failure;
+
+        /**
+         * @param cellId Cell identifier
+         * @param receivers Primary keys of the receivers computed in this cell
+         * @param lastLevel Value of {@link #pushedLevels} after the last receiver level of this cell
+         * @param lastPath Value of {@link #pushedPaths} after the last path of this cell
+         */
+        public ProcessedCell(int cellId, List<Long> receivers, long lastLevel, long lastPath) {
+            this(cellId, receivers, lastLevel, lastPath, null);
+        }
+
+        /**
+         * @param cellId Cell identifier
+         * @param receivers Primary keys of the receivers computed in this cell
+         * @param lastLevel Value of {@link #pushedLevels} after the last receiver level of this cell
+         * @param lastPath Value of {@link #pushedPaths} after the last path of this cell
+         * @param failure Error message if the computation of this cell has failed, null otherwise
+         */
+        public ProcessedCell(int cellId, List<Long> receivers, long lastLevel, long lastPath, String failure) {
+            this.cellId = cellId;
+            this.receivers = receivers;
+            this.lastLevel = lastLevel;
+            this.lastPath = lastPath;
+            this.failure = failure;
+        }
+
+        /**
+         * @param resultsCache Results stacks
+         * @return True if all the results of this cell have been written
+         */
+        public boolean isWritten(ResultsCache resultsCache) {
+            return lastLevel <= resultsCache.writtenLevels.get() && lastPath <= resultsCache.writtenPaths.get();
+        }
+    }
 }
@@ -0,0 +1,78 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc.output;
+
+import org.noise_planet.noisemodelling.pathfinder.utils.profiler.ProfilerThread;
+
+import java.util.Locale;
+
+/**
+ * Computation and writing throughput since the previous read of the values, with the progress of the cells.
+ * A computation throughput higher than the writing throughput fills the results queue until the computation threads
+ * wait for the writer.
+ */
+public class ResultsThroughputMetric implements ProfilerThread.Metric {
+    private final ResultsCache resultsCache;
+    private long previousTime = System.nanoTime();
+    private long previousPushedLevels;
+    private long previousPushedPaths;
+    private long previousWrittenLevels;
+    private long previousWrittenPaths;
+
+    /**
+     * @param resultsCache Results stacks
+     */
+    public ResultsThroughputMetric(ResultsCache resultsCache) {
+        this.resultsCache = resultsCache;
+        previousPushedLevels = resultsCache.pushedLevels.get();
+        previousPushedPaths = resultsCache.pushedPaths.get();
+        previousWrittenLevels = resultsCache.writtenLevels.get();
+        previousWrittenPaths = resultsCache.writtenPaths.get();
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return new String[] {"receiver_levels_per_second", "paths_per_second", "written_levels_per_second",
+                "written_paths_per_second", "pushed_levels_total", "written_levels_total", "current_cell",
+                "running_cells", "computed_cells", "failed_cells"};
+    }
+
+    @Override
+    public String[] getCurrentValues() {
+        long now = System.nanoTime();
+        double elapsed = Math.max(1, now - previousTime) / 1e9;
+        previousTime = now;
+        long pushedLevels = resultsCache.pushedLevels.get();
+        long pushedPaths = resultsCache.pushedPaths.get();
+        long writtenLevels = resultsCache.writtenLevels.get();
+        long writtenPaths = resultsCache.writtenPaths.get();
+        String[] values = new String[] {
+                String.format(Locale.ROOT, "%.1f", (pushedLevels - previousPushedLevels) / elapsed),
+                String.format(Locale.ROOT, "%.1f", (pushedPaths - previousPushedPaths) / elapsed),
+                String.format(Locale.ROOT, "%.1f", (writtenLevels - previousWrittenLevels) / elapsed),
+                String.format(Locale.ROOT, "%.1f", (writtenPaths - previousWrittenPaths) / elapsed),
+                Long.toString(pushedLevels),
+                Long.toString(writtenLevels),
+                Integer.toString(resultsCache.lastStartedCell.get()),
+                Integer.toString(resultsCache.runningCells.get()),
+                Integer.toString(resultsCache.computedCells.get()),
+                Integer.toString(resultsCache.failedCells.get())};
+        previousPushedLevels = pushedLevels;
+        previousPushedPaths = pushedPaths;
+        previousWrittenLevels = writtenLevels;
+        previousWrittenPaths = writtenPaths;
+        return values;
+    }
+
+    @Override
+    public void tick(long currentMillis) {
+
+    }
+}
@@ -0,0 +1,206 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Quadtree partition of the computation grid into cells of balanced cost.
+ * The receivers, buildings and sources are counted on the grid, then the square blocks of grid cells are split in four
+ * while their estimated cost is greater than the maximum cost.
+ * The estimated cost of a cell is the number of receivers of the cell multiplied by the buildings and sources found in
+ * the cell expanded by the maximum propagation distance, this is the input of the path finding of each receiver.
+ */
+public class AdaptiveCellPartition {
+    /** Cost of a building */
+    public static final double BUILDING_COST = 1;
+    /** Cost of a meter of line source, a point source cost {@link #POINT_SOURCE_COST} */
+    public static final double SOURCE_LENGTH_COST = 0.1;
+    /** Cost of a point source */
+    public static final double POINT_SOURCE_COST = 1;
+
+    private final Envelope mainEnvelope;
+    private final int gridDim;
+    private final double cellWidth;
+    private final double cellHeight;
+    /** Number of grid cells added around a cell to cover the maximum propagation distance */
+    private final int bufferCells;
+    private final double[] receivers;
+    /** Cost of the buildings and sources of each grid cell */
+    private final double[] environment;
+    private double[] receiversSum;
+    private double[] environmentSum;
+
+    /**
+     * @param mainEnvelope Computation area
+     * @param gridDim Number of grid cells on each axis
+     * @param maximumPropagationDistance Maximum propagation distance
+     */
+    public AdaptiveCellPartition(Envelope mainEnvelope, int gridDim, double maximumPropagationDistance) {
+        this.mainEnvelope = mainEnvelope;
+        this.gridDim = gridDim;
+        this.cellWidth = mainEnvelope.getWidth() / gridDim;
+        this.cellHeight = mainEnvelope.getHeight() / gridDim;
+        this.bufferCells = (int) Math.ceil(maximumPropagationDistance / Math.min(cellWidth, cellHeight));
+        this.receivers = new double[gridDim * gridDim];
+        this.environment = new double[gridDim * gridDim];
+    }
+
+    private int index(double x, double y) {
+        int i = Math.max(0, Math.min(gridDim - 1, (int) Math.floor((x - mainEnvelope.getMinX()) / cellWidth)));
+        int j = Math.max(0, Math.min(gridDim - 1, (int) Math.floor((y - mainEnvelope.getMinY()) / cellHeight)));
+        return i * gridDim + j;
+    }
+
+    /**
+     * @param receiver Receiver location
+     */
+    public void addReceiver(Coordinate receiver) {
+        receivers[index(receiver.x, receiver.y)] += 1;
+        receiversSum = null;
+    }
+
+    /**
+     * @param building Building envelope
+     */
+    public void addBuilding(Envelope building) {
+        environment[index(building.centre().x, building.centre().y)] += BUILDING_COST;
+        environmentSum = null;
+    }
+
+    /**
+     * @param coordinates Vertices of a point or line source
+     */
+    public void addSource(Coordinate[] coordinates) {
+        if(coordinates.length == 1) {
+            environment[index(coordinates[0].x, coordinates[0].y)] += POINT_SOURCE_COST;
+        } else {
+            for (int i = 0; i < coordinates.length - 1; i++) {
+                Coordinate p0 = coordinates[i];
+                Coordinate p1 = coordinates[i + 1];
+                environment[index((p0.x + p1.x) / 2, (p0.y + p1.y) / 2)] += p0.distance(p1) * SOURCE_LENGTH_COST;
+            }
+        }
+        environmentSum = null;
+    }
+
+    /**
+     * @param values Values of each grid cell
+     * @return Summed area table, (gridDim + 1)² values
+     */
+    private double[] summedAreaTable(double[] values) {
+        int dim = gridDim + 1;
+        double[] sum = new double[dim * dim];
+        for (int i = 0; i < gridDim; i++) {
+            for (int j = 0; j < gridDim; j++) {
+                sum[(i + 1) * dim + j + 1] = values[i * gridDim + j] + sum[i * dim + j + 1] +
+                        sum[(i + 1) * dim + j] - sum[i * dim + j];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * @return Sum of the values of the grid cells i0 &lt;= i &lt; i1 and j0 &lt;= j &lt; j1 (clipped to the grid)
+     */
+    private double sum(double[] summedAreaTable, int i0, int j0, int i1, int j1) {
+        int dim = gridDim + 1;
+        i0 = Math.max(0, i0);
+        j0 = Math.max(0, j0);
+        i1 = Math.min(gridDim, i1);
+        j1 = Math.min(gridDim, j1);
+        return summedAreaTable[i1 * dim + j1] - summedAreaTable[i0 * dim + j1] - summedAreaTable[i1 * dim + j0] +
+                summedAreaTable[i0 * dim + j0];
+    }
+
+    /**
+     * @param cellIndex Cell
+     * @return Number of receivers located in the cell
+     */
+    public int getReceiverCount(CellIndex cellIndex) {
+        if(receiversSum == null) {
+            receiversSum = summedAreaTable(receivers);
+        }
+        int i = cellIndex.getLatitudeIndex();
+        int j = cellIndex.getLongitudeIndex();
+        return (int) Math.round(sum(receiversSum, i, j, i + cellIndex.getSize(), j + cellIndex.getSize()));
+    }
+
+    /**
+     * @param cellIndex Cell
+     * @return Estimated computation cost of the cell
+     */
+    public double getCost(CellIndex cellIndex) {
+        if(environmentSum == null) {
+            environmentSum = summedAreaTable(environment);
+        }
+        int i = cellIndex.getLatitudeIndex();
+        int j = cellIndex.getLongitudeIndex();
+        int size = cellIndex.getSize();
+        return getReceiverCount(cellIndex) * (1 + sum(environmentSum, i - bufferCells, j - bufferCells,
+                i + size + bufferCells, j + size + bufferCells));
+    }
+
+    /**
+     * Split the grid into cells where the estimated cost is lower than the maximum cost. Cells without receivers are
+     * ignored.
+     * @param maximumCellCost Maximum estimated cost of a cell
+     * @param maximumCellSize Maximum number of grid cells on each axis of a cell, it is rounded to the largest power of
+     *                        two that divides the grid dimension
+     * @return Cells with their number of receivers, from the greatest to the lowest estimated cost
+     */
+    public Map<CellIndex, Integer> split(double maximumCellCost, int maximumCellSize) {
+        int rootSize = Math.max(1, Math.min(Integer.highestOneBit(Math.max(1, maximumCellSize)),
+                Integer.lowestOneBit(gridDim)));
+        List<CellIndex> cells = new ArrayList<>();
+        for (int i = 0; i < gridDim; i += rootSize) {
+            for (int j = 0; j < gridDim; j += rootSize) {
+                split(new CellIndex(j, i, rootSize), maximumCellCost, cells);
+            }
+        }
+        Map<CellIndex, Double> costs = new HashMap<>();
+        for (CellIndex cell : cells) {
+            costs.put(cell, getCost(cell));
+        }
+        cells.sort(Comparator.comparing((CellIndex cell) -> costs.get(cell)).reversed()
+                .thenComparing(Comparator.naturalOrder()));
+        Map<CellIndex, Integer> result = new LinkedHashMap<>();
+        for (CellIndex cell : cells) {
+            result.put(cell, getReceiverCount(cell));
+        }
+        return result;
+    }
+
+    private void split(CellIndex cellIndex, double maximumCellCost, List<CellIndex> cells) {
+        if(getReceiverCount(cellIndex) == 0) {
+            return;
+        }
+        int size = cellIndex.getSize();
+        if(size > 1 && getCost(cellIndex) > maximumCellCost) {
+            int half = size / 2;
+            int i = cellIndex.getLatitudeIndex();
+            int j = cellIndex.getLongitudeIndex();
+            split(new CellIndex(j, i, half), maximumCellCost, cells);
+            split(new CellIndex(j, i + half, half), maximumCellCost, cells);
+            split(new CellIndex(j + half, i, half), maximumCellCost, cells);
+            split(new CellIndex(j + half, i + half, half), maximumCellCost, cells);
+        } else {
+            cells.add(cellIndex);
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.dbtypes.DBTypes;
+import org.h2gis.utilities.dbtypes.DBUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Shared table of cells to compute. The coordinator creates one job per populated cell, then any number of worker
+ * processes claim the pending jobs with their own connection. A job is done once the results of the cell are written.
+ * A failed job is claimed again until the maximum number of attempts is reached.
+ * A running job is leased to its worker, the lease is renewed while the cell is computed and written. A job where the
+ * lease has expired is claimed again, the updates of the previous worker are then rejected.
+ */
+public class CellJobTable {
+    public static final String STATE_PENDING = "PENDING";
+    public static final String STATE_RUNNING = "RUNNING";
+    public static final String STATE_DONE = "DONE";
+    public static final String STATE_FAILED = "FAILED";
+    /** The results of the running attempt may have been removed by a worker that lost its lease, the worker of the
+     * running attempt removes its results and releases the job once its results are written */
+    public static final String STATE_REVOKED = "REVOKED";
+    private static final int MESSAGE_MAX_LENGTH = 4096;
+
+    private final String tableName;
+
+    /**
+     * @param tableName Job table name
+     */
+    public CellJobTable(String tableName) {
+        this.tableName = tableName;
+    }
+
+    /**
+     * @return Job table name
+     */
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * @param connection Active connection
+     * @return True if the job table exists
+     * @throws SQLException
+     */
+    public boolean exists(Connection connection) throws SQLException {
+        return JDBCUtilities.tableExists(connection, tableName);
+    }
+
+    /**
+     * Drop the job table if it exists
+     * @param connection Active connection
+     * @throws SQLException
+     */
+    public void drop(Connection connection) throws SQLException {
+        DBTypes dbType = DBUtils.getDBType(connection.unwrap(Connection.class));
+        try (Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + TableLocation.parse(tableName, dbType));
+        }
+    }
+
+    /**
+     * Create the job table with one pending job per cell
+     * @param connection Active connection
+     * @param cells Cell index with the number of receivers, the jobs are claimed in the iteration order of this map
+     * @param gridDim Number of cells on each axis
+     * @throws SQLException
+     */
+    public void create(Connection connection, Map<CellIndex, Integer> cells, int gridDim) throws SQLException {
+        DBTypes dbType = DBUtils.getDBType(connection.unwrap(Connection.class));
+        String table = TableLocation.parse(tableName, dbType).toString();
+        try (Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE " + table + "(CELL_ID INTEGER PRIMARY KEY, LONGITUDE_INDEX INTEGER NOT NULL," +
+                    " LATITUDE_INDEX INTEGER NOT NULL, CELL_SIZE INTEGER NOT NULL, PRIORITY INTEGER NOT NULL," +
+                    " RECEIVERS INTEGER, STATE VARCHAR NOT NULL, WORKER VARCHAR, ATTEMPTS INTEGER NOT NULL," +
+                    " STARTED TIMESTAMP, MESSAGE VARCHAR)");
+        }
+        try (PreparedStatement ps = connection.prepareStatement("INSERT INTO " + table +
+                "(CELL_ID, LONGITUDE_INDEX, LATITUDE_INDEX, CELL_SIZE, PRIORITY, RECEIVERS, STATE, ATTEMPTS)" +
+                " VALUES (?, ?, ?, ?, ?, ?, ?, 0)")) {
+            int priority = 0;
+            for (Map.Entry<CellIndex, Integer> cell : cells.entrySet()) {
+                CellIndex cellIndex = cell.getKey();
+                ps.setInt(1, getCellId(cellIndex, gridDim));
+                ps.setInt(2, cellIndex.getLongitudeIndex());
+                ps.setInt(3, cellIndex.getLatitudeIndex());
+                ps.setInt(4, cellIndex.getSize());
+                ps.setInt(5, priority++);
+                ps.setInt(6, cell.getValue());
+                ps.setString(7, STATE_PENDING);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * @param connection Active connection
+     * @return All the cells of the job table in the claim order
+     * @throws SQLException
+     */
+    public List<CellIndex> readCells(Connection connection) throws SQLException {
+        DBTypes dbType = DBUtils.getDBType(connection.unwrap(Connection.class));
+        String table = TableLocation.parse(tableName, dbType).toString();
+        List<CellIndex> cells = new ArrayList<>();
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT LONGITUDE_INDEX, LATITUDE_INDEX, CELL_SIZE FROM " + table +
+                     " ORDER BY PRIORITY")) {
+            while (rs.next()) {
+                cells.add(new CellIndex(rs.getInt(1), rs.getInt(2), rs.getInt(3)));
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * @param cellIndex Cell index
+     * @param gridDim Number of cells on each axis
+     * @return Cell identifier
+     */
+    public static int getCellId(CellIndex cellIndex, int gridDim) {
+        return cellIndex.getLatitudeIndex() * gridDim + cellIndex.getLongitudeIndex();
+    }
+
+    /**
+     * Claim the next pending job. Jobs are claimed in the order of the cells provided on creation.
+     * @param connection Active connection
+     * @param worker Worker identifier
+     * @param leaseDuration Running jobs started more than this duration ago (milliseconds) are considered lost and
+     *                      are claimed again, 0 to never claim running jobs
+     * @return The claimed job or null if there is no pending job
+     * @throws SQLException
+     */
+    public Job claim(Connection connection, String worker, long leaseDuration) throws SQLException {
+        DBTypes dbType = DBUtils.getDBType(connection.unwrap(Connection.class));
+        String table = TableLocation.parse(tableName, dbType).toString();
+        if (leaseDuration > 0) {
+            try (PreparedStatement ps = connection.prepareStatement("UPDATE " + table + " SET STATE = ?" +
+                    " WHERE STATE IN (?, ?) AND STARTED < ?")) {
+                ps.setString(1, STATE_PENDING);
+                ps.setString(2, STATE_RUNNING);
+                ps.setString(3, STATE_REVOKED);
+                ps.setTimestamp(4, new Timestamp(System.currentTimeMillis() - leaseDuration));
+                ps.executeUpdate();
+            }
+        }
+        try (PreparedStatement select = connection.prepareStatement("SELECT CELL_ID, LONGITUDE_INDEX," +
+                " LATITUDE_INDEX, CELL_SIZE, ATTEMPTS FROM " + table + " WHERE STATE = ? ORDER BY PRIORITY");
+             PreparedStatement update = connection.prepareStatement("UPDATE " + table + " SET STATE = ?," +
+                     " WORKER = ?, ATTEMPTS = ATTEMPTS + 1, STARTED = ? WHERE CELL_ID = ? AND STATE = ?" +
+                     " AND ATTEMPTS = ?")) {
+            select.setString(1, STATE_PENDING);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    int cellId = rs.getInt(1);
+                    int attempts = rs.getInt(5);
+                    update.setString(1, STATE_RUNNING);
+                    update.setString(2, worker);
+                    update.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+                    update.setInt(4, cellId);
+                    update.setString(5, STATE_PENDING);
+                    update.setInt(6, attempts);
+                    // Another worker may have claimed this job since the select
+                    if (update.executeUpdate() == 1) {
+                        return new Job(cellId, new CellIndex(rs.getInt(2), rs.getInt(3), rs.getInt(4)),
+                                worker, attempts + 1);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Set the job as done, the results of the cell must be written
+     * @param connection Active connection
+     * @param job Claimed job
+     * @return False if the lease of the job has been lost, the job is then not updated
+     * @throws SQLException
+     */
+    public boolean setDone(Connection connection, Job job) throws SQLException {
+        DBTypes dbType = DBUtils.getDBType(connection.unwrap(Connection.class));
+        String table = TableLocation.parse(tableName, dbType).toString();
+        try (PreparedStatement ps = connection.prepareStatement("UPDATE " + table + " SET STATE = ?, MESSAGE = NULL" +
+                " WHERE CELL_ID = ? AND STATE = ? AND WORKER = ? AND ATTEMPTS = ?")) {
+            ps.setString(1, STATE_DONE);
+            ps.setInt(2, job.cellId);
+            ps.setString(3, STATE_RUNNING);
+            ps.setString(4, job.worker);
+            ps.setInt(5, job.attempt);
+            return ps.executeUpdate() == 1;
+        }
+    }
+
+    /**
+     * Release a job after a failure, the job is pending again if the maximum number of attempts is not reached
+     * @param connection Active connection
+     * @param job Claimed job
+     * @param maximumAttempts Maximum number of attempts
+     * @param message Error message
+     * @return False if the lease of the job has been lost, the job is then not updated
+     * @throws SQLException
+     */
+    public boolean setFailed(Connection connection, Job job, int maximumAttempts, String message)
+            throws SQLException {
+        DBTypes dbType = DBUtils.getDBType(connection.unwrap(Connection.class));
+        String table = TableLocation.parse(tableName, dbType).toString();
+        if (message != null && message.length() > MESSAGE_MAX_LENGTH) {
+            message = message.substring(0, MESSAGE_MAX_LENGTH);
+        }
+        try (PreparedStatement ps = connection.prepareStatement("UPDATE " + table + " SET STATE = CASE WHEN" +
+                " ATTEMPTS < ? THEN ? ELSE ? END, MESSAGE = ? WHERE CELL_ID = ? AND STATE = ? AND WORKER = ?" +
+                " AND ATTEMPTS = ?")) {
+            ps.setInt(1, maximumAttempts);
+            ps.setString(2, STATE_PENDING);
+            ps.setString(3, STATE_FAILED);
+            ps.setString(4, message);
+            ps.setInt(5, job.cellId);
+            ps.setString(6, STATE_RUNNING);
+            ps.setString(7, job.worker);
+            ps.setInt(8, job.attempt);
+            return ps.executeUpdate() == 1;
+        }
+    }
+
+    /**
+     * Renew the lease of a running job
+     * @param connection Active connection
+     * @param job Claimed job
+     * @return False if the lease of the job has been lost
+     * @throws SQLException
+     */
+    public boolean renewLease(Connection connection, Job job) throws SQLException {
+        DBTypes dbType = DBUtils.getDBType(connection.unwrap(Connection.class));
+        String table = TableLocation.parse(tableName, dbType).toString();
+        try (PreparedStatement ps = connection.prepareStatement("UPDATE " + table + " SET STARTED = ?" +
+                " WHERE CELL_ID = ? AND STATE = ? AND WORKER = ? AND ATTEMPTS = ?")) {
+            ps.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
+            ps.setInt(2, job.cellId);
+            ps.setString(3, STATE_RUNNING);
+            ps.setString(4, job.worker);
+            ps.setInt(5, job.attempt);
+            return ps.executeUpdate() == 1;
+        }
+    }
+
+    /**
+     * Release a job where the lease has been lost, once the results of the lost attempt have been removed from the
+     * results tables. The removed results may include results of the other attempt on the same receivers:
+     * <ul>
+     *     <li>A job done by another attempt is pending again</li>
+     *     <li>A job running by another attempt is revoked, its worker removes its results once written then release
+     *     the job</li>
+     *     <li>A job revoked during this attempt is pending again</li>
+     * </ul>
+     * @param connection Active connection
+     * @param job Job where the lease has been lost
+     * @throws SQLException
+     */
+    public void releaseLostLease(Connection connection, Job job) throws SQLException {
+        DBTypes dbType = DBUtils.getDBType(connection.unwrap(Connection.class));
+        String table = TableLocation.parse(tableName, dbType).toString();
+        // A single statement so that the job cannot be claimed between the two updates
+        try (PreparedStatement ps = connection.prepareStatement("UPDATE " + table + " SET STATE = CASE WHEN" +
+                " STATE = ? THEN ? ELSE ? END WHERE CELL_ID = ? AND (STATE = ? OR" +
+                " (STATE = ? AND WORKER = ? AND ATTEMPTS = ?) OR (STATE = ? AND NOT (WORKER = ? AND ATTEMPTS = ?)))")) {
+            ps.setString(1, STATE_RUNNING);
+            ps.setString(2, STATE_REVOKED);
+            ps.setString(3, STATE_PENDING);
+            ps.setInt(4, job.cellId);
+            ps.setString(5, STATE_DONE);
+            ps.setString(6, STATE_REVOKED);
+            ps.setString(7, job.worker);
+            ps.setInt(8, job.attempt);
+            ps.setString(9, STATE_RUNNING);
+            ps.setString(10, job.worker);
+            ps.setInt(11, job.attempt);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * @param connection Active connection
+     * @return Number of jobs for each state
+     * @throws SQLException
+     */
+    public Map<String, Integer> countByState(Connection connection) throws SQLException {
+        DBTypes dbType = DBUtils.getDBType(connection.unwrap(Connection.class));
+        String table = TableLocation.parse(tableName, dbType).toString();
+        Map<String, Integer> counts = new TreeMap<>();
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT STATE, COUNT(*) FROM " + table + " GROUP BY STATE")) {
+            while (rs.next()) {
+                counts.put(rs.getString(1), rs.getInt(2));
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Cell claimed by a worker
+     */
+    public static class Job {
+        public final int cellId;
+        public final CellIndex cellIndex;
+        /** Worker that holds the lease */
+        public final String worker;
+        /** Attempt number, starting at 1 */
+        public final int attempt;
+
+        public Job(int cellId, CellIndex cellIndex, String worker, int attempt) {
+            this.cellId = cellId;
+            this.cellIndex = cellIndex;
+            this.worker = worker;
+            this.attempt = attempt;
+        }
+    }
+}
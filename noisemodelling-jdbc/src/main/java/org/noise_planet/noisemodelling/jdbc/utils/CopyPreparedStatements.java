@@ -0,0 +1,118 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.ByteOrderValues;
+import org.locationtech.jts.io.WKBWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.SQLException;
+import java.util.Collections;
+
+/**
+ * This class implements PreparedStatement in order to output the rows to a File as a PostgreSQL COPY block
+ * (text format, one tab separated line per row) instead of one INSERT query per row.
+ * The COPY block is opened by the first row and ended by {@link #close()}. Geometries are written as hexadecimal
+ * extended WKB with SRID, read by the PostGIS geometry type. The file can be loaded with psql.
+ */
+public class CopyPreparedStatements extends StringPreparedStatements {
+    public static final String NULL_VALUE = "\\N";
+    public static final String END_OF_DATA = "\\.";
+    WKBWriter wkbWriter = new WKBWriter(3, ByteOrderValues.LITTLE_ENDIAN, true);
+    StringBuilder row = new StringBuilder();
+    boolean blockStarted = false;
+
+    /**
+     * @param w Output
+     * @param tableName Table to feed
+     * @param columns Comma separated column names, null to feed all the columns of the table in order
+     */
+    public CopyPreparedStatements(Writer w, String tableName, String columns) {
+        super(w, "COPY " + tableName + (columns == null || columns.isEmpty() ? "" : " (" + columns + ")") +
+                " FROM stdin;");
+    }
+
+    @Override
+    public void addBatch() throws SQLException {
+        row.setLength(0);
+        int lastIndex = parameters.isEmpty() ? 0 : Collections.max(parameters.keySet());
+        for (int paramIndex = 1; paramIndex <= lastIndex; paramIndex++) {
+            if(paramIndex > 1) {
+                row.append('\t');
+            }
+            appendValue(parameters.get(paramIndex));
+        }
+        row.append('\n');
+        try {
+            if(!blockStarted) {
+                w.write(query);
+                w.write('\n');
+                blockStarted = true;
+            }
+            w.write(row.toString());
+        } catch (IOException e) {
+            throw new SQLException(e);
+        }
+    }
+
+    private void appendValue(Object data) {
+        if(data == null) {
+            row.append(NULL_VALUE);
+        } else if(data instanceof Number) {
+            row.append(data);
+        } else if(data instanceof Boolean) {
+            row.append((Boolean) data ? 't' : 'f');
+        } else if(data instanceof Geometry) {
+            row.append(WKBWriter.toHex(wkbWriter.write((Geometry) data)));
+        } else if(data instanceof byte[]) {
+            row.append("\\\\x");
+            row.append(WKBWriter.toHex((byte[]) data));
+        } else {
+            String text = data.toString();
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                switch (c) {
+                    case '\\':
+                        row.append("\\\\");
+                        break;
+                    case '\t':
+                        row.append("\\t");
+                        break;
+                    case '\n':
+                        row.append("\\n");
+                        break;
+                    case '\r':
+                        row.append("\\r");
+                        break;
+                    default:
+                        row.append(c);
+                }
+            }
+        }
+    }
+
+    /**
+     * End the COPY block if a row has been written
+     * @throws SQLException If the output cannot be written
+     */
+    @Override
+    public void close() throws SQLException {
+        if(blockStarted) {
+            try {
+                w.write(END_OF_DATA);
+                w.write('\n');
+            } catch (IOException e) {
+                throw new SQLException(e);
+            }
+            blockStarted = false;
+        }
+    }
+}
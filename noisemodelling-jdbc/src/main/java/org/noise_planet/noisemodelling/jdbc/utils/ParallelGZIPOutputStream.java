@@ -0,0 +1,162 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.noise_planet.noisemodelling.pathfinder.ThreadPool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * GZIP output stream that compresses blocks of data on several threads. Each block is written as an independent gzip
+ * member, a sequence of gzip members is a valid gzip file (RFC 1952) read by gunzip and {@link java.util.zip.GZIPInputStream}.
+ * The compressed blocks are written in order to the channel. The number of blocks waiting for compression is bounded,
+ * the writing thread is blocked while the compression threads are late.
+ */
+public class ParallelGZIPOutputStream extends OutputStream {
+    /** Default size of the uncompressed blocks (bytes) */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+    private final WritableByteChannel channel;
+    private final ThreadPool compressionPool;
+    private final int blockSize;
+    private final int maximumPendingBlocks;
+    private final int compressionLevel;
+    private final ArrayDeque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+    private byte[] block;
+    private int blockLength = 0;
+    private boolean closed = false;
+
+    /**
+     * @param channel Destination, closed with this stream
+     * @param threadCount Number of compression threads, 0 for the number of processors
+     */
+    public ParallelGZIPOutputStream(WritableByteChannel channel, int threadCount) {
+        this(channel, threadCount, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param channel Destination, closed with this stream
+     * @param threadCount Number of compression threads, 0 for the number of processors
+     * @param blockSize Size of the uncompressed blocks (bytes)
+     * @param compressionLevel Deflate compression level (0-9)
+     */
+    public ParallelGZIPOutputStream(WritableByteChannel channel, int threadCount, int blockSize,
+                                    int compressionLevel) {
+        this.channel = channel;
+        int threads = threadCount > 0 ? threadCount : Runtime.getRuntime().availableProcessors();
+        this.compressionPool = new ThreadPool(threads, threads, 60, TimeUnit.SECONDS);
+        this.blockSize = blockSize;
+        this.maximumPendingBlocks = 2 * threads;
+        this.compressionLevel = compressionLevel;
+        this.block = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if(blockLength == blockSize) {
+            submitBlock();
+        }
+        block[blockLength++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if(blockLength == blockSize) {
+                submitBlock();
+            }
+            int length = Math.min(len, blockSize - blockLength);
+            System.arraycopy(b, off, block, blockLength, length);
+            blockLength += length;
+            off += length;
+            len -= length;
+        }
+    }
+
+    /**
+     * Compress the pending data and write all the compressed blocks. A flush ends the current gzip member, frequent
+     * flushes reduce the compression ratio.
+     * @throws IOException If the channel cannot be written
+     */
+    @Override
+    public void flush() throws IOException {
+        submitBlock();
+        while (!pendingBlocks.isEmpty()) {
+            writeFirstBlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush();
+        } finally {
+            compressionPool.shutdownNow();
+            channel.close();
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        if(blockLength == 0) {
+            return;
+        }
+        final byte[] data = block;
+        final int length = blockLength;
+        pendingBlocks.add(compressionPool.submit(() -> compress(data, length, compressionLevel)));
+        block = new byte[blockSize];
+        blockLength = 0;
+        // Write the blocks already compressed, and wait for the oldest block if too many blocks are pending
+        while (!pendingBlocks.isEmpty() && (pendingBlocks.size() >= maximumPendingBlocks ||
+                pendingBlocks.peek().isDone())) {
+            writeFirstBlock();
+        }
+    }
+
+    private void writeFirstBlock() throws IOException {
+        byte[] compressed;
+        try {
+            compressed = pendingBlocks.poll().get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        } catch (ExecutionException ex) {
+            throw new IOException(ex.getCause());
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(compressed);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static byte[] compress(byte[] data, int length, int compressionLevel) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 4 + 64);
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(compressed, 65536) {
+            {
+                def.setLevel(compressionLevel);
+            }
+        }) {
+            gzipOutputStream.write(data, 0, length);
+        }
+        return compressed.toByteArray();
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.h2gis.utilities.dbtypes.DBTypes;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.impl.PackedCoordinateSequenceFactory;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKBReader;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Decode the geometries transferred as WKB bytes by the database, instead of the JTS geometries built by the JDBC
+ * driver. Points are decoded directly into ordinates without creating any geometry object, other geometries are
+ * decoded with packed coordinate sequences (a single array of ordinates per sequence instead of a Coordinate object
+ * per vertex).
+ * Both ISO WKB (PostGIS ST_AsBinary) and extended WKB with SRID (H2GIS) are supported, in both byte orders.
+ */
+public class WKBGeometryReader {
+    private static final int EWKB_Z_FLAG = 0x80000000;
+    private static final int EWKB_M_FLAG = 0x40000000;
+    private static final int EWKB_SRID_FLAG = 0x20000000;
+    private static final int WKB_POINT = 1;
+    private static final int ISO_Z_OFFSET = 1000;
+    private static final int ISO_M_OFFSET = 2000;
+    private static final int ISO_ZM_OFFSET = 3000;
+
+    private final WKBReader wkbReader;
+
+    /**
+     * @param geometryFactory Geometry factory, the precision model and SRID of this factory are used for the decoded
+     *                        geometries
+     */
+    public WKBGeometryReader(GeometryFactory geometryFactory) {
+        wkbReader = new WKBReader(new GeometryFactory(geometryFactory.getPrecisionModel(),
+                geometryFactory.getSRID(), PackedCoordinateSequenceFactory.DOUBLE_FACTORY));
+    }
+
+    /**
+     * @param quotedGeometryColumn Geometry column name, quoted
+     * @param dbType Database type
+     * @return SQL expression that returns the geometry as WKB bytes
+     */
+    public static String getBinaryExpression(String quotedGeometryColumn, DBTypes dbType) {
+        if(dbType == DBTypes.POSTGIS || dbType == DBTypes.POSTGRESQL) {
+            return "ST_AsBinary(" + quotedGeometryColumn + ")";
+        }
+        // H2GIS returns the geometry value as extended WKB bytes
+        return quotedGeometryColumn;
+    }
+
+    /**
+     * @param resultSet Result set
+     * @param columnIndex Column of the {@link #getBinaryExpression} expression
+     * @return Decoded geometry or null
+     * @throws SQLException If the WKB bytes are not valid
+     */
+    public Geometry read(ResultSet resultSet, int columnIndex) throws SQLException {
+        return read(resultSet.getBytes(columnIndex));
+    }
+
+    /**
+     * @param wkb WKB bytes
+     * @return Decoded geometry or null if wkb is null
+     * @throws SQLException If the WKB bytes are not valid
+     */
+    public Geometry read(byte[] wkb) throws SQLException {
+        if(wkb == null) {
+            return null;
+        }
+        try {
+            return wkbReader.read(wkb);
+        } catch (ParseException ex) {
+            throw new SQLException(ex);
+        }
+    }
+
+    /**
+     * Decode the ordinates of a point without creating any geometry object
+     * @param wkb WKB bytes
+     * @param xyz (out) X, Y and Z ordinates, Z is NaN if the point is 2D
+     * @return False if the geometry is not a point, the geometry must then be decoded with {@link #read(byte[])},
+     * or if the point is empty
+     */
+    public static boolean readPoint(byte[] wkb, double[] xyz) {
+        if(wkb == null || wkb.length < 5) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(wkb);
+        buffer.order(wkb[0] == 1 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        int type = buffer.getInt(1);
+        int offset = 5;
+        boolean hasZ = (type & EWKB_Z_FLAG) != 0;
+        boolean hasM = (type & EWKB_M_FLAG) != 0;
+        if((type & EWKB_SRID_FLAG) != 0) {
+            offset += Integer.BYTES;
+        }
+        int isoType = type & ~(EWKB_Z_FLAG | EWKB_M_FLAG | EWKB_SRID_FLAG);
+        if(isoType == WKB_POINT + ISO_Z_OFFSET || isoType == WKB_POINT + ISO_ZM_OFFSET) {
+            hasZ = true;
+        }
+        if(isoType == WKB_POINT + ISO_M_OFFSET || isoType == WKB_POINT + ISO_ZM_OFFSET) {
+            hasM = true;
+        }
+        if(isoType % ISO_Z_OFFSET != WKB_POINT) {
+            return false;
+        }
+        int dimension = 2 + (hasZ ? 1 : 0) + (hasM ? 1 : 0);
+        if(wkb.length < offset + dimension * Double.BYTES) {
+            return false;
+        }
+        xyz[0] = buffer.getDouble(offset);
+        xyz[1] = buffer.getDouble(offset + Double.BYTES);
+        xyz[2] = hasZ ? buffer.getDouble(offset + 2 * Double.BYTES) : Double.NaN;
+        // POINT EMPTY is encoded with NaN ordinates
+        return !Double.isNaN(xyz[0]) || !Double.isNaN(xyz[1]);
+    }
+}
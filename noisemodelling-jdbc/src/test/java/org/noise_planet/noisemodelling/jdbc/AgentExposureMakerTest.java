@@ -0,0 +1,128 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.api.EmptyProgressVisitor;
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.utilities.JDBCUtilities;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AgentExposureMakerTest {
+
+    private Connection connection;
+
+    @BeforeEach
+    public void tearUp() throws Exception {
+        connection = JDBCUtilities.wrapConnection(H2GISDBFactory.createSpatialDataBase(AgentExposureMakerTest.class.getSimpleName(), true, ""));
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        if(connection != null) {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testExposure() throws Exception {
+        try(Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE RECEIVERS(PK INTEGER PRIMARY KEY, FACILITY VARCHAR)");
+            st.execute("INSERT INTO RECEIVERS VALUES (1, 'home_1'), (2, 'work_1')");
+            st.execute("CREATE TABLE LEVELS(IDRECEIVER INTEGER, PERIOD VARCHAR, LAEQ REAL)");
+            StringBuilder sb = new StringBuilder("INSERT INTO LEVELS VALUES ");
+            for(int timeBin = 0; timeBin < AgentExposureMaker.SECONDS_PER_DAY; timeBin += 3600) {
+                if(timeBin > 0) {
+                    sb.append(", ");
+                }
+                sb.append(String.format("(1, '%d', 50), (2, '%d', 70)", timeBin, timeBin));
+            }
+            st.execute(sb.toString());
+            // Global level must be ignored
+            st.execute("INSERT INTO LEVELS VALUES (1, '', 90)");
+        }
+        AgentExposureMaker agentExposureMaker = new AgentExposureMaker(3600);
+        agentExposureMaker.setThreadCount(2);
+        agentExposureMaker.setAgentBatchSize(2);
+        agentExposureMaker.loadFacilityLevels(connection, "RECEIVERS", "LEVELS");
+        assertEquals(2, agentExposureMaker.getFacilityCount());
+        assertEquals(70, agentExposureMaker.getFacilityLevel("work_1", 7200), 1e-6);
+
+        List<AgentExposureMaker.Agent> agents = new ArrayList<>();
+        // stay at home all day
+        AgentExposureMaker.Agent homeAgent = new AgentExposureMaker.Agent("a");
+        homeAgent.addActivity(new AgentExposureMaker.Activity("home_1", "home", 0, 28 * 3600,
+                new Coordinate(1, 2)));
+        agents.add(homeAgent);
+        // work from 8h to 16h
+        AgentExposureMaker.Agent worker = new AgentExposureMaker.Agent("b");
+        worker.age = 40;
+        worker.addActivity(new AgentExposureMaker.Activity("home_1", "home", 0, 8 * 3600,
+                new Coordinate(1, 2)));
+        worker.addActivity(new AgentExposureMaker.Activity("work_1", "work", 8 * 3600, 16 * 3600,
+                new Coordinate(3, 4)));
+        worker.addActivity(new AgentExposureMaker.Activity("home_1", "home", 16 * 3600, 28 * 3600,
+                null));
+        agents.add(worker);
+        // unknown facility
+        AgentExposureMaker.Agent lost = new AgentExposureMaker.Agent("c");
+        lost.addActivity(new AgentExposureMaker.Activity("unknown", "leisure", 0, 28 * 3600, null));
+        agents.add(lost);
+
+        AgentExposureMaker.AgentExposure exposure = agentExposureMaker.computeExposure(homeAgent);
+        assertEquals(50, exposure.laeq, 1e-3);
+        assertEquals("home_1", exposure.home.facilityId);
+        assertNull(exposure.work);
+
+        exposure = agentExposureMaker.computeExposure(worker);
+        double expected = 10 * Math.log10((16 * Math.pow(10, 5) + 8 * Math.pow(10, 7)) / 24);
+        assertEquals(expected, exposure.laeq, 1e-3);
+        assertEquals("work", exposure.sequence[10].mainActivityType);
+        assertEquals(70, exposure.sequence[10].laeq, 1e-6);
+        // home coordinate is used when the activity does not provide a position
+        assertEquals(new Coordinate(1, 2), exposure.sequence[20].mainCoordinate);
+
+        agentExposureMaker.run(connection, agents.iterator(), agents.size(), "EXPOSURE", new EmptyProgressVisitor());
+
+        assertEquals(3, JDBCUtilities.getRowCount(connection, "EXPOSURE"));
+        assertEquals(3 * 24, JDBCUtilities.getRowCount(connection, "EXPOSURE_SEQUENCE"));
+        try(Statement st = connection.createStatement()) {
+            try(ResultSet rs = st.executeQuery("SELECT LAEQ, AGE, WORK_FACILITY, ST_X(HOME_GEOM) FROM EXPOSURE" +
+                    " WHERE PERSON_ID = 'b'")) {
+                assertTrue(rs.next());
+                assertEquals(expected, rs.getDouble(1), 1e-3);
+                assertEquals(40, rs.getInt(2));
+                assertEquals("work_1", rs.getString(3));
+                // the last home activity is not located, the first located home activity is used
+                assertEquals(1, rs.getDouble(4), 1e-6);
+            }
+            try(ResultSet rs = st.executeQuery("SELECT LAEQ FROM EXPOSURE WHERE PERSON_ID = 'c'")) {
+                assertTrue(rs.next());
+                assertEquals(AgentExposureMaker.NO_LEVEL, rs.getDouble(1), 1e-3);
+            }
+            try(ResultSet rs = st.executeQuery("SELECT LEVEL, MAIN_ACTIVITY_ID FROM EXPOSURE_SEQUENCE" +
+                    " WHERE PERSON_ID = 'b' AND TIME = 36000")) {
+                assertTrue(rs.next());
+                assertEquals(70, rs.getDouble(1), 1e-6);
+                assertEquals("work_1", rs.getString(2));
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.api.EmptyProgressVisitor;
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.utilities.JDBCUtilities;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.io.WKTReader;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BuildingGridReceiversMakerTest {
+
+    private Connection connection;
+
+    @BeforeEach
+    public void tearUp() throws Exception {
+        connection = JDBCUtilities.wrapConnection(H2GISDBFactory.createSpatialDataBase(BuildingGridReceiversMakerTest.class.getSimpleName(), true, ""));
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        if(connection != null) {
+            connection.close();
+        }
+    }
+
+    private void createBuildings() throws Exception {
+        try(Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE BUILDINGS(PK INTEGER PRIMARY KEY, THE_GEOM GEOMETRY(POLYGON, 2154), HEIGHT REAL, POP REAL)");
+            st.execute("INSERT INTO BUILDINGS VALUES (1, ST_GeomFromText('POLYGON((0 0, 40 0, 40 20, 0 20, 0 0))', 2154), 10, 12)," +
+                    " (2, ST_GeomFromText('POLYGON((41 0, 61 0, 61 20, 41 20, 41 0))', 2154), 3, 5)," +
+                    " (3, ST_GeomFromText('POLYGON((100 50, 190 50, 190 60, 100 60, 100 50))', 2154), 20, 30)," +
+                    " (4, ST_GeomFromText('POLYGON((0 120, 10 120, 10 130, 0 130, 0 120))', 2154), 5, NULL)");
+        }
+    }
+
+    private long countReceivers(String tableName) throws Exception {
+        return JDBCUtilities.getRowCount(connection, tableName);
+    }
+
+    @Test
+    public void testTilesDoNotChangeResult() throws Exception {
+        createBuildings();
+        BuildingGridReceiversMaker maker = new BuildingGridReceiversMaker("BUILDINGS");
+        maker.setTileSize(1000);
+        maker.setThreadCount(1);
+        long singleTileCount = maker.run(connection, "RECEIVERS_ONE_TILE", new EmptyProgressVisitor());
+        assertEquals(1, maker.getGridDim());
+
+        maker = new BuildingGridReceiversMaker("BUILDINGS");
+        maker.setTileSize(25);
+        maker.setThreadCount(4);
+        long multipleTilesCount = maker.run(connection, "RECEIVERS", new EmptyProgressVisitor());
+        assertTrue(maker.getGridDim() > 1);
+
+        assertTrue(singleTileCount > 0);
+        assertEquals(singleTileCount, multipleTilesCount);
+        assertEquals(multipleTilesCount, countReceivers("RECEIVERS"));
+        try(Statement st = connection.createStatement()) {
+            // no duplicate receivers on tile borders
+            try(ResultSet rs = st.executeQuery("SELECT COUNT(DISTINCT ST_AsText(THE_GEOM)) FROM RECEIVERS")) {
+                assertTrue(rs.next());
+                assertEquals(multipleTilesCount, rs.getLong(1));
+            }
+            // receivers are at the expected height
+            try(ResultSet rs = st.executeQuery("SELECT MIN(ST_Z(THE_GEOM)), MAX(ST_Z(THE_GEOM)) FROM RECEIVERS")) {
+                assertTrue(rs.next());
+                assertEquals(4, rs.getDouble(1), 1e-6);
+                assertEquals(4, rs.getDouble(2), 1e-6);
+            }
+            // no receivers inside buildings
+            try(ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM RECEIVERS R, BUILDINGS B WHERE" +
+                    " R.THE_GEOM && B.THE_GEOM AND ST_Contains(B.THE_GEOM, R.THE_GEOM)")) {
+                assertTrue(rs.next());
+                assertEquals(0, rs.getLong(1));
+            }
+            // Building 1 is higher than the receivers so there is no receiver of building 2 near building 1
+            try(ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM RECEIVERS R, BUILDINGS B WHERE" +
+                    " R.BUILD_PK = 2 AND B.PK = 1 AND ST_Distance(B.THE_GEOM, R.THE_GEOM) < 1.99")) {
+                assertTrue(rs.next());
+                assertEquals(0, rs.getLong(1));
+            }
+            // Population is distributed over the receivers
+            try(ResultSet rs = st.executeQuery("SELECT BUILD_PK, SUM(POP), COUNT(*) FROM RECEIVERS GROUP BY BUILD_PK ORDER BY BUILD_PK")) {
+                assertTrue(rs.next());
+                assertEquals(1, rs.getInt(1));
+                assertEquals(12, rs.getDouble(2), 1e-3);
+                assertTrue(rs.next());
+                assertEquals(2, rs.getInt(1));
+                assertEquals(5, rs.getDouble(2), 1e-3);
+                assertTrue(rs.next());
+                assertEquals(3, rs.getInt(1));
+                assertEquals(30, rs.getDouble(2), 1e-3);
+                assertTrue(rs.next());
+                assertEquals(4, rs.getInt(1));
+                assertEquals(0, rs.getDouble(2), 1e-3);
+                assertTrue(rs.wasNull());
+            }
+        }
+    }
+
+    @Test
+    public void testFenceAndSources() throws Exception {
+        createBuildings();
+        try(Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE ROADS(PK INTEGER PRIMARY KEY, THE_GEOM GEOMETRY(LINESTRING, 2154))");
+            st.execute("INSERT INTO ROADS VALUES (1, ST_GeomFromText('LINESTRING(-10 -2, 70 -2)', 2154))");
+        }
+        BuildingGridReceiversMaker maker = new BuildingGridReceiversMaker("BUILDINGS");
+        maker.setAddPopulation(false);
+        maker.setSourcesTableName("ROADS");
+        maker.setFence(new WKTReader().read("POLYGON((-5 -5, 70 -5, 70 30, -5 30, -5 -5))"));
+        maker.run(connection, "RECEIVERS", new EmptyProgressVisitor());
+        assertFalse(JDBCUtilities.hasField(connection, "RECEIVERS", "POP"));
+        assertTrue(countReceivers("RECEIVERS") > 0);
+        try(Statement st = connection.createStatement()) {
+            try(ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM RECEIVERS WHERE BUILD_PK NOT IN (1, 2)")) {
+                assertTrue(rs.next());
+                assertEquals(0, rs.getLong(1));
+            }
+            try(ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM RECEIVERS R, ROADS S WHERE" +
+                    " ST_Distance(S.THE_GEOM, R.THE_GEOM) < 1")) {
+                assertTrue(rs.next());
+                assertEquals(0, rs.getLong(1));
+            }
+        }
+    }
+}
@@ -31,7 +31,11 @@ import java.io.IOException;
 import java.nio.file.Paths;
 import java.sql.*;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -259,4 +263,154 @@ public class IsoSurfaceJDBCTest {
         }
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testAdaptiveRefinementIsoContours() throws SQLException {
+        try(Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE BUILDINGS(pk serial PRIMARY KEY, the_geom geometry, height real)");
+            st.execute("INSERT INTO BUILDINGS(the_geom, height) VALUES ('POLYGON((190 190,210 190,210 210,190 210," +
+                    "190 190))', 10)");
+            st.execute("CREATE TABLE SOURCES_GEOM(PK INTEGER PRIMARY KEY, THE_GEOM GEOMETRY(POINTZ))");
+            st.execute("INSERT INTO SOURCES_GEOM VALUES (1, 'POINTZ (0 0 0.5)'), (2, 'POINTZ (400 400 0.5)')");
+            st.execute("CREATE TABLE SOURCES_EMISSION(PERIOD VARCHAR, IDSOURCE INT, HZ63 REAL, HZ125 REAL, HZ250 REAL," +
+                    " HZ500 REAL, HZ1000 REAL, HZ2000 REAL, HZ4000 REAL, HZ8000 REAL)");
+            st.execute("INSERT INTO SOURCES_EMISSION VALUES ('D', 1, 90, 90, 90, 90, 90, 90, 90, 90)," +
+                    " ('D', 2, 90, 90, 90, 90, 90, 90, 90, 90)");
+
+            IsoSurface isoSurface = new IsoSurface(IsoSurface.NF31_133_ISO, 0);
+            // Generate a coarse delaunay triangulation
+            DelaunayReceiversMaker delaunayReceiversMaker = new DelaunayReceiversMaker("BUILDINGS", "SOURCES_GEOM");
+            delaunayReceiversMaker.setMaximumArea(500);
+            delaunayReceiversMaker.setGridDim(1);
+            delaunayReceiversMaker.run(connection, "RECEIVERS" , isoSurface.getTriangleTable());
+            double triangulatedArea = getTrianglesArea(st, isoSurface.getTriangleTable());
+            int coarseReceiversCount = JDBCUtilities.getRowCount(connection, "RECEIVERS");
+
+            String levelTable = null;
+            String receiversTable = "RECEIVERS";
+            int refinedReceiversCount = 0;
+            for (int pass = 0; pass < 3; pass++) {
+                if (pass > 0) {
+                    // Refine the triangles with a high level range then compute only the new receivers
+                    int newReceivers = delaunayReceiversMaker.refineReceivers(connection, "RECEIVERS",
+                            isoSurface.getTriangleTable(), levelTable, "LAEQ", "NEW_RECEIVERS");
+                    assertTrue(newReceivers > 0);
+                    refinedReceiversCount += newReceivers;
+                    receiversTable = "NEW_RECEIVERS";
+                }
+                if (pass == 0) {
+                    levelTable = computeRefinementLevels(receiversTable, "RECEIVERS_LEVEL");
+                    createContours(isoSurface, levelTable, "COARSE_CONTOURS");
+                } else {
+                    computeRefinementLevels(receiversTable, "NEW_RECEIVERS_LEVEL");
+                    st.execute("INSERT INTO " + levelTable + " SELECT * FROM NEW_RECEIVERS_LEVEL");
+                }
+            }
+            assertEquals(coarseReceiversCount + refinedReceiversCount, JDBCUtilities.getRowCount(connection,
+                    "RECEIVERS"));
+            // Reference: uniform mesh with the smallest triangles of the two refinement passes
+            DelaunayReceiversMaker denseReceiversMaker = new DelaunayReceiversMaker("BUILDINGS", "SOURCES_GEOM");
+            denseReceiversMaker.setMaximumArea(500 / 16.0);
+            denseReceiversMaker.setGridDim(1);
+            denseReceiversMaker.run(connection, "DENSE_RECEIVERS", "DENSE_TRIANGLES");
+            int denseReceiversCount = JDBCUtilities.getRowCount(connection, "DENSE_RECEIVERS");
+            IsoSurface denseIsoSurface = new IsoSurface(IsoSurface.NF31_133_ISO, 0);
+            denseIsoSurface.setTriangleTable("DENSE_TRIANGLES");
+            createContours(denseIsoSurface, computeRefinementLevels("DENSE_RECEIVERS", "DENSE_LEVEL"),
+                    "DENSE_CONTOURS");
+            // Only the area where the level varies is refined
+            double receiversRatio = (coarseReceiversCount + refinedReceiversCount) / (double) denseReceiversCount;
+            LOGGER.info(String.format("%d coarse receivers, %d refined receivers, %d dense receivers (ratio %.2f)",
+                    coarseReceiversCount, refinedReceiversCount, denseReceiversCount, receiversRatio));
+            assertTrue(receiversRatio < 0.25, String.format("ratio %.2f", receiversRatio));
+            // The refined mesh cover the same area
+            assertEquals(triangulatedArea, getTrianglesArea(st, isoSurface.getTriangleTable()), 1e-3);
+            // All the vertices of the triangles have a level
+            try (ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM " + isoSurface.getTriangleTable() +
+                    " T WHERE NOT EXISTS (SELECT 1 FROM " + levelTable + " L WHERE L.IDRECEIVER = T.PK_1) OR" +
+                    " NOT EXISTS (SELECT 1 FROM " + levelTable + " L WHERE L.IDRECEIVER = T.PK_2) OR" +
+                    " NOT EXISTS (SELECT 1 FROM " + levelTable + " L WHERE L.IDRECEIVER = T.PK_3)")) {
+                assertTrue(rs.next());
+                assertEquals(0, rs.getInt(1));
+            }
+
+            createContours(isoSurface, levelTable, "REFINED_CONTOURS");
+            assertTrue(JDBCUtilities.getRowCount(connection, "REFINED_CONTOURS") > 0);
+            // The contours are moved toward the contours of the dense mesh
+            double coarseMismatch = getContoursMismatchArea("COARSE_CONTOURS", "DENSE_CONTOURS");
+            double refinedMismatch = getContoursMismatchArea("REFINED_CONTOURS", "DENSE_CONTOURS");
+            LOGGER.info(String.format("Contour area misplaced compared to the dense mesh: %.0f m2 coarse," +
+                    " %.0f m2 refined, on %.0f m2", coarseMismatch, refinedMismatch, triangulatedArea));
+            assertTrue(refinedMismatch < coarseMismatch * 0.6, String.format("%.0f m2 >= %.0f m2 * 0.6",
+                    refinedMismatch, coarseMismatch));
+            assertTrue(refinedMismatch < triangulatedArea * 0.08, String.format("%.0f m2", refinedMismatch));
+        }
+    }
+
+    /**
+     * Compute the levels of the receivers of the adaptive refinement test
+     * @param receiversTable Receivers table
+     * @param levelTable Created levels table
+     * @return Levels table
+     */
+    private String computeRefinementLevels(String receiversTable, String levelTable) throws SQLException {
+        NoiseMapByReceiverMaker noiseMapByReceiverMaker = new NoiseMapByReceiverMaker("BUILDINGS",
+                "SOURCES_GEOM", receiversTable);
+        noiseMapByReceiverMaker.setMaximumPropagationDistance(300);
+        noiseMapByReceiverMaker.setSoundReflectionOrder(0);
+        noiseMapByReceiverMaker.setComputeHorizontalDiffraction(false);
+        noiseMapByReceiverMaker.setHeightField("HEIGHT");
+        noiseMapByReceiverMaker.setSourcesEmissionTableName("SOURCES_EMISSION");
+        noiseMapByReceiverMaker.getNoiseMapDatabaseParameters().exportReceiverPosition = true;
+        noiseMapByReceiverMaker.getNoiseMapDatabaseParameters().setReceiversLevelTable(levelTable);
+        noiseMapByReceiverMaker.setGridDim(1);
+        noiseMapByReceiverMaker.run(connection, new EmptyProgressVisitor());
+        return levelTable;
+    }
+
+    private void createContours(IsoSurface isoSurface, String levelTable, String outputTable) throws SQLException {
+        isoSurface.setPointTable(levelTable);
+        isoSurface.setPointTableField("LAEQ");
+        isoSurface.setSmooth(false);
+        isoSurface.setMergeTriangles(false);
+        isoSurface.setOutputTable(outputTable);
+        isoSurface.createTable(connection, "IDRECEIVER");
+    }
+
+    /**
+     * @return Area of the symmetric difference between the polygons of each iso level of the two contour tables
+     */
+    private double getContoursMismatchArea(String contoursTable, String referenceContoursTable) throws SQLException {
+        Map<Integer, Geometry> contours = getIsoLevelPolygons(contoursTable);
+        Map<Integer, Geometry> referenceContours = getIsoLevelPolygons(referenceContoursTable);
+        Set<Integer> isoLevels = new HashSet<>(contours.keySet());
+        isoLevels.addAll(referenceContours.keySet());
+        double mismatchArea = 0;
+        GeometryFactory geometryFactory = new GeometryFactory();
+        for (int isoLevel : isoLevels) {
+            Geometry polygons = contours.getOrDefault(isoLevel, geometryFactory.createPolygon());
+            Geometry referencePolygons = referenceContours.getOrDefault(isoLevel, geometryFactory.createPolygon());
+            mismatchArea += polygons.symDifference(referencePolygons).getArea();
+        }
+        return mismatchArea;
+    }
+
+    private Map<Integer, Geometry> getIsoLevelPolygons(String contoursTable) throws SQLException {
+        Map<Integer, Geometry> polygons = new HashMap<>();
+        try (Statement st = connection.createStatement();
+             SpatialResultSet rs = st.executeQuery("SELECT ISOLVL, ST_UNION(ST_ACCUM(ST_FORCE2D(THE_GEOM)))" +
+                     " FROM " + contoursTable + " GROUP BY ISOLVL").unwrap(SpatialResultSet.class)) {
+            while (rs.next()) {
+                polygons.put(rs.getInt(1), rs.getGeometry(2));
+            }
+        }
+        return polygons;
+    }
+
+    private static double getTrianglesArea(Statement st, String triangleTable) throws SQLException {
+        try (ResultSet rs = st.executeQuery("SELECT SUM(ST_AREA(THE_GEOM)) FROM " + triangleTable)) {
+            assertTrue(rs.next());
+            return rs.getDouble(1);
+        }
+    }
+}
@@ -15,28 +15,44 @@ import org.h2gis.utilities.JDBCUtilities;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.PrecisionModel;
 import org.locationtech.jts.io.WKTWriter;
 import org.noise_planet.noisemodelling.jdbc.input.DefaultTableLoader;
+import org.noise_planet.noisemodelling.jdbc.input.GeometryTileCache;
 import org.noise_planet.noisemodelling.jdbc.input.SceneDatabaseInputSettings;
+import org.noise_planet.noisemodelling.jdbc.input.SceneSnapshot;
 import org.noise_planet.noisemodelling.jdbc.input.SceneWithEmission;
 import org.noise_planet.noisemodelling.jdbc.output.NoiseMapWriter;
 import org.noise_planet.noisemodelling.jdbc.utils.CellIndex;
+import org.noise_planet.noisemodelling.jdbc.utils.CellJobTable;
+import org.noise_planet.noisemodelling.jdbc.utils.CopyPreparedStatements;
 import org.noise_planet.noisemodelling.jdbc.utils.IsoSurface;
+import org.noise_planet.noisemodelling.pathfinder.utils.AcousticIndicatorsFunctions;
 import org.noise_planet.noisemodelling.pathfinder.utils.profiler.RootProgressVisitor;
 import org.noise_planet.noisemodelling.propagation.AttenuationParameters;
+import org.noise_planet.noisemodelling.propagation.ReceiverNoiseLevel;
 import org.noise_planet.noisemodelling.propagation.cnossos.CnossosPath;
 import org.noise_planet.noisemodelling.pathfinder.profilebuilder.GroundAbsorption;
 import org.noise_planet.noisemodelling.pathfinder.utils.geometry.Orientation;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.noise_planet.noisemodelling.jdbc.Utils.getRunScriptRes;
@@ -405,6 +421,749 @@ public class NoiseMapByReceiverMakerTest {
 
 
 
+    /**
+     * A loud source far from the receiver and many quiet sources near the receiver. With the maximum error budget the
+     * loud source must be processed first, then the quiet sources can be skipped.
+     * @throws Exception
+     */
+    @Test
+    public void testMaximumErrorSourceOrder() throws Exception {
+        try (Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE BUILDINGS(pk serial PRIMARY KEY, the_geom geometry, height real)");
+            st.execute("CREATE TABLE SOURCES_GEOM(PK INTEGER PRIMARY KEY, THE_GEOM GEOMETRY(POINTZ))");
+            st.execute("CREATE TABLE SOURCES_EMISSION(PERIOD VARCHAR, IDSOURCE INT, HZ63 REAL, HZ125 REAL, HZ250 REAL," +
+                    " HZ500 REAL, HZ1000 REAL, HZ2000 REAL, HZ4000 REAL, HZ8000 REAL)");
+            // loud source
+            st.execute("INSERT INTO SOURCES_GEOM VALUES (1, 'POINTZ (200 0 0.5)')");
+            st.execute("INSERT INTO SOURCES_EMISSION VALUES ('D', 1, 120, 120, 120, 120, 120, 120, 120, 120)");
+            // quiet sources near the receiver
+            for(int i = 0; i < 10; i++) {
+                st.execute(String.format(Locale.ROOT, "INSERT INTO SOURCES_GEOM VALUES (%d, 'POINTZ (%d 10 0.5)')",
+                        i + 2, i * 5));
+                st.execute(String.format(Locale.ROOT, "INSERT INTO SOURCES_EMISSION VALUES ('D', %d, 40, 40, 40, 40," +
+                        " 40, 40, 40, 40)", i + 2));
+            }
+            st.execute("create table receivers(id serial PRIMARY KEY, the_geom GEOMETRY(POINTZ));" +
+                    "insert into receivers(the_geom) values ('POINTZ (0 0 4)');");
+
+            NoiseMapByReceiverMaker noiseMapByReceiverMaker = new NoiseMapByReceiverMaker("BUILDINGS",
+                    "SOURCES_GEOM", "RECEIVERS");
+            noiseMapByReceiverMaker.setComputeHorizontalDiffraction(false);
+            noiseMapByReceiverMaker.setComputeVerticalDiffraction(false);
+            noiseMapByReceiverMaker.setSoundReflectionOrder(0);
+            noiseMapByReceiverMaker.setMaximumPropagationDistance(1000);
+            noiseMapByReceiverMaker.setHeightField("HEIGHT");
+            noiseMapByReceiverMaker.setGridDim(1);
+            noiseMapByReceiverMaker.setSourcesEmissionTableName("SOURCES_EMISSION");
+            noiseMapByReceiverMaker.getNoiseMapDatabaseParameters().mergeSources = false;
+            noiseMapByReceiverMaker.getNoiseMapDatabaseParameters().setMaximumError(3);
+
+            noiseMapByReceiverMaker.run(connection, new EmptyProgressVisitor());
+
+            NoiseMapDatabaseParameters parameters = noiseMapByReceiverMaker.getNoiseMapDatabaseParameters();
+            try(ResultSet rs = st.executeQuery("SELECT IDSOURCE FROM " + parameters.receiversLevelTable +
+                    " WHERE PERIOD = 'D'")) {
+                assertTrue(rs.next());
+                assertEquals(1, rs.getInt(1));
+                assertFalse(rs.next());
+            }
+        }
+    }
+
+
+    /**
+     * The receiver is in a courtyard, the loud source outside the building block is shadowed by the enclosure.
+     */
+    @Test
+    public void testMaximumErrorHorizon() throws Exception {
+        try (Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE BUILDINGS(pk serial PRIMARY KEY, the_geom geometry, height real)");
+            st.execute("INSERT INTO BUILDINGS(the_geom, height) VALUES ('POLYGON((-20 -20, 20 -20, 20 20, -20 20," +
+                    " -20 -20),(-10 -10, -10 10, 10 10, 10 -10, -10 -10))', 20)");
+            st.execute("CREATE TABLE SOURCES_GEOM(PK INTEGER PRIMARY KEY, THE_GEOM GEOMETRY(POINTZ))");
+            st.execute("CREATE TABLE SOURCES_EMISSION(PERIOD VARCHAR, IDSOURCE INT, HZ63 REAL, HZ125 REAL, HZ250 REAL," +
+                    " HZ500 REAL, HZ1000 REAL, HZ2000 REAL, HZ4000 REAL, HZ8000 REAL)");
+            // loud source outside the building block
+            st.execute("INSERT INTO SOURCES_GEOM VALUES (1, 'POINTZ (200 0 0.5)')");
+            st.execute("INSERT INTO SOURCES_EMISSION VALUES ('D', 1, 0, 0, 0, 0, 100, 100, 100, 0)");
+            // quiet source in the courtyard
+            st.execute("INSERT INTO SOURCES_GEOM VALUES (2, 'POINTZ (5 0 0.5)')");
+            st.execute("INSERT INTO SOURCES_EMISSION VALUES ('D', 2, 0, 0, 0, 0, 65, 65, 65, 0)");
+            st.execute("create table receivers(id serial PRIMARY KEY, the_geom GEOMETRY(POINTZ));" +
+                    "insert into receivers(the_geom) values ('POINTZ (0 0 4)');");
+
+            long[] computedSources = new long[2];
+            for(int horizonRadius = 0; horizonRadius <= 50; horizonRadius += 50) {
+                NoiseMapByReceiverMaker noiseMapByReceiverMaker = new NoiseMapByReceiverMaker("BUILDINGS",
+                        "SOURCES_GEOM", "RECEIVERS");
+                noiseMapByReceiverMaker.setComputeHorizontalDiffraction(true);
+                noiseMapByReceiverMaker.setComputeVerticalDiffraction(true);
+                noiseMapByReceiverMaker.setSoundReflectionOrder(0);
+                noiseMapByReceiverMaker.setMaximumPropagationDistance(1000);
+                noiseMapByReceiverMaker.setHeightField("HEIGHT");
+                noiseMapByReceiverMaker.setGridDim(1);
+                noiseMapByReceiverMaker.setSourcesEmissionTableName("SOURCES_EMISSION");
+                NoiseMapDatabaseParameters parameters = noiseMapByReceiverMaker.getNoiseMapDatabaseParameters();
+                parameters.mergeSources = false;
+                parameters.setMaximumError(3);
+                parameters.setHorizonRadius(horizonRadius);
+
+                noiseMapByReceiverMaker.run(connection, new EmptyProgressVisitor());
+
+                computedSources[horizonRadius / 50] = JDBCUtilities.getRowCount(connection,
+                        parameters.receiversLevelTable);
+                try(ResultSet rs = st.executeQuery("SELECT IDSOURCE FROM " + parameters.receiversLevelTable +
+                        " WHERE IDSOURCE = 2")) {
+                    assertTrue(rs.next());
+                }
+            }
+            // Without the horizon the shadowed source is computed first as it is the loudest in free field
+            assertEquals(2, computedSources[0]);
+            // With the horizon the courtyard source is computed first and the shadowed source is skipped
+            assertEquals(1, computedSources[1]);
+        }
+    }
+
+    /**
+     * Interrupt a computation in the middle of a cell then resume it
+     */
+    @Test
+    public void testResumeFromCheckpoint() throws Exception {
+        try (Statement st = connection.createStatement()) {
+            createGridScene(st);
+            String levelTable = createReferenceLevels(createResumableNoiseMap());
+            assertCheckpoint(100);
+
+            // Simulate an interruption in the middle of the writing of the last cell results
+            st.execute("DELETE FROM " + levelTable + " WHERE IDRECEIVER IN (SELECT IDRECEIVER FROM CHECKPOINT WHERE" +
+                    " CELL_ID = (SELECT MAX(CELL_ID) FROM CHECKPOINT)) AND MOD(IDRECEIVER, 2) = 0");
+            st.execute("DELETE FROM CHECKPOINT WHERE CELL_ID = (SELECT MAX(CELL_ID) FROM CHECKPOINT) OR CELL_ID = " +
+                    NoiseMapWriter.COMPLETED_COMPUTATION_ID);
+            st.execute("UPDATE " + levelTable + " SET LAEQ = -1 WHERE IDRECEIVER IN (SELECT IDRECEIVER FROM" +
+                    " CHECKPOINT)");
+            int completedReceivers = JDBCUtilities.getRowCount(connection, "CHECKPOINT") - 3;
+            assertTrue(completedReceivers > 0 && completedReceivers < 100);
+
+            // The receivers of the completed cells are not computed again, the resumed receivers get the same levels
+            assertReferenceLevels(createResumableNoiseMap(), "L.LAEQ <> -1", 100 - completedReceivers);
+            try (ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM " + levelTable + " WHERE LAEQ = -1")) {
+                assertTrue(rs.next());
+                assertEquals(completedReceivers, rs.getInt(1));
+            }
+            // Nothing is done once the computation is complete
+            st.execute("DELETE FROM " + levelTable + " WHERE LAEQ = -1");
+            createResumableNoiseMap().run(connection, new EmptyProgressVisitor());
+            assertEquals(100 - completedReceivers, JDBCUtilities.getRowCount(connection, levelTable));
+        }
+    }
+
+    /**
+     * Share the cells of the computation between two workers, one of them fails on its first cell
+     */
+    @Test
+    public void testWorkersFromJobTable() throws Exception {
+        try (Statement st = connection.createStatement()) {
+            createGridScene(st);
+            String levelTable = createReferenceLevels(createNoiseMap());
+
+            NoiseMapByReceiverMaker coordinator = createWorkerNoiseMap();
+            assertEquals(4, coordinator.createJobs(connection, new EmptyProgressVisitor()));
+            assertEquals(0, JDBCUtilities.getRowCount(connection, levelTable));
+            assertFalse(JDBCUtilities.tableExists(connection, "CHECKPOINT"));
+            CellJobTable jobTable = new CellJobTable("CELL_JOBS");
+            assertEquals(Collections.singletonMap(CellJobTable.STATE_PENDING, 4), jobTable.countByState(connection));
+
+            // Each worker use its own connection
+            String url = connection.getMetaData().getURL();
+            int[] computedCells = new int[2];
+            Exception[] errors = new Exception[2];
+            AtomicBoolean failed = new AtomicBoolean(false);
+            Thread[] workers = new Thread[2];
+            for (int i = 0; i < workers.length; i++) {
+                final int workerIndex = i;
+                NoiseMapByReceiverMaker worker = createWorkerNoiseMap();
+                worker.setPropagationProcessDataFactory(new DefaultTableLoader() {
+                    @Override
+                    public SceneWithEmission create(Connection connection, CellIndex cellIndex,
+                                                    Set<Long> skipReceivers) throws SQLException {
+                        if (failed.compareAndSet(false, true)) {
+                            throw new SQLException("Simulated failure");
+                        }
+                        return super.create(connection, cellIndex, skipReceivers);
+                    }
+                });
+                workers[i] = new Thread(() -> {
+                    try (Connection workerConnection = JDBCUtilities.wrapConnection(DriverManager.getConnection(url,
+                            H2GISDBFactory.DEFAULT_USER, H2GISDBFactory.DEFAULT_PASSWORD))) {
+                        computedCells[workerIndex] = worker.runWorker(workerConnection, new EmptyProgressVisitor());
+                    } catch (Exception ex) {
+                        errors[workerIndex] = ex;
+                    }
+                });
+                workers[i].start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            assertNull(errors[0]);
+            assertNull(errors[1]);
+            assertTrue(failed.get());
+            assertEquals(4, computedCells[0] + computedCells[1]);
+            assertEquals(Collections.singletonMap(CellJobTable.STATE_DONE, 4), jobTable.countByState(connection));
+            try (ResultSet rs = st.executeQuery("SELECT SUM(ATTEMPTS) FROM CELL_JOBS")) {
+                assertTrue(rs.next());
+                assertEquals(5, rs.getInt(1));
+            }
+            // Same levels than the computation in a single process
+            assertReferenceLevels(levelTable, "", 100);
+            assertTrue(coordinator.completeJobs(connection));
+            assertTrue(hasPrimaryKey(levelTable));
+        }
+    }
+
+    /**
+     * The lease of a worker expires while it computes a cell, the cell is claimed again by a second worker and both
+     * attempts write the same receivers
+     */
+    @Test
+    public void testConcurrentAttemptsOfCell() throws Exception {
+        try (Statement st = connection.createStatement()) {
+            createGridScene(st);
+            String levelTable = createReferenceLevels(createNoiseMap());
+
+            NoiseMapByReceiverMaker coordinator = createWorkerNoiseMap();
+            assertEquals(4, coordinator.createJobs(connection, new EmptyProgressVisitor()));
+            // The primary key would reject the results of the second attempt
+            assertFalse(hasPrimaryKey(levelTable));
+
+            String url = connection.getMetaData().getURL();
+            Exception[] errors = new Exception[2];
+            int[] computedCells = new int[2];
+            AtomicBoolean expired = new AtomicBoolean(false);
+            NoiseMapByReceiverMaker secondWorker = createWorkerNoiseMap();
+            secondWorker.getNoiseMapDatabaseParameters().setJobLeaseDuration(3600000);
+            Thread secondWorkerThread = new Thread(() -> {
+                try (Connection workerConnection = JDBCUtilities.wrapConnection(DriverManager.getConnection(url,
+                        H2GISDBFactory.DEFAULT_USER, H2GISDBFactory.DEFAULT_PASSWORD))) {
+                    computedCells[1] = secondWorker.runWorker(workerConnection, new EmptyProgressVisitor());
+                } catch (Exception ex) {
+                    errors[1] = ex;
+                }
+            });
+            NoiseMapByReceiverMaker firstWorker = createWorkerNoiseMap();
+            firstWorker.getNoiseMapDatabaseParameters().setJobLeaseDuration(3600000);
+            firstWorker.setPropagationProcessDataFactory(new DefaultTableLoader() {
+                @Override
+                public SceneWithEmission create(Connection connection, CellIndex cellIndex,
+                                                Set<Long> skipReceivers) throws SQLException {
+                    if (expired.compareAndSet(false, true)) {
+                        // The lease of the first cell expires, the second worker computes all the cells and writes
+                        // the receivers of the first cell before the first worker
+                        try (Statement expire = connection.createStatement()) {
+                            expire.execute("UPDATE CELL_JOBS SET STARTED = TIMESTAMP '2000-01-01 00:00:00'" +
+                                    " WHERE STATE = 'RUNNING'");
+                        }
+                        secondWorkerThread.start();
+                        try {
+                            secondWorkerThread.join();
+                        } catch (InterruptedException ex) {
+                            throw new SQLException(ex);
+                        }
+                    }
+                    return super.create(connection, cellIndex, skipReceivers);
+                }
+            });
+            try (Connection workerConnection = JDBCUtilities.wrapConnection(DriverManager.getConnection(url,
+                    H2GISDBFactory.DEFAULT_USER, H2GISDBFactory.DEFAULT_PASSWORD))) {
+                computedCells[0] = firstWorker.runWorker(workerConnection, new EmptyProgressVisitor());
+            } catch (Exception ex) {
+                errors[0] = ex;
+            }
+            assertNull(errors[0]);
+            assertNull(errors[1]);
+            assertTrue(expired.get());
+            assertEquals(4, computedCells[1]);
+            // The first worker removes the results of the lost attempt, the first cell is computed again if the
+            // first worker has stopped before the cell is released
+            createWorkerNoiseMap().runWorker(connection, new EmptyProgressVisitor());
+            assertEquals(Collections.singletonMap(CellJobTable.STATE_DONE, 4),
+                    new CellJobTable("CELL_JOBS").countByState(connection));
+            assertTrue(coordinator.completeJobs(connection));
+            assertTrue(hasPrimaryKey(levelTable));
+            assertReferenceLevels(levelTable, "", 100);
+        }
+    }
+
+    /**
+     * Split the area according to the receivers density, the dense cell is computed first
+     */
+    @Test
+    public void testAdaptiveCells() throws Exception {
+        try (Statement st = connection.createStatement()) {
+            createGridScene(st, "POINTZ (300 300 0.5)", 20);
+            // dense cluster of receivers near the first source
+            st.execute("INSERT INTO RECEIVERS(THE_GEOM) SELECT ST_MAKEPOINT(A.X * 2, B.X * 2, 4) FROM" +
+                    " SYSTEM_RANGE(0, 19) A, SYSTEM_RANGE(0, 19) B");
+            NoiseMapByReceiverMaker uniform = createNoiseMap();
+            uniform.setMaximumPropagationDistance(100);
+            createReferenceLevels(uniform);
+
+            NoiseMapByReceiverMaker adaptive = createNoiseMap();
+            adaptive.setMaximumPropagationDistance(100);
+            adaptive.setGridDim(0);
+            adaptive.setMaximumCellCost(1000);
+            adaptive.setMaximumCellSplitDepth(2);
+            adaptive.initialize(connection, new EmptyProgressVisitor());
+            // the automatic grid is refined for the partition
+            assertEquals(8, adaptive.getGridDim());
+            Map<CellIndex, Integer> cells = adaptive.searchPopulatedCells(connection);
+            int receiverCount = 0;
+            Set<Integer> cellSizes = new HashSet<>();
+            for (Map.Entry<CellIndex, Integer> cell : cells.entrySet()) {
+                receiverCount += cell.getValue();
+                cellSizes.add(cell.getKey().getSize());
+            }
+            assertEquals(800, receiverCount);
+            // small cells for the cluster and large cells elsewhere
+            assertTrue(cellSizes.contains(1));
+            assertTrue(cellSizes.contains(4));
+            CellIndex largestCell = cells.keySet().iterator().next();
+            assertEquals(1, largestCell.getSize());
+            assertTrue(adaptive.getCellEnv(largestCell).contains(20, 20));
+
+            assertReferenceLevels(adaptive, "", 800);
+        }
+    }
+
+    /**
+     * Compute the four cells at the same time with a shared thread budget
+     */
+    @Test
+    public void testConcurrentCells() throws Exception {
+        try (Statement st = connection.createStatement()) {
+            createGridScene(st);
+            String levelTable = createReferenceLevels(createNoiseMap());
+
+            NoiseMapByReceiverMaker concurrent = createResumableNoiseMap();
+            concurrent.setThreadCount(4);
+            concurrent.setMaximumConcurrentCells(4);
+            RootProgressVisitor progressVisitor = new RootProgressVisitor(1, false, 1);
+            concurrent.run(connection, progressVisitor);
+            assertEquals(1.0, progressVisitor.getProgression(), 0.02);
+            assertReferenceLevels(levelTable, "", 100);
+            // All the cells are recorded once their results are written
+            assertCheckpoint(100);
+        }
+    }
+
+    /**
+     * The cells read the buildings, topography and soil areas from the shared tile cache
+     */
+    @Test
+    public void testGeometryTileCache() throws Exception {
+        try (Statement st = connection.createStatement()) {
+            createGridScene(st);
+            // Buildings crossing the tile borders
+            st.execute("INSERT INTO BUILDINGS(the_geom, height) VALUES ('POLYGON((180 90, 220 90, 220 110, 180 110," +
+                    " 180 90))', 8), ('POLYGON((-30 150, 30 150, 30 160, -30 160, -30 150))', 12)");
+            createGroundTables(st, "('POLYGON((-500 -500, 700 -500, 700 700, -500 700, -500 -500))', 0.7)," +
+                    " ('POLYGON((20 100, 120 100, 120 400, 20 400, 20 100))', 0.2)");
+            createReferenceLevels(createNoiseMap());
+
+            for (long memoryBudget : new long[] {Long.MAX_VALUE, 1}) {
+                NoiseMapByReceiverMaker cached = createNoiseMap();
+                DefaultTableLoader tableLoader = (DefaultTableLoader) cached.getTableLoader();
+                tableLoader.setGeometryCacheMemoryBudget(memoryBudget);
+                tableLoader.setGeometryCacheTileSize(200);
+                assertReferenceLevels(cached, "", 100);
+                GeometryTileCache cache = tableLoader.getGeometryTileCache();
+                if (memoryBudget == Long.MAX_VALUE) {
+                    // The tiles are read once and shared by the 4 cells
+                    assertTrue(cache.getHitCount() > cache.getLoadedTileCount());
+                } else {
+                    assertEquals(0, cache.getHitCount());
+                    assertEquals(0, cache.getMemoryUsage());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testGroundRaster() throws Exception {
+        try (Statement st = connection.createStatement()) {
+            createGridScene(st);
+            // Soil areas aligned on the cells of the grid
+            createGroundTables(st, "('POLYGON((-500 -500, 70 -500, 70 700, -500 700, -500 -500))', 0.7)," +
+                    " ('POLYGON((70 -500, 700 -500, 700 130, 70 130, 70 -500))', 0.2)," +
+                    " ('POLYGON((70 130, 700 130, 700 700, 70 700, 70 130))', 1)");
+            createReferenceLevels(createNoiseMap());
+
+            NoiseMapByReceiverMaker raster = createNoiseMap();
+            ((DefaultTableLoader) raster.getTableLoader()).setGroundRasterCellSize(10);
+            assertReferenceLevels(raster, "", 100);
+        }
+    }
+
+    @Test
+    public void testBinaryGeometryTransfer() throws Exception {
+        try (Statement st = connection.createStatement()) {
+            createGridScene(st);
+            createGroundTables(st, "('POLYGON((-500 -500, 700 -500, 700 700, -500 -500))', 0.7)");
+            NoiseMapByReceiverMaker reference = createNoiseMap();
+            assertFalse(((DefaultTableLoader) reference.getTableLoader()).isBinaryGeometryTransfer());
+            createReferenceLevels(reference);
+
+            NoiseMapByReceiverMaker binary = createNoiseMap();
+            ((DefaultTableLoader) binary.getTableLoader()).setBinaryGeometryTransfer(true);
+            assertReferenceLevels(binary, "", 100);
+        }
+    }
+
+    @Test
+    public void testSceneSnapshot(@TempDir File tempDir) throws Exception {
+        try (Statement st = connection.createStatement()) {
+            createGridScene(st);
+            createGroundTables(st, "('POLYGON((-500 -500, 700 -500, 700 700, -500 -500))', 0.7)");
+            NoiseMapByReceiverMaker noiseMap = createNoiseMap();
+            noiseMap.setSceneSnapshotDirectory(tempDir);
+            noiseMap.run(connection, new EmptyProgressVisitor());
+            File[] snapshots = tempDir.listFiles((dir, name) -> name.endsWith(SceneSnapshot.FILE_EXTENSION));
+            assertNotNull(snapshots);
+            assertEquals(4, snapshots.length);
+
+            NoiseMapByReceiverMaker reference = createNoiseMap();
+            reference.initialize(connection, new EmptyProgressVisitor());
+            SceneWithEmission scene = reference.prepareCell(connection, new CellIndex(0, 0), new HashSet<>());
+            File snapshotFile = new File(tempDir, "reference" + SceneSnapshot.FILE_EXTENSION);
+            SceneSnapshot.write(scene, snapshotFile.toPath());
+            SceneWithEmission reloaded = SceneSnapshot.read(snapshotFile.toPath());
+
+            assertEquals(scene.receiversPk, reloaded.receiversPk);
+            assertEquals(scene.receivers, reloaded.receivers);
+            assertEquals(scene.sourcesPk, reloaded.sourcesPk);
+            assertEquals(scene.sourceGeometries.size(), reloaded.sourceGeometries.size());
+            for (int i = 0; i < scene.sourceGeometries.size(); i++) {
+                assertTrue(scene.sourceGeometries.get(i).equalsExact(reloaded.sourceGeometries.get(i)));
+                long sourcePk = scene.sourcesPk.get(i);
+                List<SceneWithEmission.PeriodEmission> emissions = scene.wjSources.get(sourcePk);
+                List<SceneWithEmission.PeriodEmission> reloadedEmissions = reloaded.wjSources.get(sourcePk);
+                assertEquals(emissions.size(), reloadedEmissions.size());
+                for (int idEmission = 0; idEmission < emissions.size(); idEmission++) {
+                    assertEquals(emissions.get(idEmission).period, reloadedEmissions.get(idEmission).period);
+                    assertArrayEquals(emissions.get(idEmission).emission, reloadedEmissions.get(idEmission).emission);
+                }
+            }
+            assertEquals(scene.periodSet, reloaded.periodSet);
+            assertEquals(scene.maxSrcDist, reloaded.maxSrcDist);
+            assertEquals(scene.profileBuilder.frequencyArray, reloaded.profileBuilder.frequencyArray);
+            assertEquals(scene.profileBuilder.getBuildingCount(), reloaded.profileBuilder.getBuildingCount());
+            assertEquals(scene.profileBuilder.getTriangles().size(), reloaded.profileBuilder.getTriangles().size());
+            assertEquals(scene.profileBuilder.getGroundEffects().size(),
+                    reloaded.profileBuilder.getGroundEffects().size());
+            // The propagation profiles are identical
+            for (Coordinate receiver : scene.receivers) {
+                for (Geometry source : scene.sourceGeometries) {
+                    assertEquals(scene.profileBuilder.getProfile(source.getCoordinate(), receiver,
+                                    scene.defaultGroundAttenuation, false).toString(),
+                            reloaded.profileBuilder.getProfile(source.getCoordinate(), receiver,
+                                    reloaded.defaultGroundAttenuation, false).toString());
+                }
+            }
+            // Writing the reloaded scene gives the same file
+            File rewrittenFile = new File(tempDir, "rewritten" + SceneSnapshot.FILE_EXTENSION);
+            SceneSnapshot.write(reloaded, rewrittenFile.toPath());
+            assertArrayEquals(Files.readAllBytes(snapshotFile.toPath()), Files.readAllBytes(rewrittenFile.toPath()));
+        }
+    }
+
+    @Test
+    public void testSqlOutputFile(@TempDir File tempDir) throws Exception {
+        try (Statement st = connection.createStatement()) {
+            createGridScene(st);
+            NoiseMapByReceiverMaker reference = createNoiseMap();
+            reference.run(connection, new EmptyProgressVisitor());
+            String levelTable = reference.getNoiseMapDatabaseParameters().receiversLevelTable;
+            st.execute("ALTER TABLE " + levelTable + " RENAME TO REFERENCE_LEVEL");
+            int laeqColumn = JDBCUtilities.getColumnNames(connection, "REFERENCE_LEVEL").indexOf("LAEQ");
+            Map<String, Double> referenceLevels = new HashMap<>();
+            try (ResultSet rs = st.executeQuery("SELECT IDRECEIVER, PERIOD, LAEQ FROM REFERENCE_LEVEL")) {
+                while (rs.next()) {
+                    referenceLevels.put(rs.getLong(1) + rs.getString(2), rs.getDouble(3));
+                }
+            }
+            assertEquals(100, referenceLevels.size());
+
+            // INSERT queries, loaded back into the database
+            NoiseMapByReceiverMaker insertMaker = createNoiseMap();
+            File insertFile = new File(tempDir, "insert.sql.gz");
+            insertMaker.getNoiseMapDatabaseParameters().sqlOutputFile = insertFile;
+            insertMaker.run(connection, new EmptyProgressVisitor());
+            assertFalse(JDBCUtilities.tableExists(connection, levelTable));
+            st.execute("RUNSCRIPT FROM '" + insertFile.getAbsolutePath() + "' COMPRESSION GZIP");
+            try (ResultSet rs = st.executeQuery("SELECT IDRECEIVER, PERIOD, LAEQ FROM " + levelTable)) {
+                int count = 0;
+                while (rs.next()) {
+                    assertEquals(referenceLevels.get(rs.getLong(1) + rs.getString(2)), rs.getDouble(3), 1e-3);
+                    count++;
+                }
+                assertEquals(100, count);
+            }
+
+            // PostgreSQL COPY blocks
+            NoiseMapByReceiverMaker copyMaker = createNoiseMap();
+            File copyFile = new File(tempDir, "copy.sql.gz");
+            copyMaker.getNoiseMapDatabaseParameters().sqlOutputFile = copyFile;
+            copyMaker.getNoiseMapDatabaseParameters().setSqlOutputFormat(
+                    NoiseMapDatabaseParameters.SqlOutputFormat.COPY);
+            copyMaker.run(connection, new EmptyProgressVisitor());
+            List<String> lines = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(
+                    new FileInputStream(copyFile)), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines.add(line);
+                }
+            }
+            assertTrue(lines.get(0).startsWith("DROP TABLE IF EXISTS " + levelTable));
+            assertTrue(lines.get(1).startsWith("create table " + levelTable));
+            assertTrue(lines.get(lines.size() - 1).startsWith("ALTER TABLE " + levelTable));
+            int count = 0;
+            boolean inCopyBlock = false;
+            for (String line : lines) {
+                if (inCopyBlock) {
+                    if (line.equals(CopyPreparedStatements.END_OF_DATA)) {
+                        inCopyBlock = false;
+                    } else {
+                        String[] values = line.split("\t");
+                        assertEquals(referenceLevels.get(values[0] + values[1]),
+                                Double.parseDouble(values[laeqColumn]), 1e-3);
+                        count++;
+                    }
+                } else if (line.equals("COPY " + levelTable + " FROM stdin;")) {
+                    inCopyBlock = true;
+                }
+            }
+            assertFalse(inCopyBlock);
+            assertEquals(100, count);
+        }
+    }
+
+    @Test
+    public void testComputeGlobalLevels() {
+        double[] aWeighting = {-26.2, -16.1, -8.6, -3.2, 0, 1.2, 1, -1.1};
+        double[] levels = {60, 55.5, 50, Double.NEGATIVE_INFINITY, 45, 40, 35, Double.NaN};
+        ReceiverNoiseLevel row = new ReceiverNoiseLevel(null, null, "D", levels.clone());
+        NoiseMapWriter.computeGlobalLevels(row, aWeighting, false);
+        double[] expectedLevels = {60, 55.5, 50, -99, 45, 40, 35, -99};
+        assertArrayEquals(expectedLevels, row.levels);
+        assertEquals(AcousticIndicatorsFunctions.wToDb(AcousticIndicatorsFunctions.sumArray(
+                AcousticIndicatorsFunctions.dBToW(AcousticIndicatorsFunctions.sumArray(expectedLevels, aWeighting)))),
+                row.laeq, 1e-9);
+        assertEquals(AcousticIndicatorsFunctions.wToDb(AcousticIndicatorsFunctions.sumArray(
+                AcousticIndicatorsFunctions.dBToW(expectedLevels))), row.leq, 1e-9);
+        // Only LAEQ, the band levels are not written and are kept as is
+        row = new ReceiverNoiseLevel(null, null, "D", levels.clone());
+        NoiseMapWriter.computeGlobalLevels(row, aWeighting, true);
+        assertTrue(Double.isNaN(row.levels[7]));
+        assertEquals(-99, row.laeq);
+        row = new ReceiverNoiseLevel(null, null, "D", new double[] {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY});
+        NoiseMapWriter.computeGlobalLevels(row, aWeighting, true);
+        assertEquals(-99, row.laeq);
+    }
+
+    /**
+     * The DEN level is the sum of the day, evening and night levels with the period gains, with merged sources and
+     * for each source
+     */
+    @Test
+    public void testLdenLevels() throws Exception {
+        try (Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE BUILDINGS(pk serial PRIMARY KEY, the_geom geometry, height real)");
+            st.execute("INSERT INTO BUILDINGS(the_geom, height) VALUES ('POLYGON((50 50, 70 50, 70 70, 50 70, 50 50))'" +
+                    ", 10)");
+            st.execute("CREATE TABLE SOURCES(PK INTEGER PRIMARY KEY, THE_GEOM GEOMETRY(POINTZ), HZD500 REAL," +
+                    " HZD1000 REAL, HZE500 REAL, HZE1000 REAL, HZN500 REAL, HZN1000 REAL)");
+            st.execute("INSERT INTO SOURCES VALUES (1, 'POINTZ (40 40 0.5)', 90, 88, 85, 83, 80, 78)," +
+                    " (2, 'POINTZ (150 120 0.5)', 80, 82, 78, 79, 72, 70)");
+            st.execute("CREATE TABLE RECEIVERS(PK SERIAL PRIMARY KEY, THE_GEOM GEOMETRY(POINTZ))");
+            st.execute("INSERT INTO RECEIVERS(THE_GEOM) SELECT ST_MAKEPOINT(A.X * 40 + 5, B.X * 40 + 5, 4) FROM" +
+                    " SYSTEM_RANGE(0, 4) A, SYSTEM_RANGE(0, 4) B");
+            for (boolean mergeSources : new boolean[] {true, false}) {
+                NoiseMapByReceiverMaker noiseMapByReceiverMaker = new NoiseMapByReceiverMaker("BUILDINGS",
+                        "SOURCES", "RECEIVERS");
+                noiseMapByReceiverMaker.setSoundReflectionOrder(0);
+                noiseMapByReceiverMaker.setMaximumPropagationDistance(300);
+                noiseMapByReceiverMaker.setHeightField("HEIGHT");
+                noiseMapByReceiverMaker.getNoiseMapDatabaseParameters().setMergeSources(mergeSources);
+                noiseMapByReceiverMaker.run(connection, new EmptyProgressVisitor());
+                String levelTable = noiseMapByReceiverMaker.getNoiseMapDatabaseParameters().receiversLevelTable;
+                String key = mergeSources ? "IDRECEIVER" : "IDRECEIVER, IDSOURCE";
+                // Every receiver has the 3 periods and DEN
+                try (ResultSet rs = st.executeQuery("SELECT COUNT(*), COUNT(DISTINCT PERIOD) FROM " + levelTable)) {
+                    assertTrue(rs.next());
+                    assertEquals(mergeSources ? 100 : 200, rs.getInt(1));
+                    assertEquals(4, rs.getInt(2));
+                }
+                int count = 0;
+                try (ResultSet rs = st.executeQuery("SELECT D.HZ500, E.HZ500, N.HZ500, DEN.HZ500, D.HZ1000," +
+                        " E.HZ1000, N.HZ1000, DEN.HZ1000 FROM " + levelTable + " D JOIN " + levelTable +
+                        " E USING(" + key + ") JOIN " + levelTable + " N USING(" + key + ") JOIN " + levelTable +
+                        " DEN USING(" + key + ") WHERE D.PERIOD = 'D' AND E.PERIOD = 'E' AND N.PERIOD = 'N'" +
+                        " AND DEN.PERIOD = 'DEN'")) {
+                    while (rs.next()) {
+                        for (int band = 0; band < 2; band++) {
+                            double lden = AcousticIndicatorsFunctions.wToDb(
+                                    EmissionTableGenerator.DAY_RATIO * AcousticIndicatorsFunctions.dBToW(rs.getDouble(band * 4 + 1)) +
+                                    EmissionTableGenerator.EVENING_RATIO * AcousticIndicatorsFunctions.dBToW(rs.getDouble(band * 4 + 2)) +
+                                    EmissionTableGenerator.NIGHT_RATIO * AcousticIndicatorsFunctions.dBToW(rs.getDouble(band * 4 + 3)));
+                            assertEquals(lden, rs.getDouble(band * 4 + 4), 0.01);
+                        }
+                        count++;
+                    }
+                }
+                assertEquals(mergeSources ? 25 : 50, count);
+            }
+        }
+    }
+
+    /**
+     * Noise map of the tables of {@link #createGridScene(Statement, String, int)} computed on a 2x2 grid without
+     * reflection. The topography and the soil areas are read if the DEM and SOIL tables exist.
+     */
+    private NoiseMapByReceiverMaker createNoiseMap() throws SQLException {
+        NoiseMapByReceiverMaker noiseMapByReceiverMaker = new NoiseMapByReceiverMaker("BUILDINGS",
+                "SOURCES_GEOM", "RECEIVERS");
+        noiseMapByReceiverMaker.setSoundReflectionOrder(0);
+        noiseMapByReceiverMaker.setMaximumPropagationDistance(300);
+        noiseMapByReceiverMaker.setHeightField("HEIGHT");
+        noiseMapByReceiverMaker.setGridDim(2);
+        noiseMapByReceiverMaker.setSourcesEmissionTableName("SOURCES_EMISSION");
+        if (JDBCUtilities.tableExists(connection, "DEM")) {
+            noiseMapByReceiverMaker.setDemTable("DEM");
+        }
+        if (JDBCUtilities.tableExists(connection, "SOIL")) {
+            noiseMapByReceiverMaker.setSoilTableName("SOIL");
+        }
+        return noiseMapByReceiverMaker;
+    }
+
+    private NoiseMapByReceiverMaker createResumableNoiseMap() throws SQLException {
+        NoiseMapByReceiverMaker noiseMapByReceiverMaker = createNoiseMap();
+        noiseMapByReceiverMaker.getNoiseMapDatabaseParameters().setCheckpointTable("CHECKPOINT");
+        return noiseMapByReceiverMaker;
+    }
+
+    private boolean hasPrimaryKey(String tableName) throws SQLException {
+        try (ResultSet rs = connection.getMetaData().getPrimaryKeys(null, null, tableName)) {
+            return rs.next();
+        }
+    }
+
+    private NoiseMapByReceiverMaker createWorkerNoiseMap() throws SQLException {
+        NoiseMapByReceiverMaker noiseMapByReceiverMaker = createNoiseMap();
+        noiseMapByReceiverMaker.getNoiseMapDatabaseParameters().setJobTable("CELL_JOBS");
+        return noiseMapByReceiverMaker;
+    }
+
+    /**
+     * 100 receivers on a 200 m square with two sources and a building
+     */
+    private static void createGridScene(Statement st) throws SQLException {
+        createGridScene(st, "POINTZ (150 120 0.5)", 10);
+    }
+
+    /**
+     * Receivers on a regular grid with a 20 m step, two sources and a building
+     * @param st Statement
+     * @param secondSource WKT of the second source
+     * @param receiversPerSide Number of receivers on each side of the grid
+     */
+    private static void createGridScene(Statement st, String secondSource, int receiversPerSide) throws SQLException {
+        st.execute("CREATE TABLE BUILDINGS(pk serial PRIMARY KEY, the_geom geometry, height real)");
+        st.execute("INSERT INTO BUILDINGS(the_geom, height) VALUES ('POLYGON((50 50, 70 50, 70 70, 50 70, 50 50))'" +
+                ", 10)");
+        st.execute("CREATE TABLE SOURCES_GEOM(PK INTEGER PRIMARY KEY, THE_GEOM GEOMETRY(POINTZ))");
+        st.execute("INSERT INTO SOURCES_GEOM VALUES (1, 'POINTZ (40 40 0.5)'), (2, '" + secondSource + "')");
+        st.execute("CREATE TABLE SOURCES_EMISSION(PERIOD VARCHAR, IDSOURCE INT, HZ63 REAL, HZ125 REAL, HZ250 REAL," +
+                " HZ500 REAL, HZ1000 REAL, HZ2000 REAL, HZ4000 REAL, HZ8000 REAL)");
+        st.execute("INSERT INTO SOURCES_EMISSION VALUES ('D', 1, 90, 90, 90, 90, 90, 90, 90, 90)," +
+                " ('D', 2, 80, 80, 80, 80, 80, 80, 80, 80)");
+        st.execute("CREATE TABLE RECEIVERS(PK SERIAL PRIMARY KEY, THE_GEOM GEOMETRY(POINTZ))");
+        st.execute("INSERT INTO RECEIVERS(THE_GEOM) SELECT ST_MAKEPOINT(A.X * 20 + 5, B.X * 20 + 5, 4) FROM" +
+                " SYSTEM_RANGE(0, " + (receiversPerSide - 1) + ") A, SYSTEM_RANGE(0, " + (receiversPerSide - 1) +
+                ") B");
+    }
+
+    /**
+     * Create a sloping DEM and the SOIL table
+     * @param st Statement
+     * @param soilAreas Rows of the SOIL(THE_GEOM, G) table
+     */
+    private static void createGroundTables(Statement st, String soilAreas) throws SQLException {
+        st.execute("CREATE TABLE SOIL(THE_GEOM GEOMETRY, G REAL)");
+        st.execute("INSERT INTO SOIL VALUES " + soilAreas);
+        st.execute("CREATE TABLE DEM(THE_GEOM GEOMETRY(POINTZ))");
+        st.execute("INSERT INTO DEM SELECT ST_MAKEPOINT(A.X * 50, B.X * 50, A.X * 0.5) FROM" +
+                " SYSTEM_RANGE(-8, 12) A, SYSTEM_RANGE(-8, 12) B");
+    }
+
+    /**
+     * Run the reference computation and copy its levels into the REFERENCE_LEVEL table
+     * @param reference Reference computation
+     * @return Levels table of the computations
+     */
+    private String createReferenceLevels(NoiseMapByReceiverMaker reference) throws SQLException {
+        reference.run(connection, new EmptyProgressVisitor());
+        String levelTable = reference.getNoiseMapDatabaseParameters().receiversLevelTable;
+        try (Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE REFERENCE_LEVEL AS SELECT * FROM " + levelTable);
+        }
+        return levelTable;
+    }
+
+    /**
+     * Run the computation then compare its levels with the REFERENCE_LEVEL table
+     * @param noiseMap Computation
+     * @param condition Additional condition on the computed levels L, empty to compare all the levels
+     * @param expectedCount Number of compared levels
+     */
+    private void assertReferenceLevels(NoiseMapByReceiverMaker noiseMap, String condition,
+                                       int expectedCount) throws SQLException {
+        noiseMap.run(connection, new EmptyProgressVisitor());
+        assertReferenceLevels(noiseMap.getNoiseMapDatabaseParameters().receiversLevelTable, condition, expectedCount);
+    }
+
+    /**
+     * Compare the levels with the REFERENCE_LEVEL table
+     * @param levelTable Computed levels
+     * @param condition Additional condition on the computed levels L, empty to compare all the levels
+     * @param expectedCount Number of compared levels
+     */
+    private void assertReferenceLevels(String levelTable, String condition, int expectedCount) throws SQLException {
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT MAX(ABS(L.LAEQ - R.LAEQ)), COUNT(*) FROM " + levelTable +
+                     " L, REFERENCE_LEVEL R WHERE L.IDRECEIVER = R.IDRECEIVER AND L.PERIOD = R.PERIOD" +
+                     (condition.isEmpty() ? "" : " AND " + condition))) {
+            assertTrue(rs.next());
+            assertEquals(0, rs.getDouble(1), 1e-6);
+            assertEquals(expectedCount, rs.getInt(2));
+        }
+    }
+
+    /**
+     * All the receivers of the 4 cells and the computation completion are recorded in the checkpoint table
+     * @param receiverCount Number of receivers
+     */
+    private void assertCheckpoint(int receiverCount) throws SQLException {
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(DISTINCT IDRECEIVER), COUNT(DISTINCT CELL_ID)" +
+                     " FROM CHECKPOINT")) {
+            assertTrue(rs.next());
+            assertEquals(receiverCount, rs.getInt(1));
+            assertEquals(5, rs.getInt(2));
+        }
+    }
+
     @Test
     public void testPointDem() throws Exception {
         try (Statement st = connection.createStatement()) {
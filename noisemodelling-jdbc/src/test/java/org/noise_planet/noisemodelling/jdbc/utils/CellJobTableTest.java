@@ -0,0 +1,125 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.utilities.JDBCUtilities;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CellJobTableTest {
+    private static final long LEASE_DURATION = 50;
+
+    private Connection connection;
+
+    @BeforeEach
+    public void tearUp() throws Exception {
+        connection = JDBCUtilities.wrapConnection(H2GISDBFactory.createSpatialDataBase(
+                CellJobTableTest.class.getSimpleName(), true, ""));
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        if(connection != null) {
+            connection.close();
+        }
+    }
+
+    private CellJobTable createJobTable() throws SQLException {
+        CellJobTable jobTable = new CellJobTable("CELL_JOBS");
+        jobTable.drop(connection);
+        Map<CellIndex, Integer> cells = new LinkedHashMap<>();
+        cells.put(new CellIndex(0, 0), 10);
+        jobTable.create(connection, cells, 1);
+        return jobTable;
+    }
+
+    @Test
+    public void testExpiredLeaseRace() throws Exception {
+        CellJobTable jobTable = createJobTable();
+        CellJobTable.Job staleJob = jobTable.claim(connection, "A", LEASE_DURATION);
+        assertNotNull(staleJob);
+        assertTrue(jobTable.renewLease(connection, staleJob));
+        Thread.sleep(LEASE_DURATION * 2);
+        // Two workers race for the expired lease, with their own connection
+        String url = connection.getMetaData().getURL();
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        CellJobTable.Job[] claimedJobs = new CellJobTable.Job[2];
+        Exception[] errors = new Exception[2];
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            final int workerIndex = i;
+            Thread worker = new Thread(() -> {
+                try (Connection workerConnection = JDBCUtilities.wrapConnection(DriverManager.getConnection(url,
+                        H2GISDBFactory.DEFAULT_USER, H2GISDBFactory.DEFAULT_PASSWORD))) {
+                    barrier.await();
+                    claimedJobs[workerIndex] = jobTable.claim(workerConnection, "B" + workerIndex,
+                            LEASE_DURATION);
+                } catch (Exception ex) {
+                    errors[workerIndex] = ex;
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertNull(errors[0]);
+        assertNull(errors[1]);
+        // Only one worker wins the lease
+        assertTrue(claimedJobs[0] == null ^ claimedJobs[1] == null);
+        CellJobTable.Job job = claimedJobs[0] != null ? claimedJobs[0] : claimedJobs[1];
+        assertEquals(2, job.attempt);
+        // The previous worker can neither renew nor release the job
+        assertFalse(jobTable.renewLease(connection, staleJob));
+        assertFalse(jobTable.setDone(connection, staleJob));
+        assertFalse(jobTable.setFailed(connection, staleJob, 3, "lost"));
+        // Once its results are removed, the running attempt is revoked as it may have lost some of its results
+        jobTable.releaseLostLease(connection, staleJob);
+        assertEquals(Collections.singletonMap(CellJobTable.STATE_REVOKED, 1), jobTable.countByState(connection));
+        assertFalse(jobTable.renewLease(connection, job));
+        assertFalse(jobTable.setDone(connection, job));
+        jobTable.releaseLostLease(connection, job);
+        assertEquals(Collections.singletonMap(CellJobTable.STATE_PENDING, 1), jobTable.countByState(connection));
+        // A new attempt computes the cell
+        CellJobTable.Job lastJob = jobTable.claim(connection, "C", LEASE_DURATION);
+        assertEquals(3, lastJob.attempt);
+        assertTrue(jobTable.setDone(connection, lastJob));
+        assertEquals(Collections.singletonMap(CellJobTable.STATE_DONE, 1), jobTable.countByState(connection));
+    }
+
+    @Test
+    public void testLostLeaseAfterDone() throws Exception {
+        CellJobTable jobTable = createJobTable();
+        CellJobTable.Job staleJob = jobTable.claim(connection, "A", LEASE_DURATION);
+        Thread.sleep(LEASE_DURATION * 2);
+        CellJobTable.Job job = jobTable.claim(connection, "B", LEASE_DURATION);
+        assertNotNull(job);
+        assertTrue(jobTable.setDone(connection, job));
+        assertFalse(jobTable.setDone(connection, staleJob));
+        // The results of the done attempt may have been removed with the results of the lost attempt
+        jobTable.releaseLostLease(connection, staleJob);
+        assertEquals(Collections.singletonMap(CellJobTable.STATE_PENDING, 1), jobTable.countByState(connection));
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelGZIPOutputStreamTest {
+
+    @Test
+    public void testRoundTrip(@TempDir File tempDir) throws IOException {
+        // Compressible data on several blocks, written with various write sizes
+        Random random = new Random(42);
+        byte[] data = new byte[1_000_000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(6));
+        }
+        File file = new File(tempDir, "data.gz");
+        try (ParallelGZIPOutputStream outputStream = new ParallelGZIPOutputStream(FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE), 3, 65536, Deflater.DEFAULT_COMPRESSION)) {
+            int offset = 0;
+            while (offset < data.length) {
+                int length = Math.min(data.length - offset, random.nextInt(100000));
+                if (length == 1) {
+                    outputStream.write(data[offset]);
+                } else {
+                    outputStream.write(data, offset, length);
+                }
+                offset += length;
+            }
+        }
+        assertTrue(file.length() < data.length / 2);
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        try (InputStream inputStream = new GZIPInputStream(Files.newInputStream(file.toPath()))) {
+            inputStream.transferTo(decompressed);
+        }
+        assertArrayEquals(data, decompressed.toByteArray());
+    }
+}
@@ -3,12 +3,14 @@ package org.noise_planet.noisemodelling.jdbc.utils;
 import org.junit.jupiter.api.Test;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Types;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -28,4 +30,30 @@ public class StringPreparedStatementsTest {
         w.flush();
         assertEquals("INSERT INTO TABLE VALUES(15, 'Test '' Hello', 'POINT Z(1 2 3)', 15.2);\n", sb.toString());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCopy() throws SQLException, IOException {
+        StringWriter sb = new StringWriter();
+        GeometryFactory f = new GeometryFactory(new PrecisionModel(), 2154);
+        try (PreparedStatement p = new CopyPreparedStatements(sb, "RAYS", "THE_GEOM, ID, PATH, FAVOURABLE")) {
+            p.setObject(1, f.createPoint(new Coordinate(1, 2, 3)));
+            p.setLong(2, 15);
+            p.setString(3, "a\tb\\c\nd");
+            p.setBoolean(4, true);
+            p.addBatch();
+            p.setNull(1, Types.OTHER);
+            p.setLong(2, 16);
+            p.setString(3, "e");
+            p.setBoolean(4, false);
+            p.addBatch();
+        }
+        assertEquals("COPY RAYS (THE_GEOM, ID, PATH, FAVOURABLE) FROM stdin;\n" +
+                "01010000A06A080000000000000000F03F00000000000000400000000000000840\t15\ta\\tb\\\\c\\nd\tt\n" +
+                "\\N\t16\te\tf\n" +
+                "\\.\n", sb.toString());
+        // No rows, no COPY block
+        sb = new StringWriter();
+        new CopyPreparedStatements(sb, "RAYS", null).close();
+        assertEquals("", sb.toString());
+    }
+}
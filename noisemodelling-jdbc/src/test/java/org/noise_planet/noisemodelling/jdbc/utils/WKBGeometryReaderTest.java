@@ -0,0 +1,200 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.utilities.JDBCUtilities;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.io.ByteOrderValues;
+import org.locationtech.jts.io.WKBWriter;
+import org.locationtech.jts.io.WKTReader;
+import org.noise_planet.noisemodelling.jdbc.input.DefaultTableLoader;
+import org.noise_planet.noisemodelling.jdbc.input.GeometryTileCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WKBGeometryReaderTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(WKBGeometryReaderTest.class);
+    private Connection connection;
+
+    @BeforeEach
+    public void tearUp() throws Exception {
+        connection = JDBCUtilities.wrapConnection(H2GISDBFactory.createSpatialDataBase(
+                WKBGeometryReaderTest.class.getSimpleName(), true, ""));
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        if(connection != null) {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testReadPoint() throws Exception {
+        Geometry point = new WKTReader().read("POINT Z(12.5 -3 7.25)");
+        double[] xyz = new double[3];
+        for(int byteOrder : new int[] {ByteOrderValues.BIG_ENDIAN, ByteOrderValues.LITTLE_ENDIAN}) {
+            // ISO WKB
+            assertTrue(WKBGeometryReader.readPoint(new WKBWriter(3, byteOrder, false).write(point), xyz));
+            assertArrayEquals(new double[] {12.5, -3, 7.25}, xyz);
+            // Extended WKB with SRID
+            point.setSRID(2154);
+            assertTrue(WKBGeometryReader.readPoint(new WKBWriter(3, byteOrder, true).write(point), xyz));
+            assertArrayEquals(new double[] {12.5, -3, 7.25}, xyz);
+            // 2D point
+            assertTrue(WKBGeometryReader.readPoint(new WKBWriter(2, byteOrder, false).write(point), xyz));
+            assertEquals(12.5, xyz[0]);
+            assertEquals(-3, xyz[1]);
+            assertTrue(Double.isNaN(xyz[2]));
+        }
+        byte[] isoPointZ = {0, 0, 0, 0x03, (byte) 0xE9, 0x40, 0x24, 0, 0, 0, 0, 0, 0, 0x40, 0x34, 0, 0, 0, 0, 0, 0,
+                0x40, 0x3E, 0, 0, 0, 0, 0, 0};
+        assertTrue(WKBGeometryReader.readPoint(isoPointZ, xyz));
+        assertArrayEquals(new double[] {10, 20, 30}, xyz);
+        assertFalse(WKBGeometryReader.readPoint(new WKBWriter(3).write(
+                new WKTReader().read("LINESTRING Z(0 0 0, 1 1 1)")), xyz));
+        assertFalse(WKBGeometryReader.readPoint(null, xyz));
+    }
+
+    @Test
+    public void testReadDatabaseGeometries() throws Exception {
+        try(Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE GEOMS(THE_GEOM GEOMETRY)");
+            st.execute("INSERT INTO GEOMS VALUES (ST_SETSRID('POINT Z(1 2 3)', 2154))," +
+                    " (ST_SETSRID('POLYGON Z((0 0 1, 10 0 1, 10 10 1, 0 10 1, 0 0 1), (2 2 1, 4 2 1, 4 4 1, 2 2 1))', 2154))," +
+                    " (ST_SETSRID('MULTIPOLYGON(((0 0, 1 0, 1 1, 0 0)), ((5 5, 6 5, 6 6, 5 5)))', 2154)), (NULL)");
+            WKBGeometryReader reader = new WKBGeometryReader(new GeometryFactory());
+            double[] xyz = new double[3];
+            try(ResultSet rs = st.executeQuery("SELECT THE_GEOM FROM GEOMS")) {
+                int count = 0;
+                while (rs.next()) {
+                    Geometry expected = (Geometry) rs.getObject(1);
+                    Geometry geometry = reader.read(rs, 1);
+                    if(expected == null) {
+                        assertNull(geometry);
+                    } else {
+                        assertTrue(expected.equalsExact(geometry), expected + " != " + geometry);
+                        if(expected.getGeometryType().equals(Geometry.TYPENAME_POINT)) {
+                            assertTrue(WKBGeometryReader.readPoint(rs.getBytes(1), xyz));
+                            assertArrayEquals(new double[] {1, 2, 3}, xyz);
+                        }
+                    }
+                    count++;
+                }
+                assertEquals(4, count);
+            }
+        }
+    }
+
+    /**
+     * Read the same building table with the geometries built by the JDBC driver and with the WKB bytes
+     */
+    @Test
+    public void testBuildingTransfer() throws Exception {
+        try(Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE BUILDINGS(PK SERIAL PRIMARY KEY, THE_GEOM GEOMETRY, HEIGHT REAL)");
+            st.execute("INSERT INTO BUILDINGS(THE_GEOM, HEIGHT) VALUES" +
+                    " ('POLYGON((0 0, 12 0, 12 8, 6 14, 0 8, 0 0))', 10)," +
+                    " ('POLYGON((20 0, 40 0, 40 20, 20 20, 20 0), (25 5, 35 5, 35 15, 25 5))', 12.5)," +
+                    " ('POLYGON Z((50 0 2, 60 0 2, 60 10 3, 50 10 3, 50 0 2))', 8)," +
+                    " ('MULTIPOLYGON(((0 30, 5 30, 5 35, 0 30)), ((10 30, 15 30, 15 35, 10 30)))', 6)," +
+                    " (NULL, 4)," +
+                    " ('POLYGON((500 500, 510 500, 510 510, 500 500))', 20)");
+        }
+        DefaultTableLoader.BuildingTableParameters parameters = new DefaultTableLoader.BuildingTableParameters();
+        parameters.buildingsTableName = "BUILDINGS";
+        GeometryFactory geometryFactory = new GeometryFactory();
+        Envelope envelope = new Envelope(-10, 100, -10, 100);
+        List<GeometryTileCache.BuildingRecord> driverRecords = readBuildings(parameters, envelope, geometryFactory,
+                false);
+        List<GeometryTileCache.BuildingRecord> binaryRecords = readBuildings(parameters, envelope, geometryFactory,
+                true);
+        // The null geometry and the building outside the envelope are skipped
+        assertEquals(4, driverRecords.size());
+        assertEquals(driverRecords.size(), binaryRecords.size());
+        for (int i = 0; i < driverRecords.size(); i++) {
+            GeometryTileCache.BuildingRecord expected = driverRecords.get(i);
+            GeometryTileCache.BuildingRecord got = binaryRecords.get(i);
+            assertEquals(expected.primaryKey, got.primaryKey);
+            assertEquals(expected.height, got.height);
+            assertEquals(expected.alpha, got.alpha);
+            assertTrue(expected.geometry.equalsExact(got.geometry), expected.geometry + " != " + got.geometry);
+        }
+    }
+
+    /**
+     * Compare the time to read a large building table with the geometries built by the JDBC driver and with the WKB
+     * bytes. Run with -Dnoisemodelling.benchmark=true, the number of buildings is set by
+     * -Dnoisemodelling.benchmark.buildingCount (1 000 000 by default).
+     */
+    @Test
+    @Tag("benchmark")
+    @EnabledIfSystemProperty(named = "noisemodelling.benchmark", matches = "true")
+    public void benchmarkBuildingTransfer() throws Exception {
+        int buildingCount = Integer.getInteger("noisemodelling.benchmark.buildingCount", 1000000);
+        int side = (int) Math.ceil(Math.sqrt(buildingCount));
+        try(Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE BUILDINGS(PK SERIAL PRIMARY KEY, THE_GEOM GEOMETRY, HEIGHT REAL)");
+            st.execute("INSERT INTO BUILDINGS(THE_GEOM, HEIGHT) SELECT ST_MAKEPOLYGON(ST_MAKELINE(" +
+                    "ST_MAKEPOINT(A.X * 20, B.X * 20), ST_MAKEPOINT(A.X * 20 + 12, B.X * 20)," +
+                    " ST_MAKEPOINT(A.X * 20 + 12, B.X * 20 + 8), ST_MAKEPOINT(A.X * 20 + 6, B.X * 20 + 14)," +
+                    " ST_MAKEPOINT(A.X * 20, B.X * 20 + 8), ST_MAKEPOINT(A.X * 20, B.X * 20)))," +
+                    " 10 + MOD(A.X * B.X, 15) FROM SYSTEM_RANGE(0, " + (side - 1) + ") A, SYSTEM_RANGE(0, " +
+                    (side - 1) + ") B LIMIT " + buildingCount);
+            st.execute("CREATE SPATIAL INDEX ON BUILDINGS(THE_GEOM)");
+        }
+        DefaultTableLoader.BuildingTableParameters parameters = new DefaultTableLoader.BuildingTableParameters();
+        parameters.buildingsTableName = "BUILDINGS";
+        GeometryFactory geometryFactory = new GeometryFactory();
+        Envelope envelope = new Envelope(-10, 20 * side + 10, -10, 20 * side + 10);
+        for (int run = 0; run < 3; run++) {
+            for (boolean binaryGeometryTransfer : new boolean[] {false, true}) {
+                long[] count = new long[1];
+                double[] checksum = new double[1];
+                long start = System.nanoTime();
+                DefaultTableLoader.fetchBuildingRecords(connection, parameters, envelope, geometryFactory,
+                        binaryGeometryTransfer, record -> {
+                            count[0]++;
+                            checksum[0] += record.geometry.getCoordinates()[2].x;
+                        });
+                long time = System.nanoTime() - start;
+                assertEquals(buildingCount, count[0]);
+                LOGGER.info(String.format("Run %d, %s: %d buildings read in %d ms (checksum %.0f)", run,
+                        binaryGeometryTransfer ? "WKB bytes" : "JDBC driver geometries", count[0],
+                        time / 1000000, checksum[0]));
+            }
+        }
+    }
+
+    private List<GeometryTileCache.BuildingRecord> readBuildings(DefaultTableLoader.BuildingTableParameters parameters,
+                                                                 Envelope envelope, GeometryFactory geometryFactory,
+                                                                 boolean binaryGeometryTransfer) throws Exception {
+        List<GeometryTileCache.BuildingRecord> records = new ArrayList<>();
+        DefaultTableLoader.fetchBuildingRecords(connection, parameters, envelope, geometryFactory,
+                binaryGeometryTransfer, records::add);
+        return records;
+    }
+}
@@ -13,6 +13,7 @@ import org.h2gis.api.ProgressVisitor;
 import org.noise_planet.noisemodelling.pathfinder.profilebuilder.CutProfile;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
  /**
@@ -33,11 +34,22 @@ public interface CutPlaneVisitor {
      * Called before looking for vertical cut planes between the receiver and the sources.
      *
      * @param receiver        Receiver information
-     * @param sourceList      All sources in the range of this receiver sorted by the distance from the receiver
+     * @param sourceList      All sources in the range of this receiver in processing order (see {@link #sortSources})
      * @param cutProfileCount
      */
     void startReceiver(PathFinder.ReceiverPointInfo receiver, Collection<PathFinder.SourcePointInfo> sourceList, AtomicInteger cutProfileCount);
 
+    /**
+     * Called before {@link #startReceiver}, the sources will be processed in the order of the list.
+     * The default implementation keeps the distance order.
+     *
+     * @param receiver   Receiver information
+     * @param sourceList All sources in the range of this receiver sorted by the distance from the receiver,
+     *                   can be sorted in place
+     */
+    default void sortSources(PathFinder.ReceiverPointInfo receiver, List<PathFinder.SourcePointInfo> sourceList) {
+    }
+
     enum PathSearchStrategy {
         /**
          * Continue looking for vertical cut planes
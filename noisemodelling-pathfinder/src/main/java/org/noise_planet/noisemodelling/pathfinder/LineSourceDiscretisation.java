@@ -0,0 +1,126 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.math.Vector3D;
+import org.noise_planet.noisemodelling.pathfinder.utils.geometry.Orientation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static java.lang.Math.ceil;
+
+/**
+ * Receiver independent discretisation of a line source.
+ * The sub-sources of a line source only depend on the number of segments the line is split into. The receivers of a
+ * cell share the discretisation levels, the levels are computed on the first use and are safe to read concurrently.
+ * Levels with more than {@link #MAXIMUM_CACHED_SEGMENTS} segments are only required by the receivers near the line
+ * source, they are not kept in memory.
+ */
+public final class LineSourceDiscretisation {
+    /** Maximum number of segments of a cached discretisation level */
+    public static final int MAXIMUM_CACHED_SEGMENTS = 32;
+    private final LineString source;
+    private final int sourceIndex;
+    private final long sourcePk;
+    /** Orientation of the source, null if the orientation is computed from the line direction only */
+    private final Orientation sourceOrientation;
+    /** Index 0 is the single point level used when the line length is lower than the segment size constraint */
+    private final AtomicReferenceArray<PathFinder.SourcePointInfo[]> levels =
+            new AtomicReferenceArray<>(MAXIMUM_CACHED_SEGMENTS + 1);
+
+    /**
+     * @param source Line source geometry with absolute Z
+     * @param sourceIndex Source index in the scene
+     * @param sourcePk Source primary key
+     * @param sourceOrientation Orientation of the source, null if the orientation is computed from the line direction
+     */
+    public LineSourceDiscretisation(LineString source, int sourceIndex, long sourcePk, Orientation sourceOrientation) {
+        this.source = source;
+        this.sourceIndex = sourceIndex;
+        this.sourcePk = sourcePk;
+        this.sourceOrientation = sourceOrientation;
+    }
+
+    /**
+     * @return Line source geometry
+     */
+    public LineString getSource() {
+        return source;
+    }
+
+    /**
+     * @param geomLength Length of the line source
+     * @param segmentSizeConstraint Maximal distance between points
+     * @return Discretisation level, 0 is a single mid point, otherwise the number of segments
+     */
+    public static int getLevel(double geomLength, double segmentSizeConstraint) {
+        if (geomLength < segmentSizeConstraint) {
+            return 0;
+        }
+        double segmentCount = ceil(geomLength / segmentSizeConstraint);
+        return segmentCount > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) segmentCount;
+    }
+
+    /**
+     * Fetch the sub-sources of the line source.
+     * @param segmentSizeConstraint Maximal distance between points
+     * @return Sub-sources, the returned array must not be modified
+     */
+    public PathFinder.SourcePointInfo[] getSubSources(double segmentSizeConstraint) {
+        int level = getLevel(source.getLength(), segmentSizeConstraint);
+        if (level > MAXIMUM_CACHED_SEGMENTS) {
+            return computeSubSources(segmentSizeConstraint);
+        }
+        PathFinder.SourcePointInfo[] subSources = levels.get(level);
+        if (subSources == null) {
+            // Two threads may compute the same level, the result is identical
+            subSources = computeSubSources(segmentSizeConstraint);
+            if (!levels.compareAndSet(level, null, subSources)) {
+                subSources = levels.get(level);
+            }
+        }
+        return subSources;
+    }
+
+    /**
+     * @param segmentSizeConstraint Maximal distance between points
+     * @return Computed sub-sources of the line source
+     */
+    private PathFinder.SourcePointInfo[] computeSubSources(double segmentSizeConstraint) {
+        List<Coordinate> pts = new ArrayList<>();
+        double li = PathFinder.splitLineStringIntoPoints(source, segmentSizeConstraint, pts);
+        PathFinder.SourcePointInfo[] subSources = new PathFinder.SourcePointInfo[pts.size()];
+        for (int ptIndex = 0; ptIndex < pts.size(); ptIndex++) {
+            // use the orientation computed from the line source coordinates
+            Vector3D v;
+            if (ptIndex == 0) {
+                v = new Vector3D(source.getCoordinateN(0), pts.get(ptIndex));
+            } else {
+                v = new Vector3D(pts.get(ptIndex - 1), pts.get(ptIndex));
+            }
+            Orientation orientation;
+            if (sourceOrientation != null) {
+                // If the line source already provide an orientation then alter the line orientation
+                orientation = Orientation.fromVector(
+                        Orientation.rotate(new Orientation(sourceOrientation.yaw, sourceOrientation.roll, 0),
+                                v.normalize()), sourceOrientation.roll);
+            } else {
+                orientation = Orientation.fromVector(Orientation.rotate(new Orientation(0, 0, 0), v.normalize()), 0);
+            }
+            subSources[ptIndex] = new PathFinder.SourcePointInfo(sourceIndex, sourcePk, pts.get(ptIndex), li,
+                    orientation);
+        }
+        return subSources;
+    }
+}
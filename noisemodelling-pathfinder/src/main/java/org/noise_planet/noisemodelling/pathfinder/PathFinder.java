@@ -30,10 +30,12 @@ import org.noise_planet.noisemodelling.pathfinder.utils.geometry.JTSUtility;
 import org.noise_planet.noisemodelling.pathfinder.utils.geometry.QueryRTree;
 import org.noise_planet.noisemodelling.pathfinder.utils.profiler.ProfilerThread;
 import org.noise_planet.noisemodelling.pathfinder.utils.profiler.ReceiverStatsMetric;
+import org.noise_planet.noisemodelling.pathfinder.utils.profiler.StageMetric;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -69,6 +71,8 @@ public class PathFinder {
     /** Number of thread used for ray computation. */
     private int threadCount ;
     private ProfilerThread profilerThread;
+    /** Discretisation of the line sources shared by the receivers, key is source index and sub-geometry index */
+    private final Map<Long, LineSourceDiscretisation> lineSourceDiscretisations = new ConcurrentHashMap<>();
 
     /**
      * Create new instance from the propagation data.
@@ -186,8 +190,10 @@ public class PathFinder {
             Envelope receiverPropagationEnvelope = new Envelope(receiverPointInfo.getCoordinates());
             receiverPropagationEnvelope.expandBy(data.maxSrcDist);
             List<Wall> buildWalls = data.profileBuilder.getWallsIn(receiverPropagationEnvelope);
+            long mirrorStart = StageMetric.start();
             receiverMirrorIndex = new MirrorReceiversCompute(buildWalls, receiverPointInfo.position, data.reflexionOrder,
                     data.maxSrcDist, data.maxRefDist);
+            StageMetric.record(StageMetric.Stage.MIRROR_RECEIVERS, mirrorStart);
             if(profilerThread != null) {
                 reflectionPreprocessTime = TimeUnit.MILLISECONDS.convert(System.nanoTime() - start,
                         TimeUnit.NANOSECONDS);
@@ -204,48 +210,12 @@ public class PathFinder {
         Envelope receiverSourceRegion = new Envelope(receiverPointInfo.getCoordinates());
         receiverSourceRegion.expandBy(searchSourceDistance);
 
-        Iterator<Integer> regionSourcesLst = data.sourcesIndex.query(receiverSourceRegion);
         List<SourcePointInfo> sourceList = new ArrayList<>();
-        //Already processed Raw source (line and/or points)
-        HashSet<Integer> processedLineSources = new HashSet<>();
-        while (regionSourcesLst.hasNext()) {
-            Integer srcIndex = regionSourcesLst.next();
-            if (!processedLineSources.contains(srcIndex)) {
-                processedLineSources.add(srcIndex);
-                Geometry source = data.sourceGeometries.get(srcIndex);
-                if (source instanceof Point) {
-                    Coordinate ptpos = source.getCoordinate();
-                    if (ptpos.distance(receiverPointInfo.getCoordinates()) < data.maxSrcDist) {
-                        Orientation orientation = null;
-                        if(data.sourcesPk.size() > srcIndex) {
-                            orientation = data.sourceOrientation.get(data.sourcesPk.get(srcIndex));
-                        }
-                        if(orientation == null) {
-                            orientation = new Orientation(0,0, 0);
-                        }
-                        long sourcePk = srcIndex;
-                        if(srcIndex < data.sourcesPk.size()) {
-                            sourcePk = data.sourcesPk.get(srcIndex);
-                        }
-                        sourceList.add(new SourcePointInfo(srcIndex, sourcePk, ptpos, 1., orientation));
-                    }
-                } else if (source instanceof LineString) {
-                    addLineSource((LineString) source, receiverPointInfo.getCoordinates(), srcIndex, sourceList);
-                } else if (source instanceof MultiLineString) {
-                    for (int id = 0; id < source.getNumGeometries(); id++) {
-                        Geometry subGeom = source.getGeometryN(id);
-                        if (subGeom instanceof LineString) {
-                            addLineSource((LineString) subGeom, receiverPointInfo.getCoordinates(), srcIndex, sourceList);
-                        }
-                    }
-                } else {
-                    throw new IllegalArgumentException(
-                            String.format("Sound source %s geometry are not supported", source.getGeometryType()));
-                }
-            }
-        }
-        // Sort sources by power contribution descending
+        // Each source is visited once by the index
+        data.sourcesIndex.query(receiverSourceRegion, srcIndex -> addSource(srcIndex, receiverPointInfo, sourceList));
+        // Sort sources by distance, then let the visitor sort them by expected contribution
         sourceList.sort(Comparator.comparingDouble(o -> receiverPointInfo.position.distance3D(o.position)));
+        dataOut.sortSources(receiverPointInfo, sourceList);
 
         // Provides full sources points list to output data in order to do preprocessing step to evaluate
         // the maximum expected power at receivers level
@@ -359,9 +329,11 @@ public class PathFinder {
         // between source and receiver is blocked and does not penetrate the terrain profile.
         // In addition, the source must not be a mirror source due to reflection"
         if (horizontalDiffraction && !cutProfile.isFreeField()) {
+            // The four variants share the obstacles cut by the source-receiver plane and most hull segments
+            SideHullCache sideHullCache = new SideHullCache(src.position, rcv.position);
             for(boolean curved : new boolean[]{false, true}) {
                 for(PathFinder.ComputationSide side : PathFinder.ComputationSide.values()) {
-                    CutProfile cutProfileSide = computeVEdgeDiffraction(rcv, src, data, side, curved);
+                    CutProfile cutProfileSide = computeVEdgeDiffraction(rcv, src, data, side, curved, sideHullCache);
                     if (cutProfileSide != null) {
                         strategy = dataOut.onNewCutPlane(cutProfileSide);
                         if(strategy.equals(CutPlaneVisitor.PathSearchStrategy.SKIP_SOURCE) ||
@@ -386,17 +358,33 @@ public class PathFinder {
      */
     public CutProfile computeVEdgeDiffraction(ReceiverPointInfo rcv, SourcePointInfo src,
                                                Scene data, ComputationSide side, boolean curved) {
+        return computeVEdgeDiffraction(rcv, src, data, side, curved, null);
+    }
+
+    /**
+     * Compute horizontal diffraction (diffraction of vertical edge.)
+     * @param rcv Receiver coordinates.
+     * @param src Source coordinates.
+     * @param data     Propagation data.
+     * @param side     Side to compute. From Source to receiver coordinates
+     * @param curved Use the curved coordinate system (favourable conditions in CNOSSOS)
+     * @param sideHullCache Data shared with the other variants of this source-receiver pair, can be null
+     * @return The propagation path of the horizontal diffraction.
+     */
+    public CutProfile computeVEdgeDiffraction(ReceiverPointInfo rcv, SourcePointInfo src,
+                                               Scene data, ComputationSide side, boolean curved,
+                                               SideHullCache sideHullCache) {
 
         List<Coordinate> coordinates = computeSideHull(side == LEFT, new Coordinate(src.position),
-                new Coordinate(rcv.position), curved);
+                new Coordinate(rcv.position), curved, sideHullCache);
 
         List<CutPoint> cutPoints = new ArrayList<>();
 
         if(coordinates.size() > 2) {
             // Fetch vertical profile between each point of the diffraction path
             for(int i=0; i<coordinates.size()-1; i++) {
-                CutProfile profile = data.profileBuilder.getProfile(coordinates.get(i), coordinates.get(i+1), data.defaultGroundAttenuation,
-                        false);
+                CutProfile profile = getSegmentProfile(coordinates.get(i), coordinates.get(i+1), data,
+                        sideHullCache);
 
                 // Push new plane (except duplicate points for intermediate segments)
                 if( i > 0 ) {
@@ -421,6 +409,33 @@ public class PathFinder {
         return null;
     }
 
+    /**
+     * @param p0 Start of the segment
+     * @param p1 End of the segment
+     * @param data Propagation data
+     * @param sideHullCache Profiles of the segments already computed for this source-receiver pair, can be null
+     * @return Vertical profile between p0 and p1, with its own cut points instances
+     */
+    private static CutProfile getSegmentProfile(Coordinate p0, Coordinate p1, Scene data,
+                                                SideHullCache sideHullCache) {
+        if(sideHullCache == null) {
+            return data.profileBuilder.getProfile(p0, p1, data.defaultGroundAttenuation, false);
+        }
+        CutProfile profile = sideHullCache.getSegmentProfile(p0, p1);
+        if(profile == null) {
+            profile = data.profileBuilder.getProfile(p0, p1, data.defaultGroundAttenuation, false);
+            sideHullCache.putSegmentProfile(p0, p1, profile);
+        }
+        // The caller edits the cut points, so give it copies
+        CutProfile copy = new CutProfile();
+        for (CutPoint cutPoint : profile.cutPoints) {
+            copy.cutPoints.add(cutPoint.clone());
+        }
+        copy.hasBuildingIntersection = profile.hasBuildingIntersection;
+        copy.hasTopographyIntersection = profile.hasTopographyIntersection;
+        return copy;
+    }
+
     /**
      * Recover lost attributes of source and receiver that are lost when creating intermediate profiles
      * @param rcv Receiver information
@@ -476,6 +491,33 @@ public class PathFinder {
      * @return Intersection points between the plane formed by p1 and p2 and the buildings walls
      */
     public List<Coordinate> computeSideHull(boolean left, Coordinate p1, Coordinate p2, boolean curved) {
+        return computeSideHull(left, p1, p2, curved, null);
+    }
+
+    /**
+     * Compute Side Hull
+     * Create a line between p1 and p2. Find the first intersection of this line with a building then create a ConvexHull
+     * with the points of buildings in intersection. While there is an intersection add more points to the convex hull.
+     * The side diffraction path is found when there is no more intersection.
+     *
+     * @param left If true return the path on the left side between p1 and p2; else on the right side
+     * @param p1   First point
+     * @param p2   Second point
+     * @param curved Used the curved coordinate system between p1 and p2 (favourable conditions in CNOSSOS)
+     * @param sideHullCache Obstacles already cut by the p1-p2 plane, shared between the sides and curved variants.
+     *                      Can be null.
+     * @return Intersection points between the plane formed by p1 and p2 and the buildings walls
+     */
+    public List<Coordinate> computeSideHull(boolean left, Coordinate p1, Coordinate p2, boolean curved,
+                                            SideHullCache sideHullCache) {
+        long start = StageMetric.start();
+        List<Coordinate> sideHull = computeSideHullPath(left, p1, p2, curved, sideHullCache);
+        StageMetric.record(StageMetric.Stage.SIDE_HULL, start);
+        return sideHull;
+    }
+
+    private List<Coordinate> computeSideHullPath(boolean left, Coordinate p1, Coordinate p2, boolean curved,
+                                                 SideHullCache sideHullCache) {
         if (p1.equals(p2)) {
             return new ArrayList<>();
         }
@@ -502,6 +544,9 @@ public class PathFinder {
         // The roof vertices of buildings will be moved downward if the curved coordinate system is used
         // This will return the altered cut plane intersection coordinates, so the coordinate must be restored before returning it
         buildingIntersectionPathVisitor.setCurved(curved);
+        if(sideHullCache != null && sideHullCache.isCacheOf(p1, p2)) {
+            buildingIntersectionPathVisitor.setSideHullCache(sideHullCache);
+        }
 
         data.profileBuilder.getWallsOnPath(p1, p2, buildingIntersectionPathVisitor);
 
@@ -982,6 +1027,7 @@ public class PathFinder {
             sourceCopy.add(offsetGeometry);
         }
         data.setSources(sourceCopy);
+        lineSourceDiscretisations.clear();
     }
 
     /**
@@ -996,8 +1042,50 @@ public class PathFinder {
      * Update ground Z coordinates of receivers absolute to sea levels
      */
     public void makeReceiverRelativeZToAbsolute() {
-        for(Coordinate receiver : data.receivers) {
+        // The receivers list may store copies of the coordinates
+        for (int i = 0; i < data.receivers.size(); i++) {
+            Coordinate receiver = data.receivers.get(i);
             receiver.setZ(receiver.getZ() + data.profileBuilder.getZGround(receiver));
+            data.receivers.set(i, receiver);
+        }
+    }
+
+    /**
+     * Add the source points of a source geometry
+     * @param srcIndex Source index
+     * @param receiverPointInfo Receiver
+     * @param sourceList Output list
+     */
+    private void addSource(int srcIndex, ReceiverPointInfo receiverPointInfo, List<SourcePointInfo> sourceList) {
+        Geometry source = data.sourceGeometries.get(srcIndex);
+        if (source instanceof Point) {
+            Coordinate ptpos = source.getCoordinate();
+            if (ptpos.distance(receiverPointInfo.getCoordinates()) < data.maxSrcDist) {
+                Orientation orientation = null;
+                if(data.sourcesPk.size() > srcIndex) {
+                    orientation = data.sourceOrientation.get(data.sourcesPk.get(srcIndex));
+                }
+                if(orientation == null) {
+                    orientation = new Orientation(0,0, 0);
+                }
+                long sourcePk = srcIndex;
+                if(srcIndex < data.sourcesPk.size()) {
+                    sourcePk = data.sourcesPk.get(srcIndex);
+                }
+                sourceList.add(new SourcePointInfo(srcIndex, sourcePk, ptpos, 1., orientation));
+            }
+        } else if (source instanceof LineString) {
+            addLineSource((LineString) source, receiverPointInfo.getCoordinates(), srcIndex, 0, sourceList);
+        } else if (source instanceof MultiLineString) {
+            for (int id = 0; id < source.getNumGeometries(); id++) {
+                Geometry subGeom = source.getGeometryN(id);
+                if (subGeom instanceof LineString) {
+                    addLineSource((LineString) subGeom, receiverPointInfo.getCoordinates(), srcIndex, id, sourceList);
+                }
+            }
+        } else {
+            throw new IllegalArgumentException(
+                    String.format("Sound source %s geometry are not supported", source.getGeometryType()));
         }
     }
 
@@ -1006,43 +1094,92 @@ public class PathFinder {
      * @param source
      * @param receiverCoord
      * @param srcIndex
+     * @param subGeomIndex Index of the line in the source geometry
      * @param sourceList
-     * @return
      */
-    private void addLineSource(LineString source, Coordinate receiverCoord, int srcIndex, List<SourcePointInfo> sourceList) {
-        ArrayList<Coordinate> pts = new ArrayList<>();
+    private void addLineSource(LineString source, Coordinate receiverCoord, int srcIndex, int subGeomIndex,
+                               List<SourcePointInfo> sourceList) {
         Coordinate nearestPoint = JTSUtility.getNearestPoint(receiverCoord, source);
         double segmentSizeConstraint = max(1, receiverCoord.distance3D(nearestPoint) / 2.0);
         if (isNaN(segmentSizeConstraint)) {
             segmentSizeConstraint = max(1, receiverCoord.distance(nearestPoint) / 2.0);
         }
-        double li = splitLineStringIntoPoints(source, segmentSizeConstraint, pts);
-        for (int ptIndex = 0; ptIndex < pts.size(); ptIndex++) {
-            Coordinate pt = pts.get(ptIndex);
-            if (pt.distance(receiverCoord) < data.maxSrcDist) {
-                // use the orientation computed from the line source coordinates
-                Vector3D v;
-                if(ptIndex == 0) {
-                    v = new Vector3D(source.getCoordinates()[0], pts.get(ptIndex));
-                } else {
-                    v = new Vector3D(pts.get(ptIndex - 1), pts.get(ptIndex));
-                }
-                Orientation orientation;
-                if(data.sourcesPk.size() > srcIndex && data.sourceOrientation.containsKey(data.sourcesPk.get(srcIndex))) {
-                    // If the line source already provide an orientation then alter the line orientation
-                    orientation = data.sourceOrientation.get(data.sourcesPk.get(srcIndex));
-                    orientation = Orientation.fromVector(
-                            Orientation.rotate(new Orientation(orientation.yaw, orientation.roll, 0),
-                                    v.normalize()), orientation.roll);
-                } else {
-                    orientation = Orientation.fromVector(Orientation.rotate(new Orientation(0,0,0), v.normalize()), 0);
+        SourcePointInfo[] subSources = getLineSourceDiscretisation(source, srcIndex, subGeomIndex)
+                .getSubSources(segmentSizeConstraint);
+        List<SourcePointInfo> lineSourceList = sourceList;
+        if(data.sourceClusteringAngle > 0) {
+            lineSourceList = new ArrayList<>(subSources.length);
+        }
+        for (SourcePointInfo subSource : subSources) {
+            if (subSource.position.distance(receiverCoord) < data.maxSrcDist) {
+                lineSourceList.add(subSource);
+            }
+        }
+        if(lineSourceList != sourceList) {
+            clusterLineSource(lineSourceList, receiverCoord, data.sourceClusteringAngle, sourceList);
+        }
+    }
+
+    /**
+     * @param source Line source geometry
+     * @param srcIndex Source index
+     * @param subGeomIndex Index of the line in the source geometry
+     * @return The discretisation of the line source shared by all receivers
+     */
+    private LineSourceDiscretisation getLineSourceDiscretisation(LineString source, int srcIndex, int subGeomIndex) {
+        Long key = ((long) srcIndex << 32) | subGeomIndex;
+        LineSourceDiscretisation discretisation = lineSourceDiscretisations.get(key);
+        if (discretisation == null || discretisation.getSource() != source) {
+            Orientation orientation = null;
+            long sourcePk = srcIndex;
+            if (srcIndex < data.sourcesPk.size()) {
+                sourcePk = data.sourcesPk.get(srcIndex);
+                orientation = data.sourceOrientation.get(sourcePk);
+            }
+            discretisation = new LineSourceDiscretisation(source, srcIndex, sourcePk, orientation);
+            lineSourceDiscretisations.put(key, discretisation);
+        }
+        return discretisation;
+    }
+
+    /**
+     * Merge consecutive sub-sources of the same line source while the cluster length seen from the receiver is lower
+     * than the given angle. The sub-sources share the same emission, so the merged sub-source is the middle one with
+     * the cumulated li coefficient (energetic sum). Sub-sources near the receiver are kept as is.
+     * @param lineSourceList Sub-sources of a line source, in the line order
+     * @param receiverCoord Receiver coordinate
+     * @param clusteringAngle Maximum angle in radians
+     * @param sourceList Output list
+     */
+    public static void clusterLineSource(List<SourcePointInfo> lineSourceList, Coordinate receiverCoord,
+                                         double clusteringAngle, List<SourcePointInfo> sourceList) {
+        int clusterStart = 0;
+        while (clusterStart < lineSourceList.size()) {
+            Coordinate startPosition = lineSourceList.get(clusterStart).position;
+            double minimumDistance = startPosition.distance(receiverCoord);
+            int clusterEnd = clusterStart + 1;
+            while (clusterEnd < lineSourceList.size()) {
+                Coordinate endPosition = lineSourceList.get(clusterEnd).position;
+                double distance = min(minimumDistance, endPosition.distance(receiverCoord));
+                if (startPosition.distance(endPosition) > clusteringAngle * distance) {
+                    break;
                 }
-                long sourcePk = srcIndex;
-                if(srcIndex < data.sourcesPk.size()) {
-                    sourcePk = data.sourcesPk.get(srcIndex);
+                minimumDistance = distance;
+                clusterEnd++;
+            }
+            int clusterSize = clusterEnd - clusterStart;
+            if (clusterSize == 1) {
+                sourceList.add(lineSourceList.get(clusterStart));
+            } else {
+                SourcePointInfo middle = lineSourceList.get(clusterStart + clusterSize / 2);
+                double li = 0;
+                for (int i = clusterStart; i < clusterEnd; i++) {
+                    li += lineSourceList.get(i).li;
                 }
-                sourceList.add(new SourcePointInfo(srcIndex, sourcePk, pt, li, orientation));
+                sourceList.add(new SourcePointInfo(middle.sourceIndex, middle.sourcePk, middle.position, li,
+                        middle.orientation));
             }
+            clusterStart = clusterEnd;
         }
     }
 
@@ -14,8 +14,10 @@ import org.h2gis.utilities.SpatialResultSet;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Geometry;
 import org.noise_planet.noisemodelling.pathfinder.profilebuilder.ProfileBuilder;
+import org.noise_planet.noisemodelling.pathfinder.utils.collections.CoordinateArrayList;
+import org.noise_planet.noisemodelling.pathfinder.utils.collections.LongArrayList;
 import org.noise_planet.noisemodelling.pathfinder.utils.geometry.QueryGeometryStructure;
-import org.noise_planet.noisemodelling.pathfinder.utils.geometry.QueryRTree;
+import org.noise_planet.noisemodelling.pathfinder.utils.geometry.PackedGridIndex;
 //import org.noise_planet.noisemodelling.pathfinder.aeffacer.GeoWithSoilType;
 import org.noise_planet.noisemodelling.pathfinder.utils.geometry.Orientation;
 
@@ -41,14 +43,15 @@ public class Scene {
     public static final String DIRECTIVITY_DATABASE_FIELD = "DIR_ID";
     public static final String GS_DATABASE_FIELD = "GS";
 
-    public List<Long> receiversPk = new ArrayList<>();
-    public List<Long> sourcesPk = new ArrayList<>();
-    /** coordinate of receivers */
-    public List<Coordinate> receivers = new ArrayList<>();
+    /** Primary keys and coordinates are stored in primitive arrays, a cell may contain millions of receivers */
+    public List<Long> receiversPk = new LongArrayList();
+    public List<Long> sourcesPk = new LongArrayList();
+    /** coordinate of receivers, the list stores a copy of the coordinates */
+    public List<Coordinate> receivers = new CoordinateArrayList();
     /** Profile builder */
     public ProfileBuilder profileBuilder;
     /** Source Index */
-    public QueryGeometryStructure sourcesIndex = new QueryRTree();
+    public QueryGeometryStructure sourcesIndex = new PackedGridIndex();
     /** Sources geometries. Can be LINESTRING or POINT */
     public List<Geometry> sourceGeometries = new ArrayList<>();
 
@@ -89,6 +92,11 @@ public class Scene {
     public double maxSrcDist = DEFAULT_MAX_PROPAGATION_DISTANCE;
     /** Maximum reflection wall distance from receiver to source line */
     public double maxRefDist = DEFAULT_MAXIMUM_REF_DIST;
+    /**
+     * Far field line source clustering. Consecutive sub-sources of a line source are merged into a single sub-source
+     * while the cluster length seen from the receiver is lower than this angle (radians). 0 disables the clustering.
+     */
+    public double sourceClusteringAngle = 0;
 
 
     /**
@@ -126,7 +134,7 @@ public class Scene {
      * @param sourceGeometries
      */
     public void setSources(List<Geometry> sourceGeometries) {
-        sourcesIndex = new QueryRTree();
+        sourcesIndex = new PackedGridIndex();
         int i = 0;
         for(Geometry source : sourceGeometries) {
             sourcesIndex.appendGeometry(source, i++);
@@ -167,6 +175,18 @@ public class Scene {
         this.computeVerticalDiffraction = computeVerticalDiffraction;
     }
 
+    public double getSourceClusteringAngle() {
+        return sourceClusteringAngle;
+    }
+
+    /**
+     * @param sourceClusteringAngle Far field line sub-sources are merged while the cluster length seen from the
+     *                              receiver is lower than this angle (radians). 0 disables the clustering.
+     */
+    public void setSourceClusteringAngle(double sourceClusteringAngle) {
+        this.sourceClusteringAngle = sourceClusteringAngle;
+    }
+
     public void setDefaultGroundAttenuation(double gS) {
         this.defaultGroundAttenuation = gS;
     }
@@ -175,7 +195,7 @@ public class Scene {
         sourceGeometries.clear();
         sourceOrientation.clear();
         sourcesPk.clear();
-        sourcesIndex = new QueryRTree();
+        sourcesIndex = new PackedGridIndex();
     }
 }
 
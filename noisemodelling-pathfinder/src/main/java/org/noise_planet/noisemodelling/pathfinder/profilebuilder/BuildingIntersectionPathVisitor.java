@@ -39,6 +39,7 @@ public final class BuildingIntersectionPathVisitor implements ItemVisitor {
     LineSegment intersectionLine = new LineSegment();
     private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
     boolean curved = false;
+    SideHullCache sideHullCache = null;
 
     public BuildingIntersectionPathVisitor(Coordinate p1, Coordinate p2, boolean left, ProfileBuilder profileBuilder,
                                            List<Coordinate> input, Plane cutPlane) {
@@ -100,6 +101,13 @@ public final class BuildingIntersectionPathVisitor implements ItemVisitor {
     }
 
 
+    /**
+     * @param sideHullCache Cut roof points shared with the other visitors of the same source-receiver pair, can be null
+     */
+    public void setSideHullCache(SideHullCache sideHullCache) {
+        this.sideHullCache = sideHullCache;
+    }
+
     /**
      * Add a wall (segment alone or from a segment of a building polygon) to the input list if not already done.
      * It could be ignored if it does not cross with the 3D cutPlane.
@@ -107,44 +115,42 @@ public final class BuildingIntersectionPathVisitor implements ItemVisitor {
      */
     public void addItem(int id) {
         Wall processedWall = profileBuilder.getProcessedWalls().get(id);
+        Set<Integer> pushedPoints;
+        if(processedWall.type == ProfileBuilder.IntersectionType.BUILDING) {
+            pushedPoints = pushedBuildingsWideAnglePoints;
+        } else if(processedWall.type == ProfileBuilder.IntersectionType.WALL) {
+            pushedPoints = pushedWallsPoints;
+        } else {
+            return;
+        }
+        if (pushedPoints.contains(processedWall.originId)) {
+            // This building or wall has already been pushed to input hull
+            return;
+        }
+        List<Coordinate> roofPoints = getCutRoofPoints(processedWall);
+        // remove points that are not on the correct side of the line p1Top2 (use only x,y coordinates)
+        roofPoints = filterPointsBySide(p1Top2, left, roofPoints);
+        if (!roofPoints.isEmpty()) {
+            input.addAll(roofPoints);
+            pushedPoints.add(processedWall.originId);
+            // Stop iterating bounding boxes
+            throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * @param processedWall Wall of a building or a wall alone
+     * @return The diffraction points of the obstacle
+     */
+    private List<Coordinate> getRoofPoints(Wall processedWall) {
         if(processedWall.type == ProfileBuilder.IntersectionType.BUILDING) {
-            if (pushedBuildingsWideAnglePoints.contains(processedWall.originId)) {
-                // This building has already been pushed to input hull
-                return;
-            }
             List<Coordinate> roofPoints = profileBuilder.getPrecomputedWideAnglePoints(processedWall.originId + 1);
             if(roofPoints == null || roofPoints.size() < 2) {
                 // weird building, no diffraction point
-                return;
-            }
-            if(curved) {
-                // Adjust the altitude of the building roof points to be in the curved coordinate system
-                List<Coordinate> curvedRoofPoints = Arrays.asList(CurvedProfileGenerator.applyTransformation(p1, p2,
-                        roofPoints.toArray(new Coordinate[0]), false));
-                // Create a cut of the building volume with the roof points z moved to the bottom following
-                // the curve coordinate system formulae
-                if(cutRoofPointsWithPlane(cutPlane, curvedRoofPoints).isEmpty()) {
-                    // The building roof is below the curved ray
-                    return;
-                }
-            }
-            // Create a cut of the building volume
-            roofPoints = cutRoofPointsWithPlane(cutPlane, roofPoints);
-
-            // remove points that are not on the correct side of the line p1Top2 (use only x,y coordinates)
-            roofPoints = filterPointsBySide(p1Top2, left, roofPoints);
-            if (!roofPoints.isEmpty()) {
-                input.addAll(roofPoints);
-                pushedBuildingsWideAnglePoints.add(processedWall.originId);
-                // Stop iterating bounding boxes
-                throw new IllegalStateException();
-            }
-        } else if(processedWall.type == ProfileBuilder.IntersectionType.WALL) {
-            // A wall not related to a building (polygon)
-            if (pushedWallsPoints.contains(processedWall.originId)) {
-                // This wall has already been pushed to input hull
-                return;
+                return Collections.emptyList();
             }
+            return roofPoints;
+        } else {
             // Create the diffraction point outside the wall segment
             // Diffraction point must not intersect with wall
             Vector2D translationVector = new Vector2D(processedWall.p0, processedWall.p1).normalize()
@@ -153,28 +159,48 @@ public final class BuildingIntersectionPathVisitor implements ItemVisitor {
                     processedWall.p0.y - translationVector.getY(), processedWall.p0.z);
             Coordinate extendedP1 = new Coordinate(processedWall.p1.x + translationVector.getX(),
                     processedWall.p1.y + translationVector.getY(), processedWall.p1.z);
-            List<Coordinate> roofPoints = Arrays.asList(extendedP0, extendedP1);
-            if(curved) {
-                // Adjust the altitude of the building roof points to be in the curved coordinate system
-                List<Coordinate> curvedRoofPoints = Arrays.asList(CurvedProfileGenerator.applyTransformation(p1, p2,
-                        roofPoints.toArray(new Coordinate[0]), false));
-                // Create a cut of the building volume with the roof points z moved to the bottom following
-                // the curve coordinate system formulae
-                if(cutRoofPointsWithPlane(cutPlane, curvedRoofPoints).isEmpty()) {
-                    // The building roof is below the curved ray
-                    return;
+            return Arrays.asList(extendedP0, extendedP1);
+        }
+    }
+
+    /**
+     * @param processedWall Wall of a building or a wall alone
+     * @return Diffraction points of the obstacle cut by the plane, on both sides of the source-receiver line. Empty
+     * if the obstacle is below the curved ray.
+     */
+    private List<Coordinate> getCutRoofPoints(Wall processedWall) {
+        int obstacleKey = SideHullCache.getObstacleKey(processedWall);
+        if(curved) {
+            Boolean aboveCurvedRay = sideHullCache != null ? sideHullCache.aboveCurvedRay.get(obstacleKey) : null;
+            if(aboveCurvedRay == null) {
+                List<Coordinate> roofPoints = getRoofPoints(processedWall);
+                aboveCurvedRay = false;
+                if(!roofPoints.isEmpty()) {
+                    // Adjust the altitude of the building roof points to be in the curved coordinate system
+                    List<Coordinate> curvedRoofPoints = Arrays.asList(CurvedProfileGenerator.applyTransformation(p1,
+                            p2, roofPoints.toArray(new Coordinate[0]), false));
+                    // Create a cut of the building volume with the roof points z moved to the bottom following
+                    // the curve coordinate system formulae
+                    aboveCurvedRay = !cutRoofPointsWithPlane(cutPlane, curvedRoofPoints).isEmpty();
                 }
+                if(sideHullCache != null) {
+                    sideHullCache.aboveCurvedRay.put(obstacleKey, aboveCurvedRay);
+                }
+            }
+            if(!aboveCurvedRay) {
+                // The building roof is below the curved ray
+                return Collections.emptyList();
             }
+        }
+        List<Coordinate> cutRoofPoints = sideHullCache != null ? sideHullCache.cutRoofPoints.get(obstacleKey) : null;
+        if(cutRoofPoints == null) {
+            List<Coordinate> roofPoints = getRoofPoints(processedWall);
             // Create a cut of the building volume
-            roofPoints = cutRoofPointsWithPlane(cutPlane, roofPoints);
-            // remove points that are not on the correct side of the line p1Top2 (use only x,y coordinates)
-            roofPoints = filterPointsBySide(p1Top2, left, roofPoints);
-            if (!roofPoints.isEmpty()) {
-                pushedWallsPoints.add(processedWall.originId);
-                input.addAll(roofPoints);
-                // Stop iterating bounding boxes
-                throw new IllegalStateException();
+            cutRoofPoints = roofPoints.isEmpty() ? roofPoints : cutRoofPointsWithPlane(cutPlane, roofPoints);
+            if(sideHullCache != null) {
+                sideHullCache.cutRoofPoints.put(obstacleKey, cutRoofPoints);
             }
         }
+        return cutRoofPoints;
     }
 }
\ No newline at end of file
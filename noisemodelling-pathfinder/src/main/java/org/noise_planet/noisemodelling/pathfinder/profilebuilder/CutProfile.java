@@ -105,6 +105,10 @@ public class CutProfile {
     public void insertCutPoint(boolean sortBySourcePosition, CutPoint... cutPointsToInsert) {
         CutPointSource sourcePoint = getSource();
         CutPointReceiver receiverPoint = getReceiver();
+        if(sortBySourcePosition && sourcePoint != null && receiverPoint != null) {
+            mergeCutPoints(sourcePoint.coordinate, cutPointsToInsert);
+            return;
+        }
         cutPoints.addAll(1, Arrays.asList(cutPointsToInsert));
         if(sortBySourcePosition) {
             sort(sourcePoint.coordinate);
@@ -123,6 +127,70 @@ public class CutProfile {
         }
     }
 
+    /**
+     * Insert the cut points between the source and the receiver, ordered by distance from the source.
+     * The distances are computed once and the new points are merged with the points of the profile, so it is linear
+     * when the points are already ordered along the ray (DEM walk and wall index traversal).
+     * The result is the same as a stable sort of the points, new points first, with source first and receiver last.
+     * @param c0 Source coordinate
+     * @param cutPointsToInsert Points to insert
+     */
+    private void mergeCutPoints(Coordinate c0, CutPoint[] cutPointsToInsert) {
+        int existingCount = cutPoints.size() - 2;
+        CutPoint[] existing = cutPoints.subList(1, cutPoints.size() - 1).toArray(new CutPoint[0]);
+        double[] existingDistances = new double[existingCount];
+        for (int i = 0; i < existingCount; i++) {
+            existingDistances[i] = existing[i].coordinate.distance(c0);
+        }
+        double[] insertedDistances = new double[cutPointsToInsert.length];
+        for (int i = 0; i < cutPointsToInsert.length; i++) {
+            insertedDistances[i] = cutPointsToInsert[i].coordinate.distance(c0);
+        }
+        CutPoint[] inserted = sortByDistance(cutPointsToInsert.clone(), insertedDistances);
+        existing = sortByDistance(existing, existingDistances);
+        CutPoint receiver = cutPoints.get(cutPoints.size() - 1);
+        cutPoints.subList(1, cutPoints.size()).clear();
+        cutPoints.ensureCapacity(existingCount + inserted.length + 2);
+        int insertedIndex = 0;
+        int existingIndex = 0;
+        while (insertedIndex < inserted.length || existingIndex < existing.length) {
+            if (existingIndex == existing.length || (insertedIndex < inserted.length &&
+                    Double.compare(insertedDistances[insertedIndex], existingDistances[existingIndex]) <= 0)) {
+                cutPoints.add(inserted[insertedIndex++]);
+            } else {
+                cutPoints.add(existing[existingIndex++]);
+            }
+        }
+        cutPoints.add(receiver);
+    }
+
+    /**
+     * Stable sort of the points by distance, only if they are not already sorted
+     * @param points Points to sort
+     * @param distances Distance of each point, sorted with the points
+     * @return Sorted points
+     */
+    private static CutPoint[] sortByDistance(CutPoint[] points, double[] distances) {
+        for (int i = 1; i < points.length; i++) {
+            if (Double.compare(distances[i - 1], distances[i]) > 0) {
+                Integer[] order = new Integer[points.length];
+                for (int j = 0; j < order.length; j++) {
+                    order[j] = j;
+                }
+                Arrays.sort(order, (a, b) -> Double.compare(distances[a], distances[b]));
+                CutPoint[] sortedPoints = new CutPoint[points.length];
+                double[] sortedDistances = new double[points.length];
+                for (int j = 0; j < order.length; j++) {
+                    sortedPoints[j] = points[order[j]];
+                    sortedDistances[j] = distances[order[j]];
+                }
+                System.arraycopy(sortedDistances, 0, distances, 0, distances.length);
+                return sortedPoints;
+            }
+        }
+        return points;
+    }
+
     /**
      * Sort the CutPoints by distance with c0
      */
@@ -0,0 +1,246 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder.profilebuilder;
+
+import org.locationtech.jts.algorithm.locate.IndexedPointInAreaLocator;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Location;
+
+import java.util.Arrays;
+
+/**
+ * Ground absorption coefficients stored in a regular grid. It is an alternative to the ground areas polygons: the
+ * coefficient of a location is read in constant time and the profile walks the crossed cells instead of intersecting
+ * the edges of the polygons. Cells without coefficient hold NaN.
+ */
+public class GroundCoefficientRaster {
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+    private final float[] values;
+
+    /**
+     * @param envelope Covered area, the origin of the grid is aligned on a multiple of the cell size so that the rasters
+     *                 of neighbouring areas share the same cells
+     * @param cellSize Side length of a cell
+     */
+    public GroundCoefficientRaster(Envelope envelope, double cellSize) {
+        this.cellSize = cellSize;
+        this.minX = Math.floor(envelope.getMinX() / cellSize) * cellSize;
+        this.minY = Math.floor(envelope.getMinY() / cellSize) * cellSize;
+        this.columns = Math.max(1, (int) Math.ceil((envelope.getMaxX() - minX) / cellSize));
+        this.rows = Math.max(1, (int) Math.ceil((envelope.getMaxY() - minY) / cellSize));
+        this.values = new float[columns * rows];
+        Arrays.fill(values, Float.NaN);
+    }
+
+    /**
+     * @return Covered area
+     */
+    public Envelope getEnvelope() {
+        return new Envelope(minX, minX + columns * cellSize, minY, minY + rows * cellSize);
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return Estimated memory usage in bytes
+     */
+    public long estimateMemoryUsage() {
+        return (long) values.length * Float.BYTES;
+    }
+
+    /**
+     * @param x X ordinate
+     * @return Column of the cell, may be out of the grid
+     */
+    public int getColumn(double x) {
+        return (int) Math.floor((x - minX) / cellSize);
+    }
+
+    /**
+     * @param y Y ordinate
+     * @return Row of the cell, may be out of the grid
+     */
+    public int getRow(double y) {
+        return (int) Math.floor((y - minY) / cellSize);
+    }
+
+    /**
+     * @param column Cell column
+     * @param row Cell row
+     * @return Ground coefficient of the cell, NaN if not set or out of the grid
+     */
+    public double getCellValue(int column, int row) {
+        if(column < 0 || column >= columns || row < 0 || row >= rows) {
+            return Double.NaN;
+        }
+        return values[row * columns + column];
+    }
+
+    /**
+     * @param x X ordinate
+     * @param y Y ordinate
+     * @return Ground coefficient at this location, NaN if not set or out of the grid
+     */
+    public double getValue(double x, double y) {
+        return getCellValue(getColumn(x), getRow(y));
+    }
+
+    /**
+     * @param column Cell column
+     * @param row Cell row
+     * @param coefficient Ground coefficient of the cell
+     */
+    public void setCellValue(int column, int row, double coefficient) {
+        values[row * columns + column] = (float) coefficient;
+    }
+
+    /**
+     * Set the coefficient of the cells where the center is in the polygon, for the rows in the provided range
+     * Distinct row ranges can be filled by concurrent threads.
+     * @param area Polygon or MultiPolygon
+     * @param locator Point locator of the area
+     * @param coefficient Ground coefficient
+     * @param startRow First row
+     * @param endRow Last row, excluded
+     */
+    public void fill(Geometry area, IndexedPointInAreaLocator locator, double coefficient, int startRow, int endRow) {
+        Envelope areaEnvelope = area.getEnvelopeInternal();
+        int firstColumn = Math.max(0, getColumn(areaEnvelope.getMinX()));
+        int lastColumn = Math.min(columns - 1, getColumn(areaEnvelope.getMaxX()));
+        int firstRow = Math.max(startRow, getRow(areaEnvelope.getMinY()));
+        int lastRow = Math.min(endRow - 1, getRow(areaEnvelope.getMaxY()));
+        Coordinate center = new Coordinate();
+        for (int row = firstRow; row <= lastRow; row++) {
+            center.y = minY + (row + 0.5) * cellSize;
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                center.x = minX + (column + 0.5) * cellSize;
+                if(locator.locate(center) != Location.EXTERIOR) {
+                    setCellValue(column, row, coefficient);
+                }
+            }
+        }
+    }
+
+    /**
+     * Walk the cells crossed by the segment and report the changes of ground coefficient, from p0 to p1.
+     * @param p0 First point of the segment
+     * @param p1 Last point of the segment
+     * @param defaultCoefficient Coefficient of the cells without value and out of the grid
+     * @param visitor Called on each change of coefficient
+     * @return Ground coefficient at p0
+     */
+    public double walkSegment(Coordinate p0, Coordinate p1, double defaultCoefficient,
+                              CoefficientChangeVisitor visitor) {
+        double dx = p1.x - p0.x;
+        double dy = p1.y - p0.y;
+        double startCoefficient = valueOrDefault(getColumn(p0.x), getRow(p0.y), defaultCoefficient);
+        // Clip the segment with the grid envelope (Liang-Barsky)
+        double maxX = minX + columns * cellSize;
+        double maxY = minY + rows * cellSize;
+        double[] range = new double[] {0, 1};
+        if(!clip(-dx, p0.x - minX, range) || !clip(dx, maxX - p0.x, range) ||
+                !clip(-dy, p0.y - minY, range) || !clip(dy, maxY - p0.y, range)) {
+            return startCoefficient;
+        }
+        double tEnter = range[0];
+        double tExit = range[1];
+        double current = startCoefficient;
+        int column = Math.max(0, Math.min(columns - 1, getColumn(p0.x + dx * tEnter)));
+        int row = Math.max(0, Math.min(rows - 1, getRow(p0.y + dy * tEnter)));
+        if(tEnter > 0) {
+            current = changeCoefficient(current, valueOrDefault(column, row, defaultCoefficient), tEnter, visitor);
+        }
+        int stepX = dx > 0 ? 1 : -1;
+        int stepY = dy > 0 ? 1 : -1;
+        double tDeltaX = dx != 0 ? cellSize / Math.abs(dx) : Double.POSITIVE_INFINITY;
+        double tDeltaY = dy != 0 ? cellSize / Math.abs(dy) : Double.POSITIVE_INFINITY;
+        double tMaxX = dx != 0 ? (minX + (column + (dx > 0 ? 1 : 0)) * cellSize - p0.x) / dx : Double.POSITIVE_INFINITY;
+        double tMaxY = dy != 0 ? (minY + (row + (dy > 0 ? 1 : 0)) * cellSize - p0.y) / dy : Double.POSITIVE_INFINITY;
+        while (true) {
+            double t;
+            if(tMaxX < tMaxY) {
+                t = tMaxX;
+                column += stepX;
+                tMaxX += tDeltaX;
+            } else {
+                t = tMaxY;
+                row += stepY;
+                tMaxY += tDeltaY;
+            }
+            if(t >= tExit || column < 0 || column >= columns || row < 0 || row >= rows) {
+                break;
+            }
+            current = changeCoefficient(current, valueOrDefault(column, row, defaultCoefficient), t, visitor);
+        }
+        if(tExit < 1) {
+            changeCoefficient(current, defaultCoefficient, tExit, visitor);
+        }
+        return startCoefficient;
+    }
+
+    private double valueOrDefault(int column, int row, double defaultCoefficient) {
+        double value = getCellValue(column, row);
+        return Double.isNaN(value) ? defaultCoefficient : value;
+    }
+
+    private static double changeCoefficient(double current, double next, double t,
+                                            CoefficientChangeVisitor visitor) {
+        if(Double.compare(current, next) != 0) {
+            visitor.onCoefficientChange(t, next);
+        }
+        return next;
+    }
+
+    private static boolean clip(double p, double q, double[] range) {
+        if(p == 0) {
+            return q >= 0;
+        }
+        double r = q / p;
+        if(p < 0) {
+            if(r > range[1]) {
+                return false;
+            }
+            range[0] = Math.max(range[0], r);
+        } else {
+            if(r < range[0]) {
+                return false;
+            }
+            range[1] = Math.min(range[1], r);
+        }
+        return true;
+    }
+
+    /**
+     * Receive the changes of ground coefficient along a segment
+     */
+    public interface CoefficientChangeVisitor {
+        /**
+         * @param fraction Position of the change on the segment, from 0 (first point) to 1 (last point)
+         * @param coefficient Ground coefficient after this position
+         */
+        void onCoefficientChange(double fraction, double coefficient);
+    }
+}
@@ -25,6 +25,8 @@ import org.noise_planet.noisemodelling.pathfinder.path.Scene;
 import org.noise_planet.noisemodelling.pathfinder.utils.AcousticIndicatorsFunctions;
 import org.noise_planet.noisemodelling.pathfinder.utils.IntegerTuple;
 import org.noise_planet.noisemodelling.pathfinder.utils.geometry.JTSUtility;
+import org.noise_planet.noisemodelling.pathfinder.utils.geometry.PackedGridIndex;
+import org.noise_planet.noisemodelling.pathfinder.utils.profiler.StageMetric;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,6 +53,12 @@ public class ProfileBuilder {
     /** {@link Geometry} factory. */
     private static final GeometryFactory FACTORY = new GeometryFactory();
     private static final double DELTA = 1e-3;
+    /** Estimated memory of a wall with its index entries (bytes) */
+    private static final long WALL_MEMORY = 256;
+    /** Estimated memory of a coordinate (bytes) */
+    private static final long COORDINATE_MEMORY = 48;
+    /** Estimated memory of a triangle with its index entries (bytes) */
+    private static final long TRIANGLE_MEMORY = 96;
 
     /** If true, no more data can be add. */
     private boolean isFeedingFinished = false;
@@ -75,9 +83,9 @@ public class ProfileBuilder {
     private final STRtree buildingTree;
     /** Building RTree. */
     private STRtree wallTree = new STRtree(TREE_NODE_CAPACITY);
-    /** RTree with Buildings's walls linestrings, walls linestring, GroundEffect linestrings
-     * The object is an integer. It's an index of the array {@link #processedWalls} */
-    public STRtree rtree;
+    /** Index of Buildings's walls linestrings, walls linestring, GroundEffect linestrings
+     * The identifier is an index of the array {@link #processedWalls} */
+    public PackedGridIndex processedWallsIndex;
     private STRtree groundEffectsRtree = new STRtree(TREE_NODE_CAPACITY);
 
 
@@ -96,6 +104,8 @@ public class ProfileBuilder {
 
     /** List of ground effects. */
     private final List<GroundAbsorption> groundAbsorptions = new ArrayList<>();
+    /** Ground coefficients grid, used instead of the ground effects polygons if set */
+    private GroundCoefficientRaster groundRaster = null;
 
     /** Receivers .*/
     private final List<Coordinate> receivers = new ArrayList<>();
@@ -129,6 +139,13 @@ public class ProfileBuilder {
         return this;
     }
 
+    /**
+     * @return True if the z value of the buildings polygons is the altitude of the top of the walls
+     */
+    public boolean iszBuildings() {
+        return zBuildings;
+    }
+
 
     /**
      * Main empty constructor.
@@ -563,6 +580,31 @@ public class ProfileBuilder {
         return this;
     }
 
+    /**
+     * Set the ground coefficients grid. The profile then reads the ground coefficients in this grid, the ground
+     * effects polygons should not be added.
+     * @param groundRaster Ground coefficients grid
+     */
+    public ProfileBuilder setGroundRaster(GroundCoefficientRaster groundRaster) {
+        if(!isFeedingFinished) {
+            if(envelope == null) {
+                envelope = groundRaster.getEnvelope();
+            }
+            else {
+                envelope.expandToInclude(groundRaster.getEnvelope());
+            }
+            this.groundRaster = groundRaster;
+        }
+        return this;
+    }
+
+    /**
+     * @return Ground coefficients grid or null if the ground effects are polygons
+     */
+    public GroundCoefficientRaster getGroundRaster() {
+        return groundRaster;
+    }
+
     /**
      * Add a ground effect.
      * @param minX        Ground effect minimum X.
@@ -595,6 +637,23 @@ public class ProfileBuilder {
         return processedWalls;
     }
 
+    /**
+     * Build a RTree of the processed walls, it replaces the removed public rtree field.
+     * The identifier is an index of the array {@link #processedWalls}
+     * @return A new RTree of the envelope of the processed walls
+     * @deprecated Use {@link #processedWallsIndex}, this method will be removed in the next release
+     */
+    @Deprecated
+    public STRtree getRtree() {
+        STRtree rtree = new STRtree(buildingNodeCapacity);
+        for (int i = 0; i < processedWalls.size(); i++) {
+            Wall wall = processedWalls.get(i);
+            rtree.insert(new Envelope(wall.p0, wall.p1), i);
+        }
+        rtree.build();
+        return rtree;
+    }
+
     /**
      * Retrieve the building list.
      * @return The building list.
@@ -676,6 +735,22 @@ public class ProfileBuilder {
         return vertices;
     }
 
+    /**
+     * Retrieve the topographic points, as added before the triangulation.
+     * @return The topographic points.
+     */
+    public List<Coordinate> getTopographicPoints() {
+        return topoPoints;
+    }
+
+    /**
+     * Retrieve the topographic lines, as added before the triangulation.
+     * @return The topographic lines.
+     */
+    public List<LineString> getTopographicLines() {
+        return topoLines;
+    }
+
     /**
      * Retrieve the receivers list.
      * @return The receivers list.
@@ -692,6 +767,28 @@ public class ProfileBuilder {
         return groundAbsorptions;
     }
 
+    /**
+     * Rough estimation of the memory used by the obstacles, topography and ground areas with their indexes. It is used
+     * to schedule the computation of several cells at the same time.
+     * @return Estimated memory usage in bytes
+     */
+    public long estimateMemoryUsage() {
+        long coordinates = vertices.size() + topoPoints.size();
+        for (Building building : buildings) {
+            if(building.getGeometry() != null) {
+                coordinates += building.getGeometry().getNumPoints();
+            }
+        }
+        for (GroundAbsorption groundAbsorption : groundAbsorptions) {
+            if(groundAbsorption.getGeometry() != null) {
+                coordinates += groundAbsorption.getGeometry().getNumPoints();
+            }
+        }
+        return (walls.size() + processedWalls.size()) * WALL_MEMORY + coordinates * COORDINATE_MEMORY +
+                (topoTriangles.size() + topoNeighbors.size()) * TRIANGLE_MEMORY +
+                (groundRaster != null ? groundRaster.estimateMemoryUsage() : 0);
+    }
+
     /**
      * Finish the data feeding. Once called, no more data can be added and process it in order to prepare the
      * profile retrieving.
@@ -799,7 +896,7 @@ public class ProfileBuilder {
             }
         }
         //Process buildings
-        rtree = new STRtree(buildingNodeCapacity);
+        processedWallsIndex = new PackedGridIndex();
         buildingsWideAnglePoints.clear();
         for (int j = 0; j < buildings.size(); j++) {
             Building building = buildings.get(j);
@@ -814,7 +911,7 @@ public class ProfileBuilder {
                 w.setPrimaryKey(building.getPrimaryKey());
                 w.copyAlphas(building);
                 processedWalls.add(w);
-                rtree.insert(lineSegment.toGeometry(FACTORY).getEnvelopeInternal(), processedWalls.size()-1);
+                processedWallsIndex.appendEnvelope(new Envelope(lineSegment.p0, lineSegment.p1), processedWalls.size()-1);
             }
             building.setWalls(walls);
         }
@@ -827,7 +924,7 @@ public class ProfileBuilder {
                 w.copyAlphas(wall);
                 w.setPrimaryKey(wall.primaryKey);
                 processedWalls.add(w);
-                rtree.insert(lineSegment.toGeometry(FACTORY).getEnvelopeInternal(), processedWalls.size()-1);
+                processedWallsIndex.appendEnvelope(new Envelope(lineSegment.p0, lineSegment.p1), processedWalls.size()-1);
             }
         }
         // Set buildings and walls unmodifiable
@@ -853,11 +950,11 @@ public class ProfileBuilder {
                 for (int k = 0; k < coords.length - 1; k++) {
                     LineSegment line = new LineSegment(coords[k], coords[k + 1]);
                     processedWalls.add(new Wall(line, j, GROUND_EFFECT).setProcessedWallIndex(processedWalls.size()));
-                    rtree.insert(new Envelope(line.p0, line.p1), processedWalls.size() - 1);
+                    processedWallsIndex.appendEnvelope(new Envelope(line.p0, line.p1), processedWalls.size() - 1);
                 }
             }
         }
-        rtree.build();
+        processedWallsIndex.build();
         groundEffectsRtree.build();
         // initialize with default frequencies
         setFrequencyArray(frequencyArray);
@@ -889,13 +986,12 @@ public class ProfileBuilder {
      */
     public List<Wall> getWallsIn(Envelope env) {
         List<Wall> list = new ArrayList<>();
-        List<Integer> indexes = rtree.query(env);
-        for(int i : indexes) {
-            Wall w = getProcessedWalls().get(i);
+        processedWallsIndex.query(env, i -> {
+            Wall w = processedWalls.get(i);
             if(w.getType().equals(BUILDING) || w.getType().equals(WALL)) {
                 list.add(w);
             }
-        }
+        });
         return list;
     }
 
@@ -949,14 +1045,26 @@ public class ProfileBuilder {
      * @return Cutting profile.
      */
     public CutProfile getProfile(Coordinate sourceCoordinate, Coordinate receiverCoordinate, double defaultGroundAttenuation, boolean stopAtObstacleOverSourceReceiver) {
+        long start = StageMetric.start();
+        CutProfile profile = computeProfile(sourceCoordinate, receiverCoordinate, defaultGroundAttenuation,
+                stopAtObstacleOverSourceReceiver);
+        StageMetric.record(StageMetric.Stage.PROFILE, start);
+        return profile;
+    }
+
+    private CutProfile computeProfile(Coordinate sourceCoordinate, Coordinate receiverCoordinate, double defaultGroundAttenuation, boolean stopAtObstacleOverSourceReceiver) {
         CutPointSource sourcePoint  = new CutPointSource(sourceCoordinate);
         CutPointReceiver receiverPoint = new CutPointReceiver(receiverCoordinate);
 
         CutProfile profile = new CutProfile(sourcePoint, receiverPoint);
 
         // Add sourceCoordinate
-        int groundAbsorptionIndex = getIntersectingGroundAbsorption(FACTORY.createPoint(sourceCoordinate));
-        if(groundAbsorptionIndex >= 0) {
+        int groundAbsorptionIndex = groundRaster != null ? -1 :
+                getIntersectingGroundAbsorption(FACTORY.createPoint(sourceCoordinate));
+        if(groundRaster != null) {
+            double coefficient = groundRaster.getValue(sourceCoordinate.x, sourceCoordinate.y);
+            sourcePoint.setGroundCoefficient(Double.isNaN(coefficient) ? defaultGroundAttenuation : coefficient);
+        } else if(groundAbsorptionIndex >= 0) {
             sourcePoint.setGroundCoefficient(groundAbsorptions.get(groundAbsorptionIndex).getCoefficient());
         } else {
             sourcePoint.setGroundCoefficient(defaultGroundAttenuation);
@@ -974,7 +1082,7 @@ public class ProfileBuilder {
         }
 
         //Add Buildings/Walls and Ground effect transition points
-        if(rtree != null) {
+        if(processedWallsIndex != null) {
             LineSegment fullLine = new LineSegment(sourceCoordinate, receiverCoordinate);
             addGroundBuildingCutPts(fullLine, profile, stopAtObstacleOverSourceReceiver);
             if(stopAtObstacleOverSourceReceiver && profile.hasBuildingIntersection) {
@@ -982,6 +1090,11 @@ public class ProfileBuilder {
             }
         }
 
+        // Add the ground coefficient changes read in the grid
+        if(groundRaster != null) {
+            addRasterGroundCutPts(sourceCoordinate, receiverCoordinate, profile, defaultGroundAttenuation);
+        }
+
         // Propagate ground coefficient for unknown coefficients
         double currentCoefficient = sourcePoint.groundCoefficient;
         for (CutPoint cutPoint : profile.cutPoints) {
@@ -1027,6 +1140,28 @@ public class ProfileBuilder {
         return profile;
     }
 
+    /**
+     * Add the changes of ground coefficient read in the ground coefficients grid along the profile
+     * @param sourceCoordinate Starting point.
+     * @param receiverCoordinate Ending point.
+     * @param profile Object to feed the results (out)
+     * @param defaultGroundAttenuation Ground coefficient of the cells without value
+     */
+    private void addRasterGroundCutPts(Coordinate sourceCoordinate, Coordinate receiverCoordinate,
+                                         CutProfile profile, double defaultGroundAttenuation) {
+        List<CutPoint> newCutPoints = new ArrayList<>();
+        double dx = receiverCoordinate.x - sourceCoordinate.x;
+        double dy = receiverCoordinate.y - sourceCoordinate.y;
+        groundRaster.walkSegment(sourceCoordinate, receiverCoordinate,
+                defaultGroundAttenuation, (fraction, coefficient) ->
+                        newCutPoints.add(new CutPointGroundEffect(-1, new Coordinate(
+                                sourceCoordinate.x + dx * fraction, sourceCoordinate.y + dy * fraction,
+                                Double.NaN), coefficient)));
+        if(!newCutPoints.isEmpty()) {
+            profile.insertCutPoint(true, newCutPoints.toArray(CutPoint[]::new));
+        }
+    }
+
     /**
      * Fetch the first intersecting ground absorption object that intersects with the provided geometry
      * @param query The geometry object to check for intersection
@@ -1153,59 +1288,41 @@ public class ProfileBuilder {
      *                                        receiverCoordinate, stop computing and set #CutProfile.hasBuildingInter to buildings in profile data
      */
     private void addGroundBuildingCutPts(LineSegment fullLine, CutProfile profile, boolean stopAtObstacleOverSourceReceiver) {
-        // Collect all objects where envelope intersects all sub-segments of fullLine
+        // Collect all objects where envelope intersects the grid cells crossed by fullLine
         Set<Integer> processed = new HashSet<>();
-
-        // Segmented fullLine, this is the query for rTree indexes
-        // Split line into segments for structures based on RTree in order to limit the number of queries
-        // (for large area of the line segment envelope)
-        List<LineSegment> lines = splitSegment(fullLine.p0, fullLine.p1, maxLineLength);
-        List<CutPoint> newCutPoints = new LinkedList<>();
+        List<CutPoint> newCutPoints = new ArrayList<>();
         try {
-            for (int j = 0; j < lines.size()
-                    && !(profile.hasBuildingIntersection && stopAtObstacleOverSourceReceiver); j++) {
-                LineSegment line = lines.get(j);
-                for (Object result : rtree.query(new Envelope(line.p0, line.p1))) {
-                    if (!(result instanceof Integer) || processed.contains((Integer) result)) {
-                        continue;
-                    }
-                    processed.add((Integer) result);
-                    int i = (Integer) result;
-                    Wall facetLine = processedWalls.get(i);
-                    Coordinate intersection = fullLine.intersection(facetLine.ls);
-                    if (intersection != null) {
-                        intersection = new Coordinate(intersection);
-                        if (!isNaN(facetLine.p0.z) && !isNaN(facetLine.p1.z)) {
-                            // same z in the line, so useless to compute interpolation between points
-                            if (Double.compare(facetLine.p0.z, facetLine.p1.z) == 0) {
-                                intersection.z = facetLine.p0.z;
-                            } else {
-                                intersection.z = Vertex.interpolateZ(intersection, facetLine.p0, facetLine.p1);
-                            }
-                        }
-                        switch (facetLine.type) {
-                            case BUILDING:
-                                if (!processBuilding(i, intersection, facetLine, fullLine, newCutPoints,
-                                        stopAtObstacleOverSourceReceiver, profile)) {
-                                    return;
-                                }
-                                break;
-                            case WALL:
-                                if (!processWall(i, intersection, facetLine, fullLine, newCutPoints,
-                                        stopAtObstacleOverSourceReceiver, profile)) {
-                                    return;
-                                }
-                                break;
-                            case GROUND_EFFECT:
-                                if (!processGroundEffect(i, intersection, facetLine, fullLine, newCutPoints,
-                                        stopAtObstacleOverSourceReceiver, profile)) {
-                                    return;
-                                }
-                                break;
+            // The grid cells are visited from the source to the receiver
+            processedWallsIndex.querySegment(fullLine.p0, fullLine.p1, epsilon, i -> {
+                if (!processed.add(i)) {
+                    return true;
+                }
+                Wall facetLine = processedWalls.get(i);
+                Coordinate intersection = fullLine.intersection(facetLine.ls);
+                if (intersection != null) {
+                    intersection = new Coordinate(intersection);
+                    if (!isNaN(facetLine.p0.z) && !isNaN(facetLine.p1.z)) {
+                        // same z in the line, so useless to compute interpolation between points
+                        if (Double.compare(facetLine.p0.z, facetLine.p1.z) == 0) {
+                            intersection.z = facetLine.p0.z;
+                        } else {
+                            intersection.z = Vertex.interpolateZ(intersection, facetLine.p0, facetLine.p1);
                         }
                     }
+                    switch (facetLine.type) {
+                        case BUILDING:
+                            return processBuilding(i, intersection, facetLine, fullLine, newCutPoints,
+                                    stopAtObstacleOverSourceReceiver, profile);
+                        case WALL:
+                            return processWall(i, intersection, facetLine, fullLine, newCutPoints,
+                                    stopAtObstacleOverSourceReceiver, profile);
+                        case GROUND_EFFECT:
+                            return processGroundEffect(i, intersection, facetLine, fullLine, newCutPoints,
+                                    stopAtObstacleOverSourceReceiver, profile);
+                    }
                 }
-            }
+                return true;
+            });
         } finally {
             profile.insertCutPoint(true, newCutPoints.toArray(CutPoint[]::new));
         }
@@ -1646,14 +1763,13 @@ public class ProfileBuilder {
      * @param visitor
      */
     public void getWallsOnPath(Coordinate p1, Coordinate p2, BuildingIntersectionPathVisitor visitor) {
-        // Update intersection line test in the rtree visitor
+        // Update intersection line test in the index visitor
         try {
-            List<LineSegment> lines = splitSegment(p1, p2, maxLineLength);
-            for(LineSegment segment : lines) {
-                visitor.setIntersectionLine(segment);
-                Envelope pathEnv = new Envelope(segment.p0, segment.p1);
-                rtree.query(pathEnv, visitor);
-            }
+            visitor.setIntersectionLine(new LineSegment(p1, p2));
+            processedWallsIndex.querySegment(p1, p2, epsilon, id -> {
+                visitor.visitItem(id);
+                return true;
+            });
         } catch (IllegalStateException ex) {
             //Ignore
         }
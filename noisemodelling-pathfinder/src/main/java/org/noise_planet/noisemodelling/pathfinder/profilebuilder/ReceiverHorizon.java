@@ -0,0 +1,217 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder.profilebuilder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.lang.Double.isNaN;
+
+/**
+ * Building and wall horizon around a receiver.
+ * When the receiver is enclosed by obstacles (courtyard, inner block) every propagation path coming from a source
+ * outside the enclosure passes above the obstacle tops. The lowest elevation angle of the horizon and the distance of
+ * the nearest obstacle give a lower bound of the path difference of any source outside the enclosure, without
+ * computing the cut profiles.
+ * The enclosure is the chain of the nearest walls seen from the receiver in each azimuth sector. The receiver is
+ * enclosed only if consecutive nearest walls are joined, so a lateral gap between two obstacles that overlap in
+ * azimuth (staggered buildings) opens the horizon.
+ * The digital elevation model is ignored, it can only increase the horizon so the bound stays conservative.
+ */
+public final class ReceiverHorizon {
+    /** Maximum horizontal distance between the ends of two joined walls */
+    private static final double JOIN_TOLERANCE = 0.01;
+    private final Coordinate receiver;
+    private final double radius;
+    private final boolean enclosed;
+    /** Lowest elevation angle of the horizon in radians */
+    private final double minimumElevationAngle;
+    /** Horizontal distance of the nearest obstacle */
+    private final double minimumDistance;
+
+    /**
+     * @param profileBuilder Obstacles
+     * @param receiver Receiver position with absolute Z
+     * @param radius Only the obstacles in this horizontal distance are used
+     */
+    public ReceiverHorizon(ProfileBuilder profileBuilder, Coordinate receiver, double radius) {
+        this.receiver = receiver;
+        this.radius = radius;
+        Envelope envelope = new Envelope(receiver);
+        envelope.expandBy(radius);
+        // azimuth interval start, end (start < end, in [0, 2PI[ or up to 4PI when the interval cross the 0 azimuth)
+        List<double[]> intervals = new ArrayList<>();
+        List<Wall> intervalWalls = new ArrayList<>();
+        for (Wall wall : profileBuilder.getWallsIn(envelope)) {
+            double d0 = wall.p0.distance(receiver);
+            double d1 = wall.p1.distance(receiver);
+            double distance = wall.getLineSegment().distance(receiver);
+            if (d0 > radius || d1 > radius || distance < ProfileBuilder.epsilon || isNaN(wall.p0.z) ||
+                    isNaN(wall.p1.z)) {
+                continue;
+            }
+            double a0 = azimuth(wall.p0);
+            double span = azimuth(wall.p1) - a0;
+            if (span > Math.PI) {
+                span -= 2 * Math.PI;
+            } else if (span < -Math.PI) {
+                span += 2 * Math.PI;
+            }
+            if (Math.abs(span) < ProfileBuilder.epsilon) {
+                continue;
+            }
+            double start = span > 0 ? a0 : a0 + span;
+            if (start < 0) {
+                start += 2 * Math.PI;
+            }
+            // lowest elevation angle of the wall top: lowest top, seen from the farthest end if the top is above
+            // the receiver or from the nearest point of the wall if the top is below the receiver
+            double height = Math.min(wall.p0.z, wall.p1.z) - receiver.z;
+            double elevation = Math.atan2(height, height >= 0 ? Math.max(d0, d1) : distance);
+            intervals.add(new double[]{start, start + Math.abs(span), elevation, distance});
+            intervalWalls.add(wall);
+        }
+        // The circle is split at each interval bound, then the nearest wall of each sector is found
+        double[] bounds = new double[intervals.size() * 2];
+        for (int i = 0; i < intervals.size(); i++) {
+            bounds[i * 2] = intervals.get(i)[0];
+            bounds[i * 2 + 1] = intervals.get(i)[1] % (2 * Math.PI);
+        }
+        Arrays.sort(bounds);
+        boolean covered = bounds.length > 0;
+        double lowestElevation = Double.MAX_VALUE;
+        double nearest = Double.MAX_VALUE;
+        // nearest wall of each sector and azimuth of the sector start
+        List<Integer> sectorWalls = new ArrayList<>();
+        List<Double> sectorStarts = new ArrayList<>();
+        for (int i = 0; i < bounds.length && covered; i++) {
+            double end = i + 1 < bounds.length ? bounds[i + 1] : bounds[0] + 2 * Math.PI;
+            if (end - bounds[i] < ProfileBuilder.epsilon) {
+                continue;
+            }
+            double middle = (bounds[i] + end) / 2;
+            int nearestWall = -1;
+            double nearestWallDistance = Double.MAX_VALUE;
+            for (int idInterval = 0; idInterval < intervals.size(); idInterval++) {
+                double[] interval = intervals.get(idInterval);
+                if (contains(interval, middle) || contains(interval, middle + 2 * Math.PI) ||
+                        contains(interval, middle - 2 * Math.PI)) {
+                    double wallDistance = pointAtAzimuth(intervalWalls.get(idInterval), middle).distance(receiver);
+                    if (wallDistance < nearestWallDistance) {
+                        nearestWallDistance = wallDistance;
+                        nearestWall = idInterval;
+                    }
+                }
+            }
+            if (nearestWall < 0) {
+                // there is an opening in the horizon
+                covered = false;
+            } else {
+                // every path leaving the enclosure passes above one of the nearest walls
+                lowestElevation = Math.min(lowestElevation, intervals.get(nearestWall)[2]);
+                nearest = Math.min(nearest, intervals.get(nearestWall)[3]);
+                sectorWalls.add(nearestWall);
+                sectorStarts.add(bounds[i]);
+            }
+        }
+        // Where the nearest wall changes, the two walls must be joined at the sector bound
+        for (int i = 0; i < sectorWalls.size() && covered; i++) {
+            Wall previous = intervalWalls.get(sectorWalls.get(i == 0 ? sectorWalls.size() - 1 : i - 1));
+            Wall next = intervalWalls.get(sectorWalls.get(i));
+            if (previous != next && pointAtAzimuth(previous, sectorStarts.get(i)).distance(
+                    pointAtAzimuth(next, sectorStarts.get(i))) > JOIN_TOLERANCE) {
+                // lateral gap between two obstacles
+                covered = false;
+            }
+        }
+        this.enclosed = covered;
+        this.minimumElevationAngle = covered ? lowestElevation : -Math.PI / 2;
+        this.minimumDistance = covered ? nearest : 0;
+    }
+
+    /**
+     * @param wall Wall
+     * @param azimuth Azimuth from the receiver in radians
+     * @return Point of the wall in the azimuth direction, or the nearest end of the wall if the direction does not
+     * cross the wall
+     */
+    private Coordinate pointAtAzimuth(Wall wall, double azimuth) {
+        double dx = Math.cos(azimuth);
+        double dy = Math.sin(azimuth);
+        double ex = wall.p1.x - wall.p0.x;
+        double ey = wall.p1.y - wall.p0.y;
+        double denominator = dx * ey - dy * ex;
+        double fraction = 0;
+        if (Math.abs(denominator) > 0) {
+            fraction = (dx * (receiver.y - wall.p0.y) - dy * (receiver.x - wall.p0.x)) / denominator;
+        }
+        fraction = Math.max(0, Math.min(1, fraction));
+        return new Coordinate(wall.p0.x + fraction * ex, wall.p0.y + fraction * ey);
+    }
+
+    private static boolean contains(double[] interval, double azimuth) {
+        return interval[0] <= azimuth && azimuth <= interval[1];
+    }
+
+    private double azimuth(Coordinate coordinate) {
+        double azimuth = Math.atan2(coordinate.y - receiver.y, coordinate.x - receiver.x);
+        return azimuth < 0 ? azimuth + 2 * Math.PI : azimuth;
+    }
+
+    /**
+     * @return True if the obstacles surround the receiver in all directions
+     */
+    public boolean isEnclosed() {
+        return enclosed;
+    }
+
+    /**
+     * @return Lowest elevation angle of the horizon in radians
+     */
+    public double getMinimumElevationAngle() {
+        return minimumElevationAngle;
+    }
+
+    /**
+     * @return Horizontal distance of the nearest obstacle of the horizon
+     */
+    public double getMinimumDistance() {
+        return minimumDistance;
+    }
+
+    /**
+     * Lower bound of the path difference between the direct line of sight and any path from the source to the
+     * receiver.
+     * @param source Source position with absolute Z
+     * @param angleMargin Reduce the angle between the horizon and the source by this value in radians (curved rays)
+     * @return Path difference in meters, 0 if the source is not shadowed
+     */
+    public double getMinimumPathDifference(Coordinate source, double angleMargin) {
+        double horizontalDistance = source.distance(receiver);
+        if (!enclosed || horizontalDistance <= radius) {
+            return 0;
+        }
+        double sourceElevation = Math.atan2(source.z - receiver.z, horizontalDistance);
+        double angle = minimumElevationAngle - sourceElevation - angleMargin;
+        if (angle <= 0) {
+            return 0;
+        }
+        // The path goes above an obstacle top T seen at an angle greater than the horizon angle, the path difference
+        // |RT| + |TS| - |RS| grows with |RT| and with the angle between RT and RS
+        double a = minimumDistance;
+        double b = source.distance3D(receiver);
+        double delta = a + Math.sqrt(Math.max(0, a * a + b * b - 2 * a * b * Math.cos(Math.min(Math.PI, angle)))) - b;
+        return Math.max(0, delta);
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder.profilebuilder;
+
+import org.locationtech.jts.geom.Coordinate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Data shared between the lateral diffraction variants (left and right sides, straight and curved paths) of a single
+ * source-receiver pair. The obstacles are cut by the same vertical plane for all variants, and the hull segments are
+ * often the same between straight and curved paths.
+ * An instance must not be shared between two source-receiver pairs or between threads.
+ */
+public final class SideHullCache {
+    /** Roof points of obstacles cut by the source-receiver plane, key is obstacle key */
+    final Map<Integer, List<Coordinate>> cutRoofPoints = new HashMap<>();
+    /** True if the obstacle roof is above the curved ray, key is obstacle key */
+    final Map<Integer, Boolean> aboveCurvedRay = new HashMap<>();
+    /** Vertical profiles between two hull points */
+    private final Map<Segment, CutProfile> segmentProfiles = new HashMap<>();
+    private final Coordinate p1;
+    private final Coordinate p2;
+
+    /**
+     * @param p1 Source position
+     * @param p2 Receiver position
+     */
+    public SideHullCache(Coordinate p1, Coordinate p2) {
+        this.p1 = new Coordinate(p1);
+        this.p2 = new Coordinate(p2);
+    }
+
+    /**
+     * @param p1 First point
+     * @param p2 Second point
+     * @return True if this cache has been created for this pair of points
+     */
+    public boolean isCacheOf(Coordinate p1, Coordinate p2) {
+        return this.p1.equals3D(p1) && this.p2.equals3D(p2);
+    }
+
+    /**
+     * @param wall Wall of an obstacle
+     * @return Key of the obstacle, walls of the same building share the same key
+     */
+    static int getObstacleKey(Wall wall) {
+        return wall.type == ProfileBuilder.IntersectionType.BUILDING ? wall.originId : -wall.originId - 1;
+    }
+
+    /**
+     * @param p0 Start of the hull segment
+     * @param p1 End of the hull segment
+     * @return The cached vertical profile or null. The cut points are shared so they must be copied before edition.
+     */
+    public CutProfile getSegmentProfile(Coordinate p0, Coordinate p1) {
+        return segmentProfiles.get(new Segment(p0, p1));
+    }
+
+    /**
+     * @param p0 Start of the hull segment
+     * @param p1 End of the hull segment
+     * @param profile Vertical profile between p0 and p1
+     */
+    public void putSegmentProfile(Coordinate p0, Coordinate p1, CutProfile profile) {
+        segmentProfiles.put(new Segment(p0, p1), profile);
+    }
+
+    /**
+     * Oriented 3D segment key
+     */
+    private static final class Segment {
+        final Coordinate p0;
+        final Coordinate p1;
+
+        Segment(Coordinate p0, Coordinate p1) {
+            this.p0 = p0;
+            this.p1 = p1;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Segment segment = (Segment) o;
+            return p0.equals3D(segment.p0) && p1.equals3D(segment.p1);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(p0, p1);
+        }
+    }
+}
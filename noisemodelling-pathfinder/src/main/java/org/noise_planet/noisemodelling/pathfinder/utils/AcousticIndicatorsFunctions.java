@@ -17,6 +17,26 @@ import java.util.Locale;
  * and operations specific to octave bands.
  */
 public class AcousticIndicatorsFunctions {
+    /** Number of entries of the fast conversion tables, must be a power of two */
+    private static final int FAST_TABLE_BITS = 10;
+    private static final int FAST_TABLE_SIZE = 1 << FAST_TABLE_BITS;
+    private static final double LN2 = Math.log(2);
+    private static final double LOG2_10_DIV_10 = Math.log(10) / Math.log(2) / 10;
+    private static final double TEN_DIV_LN10 = 10 / Math.log(10);
+    /** 2^(i/FAST_TABLE_SIZE) */
+    private static final double[] POW2_TABLE = new double[FAST_TABLE_SIZE];
+    /** ln(1 + i/FAST_TABLE_SIZE) */
+    private static final double[] LN_TABLE = new double[FAST_TABLE_SIZE];
+    /** 1 / (1 + i/FAST_TABLE_SIZE) */
+    private static final double[] INV_TABLE = new double[FAST_TABLE_SIZE];
+
+    static {
+        for (int i = 0; i < FAST_TABLE_SIZE; i++) {
+            POW2_TABLE[i] = Math.pow(2, i / (double) FAST_TABLE_SIZE);
+            LN_TABLE[i] = Math.log(1 + i / (double) FAST_TABLE_SIZE);
+            INV_TABLE[i] = 1 / (1 + i / (double) FAST_TABLE_SIZE);
+        }
+    }
 
     /**
      * Convert Decibel to Watt
@@ -33,11 +53,91 @@ public class AcousticIndicatorsFunctions {
      * @return Watt value
      */
     public static double[] dBToW(double[] dB) {
-        double[] ret = new double[dB.length];
+        return dBToW(dB, new double[dB.length]);
+    }
+
+    /**
+     * Convert Decibel to Watt without allocation
+     * @param dB Sound power spectrum in dB (or dBa , no weighting is done here)
+     * @param out Destination array, can be the dB array
+     * @return out array
+     */
+    public static double[] dBToW(double[] dB, double[] out) {
+        for (int i = 0; i < dB.length; i++) {
+            out[i] = dBToW(dB[i]);
+        }
+        return out;
+    }
+
+    /**
+     * Convert Decibel to Watt using a lookup table of 2^x and a third order polynomial.
+     * The relative error compared to {@link #dBToW(double)} is lower than 1e-13.
+     * Values outside the range of normal double values are evaluated with {@link #dBToW(double)}.
+     * @param dB Sound power in dB
+     * @return Watt value
+     */
+    public static double fastDBToW(double dB) {
+        double y = dB * LOG2_10_DIV_10;
+        if (!(y > Double.MIN_EXPONENT && y < Double.MAX_EXPONENT)) {
+            // NaN, infinity or subnormal values
+            return dBToW(dB);
+        }
+        double floor = Math.floor(y);
+        double scaled = (y - floor) * FAST_TABLE_SIZE;
+        int index = (int) scaled;
+        // remaining exponent in [0, ln(2) / FAST_TABLE_SIZE)
+        double r = (scaled - index) * (LN2 / FAST_TABLE_SIZE);
+        double expR = 1 + r * (1 + r * (0.5 + r * (1 / 6.0)));
+        return Math.scalb(POW2_TABLE[index] * expR, (int) floor);
+    }
+
+    /**
+     * Convert Watt to Decibel using a lookup table of ln(x) and a fourth order polynomial.
+     * The absolute error compared to {@link #wToDb(double)} is lower than 1e-12 dB.
+     * Zero, negative, subnormal or infinite values are evaluated with {@link #wToDb(double)}.
+     * @param w Watt value
+     * @return Decibel value
+     */
+    public static double fastWToDb(double w) {
+        if (!(w >= Double.MIN_NORMAL && w <= Double.MAX_VALUE)) {
+            return wToDb(w);
+        }
+        long bits = Double.doubleToRawLongBits(w);
+        int exponent = (int) ((bits >>> 52) & 0x7FF) - Double.MAX_EXPONENT;
+        long mantissaBits = bits & 0xFFFFFFFFFFFFFL;
+        int index = (int) (mantissaBits >>> (52 - FAST_TABLE_BITS));
+        // mantissa in [1, 2)
+        double mantissa = Double.longBitsToDouble(mantissaBits | 0x3FF0000000000000L);
+        // t in [0, 1 / FAST_TABLE_SIZE)
+        double t = mantissa * INV_TABLE[index] - 1;
+        double ln1pT = t * (1 - t * (0.5 - t * (1 / 3.0 - t * 0.25)));
+        return (exponent * LN2 + LN_TABLE[index] + ln1pT) * TEN_DIV_LN10;
+    }
+
+    /**
+     * Convert Decibel to Watt using {@link #fastDBToW(double)}
+     * @param dB Sound power spectrum in dB
+     * @param out Destination array, can be the dB array
+     * @return out array
+     */
+    public static double[] fastDBToW(double[] dB, double[] out) {
         for (int i = 0; i < dB.length; i++) {
-            ret[i] = dBToW(dB[i]);
+            out[i] = fastDBToW(dB[i]);
+        }
+        return out;
+    }
+
+    /**
+     * Convert Watt to Decibel using {@link #fastWToDb(double)}
+     * @param w Watt values
+     * @param out Destination array, can be the w array
+     * @return out array
+     */
+    public static double[] fastWToDb(double[] w, double[] out) {
+        for (int i = 0; i < w.length; i++) {
+            out[i] = fastWToDb(w[i]);
         }
-        return ret;
+        return out;
     }
 
     /**
@@ -56,11 +156,20 @@ public class AcousticIndicatorsFunctions {
      * @return Decibel value
      */
     public static double[] wToDb(double[] w) {
-        double[] ret = new double[w.length];
+        return wToDb(w, new double[w.length]);
+    }
+
+    /**
+     * Convert Watt to Decibel without allocation
+     * @param w Watt values
+     * @param out Destination array, can be the w array
+     * @return out array
+     */
+    public static double[] wToDb(double[] w, double[] out) {
         for (int i = 0; i < w.length; i++) {
-            ret[i] = wToDb(w[i]);
+            out[i] = wToDb(w[i]);
         }
-        return ret;
+        return out;
     }
 
     public static double[] twoDgtAftrComma(double[] valeurs) {
@@ -83,14 +192,25 @@ public class AcousticIndicatorsFunctions {
      * @return
      */
     public static double[] sumArrayWithPonderation(double[] array1, double[] array2, double p) {
-        if (array1.length != array2.length) {
+        return sumArrayWithPonderation(array1, array2, p, new double[array1.length]);
+    }
+
+    /**
+     * Eq 2.5.9 without allocation
+     * @param array1 double array
+     * @param array2 double array
+     * @param p the mean occurrence p of favourable conditions in the direction of the path (S,R)
+     * @param out Destination array, can be array1 or array2
+     * @return out array
+     */
+    public static double[] sumArrayWithPonderation(double[] array1, double[] array2, double p, double[] out) {
+        if (array1.length != array2.length || out.length < array1.length) {
             throw new IllegalArgumentException("Not same size array");
         }
-        double[] sum = new double[array1.length];
         for (int i = 0; i < array1.length; i++) {
-            sum[i] = wToDb(p * dBToW(array1[i]) + (1 - p) * dBToW(array2[i]));
+            out[i] = wToDb(p * dBToW(array1[i]) + (1 - p) * dBToW(array2[i]));
         }
-        return sum;
+        return out;
     }
 
     /**
@@ -101,14 +221,25 @@ public class AcousticIndicatorsFunctions {
      * @return
      */
     public static double[] sumDbArray(double[] array1, double[] array2) {
-        if (array1.length != array2.length) {
+        return sumDbArray(array1, array2, new double[array1.length]);
+    }
+
+    /**
+     * energetic Sum of two same size dB array without allocation
+     *
+     * @param array1 dB values
+     * @param array2 dB values
+     * @param out Destination array, can be array1 or array2
+     * @return out array
+     */
+    public static double[] sumDbArray(double[] array1, double[] array2, double[] out) {
+        if (array1.length != array2.length || out.length < array1.length) {
             throw new IllegalArgumentException("Not same size array");
         }
-        double[] sum = new double[array1.length];
         for (int i = 0; i < array1.length; i++) {
-            sum[i] = wToDb(dBToW(array1[i]) + dBToW(array2[i]));
+            out[i] = wToDb(dBToW(array1[i]) + dBToW(array2[i]));
         }
-        return sum;
+        return out;
     }
 
     /**
@@ -134,12 +265,42 @@ public class AcousticIndicatorsFunctions {
      * @return
      */
     public static double[] multiplicationArray(double[] array1, double[] array2) {
+        return multiplicationArray(array1, array2, new double[array1.length]);
+    }
+
+    /**
+     * Multiply component of two same size array without allocation
+     *
+     * @param array1 First array
+     * @param array2 Second array
+     * @param out Destination array, can be array1 or array2
+     * @return out array
+     */
+    public static double[] multiplicationArray(double[] array1, double[] array2, double[] out) {
+        if (array1.length != array2.length || out.length < array1.length) {
+            throw new IllegalArgumentException("Not same size array");
+        }
+        for (int i = 0; i < array1.length; i++) {
+            out[i] = array1[i] * array2[i];
+        }
+        return out;
+    }
+
+    /**
+     * Sum of the products of the components of two same size array, equivalent to
+     * sumArray(multiplicationArray(array1, array2)) without allocation
+     *
+     * @param array1 First array
+     * @param array2 Second array
+     * @return Sum of products
+     */
+    public static double sumMultiplicationArray(double[] array1, double[] array2) {
         if (array1.length != array2.length) {
             throw new IllegalArgumentException("Not same size array");
         }
-        double[] sum = new double[array1.length];
+        double sum = 0;
         for (int i = 0; i < array1.length; i++) {
-            sum[i] = array1[i] * array2[i];
+            sum += array1[i] * array2[i];
         }
         return sum;
     }
@@ -152,11 +313,22 @@ public class AcousticIndicatorsFunctions {
      * @return Array multiplied
      */
     public static double[] multiplicationArray(double[] array, double coefficient) {
-        double[] result = new double[array.length];
+        return multiplicationArray(array, coefficient, new double[array.length]);
+    }
+
+    /**
+     * Multiply each component of an array without allocation
+     *
+     * @param array Array input
+     * @param coefficient number to multiply at each index
+     * @param out Destination array, can be the input array
+     * @return out array
+     */
+    public static double[] multiplicationArray(double[] array, double coefficient, double[] out) {
         for (int i = 0; i < array.length; i++) {
-            result[i] = array[i] * coefficient;
+            out[i] = array[i] * coefficient;
         }
-        return result;
+        return out;
     }
 
     /**
@@ -203,20 +375,45 @@ public class AcousticIndicatorsFunctions {
             }
             throw new IllegalArgumentException("Arrays with different size");
         }
-        double[] ret = new double[array1.length];
+        return sumArray(array1, array2, new double[array1.length]);
+    }
+
+    /**
+     * Element wise sum array without allocation.
+     *
+     * @param array1 First array
+     * @param array2 Second array
+     * @param out Destination array, can be array1 or array2
+     * @return out array
+     */
+    public static double[] sumArray(double[] array1, double[] array2, double[] out) {
+        if (array1.length != array2.length || out.length < array1.length) {
+            throw new IllegalArgumentException("Arrays with different size");
+        }
         for (int idfreq = 0; idfreq < array1.length; idfreq++) {
-            ret[idfreq] = array1[idfreq] + array2[idfreq];
+            out[idfreq] = array1[idfreq] + array2[idfreq];
         }
-        return ret;
+        return out;
     }
 
     
     public static double[] sumArray(double[] array, double number) {
-        double[] ret = new double[array.length];
+        return sumArray(array, number, new double[array.length]);
+    }
+
+    /**
+     * Add a value to each component of an array without allocation.
+     *
+     * @param array Array input
+     * @param number Value to add
+     * @param out Destination array, can be the input array
+     * @return out array
+     */
+    public static double[] sumArray(double[] array, double number, double[] out) {
         for (int idfreq = 0; idfreq < array.length; idfreq++) {
-            ret[idfreq] = array[idfreq] + number;
+            out[idfreq] = array[idfreq] + number;
         }
-        return ret;
+        return out;
     }
 
 
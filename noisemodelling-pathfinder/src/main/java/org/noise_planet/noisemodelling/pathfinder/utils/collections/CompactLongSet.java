@@ -0,0 +1,236 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder.utils.collections;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+/**
+ * Set of long values optimised for dense identifiers such as table primary keys.
+ * The values are grouped by pages of 65536 consecutive values. A page stores its values in a sorted array of 16 bits
+ * integers, the array is replaced by a bitmap of 8 KB when the page contains more than 4096 values. A HashSet uses
+ * about 48 bytes per value, this set uses at most 2 bytes per value. The values are iterated in ascending order.
+ */
+public class CompactLongSet extends AbstractSet<Long> {
+    private static final int PAGE_BITS = 16;
+    private static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+    private final TreeMap<Long, Page> pages = new TreeMap<>();
+    private int size = 0;
+
+    /**
+     * @param value Value to add
+     * @return True if the value was not already in the set
+     */
+    public boolean addLong(long value) {
+        Page page = pages.computeIfAbsent(value >> PAGE_BITS, k -> new Page());
+        if(page.add((int) (value & PAGE_MASK))) {
+            size++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param value Value to look for
+     * @return True if the set contains this value
+     */
+    public boolean containsLong(long value) {
+        Page page = pages.get(value >> PAGE_BITS);
+        return page != null && page.contains((int) (value & PAGE_MASK));
+    }
+
+    /**
+     * @param value Value to remove
+     * @return True if the value was in the set
+     */
+    public boolean removeLong(long value) {
+        long key = value >> PAGE_BITS;
+        Page page = pages.get(key);
+        if(page != null && page.remove((int) (value & PAGE_MASK))) {
+            if(page.cardinality == 0) {
+                pages.remove(key);
+            }
+            size--;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean add(Long value) {
+        return addLong(value);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Long && containsLong((Long) o);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return o instanceof Long && removeLong((Long) o);
+    }
+
+    @Override
+    public void clear() {
+        pages.clear();
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<Long> iterator() {
+        return new Iterator<Long>() {
+            Map.Entry<Long, Page> entry = pages.firstEntry();
+            int nextLow = entry == null ? -1 : entry.getValue().next(0);
+            long last;
+            boolean canRemove = false;
+
+            @Override
+            public boolean hasNext() {
+                return entry != null;
+            }
+
+            @Override
+            public Long next() {
+                if(entry == null) {
+                    throw new NoSuchElementException();
+                }
+                last = (entry.getKey() << PAGE_BITS) | nextLow;
+                canRemove = true;
+                // Look for the following value, the pages are fetched by key so the set may be modified
+                nextLow = nextLow < PAGE_MASK ? entry.getValue().next(nextLow + 1) : -1;
+                while (nextLow < 0) {
+                    entry = pages.higherEntry(entry.getKey());
+                    if(entry == null) {
+                        break;
+                    }
+                    nextLow = entry.getValue().next(0);
+                }
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if(!canRemove) {
+                    throw new IllegalStateException();
+                }
+                canRemove = false;
+                removeLong(last);
+            }
+        };
+    }
+
+    /**
+     * Values of a page, in a sorted array while sparse then in a bitmap
+     */
+    private static final class Page {
+        private static final int MAXIMUM_ARRAY_CARDINALITY = 4096;
+        private static final int BITMAP_LENGTH = (1 << PAGE_BITS) / Long.SIZE;
+        char[] array = new char[4];
+        long[] bitmap = null;
+        int cardinality = 0;
+
+        boolean contains(int value) {
+            if(bitmap != null) {
+                return (bitmap[value >>> 6] & (1L << value)) != 0;
+            }
+            return Arrays.binarySearch(array, 0, cardinality, (char) value) >= 0;
+        }
+
+        boolean add(int value) {
+            if(bitmap != null) {
+                long word = bitmap[value >>> 6];
+                long newWord = word | (1L << value);
+                bitmap[value >>> 6] = newWord;
+                if(word != newWord) {
+                    cardinality++;
+                    return true;
+                }
+                return false;
+            }
+            int index = Arrays.binarySearch(array, 0, cardinality, (char) value);
+            if(index >= 0) {
+                return false;
+            }
+            if(cardinality == MAXIMUM_ARRAY_CARDINALITY) {
+                toBitmap();
+                return add(value);
+            }
+            index = -index - 1;
+            if(cardinality == array.length) {
+                array = Arrays.copyOf(array, Math.min(MAXIMUM_ARRAY_CARDINALITY, array.length * 2));
+            }
+            System.arraycopy(array, index, array, index + 1, cardinality - index);
+            array[index] = (char) value;
+            cardinality++;
+            return true;
+        }
+
+        boolean remove(int value) {
+            if(bitmap != null) {
+                long word = bitmap[value >>> 6];
+                long newWord = word & ~(1L << value);
+                bitmap[value >>> 6] = newWord;
+                if(word != newWord) {
+                    cardinality--;
+                    return true;
+                }
+                return false;
+            }
+            int index = Arrays.binarySearch(array, 0, cardinality, (char) value);
+            if(index < 0) {
+                return false;
+            }
+            System.arraycopy(array, index + 1, array, index, cardinality - index - 1);
+            cardinality--;
+            return true;
+        }
+
+        /**
+         * @param from Lowest value
+         * @return The lowest value of the page greater or equal to from, -1 if there is none
+         */
+        int next(int from) {
+            if(bitmap != null) {
+                int wordIndex = from >>> 6;
+                long word = bitmap[wordIndex] & (-1L << from);
+                while (word == 0) {
+                    if(++wordIndex == BITMAP_LENGTH) {
+                        return -1;
+                    }
+                    word = bitmap[wordIndex];
+                }
+                return wordIndex * Long.SIZE + Long.numberOfTrailingZeros(word);
+            }
+            int index = Arrays.binarySearch(array, 0, cardinality, (char) from);
+            if(index < 0) {
+                index = -index - 1;
+            }
+            return index < cardinality ? array[index] : -1;
+        }
+
+        private void toBitmap() {
+            bitmap = new long[BITMAP_LENGTH];
+            for (int i = 0; i < cardinality; i++) {
+                bitmap[array[i] >>> 6] |= 1L << array[i];
+            }
+            array = null;
+        }
+    }
+}
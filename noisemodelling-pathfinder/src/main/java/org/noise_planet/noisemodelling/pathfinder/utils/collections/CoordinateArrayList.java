@@ -0,0 +1,152 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder.utils.collections;
+
+import org.locationtech.jts.geom.Coordinate;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * List of coordinates stored in a single primitive array of x, y, z ordinates. A list of Coordinate objects uses
+ * about 56 bytes per coordinate instead of 24.
+ * The coordinates are copied: {@link #get(int)} returns a new Coordinate, use {@link #set(int, Coordinate)} in order
+ * to update a coordinate of the list.
+ */
+public class CoordinateArrayList extends AbstractList<Coordinate> implements RandomAccess {
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int DIMENSION = 3;
+    private double[] ordinates;
+    private int size = 0;
+
+    public CoordinateArrayList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity Initial capacity in number of coordinates
+     */
+    public CoordinateArrayList(int capacity) {
+        ordinates = new double[Math.max(1, capacity) * DIMENSION];
+    }
+
+    private void ensureCapacity(int capacity) {
+        int length = capacity * DIMENSION;
+        if(length > ordinates.length) {
+            ordinates = Arrays.copyOf(ordinates, Math.max(length, ordinates.length + (ordinates.length >> 1)));
+        }
+    }
+
+    private void checkIndex(int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    private void write(int index, Coordinate coordinate) {
+        int offset = index * DIMENSION;
+        ordinates[offset] = coordinate.x;
+        ordinates[offset + 1] = coordinate.y;
+        ordinates[offset + 2] = coordinate.getZ();
+    }
+
+    /**
+     * @param index Coordinate index
+     * @return X ordinate of the coordinate
+     */
+    public double getX(int index) {
+        checkIndex(index);
+        return ordinates[index * DIMENSION];
+    }
+
+    /**
+     * @param index Coordinate index
+     * @return Y ordinate of the coordinate
+     */
+    public double getY(int index) {
+        checkIndex(index);
+        return ordinates[index * DIMENSION + 1];
+    }
+
+    /**
+     * @param index Coordinate index
+     * @return Z ordinate of the coordinate
+     */
+    public double getZ(int index) {
+        checkIndex(index);
+        return ordinates[index * DIMENSION + 2];
+    }
+
+    /**
+     * @param index Coordinate index
+     * @param z New Z ordinate of the coordinate
+     */
+    public void setZ(int index, double z) {
+        checkIndex(index);
+        ordinates[index * DIMENSION + 2] = z;
+    }
+
+    @Override
+    public boolean add(Coordinate coordinate) {
+        ensureCapacity(size + 1);
+        write(size++, coordinate);
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public void add(int index, Coordinate coordinate) {
+        if(index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        ensureCapacity(size + 1);
+        System.arraycopy(ordinates, index * DIMENSION, ordinates, (index + 1) * DIMENSION,
+                (size - index) * DIMENSION);
+        write(index, coordinate);
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public Coordinate get(int index) {
+        checkIndex(index);
+        int offset = index * DIMENSION;
+        return new Coordinate(ordinates[offset], ordinates[offset + 1], ordinates[offset + 2]);
+    }
+
+    @Override
+    public Coordinate set(int index, Coordinate coordinate) {
+        Coordinate old = get(index);
+        write(index, coordinate);
+        return old;
+    }
+
+    @Override
+    public Coordinate remove(int index) {
+        Coordinate old = get(index);
+        System.arraycopy(ordinates, (index + 1) * DIMENSION, ordinates, index * DIMENSION,
+                (size - index - 1) * DIMENSION);
+        size--;
+        modCount++;
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,423 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder.utils.geometry;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Uniform grid index of envelopes stored in flat primitive arrays. Large envelopes are stored in coarser grid
+ * levels, so the memory is bounded to a fixed number of cell entries per item.
+ * The grid is built on the first query and is then read only, it can be queried by any number of threads without
+ * synchronisation. Appending a geometry after the first query rebuilds the grid on the next query.
+ */
+public class PackedGridIndex implements QueryGeometryStructure {
+    /** Expected number of items in a grid cell */
+    private static final int ITEMS_PER_CELL = 4;
+    /** Maximum number of columns or rows of the grid */
+    private static final int MAXIMUM_GRID_DIMENSION = 2048;
+    /** Maximum number of cells where an item is copied, larger items are stored in a coarser level */
+    private static final int MAXIMUM_CELLS_PER_ITEM = 16;
+    /** Number of columns (and rows) of a level merged in one column of the next coarser level */
+    private static final int LEVEL_RATIO = 4;
+    /** minX, minY, maxX, maxY of the appended items */
+    private double[] envelopes = new double[64];
+    private int[] ids = new int[16];
+    private int size = 0;
+    private volatile Grid grid;
+
+    /**
+     * Add a given geometry and its Id into the index
+     * @param newGeom Geometry
+     * @param externalId Identifier returned by queries
+     */
+    @Override
+    public void appendGeometry(Geometry newGeom, Integer externalId) {
+        appendEnvelope(newGeom.getEnvelopeInternal(), externalId);
+    }
+
+    /**
+     * Add a given envelope and its Id into the index
+     * @param envelope Envelope of the item
+     * @param externalId Identifier returned by queries
+     */
+    public synchronized void appendEnvelope(Envelope envelope, int externalId) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            envelopes = Arrays.copyOf(envelopes, size * 2 * 4);
+        }
+        envelopes[size * 4] = envelope.getMinX();
+        envelopes[size * 4 + 1] = envelope.getMinY();
+        envelopes[size * 4 + 2] = envelope.getMaxX();
+        envelopes[size * 4 + 3] = envelope.getMaxY();
+        ids[size] = externalId;
+        size++;
+        grid = null;
+    }
+
+    /**
+     * @return Number of items in the index
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Build the grid, further queries will not modify this instance.
+     */
+    public synchronized void build() {
+        if (grid == null) {
+            grid = new Grid(Arrays.copyOf(envelopes, size * 4), Arrays.copyOf(ids, size), size);
+        }
+    }
+
+    /**
+     * @return Number of item references stored in the grid cells
+     */
+    public int getCellEntryCount() {
+        return getGrid().cellEntryCount();
+    }
+
+    private Grid getGrid() {
+        Grid builtGrid = grid;
+        if (builtGrid == null) {
+            build();
+            builtGrid = grid;
+        }
+        return builtGrid;
+    }
+
+    /**
+     * @param queryEnv Query envelope
+     * @return Identifiers of the items where the envelope intersects the query envelope, each item is returned once
+     */
+    @Override
+    public Iterator<Integer> query(Envelope queryEnv) {
+        IntArrayIterator result = new IntArrayIterator();
+        query(queryEnv, result);
+        return result;
+    }
+
+    /**
+     * Visit the items where the envelope intersects the query envelope, each item is visited once
+     * @param queryEnv Query envelope
+     * @param visitor Called with the identifier of the items
+     */
+    @Override
+    public void query(Envelope queryEnv, IntConsumer visitor) {
+        if (!queryEnv.isNull()) {
+            getGrid().query(queryEnv.getMinX(), queryEnv.getMinY(), queryEnv.getMaxX(), queryEnv.getMaxY(), visitor);
+        }
+    }
+
+    /**
+     * Visit the items where the envelope is at a distance lower than tolerance from the segment. Only the grid cells
+     * near the segment are read, so this is much more selective than an envelope query for long diagonal segments.
+     * The cells of each level are visited from p0 to p1, the finest level first. An item that cover several grid
+     * cells may be visited more than once.
+     * @param p0 First point of the segment
+     * @param p1 Second point of the segment
+     * @param tolerance Distance tolerance
+     * @param visitor Called with the identifier of the items, return false to stop the traversal
+     * @return False if the traversal has been stopped by the visitor
+     */
+    public boolean querySegment(Coordinate p0, Coordinate p1, double tolerance, IntPredicate visitor) {
+        return getGrid().querySegment(p0.x, p0.y, p1.x, p1.y, tolerance, visitor);
+    }
+
+    /**
+     * Immutable grid, items are stored cell by cell. An item that would cover more than
+     * {@link #MAXIMUM_CELLS_PER_ITEM} cells is stored in a coarser level, so long line sources or walls are not
+     * copied in every cell they cross. Each item is stored in exactly one level.
+     */
+    private static final class Grid {
+        final double[] envelopes;
+        final int[] ids;
+        final double minX;
+        final double minY;
+        /** Levels from the finest to the coarsest, the last level has a single cell */
+        final Level[] levels;
+
+        Grid(double[] envelopes, int[] ids, int size) {
+            this.envelopes = envelopes;
+            this.ids = ids;
+            Envelope extent = new Envelope();
+            for (int i = 0; i < size; i++) {
+                extent.expandToInclude(envelopes[i * 4], envelopes[i * 4 + 1]);
+                extent.expandToInclude(envelopes[i * 4 + 2], envelopes[i * 4 + 3]);
+            }
+            if (extent.isNull()) {
+                extent.expandToInclude(0, 0);
+            }
+            minX = extent.getMinX();
+            minY = extent.getMinY();
+            double width = extent.getWidth();
+            double height = extent.getHeight();
+            int targetCellCount = Math.max(1, size / ITEMS_PER_CELL);
+            int gridColumns;
+            int gridRows;
+            if (width <= 0 || height <= 0) {
+                gridColumns = width > 0 ? targetCellCount : 1;
+                gridRows = height > 0 ? targetCellCount : 1;
+            } else {
+                gridColumns = (int) Math.ceil(Math.sqrt(targetCellCount * width / height));
+                gridRows = (int) Math.ceil(targetCellCount / (double) Math.max(1, gridColumns));
+            }
+            List<Level> levelList = new ArrayList<>();
+            int columns = Math.max(1, Math.min(MAXIMUM_GRID_DIMENSION, gridColumns));
+            int rows = Math.max(1, Math.min(MAXIMUM_GRID_DIMENSION, gridRows));
+            while (true) {
+                levelList.add(new Level(this, columns, rows, width > 0 ? width / columns : 1,
+                        height > 0 ? height / rows : 1));
+                if (columns == 1 && rows == 1) {
+                    break;
+                }
+                columns = (columns + LEVEL_RATIO - 1) / LEVEL_RATIO;
+                rows = (rows + LEVEL_RATIO - 1) / LEVEL_RATIO;
+            }
+            levels = levelList.toArray(new Level[0]);
+            // Store each item in the finest level where it does not cover too many cells
+            int[] itemLevel = new int[size];
+            for (int i = 0; i < size; i++) {
+                int level = 0;
+                while (level < levels.length - 1 && levels[level].coveredCells(i) > MAXIMUM_CELLS_PER_ITEM) {
+                    level++;
+                }
+                itemLevel[i] = level;
+            }
+            for (int level = 0; level < levels.length; level++) {
+                levels[level].fill(itemLevel, level, size);
+            }
+        }
+
+        boolean intersects(int item, double queryMinX, double queryMinY, double queryMaxX, double queryMaxY) {
+            return envelopes[item * 4] <= queryMaxX && envelopes[item * 4 + 2] >= queryMinX &&
+                    envelopes[item * 4 + 1] <= queryMaxY && envelopes[item * 4 + 3] >= queryMinY;
+        }
+
+        int cellEntryCount() {
+            int count = 0;
+            for (Level level : levels) {
+                count += level.cellItems.length;
+            }
+            return count;
+        }
+
+        void query(double queryMinX, double queryMinY, double queryMaxX, double queryMaxY, IntConsumer visitor) {
+            for (Level level : levels) {
+                level.query(queryMinX, queryMinY, queryMaxX, queryMaxY, visitor);
+            }
+        }
+
+        boolean querySegment(double x0, double y0, double x1, double y1, double tolerance, IntPredicate visitor) {
+            for (Level level : levels) {
+                if (!level.querySegment(x0, y0, x1, y1, tolerance, visitor)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Uniform grid level of the index
+     */
+    private static final class Level {
+        final Grid grid;
+        final double cellWidth;
+        final double cellHeight;
+        final int columns;
+        final int rows;
+        /** Start position of the items of each cell in cellItems, length is cell count + 1 */
+        int[] cellStart;
+        /** Item index for each cell */
+        int[] cellItems;
+
+        Level(Grid grid, int columns, int rows, double cellWidth, double cellHeight) {
+            this.grid = grid;
+            this.columns = columns;
+            this.rows = rows;
+            this.cellWidth = cellWidth;
+            this.cellHeight = cellHeight;
+        }
+
+        long coveredCells(int item) {
+            double[] envelopes = grid.envelopes;
+            return (long) (column(envelopes[item * 4 + 2]) - column(envelopes[item * 4]) + 1) *
+                    (row(envelopes[item * 4 + 3]) - row(envelopes[item * 4 + 1]) + 1);
+        }
+
+        /**
+         * Count the items of each cell then fill the packed array
+         */
+        void fill(int[] itemLevel, int level, int size) {
+            double[] envelopes = grid.envelopes;
+            cellStart = new int[columns * rows + 1];
+            for (int i = 0; i < size; i++) {
+                if (itemLevel[i] != level) {
+                    continue;
+                }
+                int column0 = column(envelopes[i * 4]);
+                int column1 = column(envelopes[i * 4 + 2]);
+                int row0 = row(envelopes[i * 4 + 1]);
+                int row1 = row(envelopes[i * 4 + 3]);
+                for (int row = row0; row <= row1; row++) {
+                    for (int column = column0; column <= column1; column++) {
+                        cellStart[row * columns + column + 1]++;
+                    }
+                }
+            }
+            for (int cell = 0; cell < columns * rows; cell++) {
+                cellStart[cell + 1] += cellStart[cell];
+            }
+            cellItems = new int[cellStart[columns * rows]];
+            int[] cellFill = Arrays.copyOf(cellStart, columns * rows);
+            for (int i = 0; i < size; i++) {
+                if (itemLevel[i] != level) {
+                    continue;
+                }
+                int column0 = column(envelopes[i * 4]);
+                int column1 = column(envelopes[i * 4 + 2]);
+                int row0 = row(envelopes[i * 4 + 1]);
+                int row1 = row(envelopes[i * 4 + 3]);
+                for (int row = row0; row <= row1; row++) {
+                    for (int column = column0; column <= column1; column++) {
+                        cellItems[cellFill[row * columns + column]++] = i;
+                    }
+                }
+            }
+        }
+
+        int column(double x) {
+            int column = (int) Math.floor((x - grid.minX) / cellWidth);
+            return column < 0 ? 0 : Math.min(column, columns - 1);
+        }
+
+        int row(double y) {
+            int row = (int) Math.floor((y - grid.minY) / cellHeight);
+            return row < 0 ? 0 : Math.min(row, rows - 1);
+        }
+
+        void query(double queryMinX, double queryMinY, double queryMaxX, double queryMaxY, IntConsumer visitor) {
+            if (cellItems.length == 0) {
+                return;
+            }
+            double[] envelopes = grid.envelopes;
+            int column0 = column(queryMinX);
+            int column1 = column(queryMaxX);
+            int row0 = row(queryMinY);
+            int row1 = row(queryMaxY);
+            for (int row = row0; row <= row1; row++) {
+                for (int column = column0; column <= column1; column++) {
+                    int cell = row * columns + column;
+                    for (int position = cellStart[cell]; position < cellStart[cell + 1]; position++) {
+                        int item = cellItems[position];
+                        // An item is reported only by the cell that contains the lower corner of the
+                        // intersection between the item envelope and the query envelope
+                        if (grid.intersects(item, queryMinX, queryMinY, queryMaxX, queryMaxY) &&
+                                column(Math.max(envelopes[item * 4], queryMinX)) == column &&
+                                row(Math.max(envelopes[item * 4 + 1], queryMinY)) == row) {
+                            visitor.accept(grid.ids[item]);
+                        }
+                    }
+                }
+            }
+        }
+
+        boolean querySegment(double x0, double y0, double x1, double y1, double tolerance, IntPredicate visitor) {
+            if (cellItems.length == 0) {
+                return true;
+            }
+            double minX = grid.minX;
+            double segmentMinX = Math.min(x0, x1) - tolerance;
+            double segmentMaxX = Math.max(x0, x1) + tolerance;
+            double segmentMinY = Math.min(y0, y1) - tolerance;
+            double segmentMaxY = Math.max(y0, y1) + tolerance;
+            // Visit the cells from the first point to the second point
+            int columnStep = x1 >= x0 ? 1 : -1;
+            int rowStep = y1 >= y0 ? 1 : -1;
+            int firstColumn = column(columnStep > 0 ? segmentMinX : segmentMaxX);
+            int lastColumn = column(columnStep > 0 ? segmentMaxX : segmentMinX);
+            double dx = x1 - x0;
+            for (int column = firstColumn; column != lastColumn + columnStep; column += columnStep) {
+                // Part of the segment in this column (first and last columns extend to infinity)
+                double columnMinX = column == 0 ? segmentMinX :
+                        Math.max(segmentMinX, minX + column * cellWidth - tolerance);
+                double columnMaxX = column == columns - 1 ? segmentMaxX :
+                        Math.min(segmentMaxX, minX + (column + 1) * cellWidth + tolerance);
+                double columnMinY;
+                double columnMaxY;
+                if (Math.abs(dx) <= tolerance) {
+                    columnMinY = segmentMinY;
+                    columnMaxY = segmentMaxY;
+                } else {
+                    double t0 = Math.max(0, Math.min(1, (columnMinX - x0) / dx));
+                    double t1 = Math.max(0, Math.min(1, (columnMaxX - x0) / dx));
+                    double ya = y0 + t0 * (y1 - y0);
+                    double yb = y0 + t1 * (y1 - y0);
+                    columnMinY = Math.min(ya, yb) - tolerance;
+                    columnMaxY = Math.max(ya, yb) + tolerance;
+                }
+                int firstRow = row(rowStep > 0 ? columnMinY : columnMaxY);
+                int lastRow = row(rowStep > 0 ? columnMaxY : columnMinY);
+                for (int row = firstRow; row != lastRow + rowStep; row += rowStep) {
+                    int cell = row * columns + column;
+                    for (int position = cellStart[cell]; position < cellStart[cell + 1]; position++) {
+                        int item = cellItems[position];
+                        if (grid.intersects(item, columnMinX, columnMinY, columnMaxX, columnMaxY) &&
+                                !visitor.test(grid.ids[item])) {
+                            return false;
+                        }
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Collect query results without boxing, values are boxed only when iterated
+     */
+    private static final class IntArrayIterator implements Iterator<Integer>, IntConsumer {
+        private int[] values = new int[16];
+        private int size = 0;
+        private int position = 0;
+
+        @Override
+        public void accept(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < size;
+        }
+
+        @Override
+        public Integer next() {
+            if (position >= size) {
+                throw new NoSuchElementException();
+            }
+            return values[position++];
+        }
+    }
+}
@@ -12,6 +12,7 @@ package org.noise_planet.noisemodelling.pathfinder.utils.geometry;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import java.util.Iterator;
+import java.util.function.IntConsumer;
 
 /**
  * QueryGeometryStructure aims to speed up the query of a geometry collection
@@ -26,4 +27,16 @@ public interface QueryGeometryStructure {
 
 	Iterator<Integer> query(Envelope queryEnv);
 
+	/**
+	 * Visit the identifiers of the geometries where the envelope intersects the query envelope
+	 * @param queryEnv Query envelope
+	 * @param visitor Called with the identifier of the geometries
+	 */
+	default void query(Envelope queryEnv, IntConsumer visitor) {
+		Iterator<Integer> it = query(queryEnv);
+		while (it.hasNext()) {
+			visitor.accept(it.next());
+		}
+	}
+
 }
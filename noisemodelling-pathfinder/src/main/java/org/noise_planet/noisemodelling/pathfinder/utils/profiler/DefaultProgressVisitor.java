@@ -38,7 +38,9 @@ public class DefaultProgressVisitor implements ProgressVisitor {
     }
 
     protected synchronized void pushProgression(double incProg) {
-        if (subprocessDone + incProg <= subprocessSize) {
+        // Clamp the last increment, the sum of the fractions pushed by a sub process may slightly exceed 1
+        incProg = Math.min(incProg, subprocessSize - subprocessDone);
+        if (incProg > 0) {
             subprocessDone += incProg;
             if (parentProcess != null) {
                 parentProcess.pushProgression((incProg / subprocessSize));
@@ -0,0 +1,140 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder.utils.profiler;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serve the current values of a list of metrics in the Prometheus text format at the /metrics path.
+ * Each column of the metrics is exported as a gauge named noisemodelling_[column name]. Rates are computed by the
+ * metrics between two requests.
+ * The metrics of this server must not be shared with a {@link ProfilerThread}, the values are read on the request
+ * thread and metrics like {@link StageMetric} are reset on each read.
+ */
+public class MetricsHttpServer {
+    public static final String METRIC_PREFIX = "noisemodelling_";
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetricsHttpServer.class);
+    private final InetSocketAddress address;
+    private final List<ProfilerThread.Metric> metrics = new ArrayList<>();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * @param address Listening address, use the loopback address to restrict the access to the local host. Port 0
+     *                chooses a free port.
+     */
+    public MetricsHttpServer(InetSocketAddress address) {
+        this.address = address;
+    }
+
+    /**
+     * @param metric Metric to serve
+     */
+    public synchronized void addMetric(ProfilerThread.Metric metric) {
+        metrics.add(metric);
+    }
+
+    /**
+     * Start listening
+     * @throws IOException If the address can not be bound
+     */
+    public synchronized void start() throws IOException {
+        if (server != null) {
+            return;
+        }
+        server = HttpServer.create(address, 0);
+        server.createContext("/metrics", this::handle);
+        // A single thread, requests are read one at a time
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "noisemodelling-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.start();
+        LOGGER.info("Metrics available at http://{}:{}/metrics", server.getAddress().getHostString(),
+                server.getAddress().getPort());
+    }
+
+    /**
+     * @return Listening address, null if the server is not started
+     */
+    public synchronized InetSocketAddress getAddress() {
+        return server == null ? null : server.getAddress();
+    }
+
+    /**
+     * Stop listening
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdown();
+            server = null;
+            executor = null;
+        }
+    }
+
+    /**
+     * @return Current values of the metrics in the Prometheus text format
+     */
+    public synchronized String getPrometheusText() {
+        StringBuilder sb = new StringBuilder();
+        long now = System.currentTimeMillis();
+        for (ProfilerThread.Metric metric : metrics) {
+            metric.tick(now);
+            String[] columns = metric.getColumnNames();
+            String[] values = metric.getCurrentValues();
+            for (int i = 0; i < columns.length && i < values.length; i++) {
+                double value;
+                try {
+                    value = Double.parseDouble(values[i]);
+                } catch (NumberFormatException | NullPointerException ex) {
+                    // Not a number
+                    continue;
+                }
+                String name = METRIC_PREFIX + columns[i].replaceAll("[^a-zA-Z0-9_]", "_");
+                sb.append("# TYPE ").append(name).append(" gauge\n");
+                sb.append(name).append(' ').append(value).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = getPrometheusText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
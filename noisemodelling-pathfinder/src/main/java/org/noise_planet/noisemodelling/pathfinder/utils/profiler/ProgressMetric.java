@@ -17,12 +17,19 @@ import java.util.Locale;
  * Metric that write progression value in percentage
  */
 public class ProgressMetric implements ProfilerThread.Metric {
-    private ProgressVisitor progressVisitor;
+    private volatile ProgressVisitor progressVisitor;
 
     public ProgressMetric(ProgressVisitor progressVisitor) {
         this.progressVisitor = progressVisitor;
     }
 
+    /**
+     * @param progressVisitor Progression to write, replaces the previous one
+     */
+    public void setProgressVisitor(ProgressVisitor progressVisitor) {
+        this.progressVisitor = progressVisitor;
+    }
+
     @Override
     public String[] getColumnNames() {
         return new String[] {"progression"};
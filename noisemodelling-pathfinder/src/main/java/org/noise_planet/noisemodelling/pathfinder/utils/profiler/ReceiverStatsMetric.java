@@ -25,6 +25,9 @@ public class ReceiverStatsMetric implements ProfilerThread.Metric {
     private DescriptiveStatistics collectSourcesTime = new DescriptiveStatistics();
     private DescriptiveStatistics precomputeReflectionTime = new DescriptiveStatistics();
     private DescriptiveStatistics sourcesPerReceiver = new DescriptiveStatistics();
+    private DescriptiveStatistics skippedSourcesPerReceiver = new DescriptiveStatistics();
+    /** Number of sources skipped by the maximum error budget since the beginning of the computation */
+    private long skippedSourcesTotal = 0;
 
     public ReceiverStatsMetric() {
     }
@@ -41,6 +44,9 @@ public class ReceiverStatsMetric implements ProfilerThread.Metric {
             ReceiverCutProfiles receiverProfile = receiverCutProfilesDeque.pop();
             computationCutProfiles.addValue(receiverProfile.numberOfRays);
             sourcesPerReceiver.addValue(receiverProfile.numberOfSources);
+            int skippedSources = receiverProfile.numberOfSources - receiverProfile.numberOfProcessSources;
+            skippedSourcesPerReceiver.addValue(skippedSources);
+            skippedSourcesTotal += skippedSources;
             if(receiverProfile.numberOfSources > 0) {
                 computationProcessSourcesPercentage.addValue(((double) receiverProfile.numberOfProcessSources / receiverProfile.numberOfSources) * 100);
             }
@@ -49,7 +55,7 @@ public class ReceiverStatsMetric implements ProfilerThread.Metric {
 
     @Override
     public String[] getColumnNames() {
-        return new String[] {"receiver_min_milliseconds","receiver_median_milliseconds","receiver_mean_milliseconds","receiver_max_milliseconds", "receiver_collect_sources_max_milliseconds", "receiver_precompute_reflection_max_milliseconds", "receiver_median_profiles_count", "receiver_max_profiles_count", "receiver_processed_sources_percentage_mean", "receiver_median_point_sources_in_range"};
+        return new String[] {"receiver_min_milliseconds","receiver_median_milliseconds","receiver_mean_milliseconds","receiver_max_milliseconds", "receiver_collect_sources_max_milliseconds", "receiver_precompute_reflection_max_milliseconds", "receiver_median_profiles_count", "receiver_max_profiles_count", "receiver_processed_sources_percentage_mean", "receiver_median_point_sources_in_range", "receiver_skipped_sources_mean", "skipped_sources_total"};
     }
 
     public void onEndComputation(ReceiverComputationTime receiverComputationTime) {
@@ -74,7 +80,9 @@ public class ReceiverStatsMetric implements ProfilerThread.Metric {
                 Integer.toString((int) computationCutProfiles.getPercentile(50)),
                 Integer.toString((int) computationCutProfiles.getMax()),
                 Integer.toString((int) computationProcessSourcesPercentage.getMean()),
-                Integer.toString((int) sourcesPerReceiver.getPercentile(50))
+                Integer.toString((int) sourcesPerReceiver.getPercentile(50)),
+                Integer.toString((int) skippedSourcesPerReceiver.getMean()),
+                Long.toString(skippedSourcesTotal)
         };
         computationTime.clear();
         computationCutProfiles.clear();
@@ -82,6 +90,7 @@ public class ReceiverStatsMetric implements ProfilerThread.Metric {
         collectSourcesTime.clear();
         precomputeReflectionTime.clear();
         sourcesPerReceiver.clear();
+        skippedSourcesPerReceiver.clear();
         return res;
     }
 
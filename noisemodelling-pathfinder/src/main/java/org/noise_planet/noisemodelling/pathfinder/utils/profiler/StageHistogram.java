@@ -0,0 +1,182 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder.utils.profiler;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed memory histogram of durations, recorded without lock by any number of threads.
+ * Values are stored in log-linear buckets: each power of two is split into 16 buckets, so the relative error of a
+ * percentile is lower than 6.25%. Each thread increments its own bucket array, the arrays of all the threads are summed
+ * when reading the histogram. The arrays of the terminated threads are merged, so the memory does not grow with the
+ * number of thread pools created during a computation.
+ */
+public class StageHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    /** Values greater than 2^40 (about 18 minutes in nanoseconds) are stored in the last bucket */
+    private static final int MAXIMUM_EXPONENT = 40;
+    public static final int BUCKET_COUNT = (MAXIMUM_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final List<Recorder> recorders = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Recorder> threadRecorder = ThreadLocal.withInitial(this::register);
+    /** Counts of the recorders of the terminated threads */
+    private final long[] retiredCounts = new long[BUCKET_COUNT];
+
+    private Recorder register() {
+        Recorder recorder = new Recorder(Thread.currentThread());
+        recorders.add(recorder);
+        return recorder;
+    }
+
+    /**
+     * @param value Positive value
+     * @return Index of the bucket of this value
+     */
+    public static int getBucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) Math.max(0, value);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent >= MAXIMUM_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKET_COUNT + (int) ((value >>> shift) & (SUB_BUCKET_COUNT - 1));
+    }
+
+    /**
+     * @param bucketIndex Bucket index
+     * @return Highest value stored in this bucket
+     */
+    public static long getBucketHighestValue(int bucketIndex) {
+        if (bucketIndex < SUB_BUCKET_COUNT) {
+            return bucketIndex;
+        }
+        int shift = bucketIndex / SUB_BUCKET_COUNT - 1;
+        long lowest = (long) (SUB_BUCKET_COUNT + bucketIndex % SUB_BUCKET_COUNT) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Record a value, only the calling thread writes in its bucket array so the increment does not need a lock
+     * @param value Positive value
+     */
+    public void record(long value) {
+        AtomicLongArray counts = threadRecorder.get().counts;
+        int index = getBucketIndex(value);
+        counts.lazySet(index, counts.get(index) + 1);
+    }
+
+    /**
+     * @return Sum of the values recorded by all the threads since the creation of this histogram
+     */
+    public synchronized Snapshot getSnapshot() {
+        long[] counts = Arrays.copyOf(retiredCounts, BUCKET_COUNT);
+        for (Recorder recorder : recorders) {
+            Thread owner = recorder.owner.get();
+            boolean terminated = owner == null || !owner.isAlive();
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                long count = recorder.counts.get(i);
+                counts[i] += count;
+                if (terminated) {
+                    retiredCounts[i] += count;
+                }
+            }
+            if (terminated) {
+                recorders.remove(recorder);
+            }
+        }
+        return new Snapshot(counts);
+    }
+
+    /**
+     * Bucket array of one thread
+     */
+    private static final class Recorder {
+        final WeakReference<Thread> owner;
+        final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+        Recorder(Thread owner) {
+            this.owner = new WeakReference<>(owner);
+        }
+    }
+
+    /**
+     * Immutable copy of the histogram buckets
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long totalCount;
+
+        Snapshot(long[] counts) {
+            this.counts = counts;
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            this.totalCount = total;
+        }
+
+        /**
+         * @param previous Older snapshot of the same histogram
+         * @return Values recorded since the previous snapshot
+         */
+        public Snapshot minus(Snapshot previous) {
+            long[] delta = new long[counts.length];
+            for (int i = 0; i < counts.length; i++) {
+                delta[i] = counts[i] - previous.counts[i];
+            }
+            return new Snapshot(delta);
+        }
+
+        /**
+         * @return Number of recorded values
+         */
+        public long getTotalCount() {
+            return totalCount;
+        }
+
+        /**
+         * @param percentile Percentile in [0, 100]
+         * @return Highest value of the bucket that contains the percentile, 0 if there is no value
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (totalCount == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+            long cumulated = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulated += counts[i];
+                if (cumulated >= rank) {
+                    return getBucketHighestValue(i);
+                }
+            }
+            return getMaxValue();
+        }
+
+        /**
+         * @return Highest value of the last non empty bucket, 0 if there is no value
+         */
+        public long getMaxValue() {
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[i] > 0) {
+                    return getBucketHighestValue(i);
+                }
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder.utils.profiler;
+
+import java.util.Locale;
+
+/**
+ * Duration of each stage of the computation pipeline. The stages are timed by the computation code only when the
+ * recording is enabled, it can be switched on and off at any time with {@link #setEnabled(boolean)}.
+ * Each csv line contains the number of calls, the median, the 99th percentile and the maximum duration in
+ * microseconds of each stage since the previous line.
+ * Usage in the computation code:
+ * <pre>
+ * long start = StageMetric.start();
+ * // timed code
+ * StageMetric.record(StageMetric.Stage.PROFILE, start);
+ * </pre>
+ */
+public class StageMetric implements ProfilerThread.Metric {
+    /**
+     * Timed stages
+     */
+    public enum Stage {
+        /** Cut profile between a source and a receiver */
+        PROFILE("profile"),
+        /** Lateral diffraction path */
+        SIDE_HULL("side_hull"),
+        /** Mirrored receivers for the reflections */
+        MIRROR_RECEIVERS("mirror_receivers"),
+        /** Cnossos path from a cut profile */
+        PATH_BUILDER("path_builder"),
+        /** Attenuation of a Cnossos path */
+        ATTENUATION("attenuation"),
+        /** Execution of a batch of inserts by the results writer */
+        WRITER_BATCH("writer_batch"),
+        /** Time spent by the computation threads waiting for the results writer */
+        QUEUE_WAIT("queue_wait");
+
+        private final String columnName;
+
+        Stage(String columnName) {
+            this.columnName = columnName;
+        }
+
+        public String getColumnName() {
+            return columnName;
+        }
+    }
+
+    private static volatile boolean enabled = false;
+    private static final StageHistogram[] HISTOGRAMS = new StageHistogram[Stage.values().length];
+    static {
+        for (int i = 0; i < HISTOGRAMS.length; i++) {
+            HISTOGRAMS[i] = new StageHistogram();
+        }
+    }
+
+    private final StageHistogram.Snapshot[] previousSnapshots = new StageHistogram.Snapshot[HISTOGRAMS.length];
+
+    public StageMetric() {
+        for (Stage stage : Stage.values()) {
+            previousSnapshots[stage.ordinal()] = getSnapshot(stage);
+        }
+    }
+
+    /**
+     * @param enabled True to time the computation stages
+     */
+    public static void setEnabled(boolean enabled) {
+        StageMetric.enabled = enabled;
+    }
+
+    /**
+     * @return True if the computation stages are timed
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return Current time in nanoseconds, or 0 if the recording is disabled
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Record the duration of a stage
+     * @param stage Timed stage
+     * @param start Value returned by {@link #start()} at the beginning of the stage
+     */
+    public static void record(Stage stage, long start) {
+        if (start != 0) {
+            HISTOGRAMS[stage.ordinal()].record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @param stage Timed stage
+     * @return Durations in nanoseconds recorded since the start of the application
+     */
+    public static StageHistogram.Snapshot getSnapshot(Stage stage) {
+        return HISTOGRAMS[stage.ordinal()].getSnapshot();
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        Stage[] stages = Stage.values();
+        String[] columns = new String[stages.length * 4];
+        for (Stage stage : stages) {
+            int index = stage.ordinal() * 4;
+            columns[index] = stage.getColumnName() + "_count";
+            columns[index + 1] = stage.getColumnName() + "_median_us";
+            columns[index + 2] = stage.getColumnName() + "_p99_us";
+            columns[index + 3] = stage.getColumnName() + "_max_us";
+        }
+        return columns;
+    }
+
+    @Override
+    public String[] getCurrentValues() {
+        Stage[] stages = Stage.values();
+        String[] values = new String[stages.length * 4];
+        for (Stage stage : stages) {
+            StageHistogram.Snapshot snapshot = getSnapshot(stage);
+            StageHistogram.Snapshot interval = snapshot.minus(previousSnapshots[stage.ordinal()]);
+            previousSnapshots[stage.ordinal()] = snapshot;
+            int index = stage.ordinal() * 4;
+            values[index] = Long.toString(interval.getTotalCount());
+            values[index + 1] = String.format(Locale.ROOT, "%.1f", interval.getValueAtPercentile(50) / 1e3);
+            values[index + 2] = String.format(Locale.ROOT, "%.1f", interval.getValueAtPercentile(99) / 1e3);
+            values[index + 3] = String.format(Locale.ROOT, "%.1f", interval.getMaxValue() / 1e3);
+        }
+        return values;
+    }
+
+    @Override
+    public void tick(long currentMillis) {
+
+    }
+}
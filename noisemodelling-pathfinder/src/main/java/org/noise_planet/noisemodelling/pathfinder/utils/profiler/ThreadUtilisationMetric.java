@@ -0,0 +1,73 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder.utils.profiler;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * CPU utilisation of the JVM threads since the previous read of the values.
+ * A thread is busy if it has used the CPU more than half of the time. A stalled computation shows live threads
+ * but no busy thread.
+ */
+public class ThreadUtilisationMetric implements ProfilerThread.Metric {
+    private static final double BUSY_THREAD_UTILISATION = 0.5;
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private final int processors = Runtime.getRuntime().availableProcessors();
+    private Map<Long, Long> previousCpuTime = new HashMap<>();
+    private long previousTime = System.nanoTime();
+
+    public ThreadUtilisationMetric() {
+        // Read the CPU time already used by the threads
+        getCurrentValues();
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return new String[] {"jvm_threads", "jvm_busy_threads", "jvm_cpu_utilisation"};
+    }
+
+    @Override
+    public String[] getCurrentValues() {
+        long now = System.nanoTime();
+        long elapsed = Math.max(1, now - previousTime);
+        previousTime = now;
+        long[] threadIds = threadMXBean.getAllThreadIds();
+        Map<Long, Long> cpuTime = new HashMap<>(threadIds.length);
+        long totalCpuTime = 0;
+        int busyThreads = 0;
+        if (threadMXBean.isThreadCpuTimeSupported() && threadMXBean.isThreadCpuTimeEnabled()) {
+            for (long threadId : threadIds) {
+                long threadCpuTime = threadMXBean.getThreadCpuTime(threadId);
+                if (threadCpuTime < 0) {
+                    // thread terminated
+                    continue;
+                }
+                cpuTime.put(threadId, threadCpuTime);
+                long usedTime = threadCpuTime - previousCpuTime.getOrDefault(threadId, 0L);
+                totalCpuTime += usedTime;
+                if (usedTime > elapsed * BUSY_THREAD_UTILISATION) {
+                    busyThreads++;
+                }
+            }
+        }
+        previousCpuTime = cpuTime;
+        return new String[] {Integer.toString(threadIds.length), Integer.toString(busyThreads),
+                String.format(Locale.ROOT, "%.3f", totalCpuTime / (double) (elapsed * processors))};
+    }
+
+    @Override
+    public void tick(long currentMillis) {
+
+    }
+}
@@ -10,14 +10,20 @@
 package org.noise_planet.noisemodelling.pathfinder;
 
 import org.junit.jupiter.api.Test;
+import org.locationtech.jts.algorithm.locate.IndexedPointInAreaLocator;
 import org.locationtech.jts.geom.*;
 import org.locationtech.jts.io.ParseException;
 import org.locationtech.jts.io.WKTReader;
 import org.noise_planet.noisemodelling.pathfinder.profilebuilder.Building;
 import org.noise_planet.noisemodelling.pathfinder.path.Scene;
 import org.noise_planet.noisemodelling.pathfinder.profilebuilder.CutPoint;
+import org.noise_planet.noisemodelling.pathfinder.profilebuilder.CutPointReceiver;
+import org.noise_planet.noisemodelling.pathfinder.profilebuilder.CutPointSource;
+import org.noise_planet.noisemodelling.pathfinder.profilebuilder.CutPointTopography;
 import org.noise_planet.noisemodelling.pathfinder.profilebuilder.CutProfile;
+import org.noise_planet.noisemodelling.pathfinder.profilebuilder.GroundCoefficientRaster;
 import org.noise_planet.noisemodelling.pathfinder.profilebuilder.ProfileBuilder;
+import org.noise_planet.noisemodelling.pathfinder.profilebuilder.ReceiverHorizon;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -27,7 +33,11 @@ import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.noise_planet.noisemodelling.pathfinder.PathFinderTest.assertZProfil;
 
 /**
@@ -199,7 +209,43 @@ public class ProfileBuilderTest {
         assertEquals(0.3, pts.get(3).getCoordinate().z, DELTA);
     }
 
-
+    /**
+     * The ground coefficients grid must give the same ground changes than the polygons when the areas are aligned on
+     * the grid cells.
+     * @throws ParseException JTS WKT parsing exception.
+     */
+    @Test
+    public void groundRasterCutProfileTest() throws ParseException {
+        Geometry field = READER.read("POLYGON((100 -50, 200 -50, 200 50, 100 50, 100 -50))");
+        Geometry forest = READER.read("POLYGON((200 -50, 250 -50, 250 50, 200 50, 200 -50))");
+        ProfileBuilder polygonBuilder = new ProfileBuilder();
+        polygonBuilder.addGroundEffect(field, 1.0);
+        polygonBuilder.addGroundEffect(forest, 0.5);
+        polygonBuilder.finishFeeding();
+
+        GroundCoefficientRaster raster = new GroundCoefficientRaster(new Envelope(-10, 310, -60, 60), 10);
+        raster.fill(field, new IndexedPointInAreaLocator(field), 1.0, 0, raster.getRows());
+        raster.fill(forest, new IndexedPointInAreaLocator(forest), 0.5, 0, raster.getRows());
+        assertEquals(1.0, raster.getValue(150, 0), DELTA);
+        assertTrue(Double.isNaN(raster.getValue(50, 0)));
+        ProfileBuilder rasterBuilder = new ProfileBuilder();
+        rasterBuilder.setGroundRaster(raster);
+        rasterBuilder.finishFeeding();
+
+        // From the source to the receiver then in the reverse direction, the receiver is out of the grid
+        Coordinate[][] rays = new Coordinate[][] {{new Coordinate(0, 5, 1), new Coordinate(400, 5, 4)},
+                {new Coordinate(300, 5, 1), new Coordinate(150, 25, 4)}};
+        for (Coordinate[] ray : rays) {
+            List<CutPoint> expected = polygonBuilder.getProfile(ray[0], ray[1], 0, false).cutPoints;
+            List<CutPoint> got = rasterBuilder.getProfile(ray[0], ray[1], 0, false).cutPoints;
+            assertEquals(expected.size(), got.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getClass(), got.get(i).getClass());
+                assertEquals(0, expected.get(i).getCoordinate().distance(got.get(i).getCoordinate()), 1e-6);
+                assertEquals(expected.get(i).getGroundCoefficient(), got.get(i).getGroundCoefficient(), DELTA);
+            }
+        }
+    }
 
     /**
      * Test the cut profile generation.
@@ -361,4 +407,108 @@ public class ProfileBuilderTest {
 
 
     }
+
+    @Test
+    public void testInsertCutPointOrder() {
+        CutProfile profile = new CutProfile(new CutPointSource(new Coordinate(0, 0, 1)),
+                new CutPointReceiver(new Coordinate(100, 0, 4)));
+        // already ordered points are merged
+        profile.insertCutPoint(true, new CutPointTopography(new Coordinate(10, 0, 0)),
+                new CutPointTopography(new Coordinate(50, 0, 0)), new CutPointTopography(new Coordinate(90, 0, 0)));
+        // unordered points with a point at the same distance than an existing point
+        CutPoint sameDistance = new CutPointTopography(new Coordinate(50, 0, 1));
+        profile.insertCutPoint(true, new CutPointTopography(new Coordinate(70, 0, 0)), sameDistance,
+                new CutPointTopography(new Coordinate(5, 0, 0)), new CutPointTopography(new Coordinate(0, 0, 0)));
+        double[] expectedX = new double[]{0, 0, 5, 10, 50, 50, 70, 90, 100};
+        assertEquals(expectedX.length, profile.cutPoints.size());
+        for (int i = 0; i < expectedX.length; i++) {
+            assertEquals(expectedX[i], profile.cutPoints.get(i).getCoordinate().x, DELTA);
+        }
+        assertInstanceOf(CutPointSource.class, profile.cutPoints.get(0));
+        assertInstanceOf(CutPointReceiver.class, profile.cutPoints.get(expectedX.length - 1));
+        // inserted points are placed before the existing points at the same distance
+        assertSame(sameDistance, profile.cutPoints.get(4));
+    }
+
+    @Test
+    public void testReceiverHorizon() throws ParseException {
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        // Building block with a courtyard
+        profileBuilder.addBuilding(READER.read("POLYGON((-20 -20, 20 -20, 20 20, -20 20, -20 -20)," +
+                "(-10 -10, -10 10, 10 10, 10 -10, -10 -10))"), 20, -1);
+        profileBuilder.finishFeeding();
+        Coordinate receiver = new Coordinate(0, 0, 4);
+        ReceiverHorizon horizon = new ReceiverHorizon(profileBuilder, receiver, 50);
+        assertTrue(horizon.isEnclosed());
+        assertEquals(10, horizon.getMinimumDistance(), DELTA);
+        // lowest wall top seen from the receiver is the farthest end of the courtyard walls
+        assertEquals(Math.atan2(16, Math.sqrt(200)), horizon.getMinimumElevationAngle(), DELTA);
+        // the source in the courtyard is not shadowed
+        assertEquals(0, horizon.getMinimumPathDifference(new Coordinate(5, 0, 0.5), 0), DELTA);
+        // the path of the far source goes above the roof
+        Coordinate source = new Coordinate(200, 0, 0.5);
+        double delta = horizon.getMinimumPathDifference(source, 0);
+        assertTrue(delta > 0);
+        // the true path difference over the top of the inner wall is greater than the bound
+        Coordinate top = new Coordinate(10, 0, 20);
+        assertTrue(delta <= receiver.distance3D(top) + top.distance3D(source) - receiver.distance3D(source));
+        assertTrue(horizon.getMinimumPathDifference(source, 0.1) < delta);
+
+        // Open the courtyard
+        profileBuilder = new ProfileBuilder();
+        profileBuilder.addBuilding(READER.read("POLYGON((-20 -20, 20 -20, 20 20, -20 20, -20 -20)," +
+                "(-10 -10, -10 10, 10 10, 10 -10, -10 -10))").difference(
+                        READER.read("POLYGON((-2 0, 2 0, 2 30, -2 30, -2 0))")), 20, -1);
+        profileBuilder.finishFeeding();
+        horizon = new ReceiverHorizon(profileBuilder, receiver, 50);
+        assertFalse(horizon.isEnclosed());
+        assertEquals(0, horizon.getMinimumPathDifference(source, 0), DELTA);
+
+        // Receiver above the roofs, the lowest elevation angle is seen at the nearest point of the walls
+        profileBuilder = new ProfileBuilder();
+        profileBuilder.addBuilding(READER.read("POLYGON((-20 -20, 20 -20, 20 20, -20 20, -20 -20)," +
+                "(-10 -10, -10 10, 10 10, 10 -10, -10 -10))"), 20, -1);
+        profileBuilder.finishFeeding();
+        horizon = new ReceiverHorizon(profileBuilder, new Coordinate(0, 0, 30), 50);
+        assertTrue(horizon.isEnclosed());
+        assertEquals(Math.atan2(-10, 10), horizon.getMinimumElevationAngle(), DELTA);
+    }
+
+    /**
+     * The courtyard is closed on the east side by two staggered buildings. They cover all the azimuths seen from
+     * the receiver, but the sound goes through the lateral gap between them, so the receiver is not enclosed.
+     */
+    @Test
+    public void testReceiverHorizonStaggeredBuildings() throws ParseException {
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        profileBuilder.addBuilding(READER.read("POLYGON((-20 10, 20 10, 20 20, -20 20, -20 10))"), 20, -1);
+        profileBuilder.addBuilding(READER.read("POLYGON((-20 -20, 20 -20, 20 -10, -20 -10, -20 -20))"), 20, -1);
+        profileBuilder.addBuilding(READER.read("POLYGON((-20 -10, -10 -10, -10 10, -20 10, -20 -10))"), 20, -1);
+        profileBuilder.addBuilding(READER.read("POLYGON((10 -10, 14 -10, 14 2, 10 2, 10 -10))"), 20, -1);
+        profileBuilder.finishFeeding();
+        Coordinate receiver = new Coordinate(0, 0, 4);
+        Coordinate source = new Coordinate(200, 0, 0.5);
+        // Without the far staggered building the horizon is open
+        assertFalse(new ReceiverHorizon(profileBuilder, receiver, 50).isEnclosed());
+        profileBuilder = new ProfileBuilder();
+        profileBuilder.addBuilding(READER.read("POLYGON((-20 10, 20 10, 20 20, -20 20, -20 10))"), 20, -1);
+        profileBuilder.addBuilding(READER.read("POLYGON((-20 -20, 20 -20, 20 -10, -20 -10, -20 -20))"), 20, -1);
+        profileBuilder.addBuilding(READER.read("POLYGON((-20 -10, -10 -10, -10 10, -20 10, -20 -10))"), 20, -1);
+        profileBuilder.addBuilding(READER.read("POLYGON((10 -10, 14 -10, 14 2, 10 2, 10 -10))"), 20, -1);
+        profileBuilder.addBuilding(READER.read("POLYGON((16 -2, 20 -2, 20 10, 16 10, 16 -2))"), 20, -1);
+        profileBuilder.finishFeeding();
+        ReceiverHorizon horizon = new ReceiverHorizon(profileBuilder, receiver, 50);
+        assertFalse(horizon.isEnclosed());
+        assertEquals(0, horizon.getMinimumPathDifference(source, 0), DELTA);
+        // Close the gap, the receiver is enclosed
+        profileBuilder = new ProfileBuilder();
+        profileBuilder.addBuilding(READER.read("POLYGON((-20 10, 20 10, 20 20, -20 20, -20 10))"), 20, -1);
+        profileBuilder.addBuilding(READER.read("POLYGON((-20 -20, 20 -20, 20 -10, -20 -10, -20 -20))"), 20, -1);
+        profileBuilder.addBuilding(READER.read("POLYGON((-20 -10, -10 -10, -10 10, -20 10, -20 -10))"), 20, -1);
+        profileBuilder.addBuilding(READER.read("POLYGON((10 -10, 20 -10, 20 10, 10 10, 10 -10))"), 20, -1);
+        profileBuilder.finishFeeding();
+        horizon = new ReceiverHorizon(profileBuilder, receiver, 50);
+        assertTrue(horizon.isEnclosed());
+        assertTrue(horizon.getMinimumPathDifference(source, 0) > 0);
+    }
 }
@@ -17,6 +17,7 @@ import org.locationtech.jts.io.WKTReader;
 import org.noise_planet.noisemodelling.pathfinder.path.Scene;
 import org.noise_planet.noisemodelling.pathfinder.profilebuilder.*;
 import org.noise_planet.noisemodelling.pathfinder.utils.geometry.JTSUtility;
+import org.noise_planet.noisemodelling.pathfinder.utils.geometry.Orientation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -125,6 +126,48 @@ public class TestPathFinder {
         assertEquals(0, p1.distance(ray.get(i)), 0.02);
     }
 
+    /**
+     * The lateral diffraction variants computed with a shared cache must be the same as without cache
+     */
+    @Test
+    public void TestSideHullCache() throws ParseException {
+        GeometryFactory factory = new GeometryFactory();
+        WKTReader wktReader = new WKTReader(factory);
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        profileBuilder.addBuilding(wktReader.read("POLYGON((5 6, 6 5, 7 5, 7 8, 6 8, 5 7, 5 6))"), 4, -1);
+        profileBuilder.addBuilding(wktReader.read("POLYGON((9 7, 11 7, 11 11, 9 11, 9 7))"), 4, -1);
+        profileBuilder.addBuilding(wktReader.read("POLYGON((12 8, 13 8, 13 10, 12 10, 12 8))"), 4, -1);
+        profileBuilder.addBuilding(wktReader.read("POLYGON((10 4, 11 4, 11 6, 10 6, 10 4))"), 4, -1);
+        profileBuilder.finishFeeding();
+
+        Scene scene = new Scene(profileBuilder);
+        PathFinder computeRays = new PathFinder(scene);
+        PathFinder.SourcePointInfo src = new PathFinder.SourcePointInfo(0, 0, new Coordinate(2, 6.5, 1.6), 1,
+                new Orientation());
+        PathFinder.ReceiverPointInfo rcv = new PathFinder.ReceiverPointInfo(0, 0, new Coordinate(14, 6.5, 1.6));
+        SideHullCache sideHullCache = new SideHullCache(src.position, rcv.position);
+        for(boolean curved : new boolean[]{false, true}) {
+            for (PathFinder.ComputationSide side : PathFinder.ComputationSide.values()) {
+                CutProfile expected = computeRays.computeVEdgeDiffraction(rcv, src, scene, side, curved);
+                CutProfile cached = computeRays.computeVEdgeDiffraction(rcv, src, scene, side, curved, sideHullCache);
+                assertNotNull(expected);
+                assertNotNull(cached);
+                assertEquals(expected.cutPoints.size(), cached.cutPoints.size());
+                for (int i = 0; i < expected.cutPoints.size(); i++) {
+                    assertEquals(expected.cutPoints.get(i).getClass(), cached.cutPoints.get(i).getClass());
+                    assertEquals(0, expected.cutPoints.get(i).getCoordinate().distance3D(
+                            cached.cutPoints.get(i).getCoordinate()), 1e-9);
+                }
+            }
+        }
+        // Cut points are not shared between the variants
+        CutProfile left = computeRays.computeVEdgeDiffraction(rcv, src, scene, PathFinder.ComputationSide.LEFT,
+                false, sideHullCache);
+        CutProfile leftCurved = computeRays.computeVEdgeDiffraction(rcv, src, scene, PathFinder.ComputationSide.LEFT,
+                true, sideHullCache);
+        assertNotSame(left.cutPoints.get(1), leftCurved.cutPoints.get(1));
+    }
+
     @Test
     public void TestSplitLineSourceIntoPoints() {
         GeometryFactory factory = new GeometryFactory();
@@ -157,6 +200,67 @@ public class TestPathFinder {
         assertEquals(7, pts.size());
     }
 
+    /**
+     * Far field sub-sources of a long line source are merged, near field sub-sources are kept
+     */
+    @Test
+    public void TestClusterLineSource() throws ParseException {
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        profileBuilder.finishFeeding();
+        Scene scene = new Scene(profileBuilder);
+        scene.addSource(1L, new WKTReader().read("LINESTRING (0 10 0.05, 1000 10 0.05)"));
+        scene.addReceiver(new Coordinate(0, 0, 4));
+        scene.maxSrcDist = 1500;
+        scene.setComputeHorizontalDiffraction(false);
+        scene.setComputeVerticalDiffraction(false);
+        scene.setReflexionOrder(0);
+
+        DefaultCutPlaneVisitor allSources = new DefaultCutPlaneVisitor(true, scene);
+        PathFinder computeRays = new PathFinder(scene);
+        computeRays.setThreadCount(1);
+        computeRays.run(allSources);
+
+        scene.setSourceClusteringAngle(0.1);
+        DefaultCutPlaneVisitor clusteredSources = new DefaultCutPlaneVisitor(true, scene);
+        computeRays = new PathFinder(scene);
+        computeRays.setThreadCount(1);
+        computeRays.run(clusteredSources);
+
+        assertTrue(clusteredSources.getCutProfiles().size() * 4 < allSources.getCutProfiles().size());
+        // the total length of the line source is preserved
+        double allSourcesLength = allSources.getCutProfiles().stream().mapToDouble(p -> p.getSource().li).sum();
+        double clusteredLength = clusteredSources.getCutProfiles().stream().mapToDouble(p -> p.getSource().li).sum();
+        assertEquals(1000, allSourcesLength, 1e-6);
+        assertEquals(allSourcesLength, clusteredLength, 1e-6);
+        // near field sub-sources are not merged
+        double nearestLi = clusteredSources.getCutProfiles().stream()
+                .filter(p -> p.getSource().coordinate.x < 10).mapToDouble(p -> p.getSource().li).max().orElse(0);
+        assertEquals(1000.0 / allSources.getCutProfiles().size(), nearestLi, 1e-6);
+    }
+
+    @Test
+    public void TestLineSourceDiscretisation() throws ParseException {
+        LineString line = (LineString) new WKTReader().read("LINESTRING (0 10 0.05, 400 10 0.05, 400 300 0.05)");
+        LineSourceDiscretisation discretisation = new LineSourceDiscretisation(line, 0, 5L, null);
+        for (double segmentSizeConstraint : new double[]{1, 7.5, 33, 100, 689, 800}) {
+            List<Coordinate> pts = new ArrayList<>();
+            double li = PathFinder.splitLineStringIntoPoints(line, segmentSizeConstraint, pts);
+            PathFinder.SourcePointInfo[] subSources = discretisation.getSubSources(segmentSizeConstraint);
+            assertEquals(pts.size(), subSources.length);
+            for (int i = 0; i < pts.size(); i++) {
+                assertTrue(pts.get(i).equals3D(subSources[i].position));
+                assertEquals(li, subSources[i].li, 1e-12);
+                assertEquals(5L, subSources[i].sourcePk);
+            }
+        }
+        // Receivers requiring the same number of segments share the sub-sources
+        assertSame(discretisation.getSubSources(100), discretisation.getSubSources(99));
+        assertSame(discretisation.getSubSources(800), discretisation.getSubSources(1000));
+        assertNotSame(discretisation.getSubSources(100), discretisation.getSubSources(50));
+        // Fine discretisation levels are not kept in memory
+        assertNotSame(discretisation.getSubSources(1), discretisation.getSubSources(1));
+    }
+
     /**
      * Test vertical edge diffraction ray computation
      *
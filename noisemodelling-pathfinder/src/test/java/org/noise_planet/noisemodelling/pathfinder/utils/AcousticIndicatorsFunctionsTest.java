@@ -33,4 +33,54 @@ class AcousticIndicatorsFunctionsTest {
 
         assertArrayEquals(noiseResult, AcousticIndicatorsFunctions.wToDb(wSum), 0.01);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testFastConversions() {
+        for (double dB = -200; dB < 200; dB += 0.0137) {
+            double w = AcousticIndicatorsFunctions.dBToW(dB);
+            assertEquals(1.0, AcousticIndicatorsFunctions.fastDBToW(dB) / w, 1e-13);
+            assertEquals(dB, AcousticIndicatorsFunctions.fastWToDb(w), 1e-12);
+            assertEquals(AcousticIndicatorsFunctions.wToDb(w), AcousticIndicatorsFunctions.fastWToDb(w), 1e-12);
+        }
+        // special values are delegated to the exact functions
+        assertEquals(Double.NEGATIVE_INFINITY, AcousticIndicatorsFunctions.fastWToDb(0));
+        assertTrue(Double.isNaN(AcousticIndicatorsFunctions.fastWToDb(-1)));
+        assertTrue(Double.isNaN(AcousticIndicatorsFunctions.fastDBToW(Double.NaN)));
+        assertEquals(0, AcousticIndicatorsFunctions.fastDBToW(Double.NEGATIVE_INFINITY));
+        assertEquals(AcousticIndicatorsFunctions.wToDb(Double.MIN_VALUE),
+                AcousticIndicatorsFunctions.fastWToDb(Double.MIN_VALUE));
+    }
+
+    @Test
+    public void testInPlaceOperations() {
+        double[] a = new double[]{93, 80, 75.5, 60, 42, 30, 20, 10};
+        double[] b = new double[]{-43.56, -50.59, -54.49, -56.14, -55.31, -49.77, -26.37, -25.98};
+        double[] out = new double[a.length];
+
+        assertArrayEquals(AcousticIndicatorsFunctions.sumDbArray(a, b),
+                AcousticIndicatorsFunctions.sumDbArray(a, b, out), 0);
+        assertArrayEquals(AcousticIndicatorsFunctions.sumArrayWithPonderation(a, b, 0.3),
+                AcousticIndicatorsFunctions.sumArrayWithPonderation(a, b, 0.3, out), 0);
+        assertArrayEquals(AcousticIndicatorsFunctions.multiplicationArray(a, b),
+                AcousticIndicatorsFunctions.multiplicationArray(a, b, out), 0);
+        assertEquals(AcousticIndicatorsFunctions.sumArray(AcousticIndicatorsFunctions.multiplicationArray(a, b)),
+                AcousticIndicatorsFunctions.sumMultiplicationArray(a, b), 1e-9);
+        assertArrayEquals(AcousticIndicatorsFunctions.sumArray(a, b),
+                AcousticIndicatorsFunctions.sumArray(a, b, out), 0);
+        assertArrayEquals(AcousticIndicatorsFunctions.sumArray(a, 3.0),
+                AcousticIndicatorsFunctions.sumArray(a, 3.0, out), 0);
+
+        // destination array can be the source array
+        double[] expected = AcousticIndicatorsFunctions.dBToW(a);
+        double[] copy = a.clone();
+        assertSame(copy, AcousticIndicatorsFunctions.dBToW(copy, copy));
+        assertArrayEquals(expected, copy, 0);
+        AcousticIndicatorsFunctions.wToDb(copy, copy);
+        assertArrayEquals(a, copy, 1e-9);
+        AcousticIndicatorsFunctions.multiplicationArray(copy, -1, copy);
+        assertArrayEquals(AcousticIndicatorsFunctions.multiplicationArray(a, -1), copy, 1e-9);
+
+        assertThrows(IllegalArgumentException.class, () ->
+                AcousticIndicatorsFunctions.sumDbArray(a, new double[2], out));
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder.utils;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.LineSegment;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.noise_planet.noisemodelling.pathfinder.utils.geometry.PackedGridIndex;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PackedGridIndexTest {
+
+    private static List<LineSegment> randomSegments(Random random, int count) {
+        List<LineSegment> segments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Coordinate p0 = new Coordinate(random.nextDouble() * 1000, random.nextDouble() * 500);
+            Coordinate p1 = new Coordinate(p0.x + random.nextGaussian() * 20, p0.y + random.nextGaussian() * 20);
+            segments.add(new LineSegment(p0, p1));
+        }
+        return segments;
+    }
+
+    @Test
+    public void testEnvelopeQuery() {
+        Random random = new Random(42);
+        List<LineSegment> segments = randomSegments(random, 2000);
+        PackedGridIndex index = new PackedGridIndex();
+        STRtree rtree = new STRtree();
+        for (int i = 0; i < segments.size(); i++) {
+            Envelope envelope = new Envelope(segments.get(i).p0, segments.get(i).p1);
+            index.appendEnvelope(envelope, i);
+            rtree.insert(envelope, i);
+        }
+        for (int queryIndex = 0; queryIndex < 200; queryIndex++) {
+            double x = random.nextDouble() * 1200 - 100;
+            double y = random.nextDouble() * 700 - 100;
+            Envelope queryEnv = new Envelope(x, x + random.nextDouble() * 300, y, y + random.nextDouble() * 300);
+            List<Integer> expected = new ArrayList<>();
+            for (Object id : rtree.query(queryEnv)) {
+                expected.add((Integer) id);
+            }
+            List<Integer> got = new ArrayList<>();
+            index.query(queryEnv).forEachRemaining(got::add);
+            Collections.sort(expected);
+            Collections.sort(got);
+            // each item is returned once
+            assertEquals(expected, got);
+        }
+    }
+
+    @Test
+    public void testSegmentQuery() {
+        Random random = new Random(42);
+        List<LineSegment> segments = randomSegments(random, 2000);
+        PackedGridIndex index = new PackedGridIndex();
+        for (int i = 0; i < segments.size(); i++) {
+            index.appendEnvelope(new Envelope(segments.get(i).p0, segments.get(i).p1), i);
+        }
+        for (int queryIndex = 0; queryIndex < 200; queryIndex++) {
+            LineSegment path = new LineSegment(new Coordinate(random.nextDouble() * 1000, random.nextDouble() * 500),
+                    new Coordinate(random.nextDouble() * 1000, random.nextDouble() * 500));
+            Set<Integer> expected = new HashSet<>();
+            for (int i = 0; i < segments.size(); i++) {
+                if (segments.get(i).distance(path) < 1e-7) {
+                    expected.add(i);
+                }
+            }
+            Set<Integer> visited = new HashSet<>();
+            assertTrue(index.querySegment(path.p0, path.p1, 1e-7, id -> {
+                visited.add(id);
+                return true;
+            }));
+            assertTrue(visited.containsAll(expected));
+            // the candidates are near the path
+            assertTrue(visited.size() < segments.size() / 4);
+        }
+        // the traversal can be stopped by the visitor
+        LineSegment path = new LineSegment(new Coordinate(0, 0), new Coordinate(1000, 500));
+        int[] visitCount = new int[1];
+        assertFalse(index.querySegment(path.p0, path.p1, 1e-7, id -> ++visitCount[0] < 3));
+        assertEquals(3, visitCount[0]);
+    }
+
+    @Test
+    public void testLongLineSources() {
+        Random random = new Random(42);
+        // Short sources with a few long diagonal line sources crossing the whole area
+        List<LineSegment> segments = randomSegments(random, 4000);
+        for (int i = 0; i < 200; i++) {
+            segments.add(new LineSegment(new Coordinate(random.nextDouble() * 50, random.nextDouble() * 50),
+                    new Coordinate(950 + random.nextDouble() * 50, 450 + random.nextDouble() * 50)));
+        }
+        PackedGridIndex index = new PackedGridIndex();
+        for (int i = 0; i < segments.size(); i++) {
+            index.appendEnvelope(new Envelope(segments.get(i).p0, segments.get(i).p1), i);
+        }
+        // The long sources are not copied in every cell of the grid
+        assertTrue(index.getCellEntryCount() <= 16 * segments.size());
+        for (int queryIndex = 0; queryIndex < 100; queryIndex++) {
+            double x = random.nextDouble() * 1000;
+            double y = random.nextDouble() * 500;
+            Envelope queryEnv = new Envelope(x, x + random.nextDouble() * 100, y, y + random.nextDouble() * 100);
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < segments.size(); i++) {
+                if (new Envelope(segments.get(i).p0, segments.get(i).p1).intersects(queryEnv)) {
+                    expected.add(i);
+                }
+            }
+            List<Integer> got = new ArrayList<>();
+            index.query(queryEnv).forEachRemaining(got::add);
+            Collections.sort(got);
+            assertEquals(expected, got);
+            LineSegment path = new LineSegment(new Coordinate(x, y), new Coordinate(random.nextDouble() * 1000,
+                    random.nextDouble() * 500));
+            Set<Integer> expectedOnPath = new HashSet<>();
+            for (int i = 0; i < segments.size(); i++) {
+                if (segments.get(i).distance(path) < 1e-7) {
+                    expectedOnPath.add(i);
+                }
+            }
+            Set<Integer> visited = new HashSet<>();
+            index.querySegment(path.p0, path.p1, 1e-7, id -> visited.add(id) || true);
+            assertTrue(visited.containsAll(expectedOnPath));
+        }
+    }
+
+    @Test
+    public void testAppendAfterQuery() {
+        PackedGridIndex index = new PackedGridIndex();
+        assertFalse(index.query(new Envelope(0, 10, 0, 10)).hasNext());
+        index.appendEnvelope(new Envelope(1, 2, 1, 2), 7);
+        Iterator<Integer> it = index.query(new Envelope(0, 10, 0, 10));
+        assertTrue(it.hasNext());
+        assertEquals(7, it.next());
+        index.appendEnvelope(new Envelope(5, 5, 5, 5), 8);
+        List<Integer> got = new ArrayList<>();
+        index.query(new Envelope(0, 10, 0, 10)).forEachRemaining(got::add);
+        Collections.sort(got);
+        assertEquals(Arrays.asList(7, 8), got);
+    }
+}
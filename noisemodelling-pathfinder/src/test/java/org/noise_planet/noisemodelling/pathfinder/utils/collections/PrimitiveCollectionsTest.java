@@ -0,0 +1,96 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder.utils.collections;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PrimitiveCollectionsTest {
+
+    @Test
+    public void testLongArrayList() {
+        LongArrayList list = new LongArrayList(2);
+        for (long i = 0; i < 100; i++) {
+            list.add(i * 10);
+        }
+        assertEquals(100, list.size());
+        assertEquals(500L, list.get(50));
+        assertEquals(42, list.indexOf(420L));
+        assertEquals(-1, list.indexOf(421L));
+        list.add(0, -5L);
+        assertEquals(-5L, list.getLong(0));
+        assertEquals(-5L, list.remove(0));
+        assertEquals(List.of(0L, 10L, 20L), list.subList(0, 3));
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(100));
+    }
+
+    @Test
+    public void testCoordinateArrayList() {
+        CoordinateArrayList list = new CoordinateArrayList(1);
+        list.add(new Coordinate(1, 2, 3));
+        list.add(new Coordinate(4, 5));
+        list.add(new Coordinate(7, 8, 9));
+        assertEquals(3, list.size());
+        assertEquals(new Coordinate(4, 5), list.get(1));
+        assertTrue(Double.isNaN(list.get(1).getZ()));
+        // The list stores copies of the coordinates
+        Coordinate coordinate = list.get(0);
+        coordinate.setZ(10);
+        assertEquals(3, list.getZ(0));
+        list.set(0, coordinate);
+        assertEquals(10, list.get(0).getZ());
+        assertEquals(new Coordinate(4, 5), list.remove(1));
+        assertEquals(9, list.getZ(1));
+        list.add(1, new Coordinate(0, 0, 0));
+        assertEquals(7, list.getX(2));
+    }
+
+    @Test
+    public void testCompactLongSet() {
+        CompactLongSet set = new CompactLongSet();
+        TreeSet<Long> expected = new TreeSet<>();
+        Random random = new Random(42);
+        // Dense values so that a page is converted into a bitmap, sparse and negative values in the other pages
+        for (int i = 0; i < 20000; i++) {
+            long value = random.nextInt(10000);
+            assertEquals(expected.add(value), set.add(value));
+        }
+        for (int i = 0; i < 2000; i++) {
+            long value = random.nextLong() >> random.nextInt(48);
+            assertEquals(expected.add(value), set.add(value));
+        }
+        assertEquals(expected.size(), set.size());
+        assertEquals(new ArrayList<>(expected), new ArrayList<>(set));
+        for (long value = -100; value < 10100; value++) {
+            assertEquals(expected.contains(value), set.contains(value));
+        }
+        // Remove while iterating
+        Iterator<Long> it = set.iterator();
+        while (it.hasNext()) {
+            long value = it.next();
+            if(value % 3 == 0) {
+                it.remove();
+                expected.remove(value);
+            }
+        }
+        assertEquals(new ArrayList<>(expected), new ArrayList<>(set));
+        assertFalse(set.remove(3L));
+        assertTrue(set.remove(expected.first()));
+        assertEquals(expected.size() - 1, set.size());
+    }
+}
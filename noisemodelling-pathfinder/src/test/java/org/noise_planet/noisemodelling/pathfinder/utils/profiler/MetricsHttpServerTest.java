@@ -0,0 +1,74 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder.utils.profiler;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsHttpServerTest {
+
+    @Test
+    public void testPrometheusText() throws IOException {
+        MetricsHttpServer server = new MetricsHttpServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.addMetric(new ProfilerThread.Metric() {
+            @Override
+            public String[] getColumnNames() {
+                return new String[] {"queue size", "label", "rate"};
+            }
+
+            @Override
+            public String[] getCurrentValues() {
+                return new String[] {"12", "not a number", "1.5"};
+            }
+
+            @Override
+            public void tick(long currentMillis) {
+
+            }
+        });
+        server.addMetric(new ThreadUtilisationMetric());
+        server.start();
+        try {
+            URL url = new URL("http", server.getAddress().getHostString(), server.getAddress().getPort(),
+                    "/metrics");
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            assertEquals(200, connection.getResponseCode());
+            assertEquals(MetricsHttpServer.CONTENT_TYPE, connection.getContentType());
+            String body;
+            try (InputStream inputStream = connection.getInputStream()) {
+                body = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            List<String> lines = Arrays.asList(body.split("\n"));
+            assertTrue(lines.contains("# TYPE noisemodelling_queue_size gauge"));
+            assertTrue(lines.contains("noisemodelling_queue_size 12.0"));
+            assertTrue(lines.contains("noisemodelling_rate 1.5"));
+            assertTrue(lines.stream().noneMatch(line -> line.contains("noisemodelling_label")));
+            assertTrue(lines.stream().anyMatch(line -> line.startsWith("noisemodelling_jvm_threads ")));
+            // Only the GET method is allowed
+            connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("DELETE");
+            assertEquals(405, connection.getResponseCode());
+        } finally {
+            server.stop();
+        }
+        assertNull(server.getAddress());
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.pathfinder.utils.profiler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StageHistogramTest {
+
+    @Test
+    public void testBuckets() {
+        Random random = new Random(42);
+        int previousIndex = 0;
+        for (long value = 0; value < 100000; value++) {
+            int index = StageHistogram.getBucketIndex(value);
+            assertTrue(index >= previousIndex);
+            assertTrue(value <= StageHistogram.getBucketHighestValue(index));
+            previousIndex = index;
+        }
+        for (int i = 0; i < 10000; i++) {
+            long value = (long) (random.nextDouble() * (1L << 39));
+            long highest = StageHistogram.getBucketHighestValue(StageHistogram.getBucketIndex(value));
+            assertTrue(highest >= value);
+            assertTrue((highest - value) / (double) value < 1 / 16.0);
+        }
+        assertEquals(StageHistogram.BUCKET_COUNT - 1, StageHistogram.getBucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testConcurrentRecord() throws InterruptedException {
+        StageHistogram histogram = new StageHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int value = 1; value <= 10000; value++) {
+                    histogram.record(value);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        StageHistogram.Snapshot first = histogram.getSnapshot();
+        assertEquals(40000, first.getTotalCount());
+        assertEquals(5000, first.getValueAtPercentile(50), 5000 / 16.0);
+        assertEquals(9900, first.getValueAtPercentile(99), 9900 / 16.0);
+        assertEquals(10000, first.getMaxValue(), 10000 / 16.0);
+        // The values of the terminated threads are kept
+        histogram.record(100);
+        StageHistogram.Snapshot second = histogram.getSnapshot();
+        assertEquals(40001, second.getTotalCount());
+        StageHistogram.Snapshot interval = second.minus(first);
+        assertEquals(1, interval.getTotalCount());
+        assertEquals(100, interval.getValueAtPercentile(50), 100 / 16.0);
+    }
+
+    @Test
+    public void testStageMetric() {
+        StageMetric stageMetric = new StageMetric();
+        assertEquals(stageMetric.getColumnNames().length, stageMetric.getCurrentValues().length);
+        StageMetric.setEnabled(false);
+        assertEquals(0, StageMetric.start());
+        StageMetric.record(StageMetric.Stage.PROFILE, StageMetric.start());
+        assertEquals("0", stageMetric.getCurrentValues()[0]);
+        StageMetric.setEnabled(true);
+        try {
+            StageMetric.record(StageMetric.Stage.PROFILE, StageMetric.start());
+            assertEquals("1", stageMetric.getCurrentValues()[0]);
+        } finally {
+            StageMetric.setEnabled(false);
+        }
+    }
+}
@@ -12,6 +12,10 @@ public class ReceiverNoiseLevel {
     public PathFinder.ReceiverPointInfo receiver = null;
     public String period = "";
     public double [] levels = new double[0];
+    /** A-weighted global level in dB, NaN if not computed yet */
+    public double laeq = Double.NaN;
+    /** Global level in dB, NaN if not computed yet */
+    public double leq = Double.NaN;
 
     public ReceiverNoiseLevel(PathFinder.SourcePointInfo source,
                                 PathFinder.ReceiverPointInfo receiver,
@@ -12,6 +12,7 @@ package org.noise_planet.noisemodelling.propagation.cnossos;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.math.Vector3D;
 import org.noise_planet.noisemodelling.pathfinder.utils.geometry.Orientation;
+import org.noise_planet.noisemodelling.pathfinder.utils.profiler.StageMetric;
 import org.noise_planet.noisemodelling.propagation.AttenuationParameters;
 import org.noise_planet.noisemodelling.propagation.SceneWithAttenuation;
 import org.slf4j.Logger;
@@ -568,6 +569,7 @@ public class AttenuationCnossos {
         if (data == null) {
             return new double[0];
         }
+        long start = StageMetric.start();
         // cache frequencies
         double[] frequencies = new double[0];
         if(scene != null) {
@@ -782,6 +784,7 @@ public class AttenuationCnossos {
         if(exportAttenuationMatrix) {
             proPathParameters.aGlobal = aGlobalMeteoRay.clone();
         }
+        StageMetric.record(StageMetric.Stage.ATTENUATION, start);
         return aGlobalMeteoRay;
     }
 
@@ -13,6 +13,7 @@ import org.noise_planet.noisemodelling.pathfinder.profilebuilder.CutPointWall;
 import org.noise_planet.noisemodelling.pathfinder.profilebuilder.CutProfile;
 import org.noise_planet.noisemodelling.pathfinder.utils.geometry.JTSUtility;
 import org.noise_planet.noisemodelling.pathfinder.utils.geometry.Orientation;
+import org.noise_planet.noisemodelling.pathfinder.utils.profiler.StageMetric;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -190,6 +191,7 @@ public class CnossosPathBuilder {
      * @return The cnossos path or null
      */
     public static List<CnossosPath> computeCnossosPathsFromCutProfile(CutProfile cutProfile , boolean bodyBarrier, List<Double> exactFrequencyArray, double gS) {
+        long start = StageMetric.start();
         List<CnossosPath> cnossosPaths = new ArrayList<>();
         if(cutProfile.profileType == CutProfile.PROFILE_TYPE.DIRECT ||
                 cutProfile.profileType == CutProfile.PROFILE_TYPE.REFLECTION) {
@@ -202,6 +204,7 @@ public class CnossosPathBuilder {
             CnossosPath cnossosPath = computeCnossosPathFromCutProfile(cutProfile, bodyBarrier, exactFrequencyArray, gS, cutProfile.curvedPath);
             if(cnossosPath != null) cnossosPaths.add(cnossosPath);
         }
+        StageMetric.record(StageMetric.Stage.PATH_BUILDER, start);
         return cnossosPaths;
     }
 
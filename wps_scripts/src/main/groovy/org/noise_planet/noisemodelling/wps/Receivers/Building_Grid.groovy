@@ -33,7 +33,7 @@ import org.h2gis.utilities.TableLocation
 import org.h2gis.utilities.dbtypes.DBUtils
 import org.locationtech.jts.geom.*
 import org.locationtech.jts.io.WKTReader
-import org.noise_planet.noisemodelling.jdbc.DelaunayReceiversMaker
+import org.noise_planet.noisemodelling.jdbc.BuildingGridReceiversMaker
 import org.noise_planet.noisemodelling.pathfinder.utils.profiler.RootProgressVisitor;
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
@@ -198,10 +198,6 @@ def exec(Connection connection, input) {
         return resultString
     }
 
-    //Statement sql = connection.createStatement()
-    Sql sql = new Sql(connection)
-    sql.execute(String.format("DROP TABLE IF EXISTS %s", receivers_table_name))
-
     // Reproject fence
     int srid = GeometryTableUtilities.getSRID(connection, TableLocation.parse(building_table_name))
     if (srid == 0 && input['sourcesTableName']) {
@@ -242,139 +238,18 @@ def exec(Connection connection, input) {
         return "Buildings table must have a primary key"
     }
 
-    sql.execute("drop table if exists tmp_receivers_lines")
-
-    if (fence != null) {
-        sql.execute("create table tmp_receivers_lines(pk int not null primary key, the_geom geometry) as select " + buildingPk + " as pk, st_simplifypreservetopology(ST_ToMultiLine(ST_Buffer(the_geom, :distance_wall, 'join=bevel')), 0.05) the_geom from " + building_table_name + " WHERE the_geom && :fenceGeom AND ST_INTERSECTS(the_geom, :fenceGeom)", [fenceGeom : fence, distance_wall : distance])
-    } else {
-        sql.execute("create table tmp_receivers_lines(pk int not null primary key, the_geom geometry) as select " + buildingPk + " as pk, st_simplifypreservetopology(ST_ToMultiLine(ST_Buffer(the_geom, :distance_wall, 'join=bevel')), 0.05) the_geom from " + building_table_name, [distance_wall : distance])
-    }
-
-    logger.info('create line of receivers')
-
-    sql.execute("drop table if exists tmp_relation_screen_building;")
-    sql.execute("create spatial index on tmp_receivers_lines(the_geom)")
-    logger.info('list buildings that will remove receivers (if height is superior than receiver height)')
-
-    sql.execute("create table tmp_relation_screen_building as select b." + buildingPk + " as PK_building, s.pk as pk_screen from " + building_table_name + " b, tmp_receivers_lines s where b.the_geom && s.the_geom and s.pk != b." + buildingPk + " and ST_Intersects(b.the_geom, s.the_geom) and b.height > " + h)
-
-    sql.execute("CREATE INDEX ON tmp_relation_screen_building(PK_building);")
-    sql.execute("CREATE INDEX ON tmp_relation_screen_building(pk_screen);")
-    sql.execute("drop table if exists tmp_screen_truncated;")
-    logger.info('truncate receiver lines')
-    sql.execute("create table tmp_screen_truncated(pk_screen integer not null, the_geom geometry) as select r.pk_screen, ST_DIFFERENCE(s.the_geom, ST_BUFFER(ST_ACCUM(b.the_geom), :distance_wall)) the_geom from tmp_relation_screen_building r, " + building_table_name + " b, tmp_receivers_lines s WHERE PK_building = b." + buildingPk + " AND pk_screen = s.pk  GROUP BY pk_screen, s.the_geom;", [distance_wall : distance])
-    logger.info('Add primary key')
-    sql.execute("ALTER TABLE tmp_screen_truncated add primary key(pk_screen)")
-    sql.execute("DROP TABLE IF EXISTS TMP_SCREENS_MERGE;")
-    sql.execute("DROP TABLE IF EXISTS TMP_SCREENS;")
-    logger.info('union of truncated receivers and non tructated')
-    sql.execute("create table TMP_SCREENS_MERGE (pk integer not null, the_geom geometry) as select s.pk, s.the_geom the_geom from tmp_receivers_lines s where not st_isempty(s.the_geom) and pk not in (select pk_screen from tmp_screen_truncated) UNION ALL select pk_screen, the_geom from tmp_screen_truncated where not st_isempty(the_geom);")
-    logger.info('Add primary key')
-    sql.execute("ALTER TABLE TMP_SCREENS_MERGE add primary key(pk)")
-    logger.info('Collect all lines and convert into points using custom method')
-    sql.execute("CREATE TABLE TMP_SCREENS(pk integer, the_geom geometry)")
-    def qry = 'INSERT INTO TMP_SCREENS(pk , the_geom) VALUES (?,?);'
-    GeometryFactory factory = new GeometryFactory(new PrecisionModel(), srid);
-    logger.info('Split line to points')
-    int nrows = sql.firstRow('SELECT COUNT(*) FROM TMP_SCREENS_MERGE')[0] as Integer
-    RootProgressVisitor progressLogger = new RootProgressVisitor(nrows, true, 1)
-    sql.withBatch(100, qry) { ps ->
-        sql.eachRow("SELECT pk, the_geom from TMP_SCREENS_MERGE") { row ->
-            List<Coordinate> pts = new ArrayList<Coordinate>()
-            def geom = row[1] as Geometry
-            if (geom instanceof LineString) {
-                splitLineStringIntoPoints(geom as LineString, delta, pts)
-            } else if (geom instanceof MultiLineString) {
-                for (int idgeom = 0; idgeom < geom.numGeometries; idgeom++) {
-                    splitLineStringIntoPoints(geom.getGeometryN(idgeom) as LineString, delta, pts)
-                }
-            }
-            for (int idp = 0; idp < pts.size(); idp++) {
-                Coordinate pt = pts.get(idp);
-                if (!Double.isNaN(pt.x) && !Double.isNaN(pt.y)) {
-                    // define coordinates of receivers
-                    Coordinate newCoord = new Coordinate(pt.x, pt.y, h)
-                    ps.addBatch(row[0] as Integer, factory.createPoint(newCoord))
-                }
-            }
-            progressLogger.endStep()
-        }
-    }
-    sql.execute("drop table if exists TMP_SCREENS_MERGE")
-    sql.execute("drop table if exists " + receivers_table_name)
-
-    if (!hasPop) {
-        logger.info('create RECEIVERS table...')
-
-
-        sql.execute("create table " + receivers_table_name + "(pk integer not null AUTO_INCREMENT, the_geom geometry,build_pk integer)")
-        sql.execute("insert into " + receivers_table_name + "(the_geom, build_pk) select ST_SetSRID(the_geom," + srid.toInteger() + ") , pk building_pk from TMP_SCREENS;")
-        logger.info('Add primary key')
-        sql.execute("ALTER TABLE "+receivers_table_name+" add primary key(pk)")
-        // Remove receivers left inside buildings (non-POP case)
-        sql.execute("delete from " + receivers_table_name + " g " +
-                    "where exists (" +
-                    "  select 1 from " + building_table_name + " b " +
-                    "  where b.the_geom && g.the_geom " +
-                    "    and ST_Contains(b.the_geom, g.the_geom) " +
-                    "  limit 1)")
-
-
-        if (input['sourcesTableName']) {
-            // Delete receivers near sources
-            logger.info('Delete receivers near sources...')
-            sql.execute("delete from " + receivers_table_name + " g where exists (select 1 from " + sources_table_name + " r where st_expand(g.the_geom, 1, 1) && r.the_geom and st_distance(g.the_geom, r.the_geom) < 1 limit 1);")
-        }
-
-        if (fence != null) {
-            // delete receiver not in fence filter
-            sql.execute("delete from " + receivers_table_name + " g where not ST_INTERSECTS(g.the_geom , :fenceGeom);", [fenceGeom : fence])
-        }
-    } else {
-        logger.info('create RECEIVERS table...')
-        // building have population attribute
-        // set population attribute divided by number of receiver to each receiver
-        sql.execute("DROP TABLE IF EXISTS tmp_receivers")
-        sql.execute("create table tmp_receivers(pk integer not null AUTO_INCREMENT, the_geom geometry,build_pk integer not null)")
-
-        sql.execute("insert into tmp_receivers(the_geom, build_pk) select ST_SetSRID(the_geom," + srid.toInteger() + "), pk building_pk from TMP_SCREENS;")
-        logger.info('Add primary key')
-        sql.execute("ALTER TABLE tmp_receivers add primary key(pk)")
-        // Remove recipients left inside buildings BEFORE distributing POP
-        sql.execute("delete from tmp_receivers g " +
-                    "where exists (" +
-                    "  select 1 from " + building_table_name + " b " +
-                    "  where b.the_geom && g.the_geom " +
-                    "    and ST_Contains(b.the_geom, g.the_geom) " +
-                    "  limit 1)")
-
-
-        if (input['sourcesTableName']) {
-            // Delete receivers near sources
-            logger.info('Delete receivers near sources...')
-            sql.execute("delete from tmp_receivers g where exists (select 1 from " + sources_table_name + " r where st_expand(g.the_geom, 1) && r.the_geom and st_distance(g.the_geom, r.the_geom) < 1 limit 1);")
-        }
-
-        if (fence != null) {
-            // delete receiver not in fence filter
-            sql.execute("delete from tmp_receivers g where not ST_INTERSECTS(g.the_geom , :fenceGeom);", [fenceGeom : fence])
-        }
-
-        sql.execute("CREATE INDEX ON tmp_receivers(build_pk)")
-        logger.info('Distribute population over receivers')
-        sql.execute("create table " + receivers_table_name + "(pk integer not null AUTO_INCREMENT, the_geom geometry,build_pk integer, pop real)");
-        sql.execute("insert into "+receivers_table_name+"(the_geom, build_pk, pop) select a.the_geom, a.build_pk, b.pop/COUNT(DISTINCT aa.pk)::float from tmp_receivers a, " + building_table_name + " b,tmp_receivers aa where b." + buildingPk + " = a.build_pk and a.build_pk = aa.build_pk GROUP BY a.the_geom, a.build_pk, b.pop;")
-        logger.info('Add primary key')
-        sql.execute("ALTER TABLE "+receivers_table_name+" add primary key(pk)")
-
-        sql.execute("drop table if exists tmp_receivers")
+    logger.info('create RECEIVERS table...')
+    BuildingGridReceiversMaker receiversMaker = new BuildingGridReceiversMaker(building_table_name)
+    receiversMaker.setReceiverHeight(h)
+    receiversMaker.setWallDistance(distance)
+    receiversMaker.setReceiverDistance(delta)
+    receiversMaker.setFence(fence)
+    if (input['sourcesTableName']) {
+        receiversMaker.setSourcesTableName(sources_table_name)
     }
-    // cleaning
-    sql.execute("drop table TMP_SCREENS")
-    sql.execute("drop table tmp_screen_truncated")
-    sql.execute("drop table tmp_relation_screen_building")
-    sql.execute("drop table tmp_receivers_lines")
-    sql.execute("drop table if exists tmp_buildings;")
+    RootProgressVisitor progressLogger = new RootProgressVisitor(1, true, 1)
+    long receiverCount = receiversMaker.run(connection, receivers_table_name, progressLogger)
+    logger.info(receiverCount + ' receivers created')
     // Process Done
     resultString = "Process done. Table of receivers " + receivers_table_name + " created !"
 
@@ -386,88 +261,3 @@ def exec(Connection connection, input) {
     return resultString
 
 }
-
-
-/**
- *
- * @param geom Geometry
- * @param segmentSizeConstraint Maximal distance between points
- * @param [out]pts computed points
- * @return Fixed distance between points
- */
-double splitLineStringIntoPoints(LineString geom, double segmentSizeConstraint,
-                                 List<Coordinate> pts) {
-    // If the linear sound source length is inferior than half the distance between the nearest point of the sound
-    // source and the receiver then it can be modelled as a single point source
-    double geomLength = geom.getLength();
-    if (geomLength < segmentSizeConstraint) {
-        // Return mid point
-        Coordinate[] points = geom.getCoordinates();
-        double segmentLength = 0;
-        final double targetSegmentSize = geomLength / 2.0;
-        for (int i = 0; i < points.length - 1; i++) {
-            Coordinate a = points[i];
-            final Coordinate b = points[i + 1];
-            double length = a.distance3D(b);
-            if (length + segmentLength > targetSegmentSize) {
-                double segmentLengthFraction = (targetSegmentSize - segmentLength) / length;
-                Coordinate midPoint = new Coordinate(a.x + segmentLengthFraction * (b.x - a.x),
-                        a.y + segmentLengthFraction * (b.y - a.y),
-                        a.z + segmentLengthFraction * (b.z - a.z));
-                pts.add(midPoint);
-                break;
-            }
-            segmentLength += length;
-        }
-        return geom.getLength();
-    } else {
-        double targetSegmentSize = geomLength / Math.ceil(geomLength / segmentSizeConstraint);
-        Coordinate[] points = geom.getCoordinates();
-        double segmentLength = 0.0;
-
-        // Mid point of segmented line source
-        def midPoint = null;
-        for (int i = 0; i < points.length - 1; i++) {
-            Coordinate a = points[i];
-            final Coordinate b = points[i + 1];
-            double length = a.distance3D(b);
-            if (Double.isNaN(length)) {
-                length = a.distance(b);
-            }
-            while (length + segmentLength > targetSegmentSize) {
-                //LineSegment segment = new LineSegment(a, b);
-                double segmentLengthFraction = (targetSegmentSize - segmentLength) / length;
-                Coordinate splitPoint = new Coordinate();
-                splitPoint.x = a.x + segmentLengthFraction * (b.x - a.x);
-                splitPoint.y = a.y + segmentLengthFraction * (b.y - a.y);
-                splitPoint.z = a.z + segmentLengthFraction * (b.z - a.z);
-                if (midPoint == null && length + segmentLength > targetSegmentSize / 2) {
-                    segmentLengthFraction = (targetSegmentSize / 2.0 - segmentLength) / length;
-                    midPoint = new Coordinate(a.x + segmentLengthFraction * (b.x - a.x),
-                            a.y + segmentLengthFraction * (b.y - a.y),
-                            a.z + segmentLengthFraction * (b.z - a.z));
-                }
-                pts.add(midPoint);
-                a = splitPoint;
-                length = a.distance3D(b);
-                if (Double.isNaN(length)) {
-                    length = a.distance(b);
-                }
-                segmentLength = 0;
-                midPoint = null;
-            }
-            if (midPoint == null && length + segmentLength > targetSegmentSize / 2) {
-                double segmentLengthFraction = (targetSegmentSize / 2.0 - segmentLength) / length;
-                midPoint = new Coordinate(a.x + segmentLengthFraction * (b.x - a.x),
-                        a.y + segmentLengthFraction * (b.y - a.y),
-                        a.z + segmentLengthFraction * (b.z - a.z));
-            }
-            segmentLength += length;
-        }
-        if (midPoint != null) {
-            pts.add(midPoint);
-        }
-        return targetSegmentSize;
-    }
-}
-